@@ -0,0 +1,11 @@
+package android;
+
+/**
+ * Fake of the Android permissions for the benchmarks
+ */
+public final class Manifest {
+
+    public static final class permission {
+        public static final String ACCESS_FINE_LOCATION = "android.permission.ACCESS_FINE_LOCATION";
+    }
+}
@@ -0,0 +1,16 @@
+package android.app;
+
+/**
+ * Fake of the Android alarm manager for the benchmarks, no alarm is triggered
+ */
+public class AlarmManager {
+
+    public static final int RTC_WAKEUP = 0;
+    public static final int RTC = 1;
+
+    public void set(int type, long triggerAtMillis, PendingIntent operation) {
+    }
+
+    public void cancel(PendingIntent operation) {
+    }
+}
@@ -0,0 +1,15 @@
+package android.app;
+
+import android.content.Context;
+import android.content.Intent;
+
+/**
+ * Fake of the Android intent service for the benchmarks
+ */
+public abstract class IntentService extends Context {
+
+    public IntentService(String name) {
+    }
+
+    protected abstract void onHandleIntent(Intent intent);
+}
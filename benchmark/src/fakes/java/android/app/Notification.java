@@ -0,0 +1,7 @@
+package android.app;
+
+/**
+ * Fake of the Android notification for the benchmarks
+ */
+public class Notification {
+}
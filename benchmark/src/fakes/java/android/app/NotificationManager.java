@@ -0,0 +1,10 @@
+package android.app;
+
+/**
+ * Fake of the Android notification manager for the benchmarks, nothing is displayed
+ */
+public class NotificationManager {
+
+    public void notify(int id, Notification notification) {
+    }
+}
@@ -0,0 +1,30 @@
+package android.app;
+
+import android.content.Context;
+import android.content.Intent;
+
+/**
+ * Fake of the Android pending intent for the benchmarks
+ */
+public final class PendingIntent {
+
+    public static final int FLAG_UPDATE_CURRENT = 1 << 27;
+
+    private final Intent mIntent;
+
+    private PendingIntent(Intent intent) {
+        mIntent = intent;
+    }
+
+    public static PendingIntent getService(Context context, int requestCode, Intent intent, int flags) {
+        return new PendingIntent(intent);
+    }
+
+    public static PendingIntent getBroadcast(Context context, int requestCode, Intent intent, int flags) {
+        return new PendingIntent(intent);
+    }
+
+    public Intent getIntent() {
+        return mIntent;
+    }
+}
@@ -0,0 +1,19 @@
+package android.content;
+
+/**
+ * Fake of the Android broadcast receiver for the benchmarks
+ */
+public abstract class BroadcastReceiver {
+
+    public abstract void onReceive(Context context, Intent intent);
+
+    public final PendingResult goAsync() {
+        return new PendingResult();
+    }
+
+    public static class PendingResult {
+
+        public final void finish() {
+        }
+    }
+}
@@ -0,0 +1,17 @@
+package android.content;
+
+/**
+ * Fake of the Android component name for the benchmarks
+ */
+public class ComponentName {
+
+    private final String mClassName;
+
+    public ComponentName(Context context, Class<?> cls) {
+        mClassName = cls.getName();
+    }
+
+    public String getClassName() {
+        return mClassName;
+    }
+}
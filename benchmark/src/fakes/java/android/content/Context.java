@@ -0,0 +1,73 @@
+package android.content;
+
+import android.content.pm.PackageManager;
+
+import java.io.File;
+import java.io.IOException;
+import java.nio.file.Files;
+import java.util.HashMap;
+
+/**
+ * Fake of the Android context for the benchmarks.
+ * The shared preferences are kept in memory, and also written to XML files if asked, and the files directory is a new temporary directory.
+ */
+public class Context {
+
+    public static final int MODE_PRIVATE = 0;
+    public static final String NOTIFICATION_SERVICE = "notification";
+    public static final String ALARM_SERVICE = "alarm";
+
+    private final File mFilesDir;
+    private final HashMap<String, SharedPreferences> mPrefs = new HashMap<>();
+    private final PackageManager mPackageManager = new PackageManager();
+    private final boolean mPersistSharedPreferences;
+
+    public Context() {
+        this(false);
+    }
+
+    /**
+     * @param persistSharedPreferences true to write the shared preferences to an XML file of the files directory on each commit
+     */
+    public Context(boolean persistSharedPreferences) {
+        mPersistSharedPreferences = persistSharedPreferences;
+        try {
+            mFilesDir = Files.createTempDirectory("geofence-benchmark").toFile();
+        } catch (IOException e) {
+            throw new IllegalStateException(e);
+        }
+    }
+
+    public synchronized SharedPreferences getSharedPreferences(String name, int mode) {
+        SharedPreferences prefs = mPrefs.get(name);
+        if (prefs == null) {
+            prefs = new InMemorySharedPreferences(mPersistSharedPreferences ? new File(mFilesDir, name + ".xml") : null);
+            mPrefs.put(name, prefs);
+        }
+        return prefs;
+    }
+
+    public File getFilesDir() {
+        return mFilesDir;
+    }
+
+    public Context getApplicationContext() {
+        return this;
+    }
+
+    public Object getSystemService(String name) {
+        return null;
+    }
+
+    public ComponentName startService(Intent service) {
+        return service.getComponent();
+    }
+
+    public PackageManager getPackageManager() {
+        return mPackageManager;
+    }
+
+    public String getPackageName() {
+        return "com.sousoum.libgeofencehelper.benchmark";
+    }
+}
@@ -0,0 +1,198 @@
+package android.content;
+
+import java.io.File;
+import java.io.FileOutputStream;
+import java.io.IOException;
+import java.io.OutputStreamWriter;
+import java.io.Writer;
+import java.util.HashMap;
+import java.util.HashSet;
+import java.util.Map;
+import java.util.Set;
+
+/**
+ * Shared preferences kept in memory, used by the fake {@link Context}.
+ * When they have a file, each commit also writes all the values to it as an XML file and syncs it, as the platform does.
+ */
+class InMemorySharedPreferences implements SharedPreferences {
+
+    private final HashMap<String, Object> mValues = new HashMap<>();
+    // file written on each commit, null to keep the values only in memory
+    private final File mFile;
+
+    InMemorySharedPreferences(File file) {
+        mFile = file;
+    }
+
+    @Override
+    public synchronized Map<String, ?> getAll() {
+        return new HashMap<>(mValues);
+    }
+
+    @Override
+    public synchronized String getString(String key, String defValue) {
+        Object value = mValues.get(key);
+        return value != null ? (String) value : defValue;
+    }
+
+    @Override
+    @SuppressWarnings("unchecked")
+    public synchronized Set<String> getStringSet(String key, Set<String> defValues) {
+        Object value = mValues.get(key);
+        return value != null ? (Set<String>) value : defValues;
+    }
+
+    @Override
+    public synchronized int getInt(String key, int defValue) {
+        Object value = mValues.get(key);
+        return value != null ? (Integer) value : defValue;
+    }
+
+    @Override
+    public synchronized long getLong(String key, long defValue) {
+        Object value = mValues.get(key);
+        return value != null ? (Long) value : defValue;
+    }
+
+    @Override
+    public synchronized float getFloat(String key, float defValue) {
+        Object value = mValues.get(key);
+        return value != null ? (Float) value : defValue;
+    }
+
+    @Override
+    public synchronized boolean getBoolean(String key, boolean defValue) {
+        Object value = mValues.get(key);
+        return value != null ? (Boolean) value : defValue;
+    }
+
+    @Override
+    public synchronized boolean contains(String key) {
+        return mValues.containsKey(key);
+    }
+
+    @Override
+    public Editor edit() {
+        return new InMemoryEditor();
+    }
+
+    private class InMemoryEditor implements Editor {
+
+        private final HashMap<String, Object> mPuts = new HashMap<>();
+        private final HashSet<String> mRemoves = new HashSet<>();
+        private boolean mClear;
+
+        @Override
+        public Editor putString(String key, String value) {
+            mPuts.put(key, value);
+            return this;
+        }
+
+        @Override
+        public Editor putStringSet(String key, Set<String> values) {
+            mPuts.put(key, values != null ? new HashSet<>(values) : null);
+            return this;
+        }
+
+        @Override
+        public Editor putInt(String key, int value) {
+            mPuts.put(key, value);
+            return this;
+        }
+
+        @Override
+        public Editor putLong(String key, long value) {
+            mPuts.put(key, value);
+            return this;
+        }
+
+        @Override
+        public Editor putFloat(String key, float value) {
+            mPuts.put(key, value);
+            return this;
+        }
+
+        @Override
+        public Editor putBoolean(String key, boolean value) {
+            mPuts.put(key, value);
+            return this;
+        }
+
+        @Override
+        public Editor remove(String key) {
+            mRemoves.add(key);
+            return this;
+        }
+
+        @Override
+        public Editor clear() {
+            mClear = true;
+            return this;
+        }
+
+        @Override
+        public boolean commit() {
+            synchronized (InMemorySharedPreferences.this) {
+                if (mClear) {
+                    mValues.clear();
+                }
+                mValues.keySet().removeAll(mRemoves);
+                for (Map.Entry<String, Object> put : mPuts.entrySet()) {
+                    if (put.getValue() != null) {
+                        mValues.put(put.getKey(), put.getValue());
+                    } else {
+                        mValues.remove(put.getKey());
+                    }
+                }
+                if (mFile != null) {
+                    writeToFile();
+                }
+            }
+            return true;
+        }
+
+        @Override
+        public void apply() {
+            commit();
+        }
+    }
+
+    private void writeToFile() {
+        StringBuilder xml = new StringBuilder("<?xml version='1.0' encoding='utf-8' standalone='yes' ?>\n<map>\n");
+        for (Map.Entry<String, Object> entry : mValues.entrySet()) {
+            Object value = entry.getValue();
+            String name = escape(entry.getKey());
+            if (value instanceof String) {
+                xml.append("    <string name=\"").append(name).append("\">").append(escape((String) value)).append("</string>\n");
+            } else if (value instanceof Set) {
+                xml.append("    <set name=\"").append(name).append("\">\n");
+                for (Object item : (Set<?>) value) {
+                    xml.append("        <string>").append(escape(String.valueOf(item))).append("</string>\n");
+                }
+                xml.append("    </set>\n");
+            } else {
+                String type = value.getClass().getSimpleName().toLowerCase();
+                xml.append("    <").append(type).append(" name=\"").append(name).append("\" value=\"").append(value).append("\" />\n");
+            }
+        }
+        xml.append("</map>\n");
+
+        try {
+            FileOutputStream out = new FileOutputStream(mFile);
+            try {
+                Writer writer = new OutputStreamWriter(out, "UTF-8");
+                writer.write(xml.toString());
+                writer.flush();
+                out.getFD().sync();
+            } finally {
+                out.close();
+            }
+        } catch (IOException e) {
+            throw new IllegalStateException("Could not write " + mFile, e);
+        }
+    }
+
+    private static String escape(String str) {
+        return str.replace("&", "&amp;").replace("<", "&lt;").replace(">", "&gt;").replace("\"", "&quot;");
+    }
+}
@@ -0,0 +1,77 @@
+package android.content;
+
+import java.util.ArrayList;
+import java.util.HashMap;
+
+/**
+ * Fake of the Android intent for the benchmarks, the extras are kept in a map
+ */
+public class Intent {
+
+    private Class<?> mClass;
+    private final HashMap<String, Object> mExtras = new HashMap<>();
+
+    public Intent() {
+    }
+
+    public Intent(Intent other) {
+        mClass = other.mClass;
+        mExtras.putAll(other.mExtras);
+    }
+
+    public Intent(Context context, Class<?> cls) {
+        mClass = cls;
+    }
+
+    public Intent setClass(Context context, Class<?> cls) {
+        mClass = cls;
+        return this;
+    }
+
+    public ComponentName getComponent() {
+        return mClass != null ? new ComponentName(null, mClass) : null;
+    }
+
+    public Intent putExtra(String name, String value) {
+        mExtras.put(name, value);
+        return this;
+    }
+
+    public Intent putExtra(String name, int value) {
+        mExtras.put(name, value);
+        return this;
+    }
+
+    public Intent putExtra(String name, long value) {
+        mExtras.put(name, value);
+        return this;
+    }
+
+    public Intent putStringArrayListExtra(String name, ArrayList<String> value) {
+        mExtras.put(name, value);
+        return this;
+    }
+
+    public boolean hasExtra(String name) {
+        return mExtras.containsKey(name);
+    }
+
+    public String getStringExtra(String name) {
+        return (String) mExtras.get(name);
+    }
+
+    @SuppressWarnings("unchecked")
+    public ArrayList<String> getStringArrayListExtra(String name) {
+        return (ArrayList<String>) mExtras.get(name);
+    }
+
+    public int getIntExtra(String name, int defaultValue) {
+        Object value = mExtras.get(name);
+        return value instanceof Integer ? (Integer) value : defaultValue;
+    }
+
+    public long getLongExtra(String name, long defaultValue) {
+        Object value = mExtras.get(name);
+        return value instanceof Long ? (Long) value : defaultValue;
+    }
+}
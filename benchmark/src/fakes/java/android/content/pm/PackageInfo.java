@@ -0,0 +1,9 @@
+package android.content.pm;
+
+/**
+ * Fake of the Android package info for the benchmarks
+ */
+public class PackageInfo {
+    public long firstInstallTime;
+    public long lastUpdateTime;
+}
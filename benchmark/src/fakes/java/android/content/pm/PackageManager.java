@@ -0,0 +1,21 @@
+package android.content.pm;
+
+/**
+ * Fake of the Android package manager for the benchmarks, no package is installed
+ */
+public class PackageManager {
+
+    public static final int PERMISSION_GRANTED = 0;
+
+    public static class NameNotFoundException extends Exception {
+        private static final long serialVersionUID = 1L;
+
+        public NameNotFoundException(String name) {
+            super(name);
+        }
+    }
+
+    public PackageInfo getPackageInfo(String packageName, int flags) throws NameNotFoundException {
+        throw new NameNotFoundException(packageName);
+    }
+}
@@ -0,0 +1,15 @@
+package android.database;
+
+/**
+ * Fake of the Android cursor for the benchmarks
+ */
+public interface Cursor {
+
+    boolean moveToNext();
+
+    String getString(int columnIndex);
+
+    byte[] getBlob(int columnIndex);
+
+    void close();
+}
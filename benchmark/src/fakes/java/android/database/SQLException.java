@@ -0,0 +1,13 @@
+package android.database;
+
+/**
+ * Fake of the Android SQL exception for the benchmarks
+ */
+public class SQLException extends RuntimeException {
+
+    private static final long serialVersionUID = 1L;
+
+    public SQLException(String message) {
+        super(message);
+    }
+}
@@ -0,0 +1,43 @@
+package android.database.sqlite;
+
+import android.database.Cursor;
+import android.database.SQLException;
+
+/**
+ * Fake of the Android SQLite database for the benchmarks.
+ * The benchmarks use the record file storage, every operation fails.
+ */
+public final class SQLiteDatabase {
+
+    public interface CursorFactory {
+    }
+
+    SQLiteDatabase() {
+    }
+
+    public void execSQL(String sql) {
+        throw new SQLException("No SQLite in the benchmarks");
+    }
+
+    public void beginTransaction() {
+        throw new SQLException("No SQLite in the benchmarks");
+    }
+
+    public void setTransactionSuccessful() {
+    }
+
+    public void endTransaction() {
+    }
+
+    public SQLiteStatement compileStatement(String sql) {
+        throw new SQLException("No SQLite in the benchmarks");
+    }
+
+    public Cursor rawQuery(String sql, String[] selectionArgs) {
+        throw new SQLException("No SQLite in the benchmarks");
+    }
+
+    public int delete(String table, String whereClause, String[] whereArgs) {
+        throw new SQLException("No SQLite in the benchmarks");
+    }
+}
@@ -0,0 +1,26 @@
+package android.database.sqlite;
+
+import android.content.Context;
+
+/**
+ * Fake of the Android SQLite open helper for the benchmarks, the database fails on every operation
+ */
+public abstract class SQLiteOpenHelper {
+
+    private final SQLiteDatabase mDatabase = new SQLiteDatabase();
+
+    public SQLiteOpenHelper(Context context, String name, SQLiteDatabase.CursorFactory factory, int version) {
+    }
+
+    public abstract void onCreate(SQLiteDatabase db);
+
+    public abstract void onUpgrade(SQLiteDatabase db, int oldVersion, int newVersion);
+
+    public SQLiteDatabase getWritableDatabase() {
+        return mDatabase;
+    }
+
+    public SQLiteDatabase getReadableDatabase() {
+        return mDatabase;
+    }
+}
@@ -0,0 +1,33 @@
+package android.database.sqlite;
+
+/**
+ * Fake of the Android SQLite statement for the benchmarks, it is never created
+ */
+public final class SQLiteStatement {
+
+    private SQLiteStatement() {
+    }
+
+    public void bindString(int index, String value) {
+    }
+
+    public void bindLong(int index, long value) {
+    }
+
+    public void bindBlob(int index, byte[] value) {
+    }
+
+    public void bindNull(int index) {
+    }
+
+    public long executeInsert() {
+        return -1;
+    }
+
+    public int executeUpdateDelete() {
+        return 0;
+    }
+
+    public void close() {
+    }
+}
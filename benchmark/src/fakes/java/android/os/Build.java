@@ -0,0 +1,26 @@
+package android.os;
+
+/**
+ * Fake of the Android build information for the benchmarks, reports the API level of the compile SDK
+ */
+public final class Build {
+
+    private Build() {
+    }
+
+    public static final class VERSION {
+
+        public static final int SDK_INT = 23;
+
+        private VERSION() {
+        }
+    }
+
+    public static final class VERSION_CODES {
+
+        public static final int JELLY_BEAN_MR2 = 18;
+
+        private VERSION_CODES() {
+        }
+    }
+}
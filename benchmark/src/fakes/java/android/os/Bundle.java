@@ -0,0 +1,7 @@
+package android.os;
+
+/**
+ * Fake of the Android bundle for the benchmarks
+ */
+public class Bundle {
+}
@@ -0,0 +1,21 @@
+package android.os;
+
+/**
+ * Fake of the Android handler for the benchmarks, the posted runnables are never run
+ */
+public class Handler {
+
+    public Handler(Looper looper) {
+    }
+
+    public final boolean post(Runnable r) {
+        return true;
+    }
+
+    public final boolean postDelayed(Runnable r, long delayMillis) {
+        return true;
+    }
+
+    public final void removeCallbacks(Runnable r) {
+    }
+}
@@ -0,0 +1,16 @@
+package android.os;
+
+/**
+ * Fake of the Android looper for the benchmarks, there is no message loop
+ */
+public final class Looper {
+
+    private static final Looper sMainLooper = new Looper();
+
+    private Looper() {
+    }
+
+    public static Looper getMainLooper() {
+        return sMainLooper;
+    }
+}
@@ -0,0 +1,14 @@
+package android.os;
+
+/**
+ * Fake of the Android system clock for the benchmarks, backed by the JVM clock
+ */
+public final class SystemClock {
+
+    private SystemClock() {
+    }
+
+    public static long elapsedRealtime() {
+        return System.nanoTime() / 1000000;
+    }
+}
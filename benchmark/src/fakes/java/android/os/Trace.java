@@ -0,0 +1,16 @@
+package android.os;
+
+/**
+ * Fake of the Android trace for the benchmarks, nothing is traced
+ */
+public final class Trace {
+
+    private Trace() {
+    }
+
+    public static void beginSection(String sectionName) {
+    }
+
+    public static void endSection() {
+    }
+}
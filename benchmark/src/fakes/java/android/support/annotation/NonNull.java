@@ -0,0 +1,7 @@
+package android.support.annotation;
+
+/**
+ * Fake of the support annotation for the benchmarks
+ */
+public @interface NonNull {
+}
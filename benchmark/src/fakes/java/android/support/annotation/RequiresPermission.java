@@ -0,0 +1,8 @@
+package android.support.annotation;
+
+/**
+ * Fake of the support annotation for the benchmarks
+ */
+public @interface RequiresPermission {
+    String value() default "";
+}
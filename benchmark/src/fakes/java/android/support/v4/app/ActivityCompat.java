@@ -0,0 +1,9 @@
+package android.support.v4.app;
+
+import android.support.v4.content.ContextCompat;
+
+/**
+ * Fake of the support ActivityCompat for the benchmarks
+ */
+public class ActivityCompat extends ContextCompat {
+}
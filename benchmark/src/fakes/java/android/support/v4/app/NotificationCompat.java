@@ -0,0 +1,32 @@
+package android.support.v4.app;
+
+import android.app.Notification;
+import android.content.Context;
+
+/**
+ * Fake of the support NotificationCompat for the benchmarks
+ */
+public class NotificationCompat {
+
+    public static class Builder {
+
+        public Builder(Context context) {
+        }
+
+        public Builder setSmallIcon(int icon) {
+            return this;
+        }
+
+        public Builder setContentTitle(CharSequence title) {
+            return this;
+        }
+
+        public Builder setContentText(CharSequence text) {
+            return this;
+        }
+
+        public Notification build() {
+            return new Notification();
+        }
+    }
+}
@@ -0,0 +1,14 @@
+package android.support.v4.content;
+
+import android.content.Context;
+import android.content.pm.PackageManager;
+
+/**
+ * Fake of the support ContextCompat for the benchmarks, all the permissions are granted
+ */
+public class ContextCompat {
+
+    public static int checkSelfPermission(Context context, String permission) {
+        return PackageManager.PERMISSION_GRANTED;
+    }
+}
@@ -0,0 +1,17 @@
+package com.google.android.gms.common;
+
+/**
+ * Fake of the Google Play Services connection result for the benchmarks
+ */
+public final class ConnectionResult {
+
+    private final int mErrorCode;
+
+    public ConnectionResult(int errorCode) {
+        mErrorCode = errorCode;
+    }
+
+    public int getErrorCode() {
+        return mErrorCode;
+    }
+}
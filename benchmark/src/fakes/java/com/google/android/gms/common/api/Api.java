@@ -0,0 +1,7 @@
+package com.google.android.gms.common.api;
+
+/**
+ * Fake of the Google Play Services api for the benchmarks
+ */
+public final class Api {
+}
@@ -0,0 +1,58 @@
+package com.google.android.gms.common.api;
+
+import android.content.Context;
+import android.os.Bundle;
+
+import com.google.android.gms.common.ConnectionResult;
+
+/**
+ * Fake of the Google API Client for the benchmarks, it never connects
+ */
+public class GoogleApiClient {
+
+    public interface ConnectionCallbacks {
+        void onConnected(Bundle connectionHint);
+
+        void onConnectionSuspended(int cause);
+    }
+
+    public interface OnConnectionFailedListener {
+        void onConnectionFailed(ConnectionResult result);
+    }
+
+    public void connect() {
+    }
+
+    public void disconnect() {
+    }
+
+    public boolean isConnected() {
+        return false;
+    }
+
+    public boolean isConnecting() {
+        return false;
+    }
+
+    public static final class Builder {
+
+        public Builder(Context context) {
+        }
+
+        public Builder addApi(Api api) {
+            return this;
+        }
+
+        public Builder addConnectionCallbacks(ConnectionCallbacks callbacks) {
+            return this;
+        }
+
+        public Builder addOnConnectionFailedListener(OnConnectionFailedListener listener) {
+            return this;
+        }
+
+        public GoogleApiClient build() {
+            return new GoogleApiClient();
+        }
+    }
+}
@@ -0,0 +1,17 @@
+package com.google.android.gms.common.api;
+
+/**
+ * Fake of the Google Play Services pending result for the benchmarks, the result is given as soon as a callback is set
+ */
+public class PendingResult<R extends Result> {
+
+    private final R mResult;
+
+    public PendingResult(R result) {
+        mResult = result;
+    }
+
+    public void setResultCallback(ResultCallback<? super R> callback) {
+        callback.onResult(mResult);
+    }
+}
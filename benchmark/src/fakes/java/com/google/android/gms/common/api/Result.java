@@ -0,0 +1,8 @@
+package com.google.android.gms.common.api;
+
+/**
+ * Fake of the Google Play Services result for the benchmarks
+ */
+public interface Result {
+    Status getStatus();
+}
@@ -0,0 +1,8 @@
+package com.google.android.gms.common.api;
+
+/**
+ * Fake of the Google Play Services result callback for the benchmarks
+ */
+public interface ResultCallback<R extends Result> {
+    void onResult(R result);
+}
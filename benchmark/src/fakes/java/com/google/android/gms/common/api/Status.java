@@ -0,0 +1,36 @@
+package com.google.android.gms.common.api;
+
+/**
+ * Fake of the Google Play Services status for the benchmarks
+ */
+public final class Status implements Result {
+
+    private final int mStatusCode;
+    private final String mStatusMessage;
+
+    public Status(int statusCode) {
+        this(statusCode, null);
+    }
+
+    public Status(int statusCode, String statusMessage) {
+        mStatusCode = statusCode;
+        mStatusMessage = statusMessage;
+    }
+
+    public boolean isSuccess() {
+        return mStatusCode <= 0;
+    }
+
+    public int getStatusCode() {
+        return mStatusCode;
+    }
+
+    public String getStatusMessage() {
+        return mStatusMessage;
+    }
+
+    @Override
+    public Status getStatus() {
+        return this;
+    }
+}
@@ -0,0 +1,59 @@
+package com.google.android.gms.location;
+
+/**
+ * Fake of the Google Play Services geofence for the benchmarks, the builder keeps the values in a plain object
+ */
+public interface Geofence {
+
+    int GEOFENCE_TRANSITION_ENTER = 1;
+    int GEOFENCE_TRANSITION_EXIT = 2;
+    int GEOFENCE_TRANSITION_DWELL = 4;
+    long NEVER_EXPIRE = -1L;
+
+    String getRequestId();
+
+    final class Builder {
+
+        private String mRequestId;
+        private int mLoiteringDelay;
+        private int mTransitionTypes;
+        private double mLatitude;
+        private double mLongitude;
+        private float mRadius;
+        private long mExpirationDuration;
+
+        public Builder setRequestId(String requestId) {
+            mRequestId = requestId;
+            return this;
+        }
+
+        public Builder setLoiteringDelay(int loiteringDelay) {
+            mLoiteringDelay = loiteringDelay;
+            return this;
+        }
+
+        public Builder setTransitionTypes(int transitionTypes) {
+            mTransitionTypes = transitionTypes;
+            return this;
+        }
+
+        public Builder setCircularRegion(double latitude, double longitude, float radius) {
+            mLatitude = latitude;
+            mLongitude = longitude;
+            mRadius = radius;
+            return this;
+        }
+
+        public Builder setExpirationDuration(long expirationDuration) {
+            mExpirationDuration = expirationDuration;
+            return this;
+        }
+
+        public Geofence build() {
+            if (mRequestId == null || mTransitionTypes == 0 || mRadius <= 0) {
+                throw new IllegalArgumentException("Incomplete geofence");
+            }
+            return new ParcelableGeofence(mRequestId, mTransitionTypes, mLatitude, mLongitude, mRadius, mExpirationDuration, mLoiteringDelay);
+        }
+    }
+}
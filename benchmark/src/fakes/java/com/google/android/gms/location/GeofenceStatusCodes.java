@@ -0,0 +1,16 @@
+package com.google.android.gms.location;
+
+/**
+ * Fake of the Google Play Services geofence status codes for the benchmarks
+ */
+public final class GeofenceStatusCodes {
+
+    public static final int SUCCESS = 0;
+    public static final int ERROR = 13;
+    public static final int GEOFENCE_NOT_AVAILABLE = 1000;
+    public static final int GEOFENCE_TOO_MANY_GEOFENCES = 1001;
+    public static final int GEOFENCE_TOO_MANY_PENDING_INTENTS = 1002;
+
+    private GeofenceStatusCodes() {
+    }
+}
@@ -0,0 +1,23 @@
+package com.google.android.gms.location;
+
+import android.app.PendingIntent;
+
+import com.google.android.gms.common.api.GoogleApiClient;
+import com.google.android.gms.common.api.PendingResult;
+import com.google.android.gms.common.api.Status;
+
+import java.util.List;
+
+/**
+ * Fake of the Google Play Services geofencing api for the benchmarks, all the requests succeed immediately
+ */
+public class GeofencingApi {
+
+    public PendingResult<Status> addGeofences(GoogleApiClient client, GeofencingRequest request, PendingIntent pendingIntent) {
+        return new PendingResult<>(new Status(GeofenceStatusCodes.SUCCESS));
+    }
+
+    public PendingResult<Status> removeGeofences(GoogleApiClient client, List<String> geofenceRequestIds) {
+        return new PendingResult<>(new Status(GeofenceStatusCodes.SUCCESS));
+    }
+}
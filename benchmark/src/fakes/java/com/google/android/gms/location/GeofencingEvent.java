@@ -0,0 +1,36 @@
+package com.google.android.gms.location;
+
+import android.content.Intent;
+import android.location.Location;
+
+import java.util.List;
+
+/**
+ * Fake of the Google Play Services geofencing event for the benchmarks, intents never hold an event
+ */
+public class GeofencingEvent {
+
+    public static GeofencingEvent fromIntent(Intent intent) {
+        return null;
+    }
+
+    public boolean hasError() {
+        return false;
+    }
+
+    public int getErrorCode() {
+        return 0;
+    }
+
+    public int getGeofenceTransition() {
+        return 0;
+    }
+
+    public List<Geofence> getTriggeringGeofences() {
+        return null;
+    }
+
+    public Location getTriggeringLocation() {
+        return null;
+    }
+}
@@ -0,0 +1,58 @@
+package com.google.android.gms.location;
+
+import java.util.ArrayList;
+import java.util.List;
+
+/**
+ * Fake of the Google Play Services geofencing request for the benchmarks
+ */
+public class GeofencingRequest {
+
+    public static final int INITIAL_TRIGGER_ENTER = 1;
+    public static final int INITIAL_TRIGGER_EXIT = 2;
+    public static final int INITIAL_TRIGGER_DWELL = 4;
+
+    private final List<Geofence> mGeofences;
+    private final int mInitialTrigger;
+
+    private GeofencingRequest(List<Geofence> geofences, int initialTrigger) {
+        mGeofences = geofences;
+        mInitialTrigger = initialTrigger;
+    }
+
+    public List<Geofence> getGeofences() {
+        return mGeofences;
+    }
+
+    public int getInitialTrigger() {
+        return mInitialTrigger;
+    }
+
+    public static final class Builder {
+
+        private final ArrayList<Geofence> mGeofences = new ArrayList<>();
+        private int mInitialTrigger = INITIAL_TRIGGER_ENTER | INITIAL_TRIGGER_DWELL;
+
+        public Builder addGeofence(Geofence geofence) {
+            mGeofences.add(geofence);
+            return this;
+        }
+
+        public Builder addGeofences(List<Geofence> geofences) {
+            mGeofences.addAll(geofences);
+            return this;
+        }
+
+        public Builder setInitialTrigger(int initialTrigger) {
+            mInitialTrigger = initialTrigger;
+            return this;
+        }
+
+        public GeofencingRequest build() {
+            if (mGeofences.isEmpty()) {
+                throw new IllegalArgumentException("No geofence has been added to this request.");
+            }
+            return new GeofencingRequest(new ArrayList<>(mGeofences), mInitialTrigger);
+        }
+    }
+}
@@ -0,0 +1,12 @@
+package com.google.android.gms.location;
+
+import com.google.android.gms.common.api.Api;
+
+/**
+ * Fake of the Google Play Services location services for the benchmarks
+ */
+public class LocationServices {
+
+    public static final Api API = new Api();
+    public static final GeofencingApi GeofencingApi = new GeofencingApi();
+}
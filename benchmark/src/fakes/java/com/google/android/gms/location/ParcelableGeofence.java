@@ -0,0 +1,31 @@
+package com.google.android.gms.location;
+
+/**
+ * Geofence built by the fake {@link Geofence.Builder}
+ */
+class ParcelableGeofence implements Geofence {
+
+    private final String mRequestId;
+    private final int mTransitionTypes;
+    private final double mLatitude;
+    private final double mLongitude;
+    private final float mRadius;
+    private final long mExpirationDuration;
+    private final int mLoiteringDelay;
+
+    ParcelableGeofence(String requestId, int transitionTypes, double latitude, double longitude, float radius,
+                       long expirationDuration, int loiteringDelay) {
+        mRequestId = requestId;
+        mTransitionTypes = transitionTypes;
+        mLatitude = latitude;
+        mLongitude = longitude;
+        mRadius = radius;
+        mExpirationDuration = expirationDuration;
+        mLoiteringDelay = loiteringDelay;
+    }
+
+    @Override
+    public String getRequestId() {
+        return mRequestId;
+    }
+}
@@ -0,0 +1,11 @@
+package com.sousoum.libgeofencehelper;
+
+/**
+ * Fake of the resources of the library for the benchmarks
+ */
+public final class R {
+
+    public static final class drawable {
+        public static final int default_notif = 0;
+    }
+}
@@ -0,0 +1,60 @@
+package com.sousoum.libgeofencehelper;
+
+import org.openjdk.jmh.annotations.Benchmark;
+import org.openjdk.jmh.annotations.BenchmarkMode;
+import org.openjdk.jmh.annotations.Fork;
+import org.openjdk.jmh.annotations.Level;
+import org.openjdk.jmh.annotations.Measurement;
+import org.openjdk.jmh.annotations.Mode;
+import org.openjdk.jmh.annotations.OutputTimeUnit;
+import org.openjdk.jmh.annotations.Param;
+import org.openjdk.jmh.annotations.Scope;
+import org.openjdk.jmh.annotations.Setup;
+import org.openjdk.jmh.annotations.State;
+import org.openjdk.jmh.annotations.Warmup;
+import org.openjdk.jmh.infra.Blackhole;
+
+import java.io.IOException;
+import java.util.ArrayList;
+import java.util.concurrent.TimeUnit;
+
+/**
+ * Benchmarks of the encoding of geofences that all carry additional data
+ */
+@State(Scope.Thread)
+@BenchmarkMode(Mode.AverageTime)
+@OutputTimeUnit(TimeUnit.MICROSECONDS)
+@Warmup(iterations = 5, time = 1)
+@Measurement(iterations = 5, time = 1)
+@Fork(1)
+public class AdditionalDataBenchmark {
+
+    @Param({"10", "100", "1000", "10000"})
+    public int size;
+
+    private ArrayList<StorableGeofence> mGeofences;
+    private byte[][] mBodies;
+
+    @Setup(Level.Trial)
+    public void setUp() {
+        mGeofences = BenchmarkGeofences.create(size, 42, true);
+        mBodies = new byte[size][];
+        for (int i = 0; i < size; i++) {
+            mBodies[i] = GeofenceRecordCodec.encode(mGeofences.get(i));
+        }
+    }
+
+    @Benchmark
+    public void encode(Blackhole blackhole) {
+        for (int i = 0; i < mGeofences.size(); i++) {
+            blackhole.consume(GeofenceRecordCodec.encode(mGeofences.get(i)));
+        }
+    }
+
+    @Benchmark
+    public void decode(Blackhole blackhole) throws IOException {
+        for (int i = 0; i < mBodies.length; i++) {
+            blackhole.consume(GeofenceRecordCodec.decode(mGeofences.get(i).getId(), mBodies[i]));
+        }
+    }
+}
@@ -0,0 +1,94 @@
+package com.sousoum.libgeofencehelper;
+
+import android.content.Context;
+import android.content.SharedPreferences;
+import android.support.annotation.NonNull;
+
+import java.util.HashMap;
+import java.util.HashSet;
+import java.util.Set;
+
+final class BaselinePrefsGeofenceStore {
+
+    /**
+     * Package local class that stores the geofences as the library did before the record file:
+     * one set of keys per geofence in the shared preferences, and one apply per stored geofence.
+     * It is only used as the reference of the store benchmarks, with shared preferences that write their whole content on each apply.
+     */
+
+    private static final String SHARED_PREFS = "GeofenceHelperLibStore";
+
+    private static final String GEOFENCE_ID_SET_KEY = "GEOFENCE_ID_SET_KEY";
+    private static final String PENDING_INTENT_CLASS_KEY = "PENDING_INTENT_CLASS_KEY";
+    private static final String LATITUDE_KEY = "LATITUDE_KEY";
+    private static final String LONGITUDE_KEY = "LONGITUDE_KEY";
+    private static final String RADIUS_KEY = "RADIUS_KEY";
+    private static final String EXPIRATION_KEY = "EXPIRATION_KEY";
+    private static final String LOITERING_DELAY_KEY = "LOITERING_DELAY_KEY";
+    private static final String TRANSITION_KEY = "TRANSITION_KEY";
+    private static final String EXPIRATION_DATE_KEY = "EXPIRATION_DATE_KEY";
+    private static final String ADDITIONAL_DATA_KEY = "ADDITIONAL_DATA_KEY";
+    private static final String ADDITIONAL_DATA_TYPE_KEY = "ADDITIONAL_DATA_TYPE_KEY";
+
+    private final String mPrefix;
+    private final SharedPreferences mPrefs;
+
+    BaselinePrefsGeofenceStore(@NonNull Context context, @NonNull String prefix) {
+        mPrefix = prefix;
+        mPrefs = context.getSharedPreferences(SHARED_PREFS, Context.MODE_PRIVATE);
+    }
+
+    /**
+     * Store a geofence with its own apply
+     * @param geofence the geofence to store
+     */
+    void storeGeofence(@NonNull StorableGeofence geofence) {
+        Set<String> setTmp = mPrefs.getStringSet(mPrefix + GEOFENCE_ID_SET_KEY, null);
+        HashSet<String> geofenceIdSet;
+        if (setTmp == null) {
+            geofenceIdSet = new HashSet<>();
+        } else {
+            geofenceIdSet = new HashSet<>(setTmp);
+        }
+
+        SharedPreferences.Editor editor = mPrefs.edit();
+
+        String prefix = mPrefix + geofence.getId();
+        editor.putString(prefix + PENDING_INTENT_CLASS_KEY, geofence.getPendingIntentClassName());
+        editor.putLong(prefix + LATITUDE_KEY, Double.doubleToRawLongBits(geofence.getLatitude()));
+        editor.putLong(prefix + LONGITUDE_KEY, Double.doubleToRawLongBits(geofence.getLongitude()));
+        editor.putFloat(prefix + RADIUS_KEY, geofence.getRadius());
+        editor.putLong(prefix + EXPIRATION_KEY, geofence.getExpirationDuration());
+        editor.putInt(prefix + LOITERING_DELAY_KEY, geofence.getLoiteringDelay());
+        editor.putInt(prefix + TRANSITION_KEY, geofence.getTransitionType());
+        editor.putLong(prefix + EXPIRATION_DATE_KEY, geofence.getExpirationDateInMs());
+
+        // for each additional data, store its value and its type
+        HashMap<String, Object> additionalData = geofence.getAdditionalData();
+        if (additionalData != null) {
+            for (String key : additionalData.keySet()) {
+                Object value = additionalData.get(key);
+                if (value instanceof String) {
+                    editor.putString(prefix + ADDITIONAL_DATA_KEY + key, (String) value);
+                } else if (value instanceof Long) {
+                    editor.putLong(prefix + ADDITIONAL_DATA_KEY + key, (Long) value);
+                } else if (value instanceof Integer) {
+                    editor.putInt(prefix + ADDITIONAL_DATA_KEY + key, (Integer) value);
+                } else if (value instanceof Float) {
+                    editor.putFloat(prefix + ADDITIONAL_DATA_KEY + key, (Float) value);
+                } else if (value instanceof Boolean) {
+                    editor.putBoolean(prefix + ADDITIONAL_DATA_KEY + key, (Boolean) value);
+                }
+                if (value != null) {
+                    editor.putString(prefix + ADDITIONAL_DATA_TYPE_KEY + key, value.getClass().toString());
+                }
+            }
+            editor.putStringSet(prefix + ADDITIONAL_DATA_KEY, additionalData.keySet());
+        }
+
+        geofenceIdSet.add(geofence.getId());
+        editor.putStringSet(mPrefix + GEOFENCE_ID_SET_KEY, geofenceIdSet);
+
+        editor.apply();
+    }
+}
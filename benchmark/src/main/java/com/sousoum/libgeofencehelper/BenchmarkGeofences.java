@@ -0,0 +1,105 @@
+package com.sousoum.libgeofencehelper;
+
+import com.google.android.gms.location.Geofence;
+
+import java.util.ArrayList;
+import java.util.HashMap;
+import java.util.Random;
+
+final class BenchmarkGeofences {
+
+    /**
+     * Package local class that creates the geofences used by the benchmarks.
+     * The geofences are spread around Paris, with two receivers, and a third of them carry additional data.
+     * A given seed always gives the same geofences.
+     */
+
+    static final double CENTER_LATITUDE = 48.8566;
+    static final double CENTER_LONGITUDE = 2.3522;
+    // the geofences are in a square of about 40km
+    static final double SPREAD_DEGREES = 0.4;
+
+    private static final String[] RECEIVERS = {
+            "com.sousoum.geofencehelperexample.CustomTransitionsIntentService",
+            DefaultTransitionsIntentService.class.getName()
+    };
+
+    private BenchmarkGeofences() {
+    }
+
+    /**
+     * Create geofences
+     * @param count the number of geofences
+     * @param seed the seed of the random generator
+     * @param withAdditionalData true if all the geofences should carry additional data, false if only a third of them
+     * @return the geofences
+     */
+    static ArrayList<StorableGeofence> create(int count, long seed, boolean withAdditionalData) {
+        Random random = new Random(seed);
+        ArrayList<StorableGeofence> geofences = new ArrayList<>(count);
+        for (int i = 0; i < count; i++) {
+            HashMap<String, Object> additionalData = null;
+            if (withAdditionalData || i % 3 == 0) {
+                additionalData = createAdditionalData(random, i);
+            }
+            geofences.add(new StorableGeofence(
+                    "geofence-" + i,
+                    RECEIVERS[i % RECEIVERS.length],
+                    randomLatitude(random),
+                    randomLongitude(random),
+                    50 + random.nextInt(450),
+                    i % 2 == 0 ? Geofence.NEVER_EXPIRE : 24L * 3600 * 1000,
+                    60000,
+                    Geofence.GEOFENCE_TRANSITION_ENTER | Geofence.GEOFENCE_TRANSITION_EXIT,
+                    additionalData));
+        }
+        return geofences;
+    }
+
+    /**
+     * @return the ids of the geofences
+     */
+    static String[] ids(ArrayList<StorableGeofence> geofences) {
+        String[] ids = new String[geofences.size()];
+        for (int i = 0; i < ids.length; i++) {
+            ids[i] = geofences.get(i).getId();
+        }
+        return ids;
+    }
+
+    /**
+     * Create random points in the area of the geofences
+     * @param count the number of points
+     * @param seed the seed of the random generator
+     * @return the latitudes followed by the longitudes of the points
+     */
+    static double[][] createPoints(int count, long seed) {
+        Random random = new Random(seed);
+        double[][] points = new double[2][count];
+        for (int i = 0; i < count; i++) {
+            points[0][i] = randomLatitude(random);
+            points[1][i] = randomLongitude(random);
+        }
+        return points;
+    }
+
+    private static double randomLatitude(Random random) {
+        return CENTER_LATITUDE + (random.nextDouble() - 0.5) * SPREAD_DEGREES;
+    }
+
+    private static double randomLongitude(Random random) {
+        return CENTER_LONGITUDE + (random.nextDouble() - 0.5) * SPREAD_DEGREES;
+    }
+
+    private static HashMap<String, Object> createAdditionalData(Random random, int index) {
+        HashMap<String, Object> additionalData = new HashMap<>();
+        additionalData.put("name", "Point of interest " + index);
+        additionalData.put("category", "category-" + random.nextInt(20));
+        additionalData.put("createdAt", System.currentTimeMillis());
+        additionalData.put("priority", random.nextInt(5));
+        additionalData.put("score", random.nextFloat());
+        additionalData.put("enabled", random.nextBoolean());
+        additionalData.put("altitude", random.nextDouble() * 100);
+        return additionalData;
+    }
+}
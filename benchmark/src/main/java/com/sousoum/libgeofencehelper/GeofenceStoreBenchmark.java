@@ -0,0 +1,126 @@
+package com.sousoum.libgeofencehelper;
+
+import android.content.Context;
+
+import org.openjdk.jmh.annotations.Benchmark;
+import org.openjdk.jmh.annotations.BenchmarkMode;
+import org.openjdk.jmh.annotations.Fork;
+import org.openjdk.jmh.annotations.Level;
+import org.openjdk.jmh.annotations.Measurement;
+import org.openjdk.jmh.annotations.Mode;
+import org.openjdk.jmh.annotations.OutputTimeUnit;
+import org.openjdk.jmh.annotations.Param;
+import org.openjdk.jmh.annotations.Scope;
+import org.openjdk.jmh.annotations.Setup;
+import org.openjdk.jmh.annotations.State;
+import org.openjdk.jmh.annotations.TearDown;
+import org.openjdk.jmh.annotations.Warmup;
+
+import java.io.File;
+import java.io.IOException;
+import java.util.ArrayList;
+import java.util.Collections;
+import java.util.LinkedHashMap;
+import java.util.Map;
+import java.util.concurrent.TimeUnit;
+
+/**
+ * Benchmarks of the serialization of the stores and of the in-memory lookups
+ */
+@State(Scope.Thread)
+@BenchmarkMode(Mode.AverageTime)
+@OutputTimeUnit(TimeUnit.MICROSECONDS)
+@Warmup(iterations = 5, time = 1)
+@Measurement(iterations = 5, time = 1)
+@Fork(1)
+public class GeofenceStoreBenchmark {
+
+    @Param({"10", "100", "1000", "10000"})
+    public int size;
+
+    private Context mContext;
+    private ArrayList<StorableGeofence> mGeofences;
+    private String[] mIds;
+    private int mNextId;
+
+    // file written and read back by each round trip
+    private File mRoundTripFile;
+    // file that is only read
+    private File mLoadFile;
+    // store already loaded in memory
+    private GeofenceStore mLoadedStore;
+
+    @Setup(Level.Trial)
+    public void setUp() throws IOException {
+        mContext = new Context();
+        mGeofences = BenchmarkGeofences.create(size, 42, false);
+        mIds = BenchmarkGeofences.ids(mGeofences);
+
+        mRoundTripFile = new File(mContext.getFilesDir(), "round-trip.bin");
+        mLoadFile = new File(mContext.getFilesDir(), "load.bin");
+        new GeofenceRecordFile(mLoadFile).update(encode(mGeofences), Collections.<String>emptySet());
+
+        mLoadedStore = new GeofenceStore("loaded", new RecordFileGeofenceStorage(new File(mContext.getFilesDir(), "loaded.bin")));
+        mLoadedStore.storeGeofences(mGeofences);
+        mLoadedStore.getAllGeofences();
+    }
+
+    @TearDown(Level.Trial)
+    public void tearDown() {
+        File[] files = mContext.getFilesDir().listFiles();
+        if (files != null) {
+            for (File file : files) {
+                file.delete();
+            }
+        }
+        mContext.getFilesDir().delete();
+    }
+
+    /**
+     * Write all the geofences in a new record file, then read them back
+     */
+    @Benchmark
+    public LinkedHashMap<String, StorableGeofence> storeLoadRoundTrip() throws IOException {
+        GeofenceRecordFile recordFile = new GeofenceRecordFile(mRoundTripFile);
+        recordFile.update(encode(mGeofences), Collections.<String>emptySet());
+        LinkedHashMap<String, StorableGeofence> geofences = decode(new GeofenceRecordFile(mRoundTripFile).readAll());
+        recordFile.reset();
+        return geofences;
+    }
+
+    /**
+     * Read all the geofences of a record file, as a store does the first time it is used
+     */
+    @Benchmark
+    public LinkedHashMap<String, StorableGeofence> load() throws IOException {
+        return decode(new GeofenceRecordFile(mLoadFile).readAll());
+    }
+
+    @Benchmark
+    public ArrayList<StorableGeofence> getAllGeofences() {
+        return mLoadedStore.getAllGeofences();
+    }
+
+    @Benchmark
+    public StorableGeofence getGeofence() {
+        String id = mIds[mNextId];
+        mNextId = (mNextId + 1) % mIds.length;
+        return mLoadedStore.getGeofence(id);
+    }
+
+    private static LinkedHashMap<String, byte[]> encode(ArrayList<StorableGeofence> geofences) {
+        LinkedHashMap<String, byte[]> records = new LinkedHashMap<>();
+        for (StorableGeofence geofence : geofences) {
+            records.put(geofence.getId(), GeofenceRecordCodec.encode(geofence));
+        }
+        return records;
+    }
+
+    private static LinkedHashMap<String, StorableGeofence> decode(LinkedHashMap<String, byte[]> records) throws IOException {
+        LinkedHashMap<String, StorableGeofence> geofences = new LinkedHashMap<>();
+        for (Map.Entry<String, byte[]> record : records.entrySet()) {
+            geofences.put(record.getKey(), GeofenceRecordCodec.decode(record.getKey(), record.getValue()));
+        }
+        return geofences;
+    }
+}
@@ -0,0 +1,80 @@
+package com.sousoum.libgeofencehelper;
+
+import android.content.Context;
+
+import org.openjdk.jmh.annotations.Benchmark;
+import org.openjdk.jmh.annotations.BenchmarkMode;
+import org.openjdk.jmh.annotations.Fork;
+import org.openjdk.jmh.annotations.Level;
+import org.openjdk.jmh.annotations.Measurement;
+import org.openjdk.jmh.annotations.Mode;
+import org.openjdk.jmh.annotations.OutputTimeUnit;
+import org.openjdk.jmh.annotations.Param;
+import org.openjdk.jmh.annotations.Scope;
+import org.openjdk.jmh.annotations.Setup;
+import org.openjdk.jmh.annotations.State;
+import org.openjdk.jmh.annotations.TearDown;
+import org.openjdk.jmh.annotations.Warmup;
+
+import java.io.File;
+import java.util.ArrayList;
+import java.util.concurrent.TimeUnit;
+
+/**
+ * Comparison of storing geofences as the library did before the record file, one by one in the shared preferences with one apply each,
+ * and storing them in a single transaction of the record file.
+ * The shared preferences write their whole content to a file on each apply, as the platform does.
+ * The same geofences are stored again on each invocation, so each record is appended again and its previous slot killed.
+ */
+@State(Scope.Thread)
+@BenchmarkMode(Mode.AverageTime)
+@OutputTimeUnit(TimeUnit.MICROSECONDS)
+@Warmup(iterations = 5, time = 1)
+@Measurement(iterations = 5, time = 1)
+@Fork(1)
+public class GeofenceTransactionBenchmark {
+
+    // the baseline rewrites all the preferences on each apply, it takes about 15 seconds for 1000 geofences and is out of reach beyond
+    @Param({"10", "100", "1000"})
+    public int size;
+
+    private Context mContext;
+    private ArrayList<StorableGeofence> mGeofences;
+    private GeofenceStore mStore;
+    private BaselinePrefsGeofenceStore mBaselineStore;
+
+    @Setup(Level.Trial)
+    public void setUp() {
+        mContext = new Context(true);
+        mGeofences = BenchmarkGeofences.create(size, 42, false);
+        mStore = new GeofenceStore("transaction", new RecordFileGeofenceStorage(new File(mContext.getFilesDir(), "transaction.bin")));
+        mStore.storeGeofences(mGeofences);
+        mBaselineStore = new BaselinePrefsGeofenceStore(mContext, "baseline");
+        for (StorableGeofence geofence : mGeofences) {
+            mBaselineStore.storeGeofence(geofence);
+        }
+    }
+
+    @TearDown(Level.Trial)
+    public void tearDown() {
+        File[] files = mContext.getFilesDir().listFiles();
+        if (files != null) {
+            for (File file : files) {
+                file.delete();
+            }
+        }
+        mContext.getFilesDir().delete();
+    }
+
+    @Benchmark
+    public void storeOneByOneInPrefs() {
+        for (StorableGeofence geofence : mGeofences) {
+            mBaselineStore.storeGeofence(geofence);
+        }
+    }
+
+    @Benchmark
+    public void storeInTransaction() {
+        mStore.storeGeofences(mGeofences);
+    }
+}
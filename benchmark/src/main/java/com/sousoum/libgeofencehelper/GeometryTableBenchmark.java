@@ -0,0 +1,75 @@
+package com.sousoum.libgeofencehelper;
+
+import org.openjdk.jmh.annotations.Benchmark;
+import org.openjdk.jmh.annotations.BenchmarkMode;
+import org.openjdk.jmh.annotations.Fork;
+import org.openjdk.jmh.annotations.Level;
+import org.openjdk.jmh.annotations.Measurement;
+import org.openjdk.jmh.annotations.Mode;
+import org.openjdk.jmh.annotations.OutputTimeUnit;
+import org.openjdk.jmh.annotations.Param;
+import org.openjdk.jmh.annotations.Scope;
+import org.openjdk.jmh.annotations.Setup;
+import org.openjdk.jmh.annotations.State;
+import org.openjdk.jmh.annotations.Warmup;
+
+import java.util.ArrayList;
+import java.util.BitSet;
+import java.util.concurrent.TimeUnit;
+
+/**
+ * Comparison of checking all the geofences against a point with the geometry table and by iterating the StorableGeofence objects
+ */
+@State(Scope.Thread)
+@BenchmarkMode(Mode.AverageTime)
+@OutputTimeUnit(TimeUnit.MICROSECONDS)
+@Warmup(iterations = 5, time = 1)
+@Measurement(iterations = 5, time = 1)
+@Fork(1)
+public class GeometryTableBenchmark {
+
+    private static final int POINT_COUNT = 1024;
+
+    @Param({"10", "100", "1000", "10000"})
+    public int size;
+
+    private ArrayList<StorableGeofence> mGeofences;
+    private GeofenceGeometryTable mTable;
+    private final BitSet mResult = new BitSet();
+    private double[][] mPoints;
+    private int mNextPoint;
+
+    @Setup(Level.Trial)
+    public void setUp() {
+        mGeofences = BenchmarkGeofences.create(size, 42, true);
+        mTable = new GeofenceGeometryTable(mGeofences);
+        mPoints = BenchmarkGeofences.createPoints(POINT_COUNT, 7);
+    }
+
+    @Benchmark
+    public int containsAllTable() {
+        int point = nextPoint();
+        return mTable.containsAll(mPoints[0][point], mPoints[1][point], mResult);
+    }
+
+    @Benchmark
+    public int containsAllObjects() {
+        int point = nextPoint();
+        mResult.clear();
+        int count = 0;
+        for (int i = 0; i < mGeofences.size(); i++) {
+            StorableGeofence geofence = mGeofences.get(i);
+            if (GeoMath.distance(mPoints[0][point], mPoints[1][point], geofence.getLatitude(), geofence.getLongitude()) <= geofence.getRadius()) {
+                mResult.set(i);
+                count++;
+            }
+        }
+        return count;
+    }
+
+    private int nextPoint() {
+        int point = mNextPoint;
+        mNextPoint = (mNextPoint + 1) % POINT_COUNT;
+        return point;
+    }
+}
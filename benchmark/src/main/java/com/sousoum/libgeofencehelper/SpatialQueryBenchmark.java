@@ -0,0 +1,105 @@
+package com.sousoum.libgeofencehelper;
+
+import org.openjdk.jmh.annotations.Benchmark;
+import org.openjdk.jmh.annotations.BenchmarkMode;
+import org.openjdk.jmh.annotations.Fork;
+import org.openjdk.jmh.annotations.Level;
+import org.openjdk.jmh.annotations.Measurement;
+import org.openjdk.jmh.annotations.Mode;
+import org.openjdk.jmh.annotations.OutputTimeUnit;
+import org.openjdk.jmh.annotations.Param;
+import org.openjdk.jmh.annotations.Scope;
+import org.openjdk.jmh.annotations.Setup;
+import org.openjdk.jmh.annotations.State;
+import org.openjdk.jmh.annotations.Warmup;
+
+import java.util.ArrayList;
+import java.util.Arrays;
+import java.util.Comparator;
+import java.util.concurrent.TimeUnit;
+
+/**
+ * Comparison of the spatial index queries and of a scan of all the geofences
+ */
+@State(Scope.Thread)
+@BenchmarkMode(Mode.AverageTime)
+@OutputTimeUnit(TimeUnit.MICROSECONDS)
+@Warmup(iterations = 5, time = 1)
+@Measurement(iterations = 5, time = 1)
+@Fork(1)
+public class SpatialQueryBenchmark {
+
+    private static final int POINT_COUNT = 1024;
+    private static final int NEAREST_COUNT = 20;
+
+    @Param({"10", "100", "1000", "10000"})
+    public int size;
+
+    private ArrayList<StorableGeofence> mGeofences;
+    private GeofenceSpatialIndex mSpatialIndex;
+    private double[][] mPoints;
+    private int mNextPoint;
+
+    @Setup(Level.Trial)
+    public void setUp() {
+        mGeofences = BenchmarkGeofences.create(size, 42, false);
+        mSpatialIndex = new GeofenceSpatialIndex();
+        for (StorableGeofence geofence : mGeofences) {
+            mSpatialIndex.put(geofence);
+        }
+        mPoints = BenchmarkGeofences.createPoints(POINT_COUNT, 7);
+    }
+
+    @Benchmark
+    public ArrayList<StorableGeofence> findContainingIndexed() {
+        int point = nextPoint();
+        return mSpatialIndex.findContaining(mPoints[0][point], mPoints[1][point]);
+    }
+
+    @Benchmark
+    public ArrayList<StorableGeofence> findContainingScan() {
+        int point = nextPoint();
+        ArrayList<StorableGeofence> result = new ArrayList<>();
+        for (StorableGeofence geofence : mGeofences) {
+            if (geofence.contains(mPoints[0][point], mPoints[1][point])) {
+                result.add(geofence);
+            }
+        }
+        return result;
+    }
+
+    @Benchmark
+    public ArrayList<StorableGeofence> findNearestIndexed() {
+        int point = nextPoint();
+        return mSpatialIndex.findNearest(mPoints[0][point], mPoints[1][point], NEAREST_COUNT);
+    }
+
+    @Benchmark
+    public StorableGeofence[] findNearestScan() {
+        int point = nextPoint();
+        final double[] distances = new double[mGeofences.size()];
+        Integer[] order = new Integer[mGeofences.size()];
+        for (int i = 0; i < distances.length; i++) {
+            StorableGeofence geofence = mGeofences.get(i);
+            distances[i] = GeoMath.distance(mPoints[0][point], mPoints[1][point], geofence.getLatitude(), geofence.getLongitude());
+            order[i] = i;
+        }
+        Arrays.sort(order, new Comparator<Integer>() {
+            @Override
+            public int compare(Integer lhs, Integer rhs) {
+                return Double.compare(distances[lhs], distances[rhs]);
+            }
+        });
+        StorableGeofence[] nearest = new StorableGeofence[Math.min(NEAREST_COUNT, order.length)];
+        for (int i = 0; i < nearest.length; i++) {
+            nearest[i] = mGeofences.get(order[i]);
+        }
+        return nearest;
+    }
+
+    private int nextPoint() {
+        int point = mNextPoint;
+        mNextPoint = (mNextPoint + 1) % POINT_COUNT;
+        return point;
+    }
+}
@@ -0,0 +1,72 @@
+package com.sousoum.libgeofencehelper;
+
+import android.content.Context;
+
+import org.openjdk.jmh.annotations.Benchmark;
+import org.openjdk.jmh.annotations.BenchmarkMode;
+import org.openjdk.jmh.annotations.Fork;
+import org.openjdk.jmh.annotations.Level;
+import org.openjdk.jmh.annotations.Measurement;
+import org.openjdk.jmh.annotations.Mode;
+import org.openjdk.jmh.annotations.OutputTimeUnit;
+import org.openjdk.jmh.annotations.Param;
+import org.openjdk.jmh.annotations.Scope;
+import org.openjdk.jmh.annotations.Setup;
+import org.openjdk.jmh.annotations.State;
+import org.openjdk.jmh.annotations.Warmup;
+import org.openjdk.jmh.infra.Blackhole;
+
+import java.util.ArrayList;
+import java.util.List;
+import java.util.Map;
+import java.util.concurrent.TimeUnit;
+
+/**
+ * Benchmark of the part of GeofenceSynchronizer#synchronize() that builds the requests:
+ * filtering the expired geofences, grouping them by receiver and batch, and building the GeofencingRequest of each batch
+ */
+@State(Scope.Thread)
+@BenchmarkMode(Mode.AverageTime)
+@OutputTimeUnit(TimeUnit.MICROSECONDS)
+@Warmup(iterations = 5, time = 1)
+@Measurement(iterations = 5, time = 1)
+@Fork(1)
+public class SyncRequestBenchmark {
+
+    @Param({"10", "100", "1000", "10000"})
+    public int size;
+
+    private ArrayList<StorableGeofence> mGeofences;
+    private GeofencingBackend mBackend;
+
+    @Setup(Level.Trial)
+    public void setUp() {
+        mGeofences = BenchmarkGeofences.create(size, 42, false);
+        Context context = new Context();
+        mBackend = new PlayServicesGeofencingBackend(context, SharedGoogleApiClient.getInstance(context), new SharedGoogleApiClient.Operation() {
+            @Override
+            public void run() {
+            }
+
+            @Override
+            public void onConnectionFailed(int errorCode) {
+            }
+        }, new GeofenceOperationQueue("benchmark", GeofenceOperationQueue.DEFAULT_CAPACITY));
+    }
+
+    @Benchmark
+    public void buildRequests(Blackhole blackhole) {
+        ArrayList<StorableGeofence> validGeofences = new ArrayList<>(mGeofences.size());
+        for (StorableGeofence storableGeofence : mGeofences) {
+            if (!storableGeofence.isExpired()) {
+                validGeofences.add(storableGeofence);
+            }
+        }
+
+        for (Map.Entry<String, ArrayList<List<StorableGeofence>>> entry : GeofenceSynchronizer.groupInRequests(mBackend, validGeofences).entrySet()) {
+            for (List<StorableGeofence> batch : entry.getValue()) {
+                blackhole.consume(PlayServicesGeofencingBackend.buildRequest(batch));
+            }
+        }
+    }
+}
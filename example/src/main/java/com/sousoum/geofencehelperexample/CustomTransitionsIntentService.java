@@ -1,74 +1,61 @@
 package com.sousoum.geofencehelperexample;
 
-import android.app.IntentService;
 import android.app.NotificationManager;
 import android.content.Context;
-import android.content.Intent;
+import android.location.Location;
+import android.support.annotation.NonNull;
 import android.support.v4.app.NotificationCompat;
 
-import com.google.android.gms.location.Geofence;
-import com.google.android.gms.location.GeofencingEvent;
+import com.sousoum.libgeofencehelper.GeofenceAttributes;
+import com.sousoum.libgeofencehelper.GeofenceTransitionsIntentService;
 import com.sousoum.libgeofencehelper.StorableGeofence;
-import com.sousoum.libgeofencehelper.StorableGeofenceManager;
 
-import java.util.HashMap;
 import java.util.List;
 
 /**
  * Created by Djavan on 13/12/2014.
  */
-public class CustomTransitionsIntentService extends IntentService {
+public class CustomTransitionsIntentService extends GeofenceTransitionsIntentService {
 
     public CustomTransitionsIntentService() {
         super("CustomTransitionsIntentService");
     }
 
     @Override
-    protected void onHandleIntent(Intent intent) {
-        String notificationText = "Not a geo event";
-        GeofencingEvent geoEvent = GeofencingEvent.fromIntent(intent);
-        if (geoEvent != null) {
-            if (geoEvent.hasError()) {
-                notificationText = "Error : " + geoEvent.getErrorCode();
-            } else {
-                int transition = geoEvent.getGeofenceTransition();
-                String transitionStr;
-                switch (transition) {
-                    case Geofence.GEOFENCE_TRANSITION_ENTER:
-                        transitionStr = "Enter-";
-                        break;
-                    case Geofence.GEOFENCE_TRANSITION_EXIT:
-                        transitionStr = "Exit-";
-                        break;
-                    case Geofence.GEOFENCE_TRANSITION_DWELL:
-                        transitionStr = "Dwell-";
-                        break;
-                    default:
-                        transitionStr = "Unknown-";
-                }
-
-                StorableGeofenceManager manager = new StorableGeofenceManager(this);
-
-                List<Geofence> triggeringGeo = geoEvent.getTriggeringGeofences();
-
-                StringBuilder strBuilder = new StringBuilder();
-                strBuilder.append(transitionStr);
-                for (int i = 0; i < triggeringGeo.size(); i++) {
-                    Geofence geo = triggeringGeo.get(i);
-                    StorableGeofence storableGeofence = manager.getGeofence(geo.getRequestId());
-                    strBuilder.append(geo.getRequestId());
-                    if (storableGeofence != null && storableGeofence.getAdditionalData() != null) {
-                        HashMap<String, Object> additionalData = storableGeofence.getAdditionalData();
-                        strBuilder.append("(").append(additionalData.get(MainActivity.ADDITIONAL_DATA_TIME)).append(" - ").append(additionalData.get(MainActivity.ADDITIONAL_DATA_PACKAGE)).append(")");
-                    }
+    protected void onGeofenceTransition(int transition, @NonNull List<StorableGeofence> geofences, Location triggeringLocation) {
+        String transitionStr;
+        switch (transition) {
+            case StorableGeofence.TRANSITION_ENTER:
+                transitionStr = "Enter-";
+                break;
+            case StorableGeofence.TRANSITION_EXIT:
+                transitionStr = "Exit-";
+                break;
+            case StorableGeofence.TRANSITION_DWELL:
+                transitionStr = "Dwell-";
+                break;
+            default:
+                transitionStr = "Unknown-";
+        }
 
-                    strBuilder.append("-");
-                }
-                notificationText = strBuilder.toString();
+        StringBuilder strBuilder = new StringBuilder();
+        strBuilder.append(transitionStr);
+        for (StorableGeofence storableGeofence : geofences) {
+            strBuilder.append(storableGeofence.getId());
+            GeofenceAttributes attributes = storableGeofence.getAttributes();
+            if (attributes != null) {
+                strBuilder.append("(").append(attributes.getLong(MainActivity.ADDITIONAL_DATA_TIME, 0)).append(" - ").append(attributes.getString(MainActivity.ADDITIONAL_DATA_PACKAGE, null)).append(")");
             }
+
+            strBuilder.append("-");
         }
 
-        sendNotification(notificationText);
+        sendNotification(strBuilder.toString());
+    }
+
+    @Override
+    protected void onGeofenceError(int errorCode) {
+        sendNotification("Error : " + errorCode);
     }
 
     private void sendNotification(String text) {
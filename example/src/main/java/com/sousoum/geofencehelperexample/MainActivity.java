@@ -93,6 +93,12 @@ public class MainActivity extends AppCompatActivity implements LocationListener,
         }
     }
 
+    @Override
+    protected void onDestroy() {
+        super.onDestroy();
+        mGeofenceManager.release();
+    }
+
     @Override
     public void onRequestPermissionsResult(int requestCode, @NonNull String permissions[],
                                            @NonNull int[] grantResults) {
@@ -183,9 +189,11 @@ public class MainActivity extends AppCompatActivity implements LocationListener,
 
     public void onDeleteAllClicked(View view) {
         ArrayList<StorableGeofence> storedGeo = mGeofenceManager.getAllGeofences();
+        ArrayList<String> storedGeoIds = new ArrayList<>();
         for (StorableGeofence geo : storedGeo) {
-            mGeofenceManager.removeGeofence(geo.getId());
+            storedGeoIds.add(geo.getId());
         }
+        mGeofenceManager.removeGeofences(storedGeoIds);
     }
 
     private void addGeofence(boolean defaultReceiver, HashMap<String, Object> additionalData) {
@@ -0,0 +1,189 @@
+package com.sousoum.libgeofencehelper;
+
+import java.util.Random;
+
+final class GeoMath {
+
+    /**
+     * Package local class that gathers the geodesic computations used by the library
+     */
+
+    // mean radius of the Earth in meters
+    static final double EARTH_RADIUS_M = 6371008.8;
+
+    // length of one degree of latitude in meters
+    static final double METERS_PER_DEGREE = Math.PI * EARTH_RADIUS_M / 180;
+
+    private GeoMath() {
+    }
+
+    /**
+     * Compute the great circle distance between two points with the haversine formula
+     * @param lat1 latitude of the first point in degrees
+     * @param lon1 longitude of the first point in degrees
+     * @param lat2 latitude of the second point in degrees
+     * @param lon2 longitude of the second point in degrees
+     * @return the distance in meters
+     */
+    static double distance(double lat1, double lon1, double lat2, double lon2) {
+        double dLat = Math.toRadians(lat2 - lat1);
+        double dLon = Math.toRadians(lon2 - lon1);
+        double sinDLat = Math.sin(dLat / 2);
+        double sinDLon = Math.sin(dLon / 2);
+        double a = sinDLat * sinDLat + Math.cos(Math.toRadians(lat1)) * Math.cos(Math.toRadians(lat2)) * sinDLon * sinDLon;
+        return 2 * EARTH_RADIUS_M * Math.asin(Math.min(1, Math.sqrt(a)));
+    }
+
+    /**
+     * Convert a distance along a meridian to degrees of latitude
+     * @param meters the distance in meters
+     * @return the distance in degrees of latitude
+     */
+    static double metersToLatitudeDegrees(double meters) {
+        return meters / METERS_PER_DEGREE;
+    }
+
+    /**
+     * Convert a distance along a parallel to degrees of longitude
+     * @param meters the distance in meters
+     * @param latitude the latitude of the parallel in degrees
+     * @return the distance in degrees of longitude, at most 360
+     */
+    static double metersToLongitudeDegrees(double meters, double latitude) {
+        double cosLat = Math.cos(Math.toRadians(latitude));
+        double degrees = 360;
+        if (cosLat > 1e-9) {
+            degrees = Math.min(360, meters / (METERS_PER_DEGREE * cosLat));
+        }
+        return degrees;
+    }
+
+    /**
+     * Wrap a longitude difference to [-180, 180]
+     * @param dLon a longitude difference in degrees
+     * @return the same difference, between -180 and 180 degrees
+     */
+    static double wrapLongitudeDelta(double dLon) {
+        double wrapped = dLon % 360;
+        if (wrapped > 180) {
+            wrapped -= 360;
+        } else if (wrapped < -180) {
+            wrapped += 360;
+        }
+        return wrapped;
+    }
+
+    /**
+     * Compute the smallest circle that contains all the vertices of a polygon.
+     * The vertices are projected on a plane tangent to the center of their bounding box to run the Welzl algorithm,
+     * the radius is then computed on the sphere so that all the vertices are in the circle.
+     * @param latitudes latitudes of the vertices in degrees
+     * @param longitudes longitudes of the vertices in degrees, already unwrapped around the first one
+     * @return the latitude and longitude of the center in degrees, and the radius in meters
+     */
+    static double[] minimalCoveringCircle(double[] latitudes, double[] longitudes) {
+        int count = latitudes.length;
+        double minLat = latitudes[0];
+        double maxLat = latitudes[0];
+        double minLon = longitudes[0];
+        double maxLon = longitudes[0];
+        for (int i = 1; i < count; i++) {
+            minLat = Math.min(minLat, latitudes[i]);
+            maxLat = Math.max(maxLat, latitudes[i]);
+            minLon = Math.min(minLon, longitudes[i]);
+            maxLon = Math.max(maxLon, longitudes[i]);
+        }
+        double refLat = (minLat + maxLat) / 2;
+        double refLon = (minLon + maxLon) / 2;
+        double cosRefLat = Math.cos(Math.toRadians(refLat));
+
+        // shuffle the points with a fixed seed so that the expected linear time does not depend on the order of the vertices
+        double[] xs = new double[count];
+        double[] ys = new double[count];
+        for (int i = 0; i < count; i++) {
+            xs[i] = (longitudes[i] - refLon) * METERS_PER_DEGREE * cosRefLat;
+            ys[i] = (latitudes[i] - refLat) * METERS_PER_DEGREE;
+        }
+        Random random = new Random(count);
+        for (int i = count - 1; i > 0; i--) {
+            int j = random.nextInt(i + 1);
+            double x = xs[i];
+            xs[i] = xs[j];
+            xs[j] = x;
+            double y = ys[i];
+            ys[i] = ys[j];
+            ys[j] = y;
+        }
+
+        // iterative Welzl: circle = {x, y, r^2}
+        double[] circle = { xs[0], ys[0], 0 };
+        for (int i = 1; i < count; i++) {
+            if (!inCircle(circle, xs[i], ys[i])) {
+                circle = new double[] { xs[i], ys[i], 0 };
+                for (int j = 0; j < i; j++) {
+                    if (!inCircle(circle, xs[j], ys[j])) {
+                        circle = circleFrom(xs[i], ys[i], xs[j], ys[j]);
+                        for (int k = 0; k < j; k++) {
+                            if (!inCircle(circle, xs[k], ys[k])) {
+                                circle = circleFrom(xs[i], ys[i], xs[j], ys[j], xs[k], ys[k]);
+                            }
+                        }
+                    }
+                }
+            }
+        }
+
+        double centerLat = refLat + circle[1] / METERS_PER_DEGREE;
+        double centerLon = refLon + (cosRefLat > 1e-9 ? circle[0] / (METERS_PER_DEGREE * cosRefLat) : 0);
+        centerLon = wrapLongitudeDelta(centerLon);
+        double radius = 0;
+        for (int i = 0; i < count; i++) {
+            radius = Math.max(radius, distance(centerLat, centerLon, latitudes[i], longitudes[i]));
+        }
+        // absorb the rounding errors
+        return new double[] { centerLat, centerLon, radius + 1 };
+    }
+
+    private static boolean inCircle(double[] circle, double x, double y) {
+        double dx = x - circle[0];
+        double dy = y - circle[1];
+        return dx * dx + dy * dy <= circle[2] * (1 + 1e-9) + 1e-6;
+    }
+
+    private static double[] circleFrom(double x1, double y1, double x2, double y2) {
+        double cx = (x1 + x2) / 2;
+        double cy = (y1 + y2) / 2;
+        double dx = x1 - cx;
+        double dy = y1 - cy;
+        return new double[] { cx, cy, dx * dx + dy * dy };
+    }
+
+    private static double[] circleFrom(double x1, double y1, double x2, double y2, double x3, double y3) {
+        double bx = x2 - x1;
+        double by = y2 - y1;
+        double cx = x3 - x1;
+        double cy = y3 - y1;
+        double d = 2 * (bx * cy - by * cx);
+        double[] circle;
+        if (Math.abs(d) < 1e-12) {
+            // aligned points: the circle is defined by the two farthest ones
+            double[] c12 = circleFrom(x1, y1, x2, y2);
+            double[] c13 = circleFrom(x1, y1, x3, y3);
+            double[] c23 = circleFrom(x2, y2, x3, y3);
+            circle = c12;
+            if (c13[2] > circle[2]) {
+                circle = c13;
+            }
+            if (c23[2] > circle[2]) {
+                circle = c23;
+            }
+        } else {
+            double b2 = bx * bx + by * by;
+            double c2 = cx * cx + cy * cy;
+            double ux = (cy * b2 - by * c2) / d;
+            double uy = (bx * c2 - cx * b2) / d;
+            circle = new double[] { x1 + ux, y1 + uy, ux * ux + uy * uy };
+        }
+        return circle;
+    }
+}
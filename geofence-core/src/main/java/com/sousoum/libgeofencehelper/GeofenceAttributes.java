@@ -0,0 +1,359 @@
+package com.sousoum.libgeofencehelper;
+
+import java.util.Arrays;
+import java.util.HashMap;
+import java.util.Map;
+
+public final class GeofenceAttributes {
+
+    /**
+     * Typed additional data of a geofence.
+     * It maps a key to a String, a long, an int, a float, a boolean, a double or a byte array.
+     * The primitive values are kept unboxed as raw bits in a single array, and the keys are interned so that they are shared by all geofences.
+     * The attributes of a stored geofence are shared, they should not be modified.
+     */
+
+    public static final byte TYPE_NONE = 0;
+    public static final byte TYPE_STRING = 1;
+    public static final byte TYPE_LONG = 2;
+    public static final byte TYPE_INTEGER = 3;
+    public static final byte TYPE_FLOAT = 4;
+    public static final byte TYPE_BOOLEAN = 5;
+    public static final byte TYPE_DOUBLE = 6;
+    public static final byte TYPE_BYTES = 7;
+
+    private static final String TAG = "GeofenceAttributes";
+
+    private static final int DEFAULT_CAPACITY = 4;
+
+    private String[] mKeys;
+    private byte[] mTypes;
+    private long[] mBits; // primitive values as raw bits
+    private Object[] mObjects; // String and byte array values. Null until the first one is put.
+    private int mSize;
+
+    /**
+     * Create empty attributes
+     */
+    public GeofenceAttributes() {
+        this(DEFAULT_CAPACITY);
+    }
+
+    /**
+     * Create empty attributes
+     * @param capacity the number of attributes that can be put without growing the arrays
+     */
+    public GeofenceAttributes(int capacity) {
+        capacity = Math.max(1, capacity);
+        mKeys = new String[capacity];
+        mTypes = new byte[capacity];
+        mBits = new long[capacity];
+    }
+
+    /**
+     * Create attributes from a map of additional data
+     * Entries with an empty key or a value that is not a String, Long, Integer, Float, Boolean, Double or byte array are ignored.
+     * @param additionalData the additional data, can be null
+     * @return the attributes, or null if additionalData is null
+     */
+    public static GeofenceAttributes fromMap(Map<String, Object> additionalData) {
+        GeofenceAttributes attributes = null;
+        if (additionalData != null) {
+            attributes = new GeofenceAttributes(additionalData.size());
+            for (Map.Entry<String, Object> entry : additionalData.entrySet()) {
+                String key = entry.getKey();
+                Object value = entry.getValue();
+                if (key == null || key.equals("")) {
+                    GeofenceLog.e(TAG, "Bad additional info data", new Exception("Bad additional info data key : " + key));
+                } else if (value instanceof String) {
+                    attributes.putString(key, (String) value);
+                } else if (value instanceof Long) {
+                    attributes.putLong(key, (Long) value);
+                } else if (value instanceof Integer) {
+                    attributes.putInt(key, (Integer) value);
+                } else if (value instanceof Float) {
+                    attributes.putFloat(key, (Float) value);
+                } else if (value instanceof Boolean) {
+                    attributes.putBoolean(key, (Boolean) value);
+                } else if (value instanceof Double) {
+                    attributes.putDouble(key, (Double) value);
+                } else if (value instanceof byte[]) {
+                    attributes.putBytes(key, (byte[]) value);
+                } else if (value != null) {
+                    GeofenceLog.e(TAG, "Bad additional info data", new Exception("Bad additional info data type"));
+                }
+            }
+        }
+        return attributes;
+    }
+
+    /**
+     * Copy the attributes in a map, with boxed values
+     * @return a new map of key -> value
+     */
+    public @NonNull
+    HashMap<String, Object> toMap() {
+        HashMap<String, Object> additionalData = new HashMap<>();
+        for (int i = 0; i < mSize; i++) {
+            additionalData.put(mKeys[i], valueAt(i));
+        }
+        return additionalData;
+    }
+
+    //region Put
+    public GeofenceAttributes putString(@NonNull String key, String value) {
+        putObject(key, TYPE_STRING, value);
+        return this;
+    }
+
+    public GeofenceAttributes putLong(@NonNull String key, long value) {
+        putBits(key, TYPE_LONG, value);
+        return this;
+    }
+
+    public GeofenceAttributes putInt(@NonNull String key, int value) {
+        putBits(key, TYPE_INTEGER, value);
+        return this;
+    }
+
+    public GeofenceAttributes putFloat(@NonNull String key, float value) {
+        putBits(key, TYPE_FLOAT, Float.floatToRawIntBits(value));
+        return this;
+    }
+
+    public GeofenceAttributes putBoolean(@NonNull String key, boolean value) {
+        putBits(key, TYPE_BOOLEAN, value ? 1 : 0);
+        return this;
+    }
+
+    public GeofenceAttributes putDouble(@NonNull String key, double value) {
+        putBits(key, TYPE_DOUBLE, Double.doubleToRawLongBits(value));
+        return this;
+    }
+
+    /**
+     * Put a byte array. The array is not copied.
+     * @param key the key
+     * @param value the value
+     * @return these attributes
+     */
+    public GeofenceAttributes putBytes(@NonNull String key, byte[] value) {
+        putObject(key, TYPE_BYTES, value);
+        return this;
+    }
+    //endregion Put
+
+    //region Get
+    public String getString(@NonNull String key, String defaultValue) {
+        int index = indexOf(key, TYPE_STRING);
+        return index >= 0 ? (String) mObjects[index] : defaultValue;
+    }
+
+    public long getLong(@NonNull String key, long defaultValue) {
+        int index = indexOf(key, TYPE_LONG);
+        return index >= 0 ? mBits[index] : defaultValue;
+    }
+
+    public int getInt(@NonNull String key, int defaultValue) {
+        int index = indexOf(key, TYPE_INTEGER);
+        return index >= 0 ? (int) mBits[index] : defaultValue;
+    }
+
+    public float getFloat(@NonNull String key, float defaultValue) {
+        int index = indexOf(key, TYPE_FLOAT);
+        return index >= 0 ? Float.intBitsToFloat((int) mBits[index]) : defaultValue;
+    }
+
+    public boolean getBoolean(@NonNull String key, boolean defaultValue) {
+        int index = indexOf(key, TYPE_BOOLEAN);
+        return index >= 0 ? mBits[index] != 0 : defaultValue;
+    }
+
+    public double getDouble(@NonNull String key, double defaultValue) {
+        int index = indexOf(key, TYPE_DOUBLE);
+        return index >= 0 ? Double.longBitsToDouble(mBits[index]) : defaultValue;
+    }
+
+    /**
+     * Get a byte array. The array is not copied, it should not be modified.
+     * @param key the key
+     * @param defaultValue the value returned if there is no byte array for this key
+     * @return the value
+     */
+    public byte[] getBytes(@NonNull String key, byte[] defaultValue) {
+        int index = indexOf(key, TYPE_BYTES);
+        return index >= 0 ? (byte[]) mObjects[index] : defaultValue;
+    }
+    //endregion Get
+
+    /**
+     * @param key a key
+     * @return true if there is an attribute for this key
+     */
+    public boolean containsKey(@NonNull String key) {
+        return indexOf(key) >= 0;
+    }
+
+    /**
+     * @param key a key
+     * @return the type of the attribute of this key, {@link #TYPE_NONE} if there is none
+     */
+    public byte getType(@NonNull String key) {
+        int index = indexOf(key);
+        return index >= 0 ? mTypes[index] : TYPE_NONE;
+    }
+
+    /**
+     * Remove the attribute of a key
+     * @param key the key
+     * @return true if there was an attribute for this key
+     */
+    public boolean remove(@NonNull String key) {
+        int index = indexOf(key);
+        if (index >= 0) {
+            int moved = mSize - index - 1;
+            System.arraycopy(mKeys, index + 1, mKeys, index, moved);
+            System.arraycopy(mTypes, index + 1, mTypes, index, moved);
+            System.arraycopy(mBits, index + 1, mBits, index, moved);
+            if (mObjects != null) {
+                System.arraycopy(mObjects, index + 1, mObjects, index, moved);
+                mObjects[mSize - 1] = null;
+            }
+            mSize--;
+            mKeys[mSize] = null;
+        }
+        return index >= 0;
+    }
+
+    /**
+     * @return the number of attributes
+     */
+    public int size() {
+        return mSize;
+    }
+
+    /**
+     * @param index the index of an attribute, between 0 and {@link #size()} - 1
+     * @return the key of the attribute
+     */
+    public String keyAt(int index) {
+        return mKeys[index];
+    }
+
+    /**
+     * @param index the index of an attribute, between 0 and {@link #size()} - 1
+     * @return the type of the attribute
+     */
+    public byte typeAt(int index) {
+        return mTypes[index];
+    }
+
+    /**
+     * @param index the index of an attribute, between 0 and {@link #size()} - 1
+     * @return the value of the attribute, boxed
+     */
+    public Object valueAt(int index) {
+        Object value;
+        switch (mTypes[index]) {
+            case TYPE_LONG:
+                value = mBits[index];
+                break;
+            case TYPE_INTEGER:
+                value = (int) mBits[index];
+                break;
+            case TYPE_FLOAT:
+                value = Float.intBitsToFloat((int) mBits[index]);
+                break;
+            case TYPE_BOOLEAN:
+                value = mBits[index] != 0;
+                break;
+            case TYPE_DOUBLE:
+                value = Double.longBitsToDouble(mBits[index]);
+                break;
+            default:
+                value = mObjects[index];
+                break;
+        }
+        return value;
+    }
+
+    /**
+     * @param index the index of a primitive attribute
+     * @return the raw bits of its value
+     */
+    long bitsAt(int index) {
+        return mBits[index];
+    }
+
+    /**
+     * @param index the index of a String or byte array attribute
+     * @return its value
+     */
+    Object objectAt(int index) {
+        return mObjects[index];
+    }
+
+    @Override
+    public String toString() {
+        return toMap().toString();
+    }
+
+    private int indexOf(@NonNull String key) {
+        int index = -1;
+        for (int i = 0; i < mSize && index < 0; i++) {
+            String storedKey = mKeys[i];
+            if (storedKey == key || storedKey.equals(key)) {
+                index = i;
+            }
+        }
+        return index;
+    }
+
+    private int indexOf(@NonNull String key, byte type) {
+        int index = indexOf(key);
+        return index >= 0 && mTypes[index] == type ? index : -1;
+    }
+
+    private void putBits(@NonNull String key, byte type, long bits) {
+        int index = prepare(key, type);
+        mBits[index] = bits;
+        if (mObjects != null) {
+            mObjects[index] = null;
+        }
+    }
+
+    private void putObject(@NonNull String key, byte type, Object value) {
+        int index = prepare(key, type);
+        if (mObjects == null) {
+            mObjects = new Object[mKeys.length];
+        }
+        mObjects[index] = value;
+        mBits[index] = 0;
+    }
+
+    /**
+     * Find the slot of a key, add it if needed
+     * @param key the key
+     * @param type the type of the new value
+     * @return the index of the slot
+     */
+    private int prepare(@NonNull String key, byte type) {
+        int index = indexOf(key);
+        if (index < 0) {
+            if (mSize == mKeys.length) {
+                int capacity = mKeys.length * 2;
+                mKeys = Arrays.copyOf(mKeys, capacity);
+                mTypes = Arrays.copyOf(mTypes, capacity);
+                mBits = Arrays.copyOf(mBits, capacity);
+                if (mObjects != null) {
+                    mObjects = Arrays.copyOf(mObjects, capacity);
+                }
+            }
+            index = mSize;
+            mKeys[index] = key.intern();
+            mSize++;
+        }
+        mTypes[index] = type;
+        return index;
+    }
+}
@@ -0,0 +1,24 @@
+package com.sousoum.libgeofencehelper;
+
+public interface GeofenceClock {
+
+    /**
+     * Source of the current time of the library.
+     * It can be replaced to run the logic of the library with a controlled time.
+     */
+
+    /**
+     * The clock of the system
+     */
+    GeofenceClock SYSTEM = new GeofenceClock() {
+        @Override
+        public long currentTimeMillis() {
+            return System.currentTimeMillis();
+        }
+    };
+
+    /**
+     * @return the current time in milliseconds since epoch
+     */
+    long currentTimeMillis();
+}
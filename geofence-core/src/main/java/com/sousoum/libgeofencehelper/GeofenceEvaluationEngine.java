@@ -0,0 +1,299 @@
+package com.sousoum.libgeofencehelper;
+
+import java.util.ArrayList;
+import java.util.Collection;
+import java.util.Collections;
+import java.util.Comparator;
+import java.util.HashMap;
+import java.util.HashSet;
+import java.util.LinkedHashMap;
+import java.util.PriorityQueue;
+
+public class GeofenceEvaluationEngine {
+
+    /**
+     * Class that detects the transitions of geofences from a stream of locations, without the Google API.
+     * It can be used to replay recorded locations, to work offline or to test geofences at scale.
+     * The transitions follow the semantics of the Google API:
+     * an ENTER (resp. EXIT) is emitted when a location is inside (resp. outside) a geofence while the previous one was not,
+     * a DWELL is emitted once per stay, on the first location that is still inside the geofence after its loitering delay.
+     * Only the transitions that are part of the transition type of a geofence are emitted.
+     * A geofence expires once the time of the locations is past its expiration date, as checked by {@link StorableGeofence#isExpired(long)}.
+     * The transitions of a location are emitted in this order: initial transitions, EXIT, ENTER then DWELL,
+     * and within each kind in the order in which the geofences have been added.
+     *
+     * Each location only checks the geofences that contain it and the geofences it was inside, thanks to a spatial index.
+     * This class is not thread safe.
+     */
+
+    public interface GeofenceEvaluationListener {
+        /**
+         * Called when a transition of a geofence is detected
+         * @param geofence the geofence that triggered
+         * @param transition the transition: {@link StorableGeofence#TRANSITION_ENTER}, {@link StorableGeofence#TRANSITION_EXIT}
+         *                   or {@link StorableGeofence#TRANSITION_DWELL}
+         * @param timeInMs the time of the location that triggered the transition
+         */
+        void onGeofenceTransition(StorableGeofence geofence, int transition, long timeInMs);
+    }
+
+    /** Initial trigger that emits an ENTER for the geofences that contain the first location. Same value as the one of GeofencingRequest. */
+    public static final int INITIAL_TRIGGER_ENTER = 1;
+    /** Initial trigger that emits an EXIT for the geofences that do not contain the first location. Same value as the one of GeofencingRequest. */
+    public static final int INITIAL_TRIGGER_EXIT = 2;
+    /** Initial trigger that allows a DWELL for the geofences that contain the first location. Same value as the one of GeofencingRequest. */
+    public static final int INITIAL_TRIGGER_DWELL = 4;
+
+    private static final Comparator<FenceState> EARLIEST_EXPIRATION_FIRST = new Comparator<FenceState>() {
+        @Override
+        public int compare(FenceState lhs, FenceState rhs) {
+            long lhsDate = lhs.geofence.getExpirationDateInMs();
+            long rhsDate = rhs.geofence.getExpirationDateInMs();
+            return lhsDate < rhsDate ? -1 : (lhsDate == rhsDate ? 0 : 1);
+        }
+    };
+
+    private static final Comparator<FenceState> FIRST_ADDED_FIRST = new Comparator<FenceState>() {
+        @Override
+        public int compare(FenceState lhs, FenceState rhs) {
+            return lhs.sequence < rhs.sequence ? -1 : (lhs.sequence == rhs.sequence ? 0 : 1);
+        }
+    };
+
+    // number of removed or replaced geofences tolerated in the expiration heap before it is built again
+    private static final int EXPIRATIONS_SLACK = 64;
+
+    private static class FenceState {
+        final StorableGeofence geofence;
+        final long sequence; // order in which the geofences have been added
+        boolean inside;
+        long enterTimeInMs;
+        boolean dwellPending; // inside and waiting for the loitering delay
+
+        FenceState(StorableGeofence geofence, long sequence) {
+            this.geofence = geofence;
+            this.sequence = sequence;
+        }
+    }
+
+    private final GeofenceEvaluationListener mListener;
+    private final int mInitialTrigger;
+
+    private final GeofenceSpatialIndex mSpatialIndex = new GeofenceSpatialIndex();
+    private final HashMap<String, FenceState> mStates = new HashMap<>();
+    // geofences whose state is not known yet
+    private final LinkedHashMap<String, FenceState> mUnknownStates = new LinkedHashMap<>();
+    // geofences that contained the previous location
+    private final LinkedHashMap<String, FenceState> mInsideStates = new LinkedHashMap<>();
+    // geofences that expire. Removed or replaced ones are dropped when they reach the head, or when there are too many of them.
+    private final PriorityQueue<FenceState> mExpirations = new PriorityQueue<>(11, EARLIEST_EXPIRATION_FIRST);
+    // sequence of the next added geofence
+    private long mNextSequence;
+
+    /**
+     * Create an engine with the default initial trigger of the Google API, which is INITIAL_TRIGGER_ENTER | INITIAL_TRIGGER_DWELL
+     * @param listener the listener informed of the transitions
+     */
+    public GeofenceEvaluationEngine(@NonNull GeofenceEvaluationListener listener) {
+        this(listener, INITIAL_TRIGGER_ENTER | INITIAL_TRIGGER_DWELL);
+    }
+
+    /**
+     * Create an engine
+     * @param listener the listener informed of the transitions
+     * @param initialTrigger the transitions to emit on the first location that is evaluated for a geofence,
+     *                       a combination of {@link #INITIAL_TRIGGER_ENTER}, {@link #INITIAL_TRIGGER_EXIT} and {@link #INITIAL_TRIGGER_DWELL}
+     */
+    public GeofenceEvaluationEngine(@NonNull GeofenceEvaluationListener listener, int initialTrigger) {
+        mListener = listener;
+        mInitialTrigger = initialTrigger;
+    }
+
+    /**
+     * Add a geofence to evaluate. If a geofence with the same id is already evaluated, it is replaced and its state is reset.
+     * @param geofence the geofence to add
+     */
+    public void addGeofence(@NonNull StorableGeofence geofence) {
+        removeGeofence(geofence.getId());
+
+        FenceState state = new FenceState(geofence, mNextSequence++);
+        mStates.put(geofence.getId(), state);
+        mUnknownStates.put(geofence.getId(), state);
+        mSpatialIndex.put(geofence);
+        if (geofence.getExpirationDateInMs() > 0) {
+            if (mExpirations.size() > mStates.size() + EXPIRATIONS_SLACK) {
+                // too many removed or replaced geofences, keep only the current ones
+                ArrayList<FenceState> expirations = new ArrayList<>(mExpirations.size());
+                for (FenceState expiration : mExpirations) {
+                    if (isCurrent(expiration)) {
+                        expirations.add(expiration);
+                    }
+                }
+                mExpirations.clear();
+                mExpirations.addAll(expirations);
+            }
+            mExpirations.add(state);
+        }
+    }
+
+    /**
+     * Add several geofences to evaluate
+     * @param geofences the geofences to add
+     */
+    public void addGeofences(@NonNull Collection<StorableGeofence> geofences) {
+        for (StorableGeofence geofence : geofences) {
+            addGeofence(geofence);
+        }
+    }
+
+    /**
+     * Remove a geofence. No transition is emitted for it.
+     * @param geofenceId the id of the geofence to remove
+     */
+    public void removeGeofence(@NonNull String geofenceId) {
+        if (mStates.remove(geofenceId) != null) {
+            mUnknownStates.remove(geofenceId);
+            mInsideStates.remove(geofenceId);
+            mSpatialIndex.remove(geofenceId);
+        }
+    }
+
+    /**
+     * @return the number of evaluated geofences
+     */
+    public int getGeofenceCount() {
+        return mStates.size();
+    }
+
+    /**
+     * Get the geofences that contained the last evaluated location
+     * @return a list of StorableGeofence (can not be null)
+     */
+    public @NonNull
+    ArrayList<StorableGeofence> getInsideGeofences() {
+        ArrayList<StorableGeofence> geofences = new ArrayList<>(mInsideStates.size());
+        for (FenceState state : mInsideStates.values()) {
+            geofences.add(state.geofence);
+        }
+        return geofences;
+    }
+
+    /**
+     * Evaluate a location and inform the listener of the transitions.
+     * The locations should be given in chronological order.
+     * @param latitude latitude of the location in degrees
+     * @param longitude longitude of the location in degrees
+     * @param timeInMs time of the location, in milliseconds since epoch
+     */
+    public void onLocation(double latitude, double longitude, long timeInMs) {
+        removeExpiredGeofences(timeInMs);
+
+        HashSet<String> containingIds = new HashSet<>();
+        ArrayList<FenceState> containingStates = new ArrayList<>();
+        for (StorableGeofence geofence : mSpatialIndex.findContaining(latitude, longitude)) {
+            containingIds.add(geofence.getId());
+            containingStates.add(mStates.get(geofence.getId()));
+        }
+        Collections.sort(containingStates, FIRST_ADDED_FIRST);
+
+        // geofences seen for the first time
+        if (!mUnknownStates.isEmpty()) {
+            ArrayList<FenceState> unknownStates = new ArrayList<>(mUnknownStates.values());
+            mUnknownStates.clear();
+            for (FenceState state : unknownStates) {
+                if (containingIds.contains(state.geofence.getId())) {
+                    enter(state, timeInMs, (mInitialTrigger & INITIAL_TRIGGER_ENTER) != 0, (mInitialTrigger & INITIAL_TRIGGER_DWELL) != 0);
+                } else if ((mInitialTrigger & INITIAL_TRIGGER_EXIT) != 0) {
+                    notify(state, StorableGeofence.TRANSITION_EXIT, timeInMs);
+                }
+            }
+        }
+
+        // geofences that are not containing the location anymore
+        ArrayList<FenceState> exitedStates = new ArrayList<>();
+        for (FenceState state : mInsideStates.values()) {
+            if (!containingIds.contains(state.geofence.getId())) {
+                exitedStates.add(state);
+            }
+        }
+        Collections.sort(exitedStates, FIRST_ADDED_FIRST);
+        for (FenceState state : exitedStates) {
+            state.inside = false;
+            state.dwellPending = false;
+            mInsideStates.remove(state.geofence.getId());
+            notify(state, StorableGeofence.TRANSITION_EXIT, timeInMs);
+        }
+
+        // geofences that are containing the location
+        for (FenceState state : containingStates) {
+            if (!state.inside) {
+                enter(state, timeInMs, true, true);
+            }
+        }
+
+        // geofences in which the device stayed long enough
+        ArrayList<FenceState> dwellStates = new ArrayList<>();
+        for (FenceState state : mInsideStates.values()) {
+            if (state.dwellPending && timeInMs - state.enterTimeInMs >= state.geofence.getLoiteringDelay()) {
+                dwellStates.add(state);
+            }
+        }
+        Collections.sort(dwellStates, FIRST_ADDED_FIRST);
+        for (FenceState state : dwellStates) {
+            state.dwellPending = false;
+            notify(state, StorableGeofence.TRANSITION_DWELL, timeInMs);
+        }
+    }
+
+    /**
+     * Mark a geofence as containing the device
+     * @param state the state of the geofence
+     * @param timeInMs the time of the location
+     * @param emitEnter true if the ENTER transition can be emitted
+     * @param allowDwell true if the DWELL transition can be emitted during this stay
+     */
+    private void enter(@NonNull FenceState state, long timeInMs, boolean emitEnter, boolean allowDwell) {
+        state.inside = true;
+        state.enterTimeInMs = timeInMs;
+        state.dwellPending = allowDwell && (state.geofence.getTransitionType() & StorableGeofence.TRANSITION_DWELL) != 0;
+        mInsideStates.put(state.geofence.getId(), state);
+        if (emitEnter) {
+            notify(state, StorableGeofence.TRANSITION_ENTER, timeInMs);
+        }
+    }
+
+    /**
+     * Inform the listener of a transition if the geofence asked for it
+     */
+    private void notify(@NonNull FenceState state, int transition, long timeInMs) {
+        if ((state.geofence.getTransitionType() & transition) != 0) {
+            mListener.onGeofenceTransition(state.geofence, transition, timeInMs);
+        }
+    }
+
+    /**
+     * Remove the geofences that are expired, and drop the removed or replaced geofences found at the head of the expiration heap
+     * @param timeInMs the current time
+     */
+    private void removeExpiredGeofences(long timeInMs) {
+        boolean done = false;
+        while (!done && !mExpirations.isEmpty()) {
+            FenceState state = mExpirations.peek();
+            if (!isCurrent(state)) {
+                mExpirations.poll();
+            } else if (state.geofence.isExpired(timeInMs)) {
+                mExpirations.poll();
+                removeGeofence(state.geofence.getId());
+            } else {
+                done = true;
+            }
+        }
+    }
+
+    /**
+     * @return true if the state is the one of an evaluated geofence, false if the geofence has been removed or replaced
+     */
+    private boolean isCurrent(@NonNull FenceState state) {
+        return mStates.get(state.geofence.getId()) == state;
+    }
+}
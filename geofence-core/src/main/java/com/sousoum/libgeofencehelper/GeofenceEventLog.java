@@ -0,0 +1,266 @@
+package com.sousoum.libgeofencehelper;
+
+import java.io.File;
+import java.io.IOException;
+import java.io.RandomAccessFile;
+import java.nio.MappedByteBuffer;
+import java.nio.channels.FileChannel;
+
+public final class GeofenceEventLog {
+
+    /**
+     * Log of the transitions that fired, kept in a fixed-size memory-mapped file used as a ring buffer.
+     * When the log is full, the oldest events are overwritten by the new ones.
+     *
+     * The file starts with a header [int magic][int version][int capacity][int recordSize][long nextSequence]
+     * followed by capacity fixed-width records:
+     *   [long timeInMs][int geofenceIdHash][int transition][int flags][float accuracy][double latitude][double longitude]
+     * The event of sequence s is in the record s % capacity. The geofence id is kept as its String.hashCode().
+     *
+     * An append only writes the record then the next sequence in the mapped memory, the file is never synced on the way:
+     * the events survive the death of the process, and are written to the disk by the system. Call {@link #flush()} to force it.
+     * The events are exported with a {@link Reader}, from a sequence remembered by the previous export.
+     * This class is thread safe within a process, the file should not be shared by several processes.
+     */
+
+    /** The event has a location */
+    public static final int FLAG_HAS_LOCATION = 1;
+    /** The transition has been dropped by the filter of duplicate and oscillating transitions, it has not been given to the receiver */
+    public static final int FLAG_FILTERED = 1 << 1;
+
+    /** Default number of events kept in the log */
+    public static final int DEFAULT_CAPACITY = 4096;
+
+    private static final String TAG = "GeofenceEventLog";
+
+    private static final int MAGIC = 0x4746454C; // "GFEL"
+    private static final int VERSION = 1;
+    private static final int HEADER_SIZE = 4 + 4 + 4 + 4 + 8;
+    private static final int NEXT_SEQUENCE_OFFSET = 16;
+    static final int RECORD_SIZE = 8 + 4 + 4 + 4 + 4 + 8 + 8;
+
+    private final MappedByteBuffer mBuffer;
+    private final int mCapacity;
+    private long mNextSequence;
+
+    /**
+     * Open a log, create it if needed.
+     * An existing file whose format or capacity does not match is reset.
+     * @param file the file of the log
+     * @param capacity the number of events kept in the log
+     * @throws IOException if the file could not be mapped
+     */
+    public GeofenceEventLog(@NonNull File file, int capacity) throws IOException {
+        if (capacity <= 0) {
+            throw new IllegalArgumentException("The capacity must be positive");
+        }
+        mCapacity = capacity;
+        long size = HEADER_SIZE + (long) capacity * RECORD_SIZE;
+
+        RandomAccessFile randomAccessFile = new RandomAccessFile(file, "rw");
+        try {
+            boolean valid = false;
+            if (randomAccessFile.length() == size) {
+                valid = randomAccessFile.readInt() == MAGIC &&
+                        randomAccessFile.readInt() == VERSION &&
+                        randomAccessFile.readInt() == capacity &&
+                        randomAccessFile.readInt() == RECORD_SIZE;
+            }
+            if (!valid) {
+                if (randomAccessFile.length() > 0) {
+                    GeofenceLog.i(TAG, "Reset the event log " + file.getName());
+                }
+                randomAccessFile.setLength(0);
+                randomAccessFile.setLength(size);
+            }
+            // the mapping stays valid once the file is closed
+            mBuffer = randomAccessFile.getChannel().map(FileChannel.MapMode.READ_WRITE, 0, size);
+            if (valid) {
+                mNextSequence = Math.max(0, mBuffer.getLong(NEXT_SEQUENCE_OFFSET));
+            } else {
+                mBuffer.putInt(0, MAGIC);
+                mBuffer.putInt(4, VERSION);
+                mBuffer.putInt(8, capacity);
+                mBuffer.putInt(12, RECORD_SIZE);
+                mBuffer.putLong(NEXT_SEQUENCE_OFFSET, 0);
+            }
+        } finally {
+            randomAccessFile.close();
+        }
+    }
+
+    /**
+     * @return the number of events kept in the log
+     */
+    public int getCapacity() {
+        return mCapacity;
+    }
+
+    /**
+     * @return the sequence of the next event, which is also the number of events appended since the creation of the log
+     */
+    public synchronized long getNextSequence() {
+        return mNextSequence;
+    }
+
+    /**
+     * @return the sequence of the oldest event still in the log
+     */
+    public synchronized long getFirstSequence() {
+        return Math.max(0, mNextSequence - mCapacity);
+    }
+
+    /**
+     * Append an event
+     * @param geofenceId the id of the geofence
+     * @param transition the transition
+     * @param timeInMs the time of the transition in milliseconds since epoch
+     * @param flags a combination of the FLAG_* constants. {@link #FLAG_HAS_LOCATION} is set when a location is given.
+     * @param hasLocation true if the location of the transition is known
+     * @param latitude latitude of the location in degrees
+     * @param longitude longitude of the location in degrees
+     * @param accuracy accuracy of the location in meters
+     * @return the sequence of the event
+     */
+    public synchronized long append(@NonNull String geofenceId, int transition, long timeInMs, int flags,
+                                    boolean hasLocation, double latitude, double longitude, float accuracy) {
+        long sequence = mNextSequence;
+        int offset = getOffset(sequence);
+        mBuffer.putLong(offset, timeInMs);
+        mBuffer.putInt(offset + 8, geofenceId.hashCode());
+        mBuffer.putInt(offset + 12, transition);
+        if (hasLocation) {
+            mBuffer.putInt(offset + 16, flags | FLAG_HAS_LOCATION);
+            mBuffer.putFloat(offset + 20, accuracy);
+            mBuffer.putDouble(offset + 24, latitude);
+            mBuffer.putDouble(offset + 32, longitude);
+        } else {
+            mBuffer.putInt(offset + 16, flags & ~FLAG_HAS_LOCATION);
+            mBuffer.putFloat(offset + 20, 0);
+            mBuffer.putDouble(offset + 24, 0);
+            mBuffer.putDouble(offset + 32, 0);
+        }
+
+        // publish the record only once it is complete
+        mNextSequence = sequence + 1;
+        mBuffer.putLong(NEXT_SEQUENCE_OFFSET, mNextSequence);
+        return sequence;
+    }
+
+    /**
+     * Write the events to the disk. It is slow, it should not be called after each append.
+     */
+    public synchronized void flush() {
+        mBuffer.force();
+    }
+
+    /**
+     * Create a reader of the events
+     * @param fromSequence the sequence of the first event to read, for example the next sequence of the previous export.
+     *                     The reader starts at the oldest event still in the log if it has been overwritten.
+     * @return a reader of the events appended before its creation
+     */
+    public synchronized @NonNull
+    Reader newReader(long fromSequence) {
+        return new Reader(Math.max(fromSequence, getFirstSequence()), mNextSequence);
+    }
+
+    private int getOffset(long sequence) {
+        return HEADER_SIZE + (int) (sequence % mCapacity) * RECORD_SIZE;
+    }
+
+    public final class Reader {
+
+        /**
+         * Reader that goes through the events of the log in order, without allocating.
+         * Call {@link #moveToNext()} then the getters for each event.
+         * The events overwritten by new ones while reading are skipped.
+         */
+
+        private final long mEndSequence;
+        private long mSequence;
+
+        private long mTimeInMs;
+        private int mGeofenceIdHash;
+        private int mTransition;
+        private int mFlags;
+        private float mAccuracy;
+        private double mLatitude;
+        private double mLongitude;
+
+        private Reader(long fromSequence, long endSequence) {
+            mSequence = fromSequence - 1;
+            mEndSequence = endSequence;
+        }
+
+        /**
+         * Move to the next event
+         * @return false if there is no more event
+         */
+        public boolean moveToNext() {
+            boolean moved = false;
+            synchronized (GeofenceEventLog.this) {
+                mSequence = Math.max(mSequence + 1, getFirstSequence());
+                if (mSequence < mEndSequence) {
+                    int offset = getOffset(mSequence);
+                    mTimeInMs = mBuffer.getLong(offset);
+                    mGeofenceIdHash = mBuffer.getInt(offset + 8);
+                    mTransition = mBuffer.getInt(offset + 12);
+                    mFlags = mBuffer.getInt(offset + 16);
+                    mAccuracy = mBuffer.getFloat(offset + 20);
+                    mLatitude = mBuffer.getDouble(offset + 24);
+                    mLongitude = mBuffer.getDouble(offset + 32);
+                    moved = true;
+                } else {
+                    mSequence = mEndSequence;
+                }
+            }
+            return moved;
+        }
+
+        /**
+         * @return the sequence of the current event. Once all events are read, the sequence to start the next export from.
+         */
+        public long getSequence() {
+            return mSequence;
+        }
+
+        public long getTimeInMs() {
+            return mTimeInMs;
+        }
+
+        /**
+         * @return the String.hashCode() of the id of the geofence
+         */
+        public int getGeofenceIdHash() {
+            return mGeofenceIdHash;
+        }
+
+        public int getTransition() {
+            return mTransition;
+        }
+
+        /**
+         * @return a combination of the FLAG_* constants of {@link GeofenceEventLog}
+         */
+        public int getFlags() {
+            return mFlags;
+        }
+
+        public boolean hasLocation() {
+            return (mFlags & FLAG_HAS_LOCATION) != 0;
+        }
+
+        public double getLatitude() {
+            return mLatitude;
+        }
+
+        public double getLongitude() {
+            return mLongitude;
+        }
+
+        public float getAccuracy() {
+            return mAccuracy;
+        }
+    }
+}
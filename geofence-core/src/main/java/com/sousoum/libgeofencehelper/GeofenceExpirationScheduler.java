@@ -0,0 +1,94 @@
+package com.sousoum.libgeofencehelper;
+
+import java.util.ArrayList;
+
+class GeofenceExpirationScheduler {
+
+    /**
+     * Package local class that removes the expired geofences from stores as soon as they expire.
+     * Each store keeps its geofences ordered by expiration date, so the scheduler only has to wake up once,
+     * at the earliest expiration date of all stores, to purge all the geofences that are due with a single write per store.
+     * The Google API drops the expired geofences by itself, so they are removed from the stores without any request.
+     */
+
+    interface Alarm {
+        /**
+         * Wake up the scheduler at a given time by calling {@link #purgeExpired()}.
+         * Replaces the time previously set.
+         * @param timeInMs the time in milliseconds since epoch
+         */
+        void set(long timeInMs);
+
+        /**
+         * Cancel the time previously set
+         */
+        void cancel();
+    }
+
+    private static final String TAG = "ExpirationScheduler";
+
+    private final GeofenceClock mClock;
+    private final Alarm mAlarm;
+    private final GeofenceStore[] mStores;
+
+    // time of the alarm that is currently set, 0 if none, -1 if unknown
+    private long mScheduledTimeInMs = -1;
+
+    /**
+     * Create a scheduler
+     * @param clock the clock that gives the current time
+     * @param alarm the alarm that wakes up the scheduler
+     * @param stores the stores to purge
+     */
+    GeofenceExpirationScheduler(@NonNull GeofenceClock clock, @NonNull Alarm alarm, @NonNull GeofenceStore... stores) {
+        mClock = clock;
+        mAlarm = alarm;
+        mStores = stores;
+    }
+
+    /**
+     * Remove the geofences that are expired from all stores, then set the alarm at the next expiration date
+     * @return the number of removed geofences
+     */
+    synchronized int purgeExpired() {
+        long nowInMs = mClock.currentTimeMillis();
+        int purgedCount = 0;
+        for (GeofenceStore store : mStores) {
+            ArrayList<StorableGeofence> purgedGeofences = store.purgeExpiredGeofences(nowInMs);
+            purgedCount += purgedGeofences.size();
+        }
+        if (purgedCount > 0) {
+            GeofenceLog.i(TAG, "Purged " + purgedCount + " expired geofences");
+        }
+
+        // the alarm may have been consumed, set or cancel it again
+        mScheduledTimeInMs = -1;
+        schedule();
+        return purgedCount;
+    }
+
+    /**
+     * Set the alarm at the earliest expiration date of the stores, or cancel it if no geofence expires.
+     * Call it after the stores have been modified.
+     */
+    synchronized void schedule() {
+        long nextExpirationDateInMs = 0;
+        for (GeofenceStore store : mStores) {
+            long storeExpirationDateInMs = store.getNextExpirationDateInMs();
+            if (storeExpirationDateInMs > 0 && (nextExpirationDateInMs == 0 || storeExpirationDateInMs < nextExpirationDateInMs)) {
+                nextExpirationDateInMs = storeExpirationDateInMs;
+            }
+        }
+
+        // a geofence expires strictly after its expiration date
+        long timeInMs = nextExpirationDateInMs > 0 ? nextExpirationDateInMs + 1 : 0;
+        if (timeInMs != mScheduledTimeInMs) {
+            if (timeInMs > 0) {
+                mAlarm.set(timeInMs);
+            } else {
+                mAlarm.cancel();
+            }
+            mScheduledTimeInMs = timeInMs;
+        }
+    }
+}
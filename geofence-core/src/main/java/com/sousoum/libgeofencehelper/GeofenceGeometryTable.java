@@ -0,0 +1,217 @@
+package com.sousoum.libgeofencehelper;
+
+import java.util.BitSet;
+import java.util.Collection;
+import java.util.HashMap;
+
+public class GeofenceGeometryTable {
+
+    /**
+     * Class that keeps the circles of geofences in parallel arrays of primitives, to check many geofences without chasing objects.
+     * The cosine of the latitude of each center is computed once, when the geofence is added.
+     * Each geofence has an index in the table, removing a geofence moves the last one to its index.
+     *
+     * The checks first reject the geofences that are obviously too far with an equirectangular approximation,
+     * then use the haversine formula for the remaining ones.
+     * The approximation is safe for circles whose radius is small compared to the Earth (up to a few hundred kilometers).
+     *
+     * This class is not thread safe.
+     */
+
+    // margin of the equirectangular rejection, its error is far below 1% for distances of a few hundred kilometers
+    private static final double FAST_REJECT_MARGIN = 1.01;
+
+    private static final int INITIAL_CAPACITY = 16;
+
+    private String[] mIds = new String[INITIAL_CAPACITY];
+    private double[] mLatitudes = new double[INITIAL_CAPACITY];
+    private double[] mLongitudes = new double[INITIAL_CAPACITY];
+    private double[] mCosLatitudes = new double[INITIAL_CAPACITY];
+    private float[] mRadii = new float[INITIAL_CAPACITY];
+    private int mSize;
+
+    private final HashMap<String, Integer> mIndexes = new HashMap<>();
+
+    public GeofenceGeometryTable() {
+    }
+
+    /**
+     * Create a table with the circles of geofences
+     * @param geofences the geofences to add
+     */
+    public GeofenceGeometryTable(@NonNull Collection<StorableGeofence> geofences) {
+        ensureCapacity(geofences.size());
+        for (StorableGeofence geofence : geofences) {
+            put(geofence);
+        }
+    }
+
+    /**
+     * @return the number of geofences in the table
+     */
+    public int size() {
+        return mSize;
+    }
+
+    /**
+     * Add the circle of a geofence. If a geofence with the same id is already in the table, its circle is replaced.
+     * @param geofence the geofence to add
+     * @return the index of the geofence in the table
+     */
+    public int put(@NonNull StorableGeofence geofence) {
+        Integer existingIndex = mIndexes.get(geofence.getId());
+        int index;
+        if (existingIndex != null) {
+            index = existingIndex;
+        } else {
+            ensureCapacity(mSize + 1);
+            index = mSize++;
+            mIds[index] = geofence.getId();
+            mIndexes.put(geofence.getId(), index);
+        }
+        mLatitudes[index] = geofence.getLatitude();
+        mLongitudes[index] = geofence.getLongitude();
+        mCosLatitudes[index] = Math.cos(Math.toRadians(geofence.getLatitude()));
+        mRadii[index] = geofence.getRadius();
+        return index;
+    }
+
+    /**
+     * Remove the circle of a geofence. The last geofence of the table takes its index.
+     * @param geofenceId the id of the geofence to remove
+     * @return true if the geofence was in the table
+     */
+    public boolean remove(@NonNull String geofenceId) {
+        Integer index = mIndexes.remove(geofenceId);
+        if (index != null) {
+            int last = --mSize;
+            if (index != last) {
+                mIds[index] = mIds[last];
+                mLatitudes[index] = mLatitudes[last];
+                mLongitudes[index] = mLongitudes[last];
+                mCosLatitudes[index] = mCosLatitudes[last];
+                mRadii[index] = mRadii[last];
+                mIndexes.put(mIds[index], index);
+            }
+            mIds[last] = null;
+        }
+        return index != null;
+    }
+
+    /**
+     * Remove all the circles
+     */
+    public void clear() {
+        for (int i = 0; i < mSize; i++) {
+            mIds[i] = null;
+        }
+        mSize = 0;
+        mIndexes.clear();
+    }
+
+    /**
+     * Get the index of a geofence
+     * @param geofenceId the id of the geofence
+     * @return the index of the geofence, -1 if it is not in the table
+     */
+    public int indexOf(@NonNull String geofenceId) {
+        Integer index = mIndexes.get(geofenceId);
+        return index != null ? index : -1;
+    }
+
+    /**
+     * Get the id of the geofence at an index
+     * @param index the index, between 0 and {@link #size()} - 1
+     * @return the id of the geofence
+     */
+    public String getId(int index) {
+        checkIndex(index);
+        return mIds[index];
+    }
+
+    /**
+     * Check whether the circle of a geofence contains a point
+     * @param index the index of the geofence, between 0 and {@link #size()} - 1
+     * @param latitude latitude of the point in degrees
+     * @param longitude longitude of the point in degrees
+     * @return true if the point is in the circle
+     */
+    public boolean contains(int index, double latitude, double longitude) {
+        checkIndex(index);
+        return containsAt(index, latitude, longitude, Math.cos(Math.toRadians(latitude)));
+    }
+
+    /**
+     * Check all the circles of the table against a point, without allocating anything.
+     * out is cleared, then the bit of the index of each geofence whose circle contains the point is set.
+     * out may still grow the first times it is used with a bigger table.
+     * @param latitude latitude of the point in degrees
+     * @param longitude longitude of the point in degrees
+     * @param out the set of the indexes of the geofences that contain the point
+     * @return the number of geofences that contain the point
+     */
+    public int containsAll(double latitude, double longitude, @NonNull BitSet out) {
+        out.clear();
+        int count = 0;
+        double cosLatitude = Math.cos(Math.toRadians(latitude));
+        for (int i = 0; i < mSize; i++) {
+            if (containsAt(i, latitude, longitude, cosLatitude)) {
+                out.set(i);
+                count++;
+            }
+        }
+        return count;
+    }
+
+    private boolean containsAt(int index, double latitude, double longitude, double cosLatitude) {
+        boolean contains = false;
+        double radius = mRadii[index];
+        double dLat = latitude - mLatitudes[index];
+        double dLatMeters = dLat * GeoMath.METERS_PER_DEGREE;
+        // the distance along the meridian is a lower bound of the distance
+        if (Math.abs(dLatMeters) <= radius) {
+            double dLon = longitude - mLongitudes[index];
+            if (dLon > 180) {
+                dLon -= 360;
+            } else if (dLon < -180) {
+                dLon += 360;
+            }
+            double dLonMeters = dLon * GeoMath.METERS_PER_DEGREE * (cosLatitude + mCosLatitudes[index]) / 2;
+            double rejectRadius = radius * FAST_REJECT_MARGIN;
+            if (dLatMeters * dLatMeters + dLonMeters * dLonMeters <= rejectRadius * rejectRadius) {
+                double sinDLat = Math.sin(Math.toRadians(dLat) / 2);
+                double sinDLon = Math.sin(Math.toRadians(dLon) / 2);
+                double a = sinDLat * sinDLat + cosLatitude * mCosLatitudes[index] * sinDLon * sinDLon;
+                contains = 2 * GeoMath.EARTH_RADIUS_M * Math.asin(Math.min(1, Math.sqrt(a))) <= radius;
+            }
+        }
+        return contains;
+    }
+
+    private void checkIndex(int index) {
+        if (index < 0 || index >= mSize) {
+            throw new IndexOutOfBoundsException("Index: " + index + ", size: " + mSize);
+        }
+    }
+
+    private void ensureCapacity(int capacity) {
+        if (capacity > mIds.length) {
+            int newCapacity = Math.max(capacity, mIds.length * 2);
+            String[] ids = new String[newCapacity];
+            System.arraycopy(mIds, 0, ids, 0, mSize);
+            mIds = ids;
+            double[] latitudes = new double[newCapacity];
+            System.arraycopy(mLatitudes, 0, latitudes, 0, mSize);
+            mLatitudes = latitudes;
+            double[] longitudes = new double[newCapacity];
+            System.arraycopy(mLongitudes, 0, longitudes, 0, mSize);
+            mLongitudes = longitudes;
+            double[] cosLatitudes = new double[newCapacity];
+            System.arraycopy(mCosLatitudes, 0, cosLatitudes, 0, mSize);
+            mCosLatitudes = cosLatitudes;
+            float[] radii = new float[newCapacity];
+            System.arraycopy(mRadii, 0, radii, 0, mSize);
+            mRadii = radii;
+        }
+    }
+}
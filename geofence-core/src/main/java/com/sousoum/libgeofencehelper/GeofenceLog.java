@@ -0,0 +1,83 @@
+package com.sousoum.libgeofencehelper;
+
+public final class GeofenceLog {
+
+    /**
+     * Class through which the core of the library logs.
+     * The core has no dependency on Android: by default the messages are printed on the standard error,
+     * the Android library replaces the printer by one that writes to the logcat.
+     * The information messages that are costly to build are only built when {@link #isLoggable(String)} is true.
+     */
+
+    public interface Printer {
+        /**
+         * @param tag the tag of a message
+         * @return true if the information messages of the tag are printed
+         */
+        boolean isLoggable(String tag);
+
+        /**
+         * Print an information message
+         * @param tag the tag of the message
+         * @param message the message
+         */
+        void i(String tag, String message);
+
+        /**
+         * Print an error message
+         * @param tag the tag of the message
+         * @param message the message
+         * @param throwable the cause of the error, can be null
+         */
+        void e(String tag, String message, Throwable throwable);
+    }
+
+    private static final Printer STANDARD_ERROR_PRINTER = new Printer() {
+        @Override
+        public boolean isLoggable(String tag) {
+            return true;
+        }
+
+        @Override
+        public void i(String tag, String message) {
+            System.err.println("I/" + tag + ": " + message);
+        }
+
+        @Override
+        public void e(String tag, String message, Throwable throwable) {
+            System.err.println("E/" + tag + ": " + message);
+            if (throwable != null) {
+                throwable.printStackTrace();
+            }
+        }
+    };
+
+    private static volatile Printer sPrinter = STANDARD_ERROR_PRINTER;
+
+    private GeofenceLog() {
+    }
+
+    /**
+     * Set the printer of the messages
+     * @param printer the printer, null to print on the standard error
+     */
+    public static void setPrinter(Printer printer) {
+        sPrinter = printer != null ? printer : STANDARD_ERROR_PRINTER;
+    }
+
+    static boolean isLoggable(String tag) {
+        return sPrinter.isLoggable(tag);
+    }
+
+    static void i(String tag, String message) {
+        sPrinter.i(tag, message);
+    }
+
+    static void e(String tag, String message) {
+        sPrinter.e(tag, message, null);
+    }
+
+    static void e(String tag, String message, Throwable throwable) {
+        sPrinter.e(tag, message, throwable);
+    }
+}
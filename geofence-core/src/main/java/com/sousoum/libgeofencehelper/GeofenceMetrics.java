@@ -0,0 +1,114 @@
+package com.sousoum.libgeofencehelper;
+
+public final class GeofenceMetrics {
+
+    /**
+     * Class through which the library reports its counters and latencies.
+     * By default nothing is recorded and the measures cost nothing. The application can set a recorder to export them to its own telemetry,
+     * for example by aggregating the latencies of each name in a histogram.
+     */
+
+    public interface Recorder {
+        /**
+         * Increment a counter
+         * @param name the name of the counter, one of the constants of {@link GeofenceMetrics}
+         * @param delta the increment
+         */
+        void count(@NonNull String name, long delta);
+
+        /**
+         * Record a latency
+         * @param name the name of the measured operation, one of the constants of {@link GeofenceMetrics}
+         * @param durationNs the duration of the operation in nanoseconds
+         */
+        void recordLatency(@NonNull String name, long durationNs);
+    }
+
+    //region Names
+    /** Latency of the first read of a store */
+    public static final String STORE_LOAD = "store.load";
+    /** Latency of a write of a store that stores geofences */
+    public static final String STORE_WRITE = "store.write";
+    /** Latency of a write of a store that only removes geofences */
+    public static final String STORE_REMOVE = "store.remove";
+    /** Number of geofences or ids written in the stores */
+    public static final String STORE_WRITTEN_GEOFENCES = "store.written_geofences";
+    /** Number of geofences removed from the stores */
+    public static final String STORE_REMOVED_GEOFENCES = "store.removed_geofences";
+    /** Number of reads or writes of the stores that failed */
+    public static final String STORE_ERRORS = "store.errors";
+
+    /** Latency of the phase of a synchronization that registers again the synced geofences */
+    public static final String SYNC_RESTORE = "sync.restore";
+    /** Latency of the phase of a synchronization that submits the geofences to add */
+    public static final String SYNC_ADD = "sync.add";
+    /** Latency of the phase of a synchronization that submits the geofences to remove */
+    public static final String SYNC_REMOVE = "sync.remove";
+
+    /** Latency of a request that adds geofences to the Google API, from its submission to its result */
+    public static final String API_ADD = "api.add";
+    /** Latency of a request that removes geofences from the Google API, from its submission to its result */
+    public static final String API_REMOVE = "api.remove";
+    /** Number of geofences sent in add requests */
+    public static final String API_ADDED_GEOFENCES = "api.added_geofences";
+    /** Number of geofences sent in remove requests */
+    public static final String API_REMOVED_GEOFENCES = "api.removed_geofences";
+    /** Number of requests to the Google API that failed */
+    public static final String API_ERRORS = "api.errors";
+
+    /** Latency of the dispatch of a transition to its receiver, including the lookup of the geofences */
+    public static final String DISPATCH = "dispatch";
+    /** Latency of the check of a transition against the polygons, before it is forwarded */
+    public static final String DISPATCH_POLYGON = "dispatch.polygon";
+    /** Number of geofences given to the receivers */
+    public static final String DISPATCHED_GEOFENCES = "dispatch.geofences";
+    /** Number of geofences whose transition has been dropped as a duplicate or an oscillation */
+    public static final String FILTERED_GEOFENCES = "dispatch.filtered_geofences";
+    //endregion Names
+
+    private static volatile Recorder sRecorder;
+
+    private GeofenceMetrics() {
+    }
+
+    /**
+     * Set the recorder of the metrics.
+     * It is called from the threads of the library, sometimes while a store is locked: it should be thread safe and return quickly.
+     * @param recorder the recorder, null to record nothing
+     */
+    public static void setRecorder(Recorder recorder) {
+        sRecorder = recorder;
+    }
+
+    /**
+     * Start the measure of a latency
+     * @return the start time to give to {@link #recordLatency(String, long)}, 0 if no recorder is set
+     */
+    static long start() {
+        return sRecorder != null ? System.nanoTime() : 0;
+    }
+
+    /**
+     * Record the latency of an operation that started at a time given by {@link #start()}
+     * @param name the name of the operation
+     * @param startNs the start time of the operation
+     */
+    static void recordLatency(@NonNull String name, long startNs) {
+        Recorder recorder = sRecorder;
+        if (recorder != null && startNs != 0) {
+            recorder.recordLatency(name, System.nanoTime() - startNs);
+        }
+    }
+
+    /**
+     * Increment a counter
+     * @param name the name of the counter
+     * @param delta the increment
+     */
+    static void count(@NonNull String name, long delta) {
+        Recorder recorder = sRecorder;
+        if (recorder != null && delta != 0) {
+            recorder.count(name, delta);
+        }
+    }
+}
@@ -0,0 +1,156 @@
+package com.sousoum.libgeofencehelper;
+
+import java.util.ArrayList;
+import java.util.Collection;
+import java.util.LinkedHashMap;
+import java.util.concurrent.Future;
+import java.util.concurrent.TimeUnit;
+import java.util.concurrent.TimeoutException;
+
+public final class GeofenceOperationFuture implements Future<LinkedHashMap<String, Integer>> {
+
+    /**
+     * Result of an operation on several geofences, completed when the status of each geofence is known.
+     * The result maps the id of each geofence to its status code, see {@link GeofencingBackend}.
+     * The operation can not be cancelled: once queued, it is always applied.
+     */
+
+    public interface Callback {
+        /**
+         * Called once, when the status of all the geofences of the operation is known.
+         * It is called on the thread that completes the operation, or on the thread that sets the callback if the operation is already complete.
+         * @param future the completed operation
+         */
+        void onComplete(@NonNull GeofenceOperationFuture future);
+    }
+
+    private final LinkedHashMap<String, Integer> mStatusCodes = new LinkedHashMap<>();
+    private int mPendingCount;
+    private Callback mCallback;
+
+    /**
+     * Create an operation
+     * @param geofenceIds the ids of the geofences of the operation. The operation is complete immediately if there is none.
+     */
+    GeofenceOperationFuture(@NonNull Collection<String> geofenceIds) {
+        for (String geofenceId : geofenceIds) {
+            if (!mStatusCodes.containsKey(geofenceId)) {
+                mStatusCodes.put(geofenceId, null);
+                mPendingCount++;
+            }
+        }
+    }
+
+    /**
+     * Set the callback called when the operation is complete. It replaces the previous one.
+     * @param callback the callback, can be null
+     */
+    public void setCallback(Callback callback) {
+        boolean done;
+        synchronized (this) {
+            mCallback = callback;
+            done = mPendingCount == 0;
+        }
+        if (done && callback != null) {
+            callback.onComplete(this);
+        }
+    }
+
+    /**
+     * @return true if the operation is complete and all its geofences have a successful status
+     */
+    public synchronized boolean isSuccess() {
+        boolean success = mPendingCount == 0;
+        for (Integer statusCode : mStatusCodes.values()) {
+            if (statusCode == null || statusCode > GeofencingBackend.STATUS_SUCCESS) {
+                success = false;
+            }
+        }
+        return success;
+    }
+
+    /**
+     * Get the status of a geofence of the operation
+     * @param geofenceId the id of the geofence
+     * @return its status code, or null if it is not known yet or if the geofence is not part of the operation
+     */
+    public synchronized Integer getStatusCode(@NonNull String geofenceId) {
+        return mStatusCodes.get(geofenceId);
+    }
+
+    /**
+     * @return the ids of the geofences whose status is not known yet
+     */
+    synchronized @NonNull
+    ArrayList<String> getPendingIds() {
+        ArrayList<String> pendingIds = new ArrayList<>(mPendingCount);
+        for (String geofenceId : mStatusCodes.keySet()) {
+            if (mStatusCodes.get(geofenceId) == null) {
+                pendingIds.add(geofenceId);
+            }
+        }
+        return pendingIds;
+    }
+
+    /**
+     * Give the status of a geofence of the operation. Only the first status of each geofence is kept.
+     * @param geofenceId the id of the geofence
+     * @param statusCode its status code
+     * @return true if the operation is complete after this status
+     */
+    boolean setStatus(@NonNull String geofenceId, int statusCode) {
+        Callback callback = null;
+        boolean done;
+        synchronized (this) {
+            if (mStatusCodes.containsKey(geofenceId) && mStatusCodes.get(geofenceId) == null) {
+                mStatusCodes.put(geofenceId, statusCode);
+                mPendingCount--;
+                if (mPendingCount == 0) {
+                    callback = mCallback;
+                    notifyAll();
+                }
+            }
+            done = mPendingCount == 0;
+        }
+        if (callback != null) {
+            callback.onComplete(this);
+        }
+        return done;
+    }
+
+    @Override
+    public boolean cancel(boolean mayInterruptIfRunning) {
+        return false;
+    }
+
+    @Override
+    public boolean isCancelled() {
+        return false;
+    }
+
+    @Override
+    public synchronized boolean isDone() {
+        return mPendingCount == 0;
+    }
+
+    @Override
+    public synchronized LinkedHashMap<String, Integer> get() throws InterruptedException {
+        while (mPendingCount > 0) {
+            wait();
+        }
+        return new LinkedHashMap<>(mStatusCodes);
+    }
+
+    @Override
+    public synchronized LinkedHashMap<String, Integer> get(long timeout, @NonNull TimeUnit unit) throws InterruptedException, TimeoutException {
+        long deadline = System.nanoTime() + unit.toNanos(timeout);
+        while (mPendingCount > 0) {
+            long remainingNs = deadline - System.nanoTime();
+            if (remainingNs <= 0) {
+                throw new TimeoutException(mPendingCount + " geofences still pending");
+            }
+            TimeUnit.NANOSECONDS.timedWait(this, remainingNs);
+        }
+        return new LinkedHashMap<>(mStatusCodes);
+    }
+}
@@ -0,0 +1,114 @@
+package com.sousoum.libgeofencehelper;
+
+import java.util.concurrent.LinkedBlockingQueue;
+import java.util.concurrent.RejectedExecutionException;
+import java.util.concurrent.Semaphore;
+import java.util.concurrent.ThreadFactory;
+import java.util.concurrent.ThreadPoolExecutor;
+import java.util.concurrent.TimeUnit;
+
+class GeofenceOperationQueue {
+
+    /**
+     * Package local class that runs the operations that modify the stores one after the other, on a single background thread.
+     * The backlog of the submitted operations is bounded: when it is full, {@link #submit(Runnable)} rejects the operation instead of waiting,
+     * so that the caller, which can be the main thread, is never blocked.
+     * The callbacks of the backend use {@link #post(Runnable)}, which is never rejected.
+     * An operation submitted or posted from the thread of the queue is run immediately, so that an operation never waits for itself.
+     * An operation that throws is logged, and the next operations are still run.
+     * The thread stops when the queue has been idle for a while, and is started again by the next operation.
+     */
+
+    private static final String TAG = "GeofenceOperationQueue";
+
+    /** Default maximum number of submitted operations waiting to be run */
+    static final int DEFAULT_CAPACITY = 256;
+
+    private static final long KEEP_ALIVE_SECONDS = 30;
+
+    private final ThreadPoolExecutor mExecutor;
+    // one permit per submitted operation that can wait to be run
+    private final Semaphore mBacklogPermits;
+    private volatile Thread mThread;
+
+    /**
+     * Create a queue
+     * @param name the name of the thread of the queue
+     * @param capacity the maximum number of submitted operations waiting to be run
+     */
+    GeofenceOperationQueue(@NonNull final String name, int capacity) {
+        mBacklogPermits = new Semaphore(capacity);
+        mExecutor = new ThreadPoolExecutor(1, 1, KEEP_ALIVE_SECONDS, TimeUnit.SECONDS,
+                new LinkedBlockingQueue<Runnable>(),
+                new ThreadFactory() {
+                    @Override
+                    public Thread newThread(@NonNull Runnable runnable) {
+                        Thread thread = new Thread(runnable, name);
+                        thread.setDaemon(true);
+                        mThread = thread;
+                        return thread;
+                    }
+                });
+        mExecutor.allowCoreThreadTimeOut(true);
+    }
+
+    /**
+     * Run an operation after the operations already submitted, without waiting.
+     * @param operation the operation
+     * @return true if the operation has been run or queued, false if it has been rejected because the backlog is full
+     */
+    boolean submit(@NonNull final Runnable operation) {
+        boolean accepted = true;
+        if (Thread.currentThread() == mThread) {
+            runGuarded(operation);
+        } else if (!mBacklogPermits.tryAcquire()) {
+            GeofenceLog.e(TAG, "Operation rejected, the backlog is full");
+            accepted = false;
+        } else {
+            try {
+                mExecutor.execute(new Runnable() {
+                    @Override
+                    public void run() {
+                        try {
+                            runGuarded(operation);
+                        } finally {
+                            mBacklogPermits.release();
+                        }
+                    }
+                });
+            } catch (RejectedExecutionException e) {
+                mBacklogPermits.release();
+                GeofenceLog.e(TAG, "Operation rejected", e);
+                accepted = false;
+            }
+        }
+        return accepted;
+    }
+
+    /**
+     * Run an operation after the operations already submitted, without waiting even if the backlog is full.
+     * It is meant for the results of the operations, which should not be blocked by the operations waiting for them.
+     * @param operation the operation
+     */
+    void post(@NonNull final Runnable operation) {
+        if (Thread.currentThread() == mThread) {
+            runGuarded(operation);
+        } else {
+            mExecutor.execute(new Runnable() {
+                @Override
+                public void run() {
+                    runGuarded(operation);
+                }
+            });
+        }
+    }
+
+    private static void runGuarded(@NonNull Runnable operation) {
+        try {
+            operation.run();
+        } catch (RuntimeException e) {
+            // keep the thread for the next operations
+            GeofenceLog.e(TAG, "Operation failed", e);
+        }
+    }
+}
@@ -0,0 +1,106 @@
+package com.sousoum.libgeofencehelper;
+
+import java.util.ArrayList;
+import java.util.Collection;
+import java.util.Collections;
+import java.util.HashMap;
+import java.util.List;
+
+class GeofenceOperationTracker {
+
+    /**
+     * Package local class that completes the futures of the pending operations with the results of the synchronizers.
+     * A geofence can be part of several pending operations, they all receive its next status.
+     * Adding a geofence cancels its pending removals, and removing it cancels its pending additions.
+     */
+
+    private final HashMap<String, ArrayList<GeofenceOperationFuture>> mPendingAdds = new HashMap<>();
+    private final HashMap<String, ArrayList<GeofenceOperationFuture>> mPendingRemoves = new HashMap<>();
+
+    /**
+     * Track the pending geofences of an addition
+     * @param future the future of the addition
+     */
+    void trackAdds(@NonNull GeofenceOperationFuture future) {
+        ArrayList<String> geofenceIds = future.getPendingIds();
+        track(mPendingAdds, geofenceIds, future);
+        complete(mPendingRemoves, geofenceIds, GeofencingBackend.STATUS_CANCELED);
+    }
+
+    /**
+     * Track the pending geofences of a removal
+     * @param future the future of the removal
+     */
+    void trackRemoves(@NonNull GeofenceOperationFuture future) {
+        ArrayList<String> geofenceIds = future.getPendingIds();
+        track(mPendingRemoves, geofenceIds, future);
+        complete(mPendingAdds, geofenceIds, GeofencingBackend.STATUS_CANCELED);
+    }
+
+    /**
+     * Give the result of the addition of a geofence to the pending operations
+     * @param geofenceId the id of the geofence
+     * @param statusCode the status code of the addition
+     */
+    void onAddStatus(@NonNull String geofenceId, int statusCode) {
+        complete(mPendingAdds, Collections.singletonList(geofenceId), statusCode);
+    }
+
+    /**
+     * Give the result of the removal of a geofence to the pending operations
+     * @param geofenceId the id of the geofence
+     * @param statusCode the status code of the removal
+     */
+    void onRemoveStatus(@NonNull String geofenceId, int statusCode) {
+        complete(mPendingRemoves, Collections.singletonList(geofenceId), statusCode);
+    }
+
+    /**
+     * Give a failure to all the pending operations, for example when the backend could not be connected.
+     * The geofences stay in the stores, they are synchronized by the next connection.
+     * @param statusCode the status code of the failure
+     */
+    void failAll(int statusCode) {
+        ArrayList<String> addIds;
+        ArrayList<String> removeIds;
+        synchronized (this) {
+            addIds = new ArrayList<>(mPendingAdds.keySet());
+            removeIds = new ArrayList<>(mPendingRemoves.keySet());
+        }
+        complete(mPendingAdds, addIds, statusCode);
+        complete(mPendingRemoves, removeIds, statusCode);
+    }
+
+    private synchronized void track(@NonNull HashMap<String, ArrayList<GeofenceOperationFuture>> pending,
+                                    @NonNull Collection<String> geofenceIds, @NonNull GeofenceOperationFuture future) {
+        for (String geofenceId : geofenceIds) {
+            ArrayList<GeofenceOperationFuture> futures = pending.get(geofenceId);
+            if (futures == null) {
+                futures = new ArrayList<>(1);
+                pending.put(geofenceId, futures);
+            }
+            futures.add(future);
+        }
+    }
+
+    private void complete(@NonNull HashMap<String, ArrayList<GeofenceOperationFuture>> pending,
+                          @NonNull List<String> geofenceIds, int statusCode) {
+        // the callbacks of the futures are called without holding the lock
+        ArrayList<String> completedIds = new ArrayList<>();
+        ArrayList<ArrayList<GeofenceOperationFuture>> completedFutures = new ArrayList<>();
+        synchronized (this) {
+            for (String geofenceId : geofenceIds) {
+                ArrayList<GeofenceOperationFuture> futures = pending.remove(geofenceId);
+                if (futures != null) {
+                    completedIds.add(geofenceId);
+                    completedFutures.add(futures);
+                }
+            }
+        }
+        for (int i = 0; i < completedIds.size(); i++) {
+            for (GeofenceOperationFuture future : completedFutures.get(i)) {
+                future.setStatus(completedIds.get(i), statusCode);
+            }
+        }
+    }
+}
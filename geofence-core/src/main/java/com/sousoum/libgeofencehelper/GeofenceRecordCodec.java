@@ -0,0 +1,286 @@
+package com.sousoum.libgeofencehelper;
+
+import java.io.ByteArrayInputStream;
+import java.io.ByteArrayOutputStream;
+import java.io.DataInputStream;
+import java.io.DataOutputStream;
+import java.io.IOException;
+import java.nio.charset.Charset;
+
+final class GeofenceRecordCodec {
+
+    /**
+     * Package local class that encodes a StorableGeofence into the body of a record of a {@link GeofenceRecordFile}.
+     * A record body either only marks the presence of an id, or holds a whole geofence.
+     * The body of a polygon geofence is the body of its covering circle followed by its vertices.
+     * The additional data are at the end of the body, prefixed by their length, so that the geometry can be decoded without them:
+     * they are kept encoded in the geofence until they are accessed.
+     * The bodies written before this layout have the additional data in the middle, they are still decoded, eagerly.
+     * Each additional data entry is its key, the one byte type of its value (see {@link GeofenceAttributes}) and its value.
+     */
+
+    private static final String TAG = "GeofenceRecordCodec";
+
+    private static final byte KIND_ID_ONLY = 0;
+    private static final byte KIND_GEOFENCE = 1;
+    private static final byte KIND_POLYGON = 2;
+    private static final byte KIND_GEOFENCE_LAZY_DATA = 3;
+    private static final byte KIND_POLYGON_LAZY_DATA = 4;
+
+    private static final Charset UTF8 = Charset.forName("UTF-8");
+
+    private static final byte[] ID_ONLY_BODY = new byte[] { KIND_ID_ONLY };
+
+    private GeofenceRecordCodec() {
+    }
+
+    /**
+     * @return the body of a record that only marks the presence of its id
+     */
+    @NonNull
+    static byte[] encodeIdOnly() {
+        return ID_ONLY_BODY.clone();
+    }
+
+    /**
+     * Encode a geofence.
+     * @param geofence the geofence to encode
+     * @return the body of the record
+     */
+    @NonNull
+    static byte[] encode(@NonNull StorableGeofence geofence) {
+        ByteArrayOutputStream bytes = new ByteArrayOutputStream(128);
+        DataOutputStream out = new DataOutputStream(bytes);
+        try {
+            boolean isPolygon = geofence instanceof StorablePolygonGeofence;
+            out.writeByte(isPolygon ? KIND_POLYGON_LAZY_DATA : KIND_GEOFENCE_LAZY_DATA);
+            writeString(out, geofence.getPendingIntentClassName());
+            out.writeDouble(geofence.getLatitude());
+            out.writeDouble(geofence.getLongitude());
+            out.writeFloat(geofence.getRadius());
+            out.writeLong(geofence.getExpirationDuration());
+            out.writeLong(geofence.getExpirationDateInMs());
+            out.writeInt(geofence.getLoiteringDelay());
+            out.writeInt(geofence.getTransitionType());
+            if (isPolygon) {
+                StorablePolygonGeofence polygon = (StorablePolygonGeofence) geofence;
+                double[] latitudes = polygon.getVertexLatitudes();
+                double[] longitudes = polygon.getVertexLongitudes();
+                out.writeInt(latitudes.length);
+                for (int i = 0; i < latitudes.length; i++) {
+                    out.writeDouble(latitudes[i]);
+                    out.writeDouble(longitudes[i]);
+                }
+            }
+
+            // copy the additional data that have not been decoded as is
+            byte[] payload = geofence.getAdditionalDataPayload();
+            if (payload == null) {
+                payload = encodeAdditionalData(geofence.getAttributes());
+            }
+            out.writeInt(payload.length);
+            out.write(payload);
+        } catch (IOException e) {
+            // can not happen when writing to a byte array
+            throw new IllegalStateException(e);
+        }
+        return bytes.toByteArray();
+    }
+
+    /**
+     * Decode a record body
+     * @param geofenceId the id of the record
+     * @param body the body of the record
+     * @return the geofence, or null if the record only marks the presence of its id
+     * @throws IOException if the body is corrupted
+     */
+    static StorableGeofence decode(@NonNull String geofenceId, @NonNull byte[] body) throws IOException {
+        StorableGeofence geofence = null;
+        DataInputStream in = new DataInputStream(new ByteArrayInputStream(body));
+        byte kind = in.readByte();
+        if (kind == KIND_GEOFENCE || kind == KIND_POLYGON || kind == KIND_GEOFENCE_LAZY_DATA || kind == KIND_POLYGON_LAZY_DATA) {
+            boolean isPolygon = kind == KIND_POLYGON || kind == KIND_POLYGON_LAZY_DATA;
+            boolean isLazy = kind == KIND_GEOFENCE_LAZY_DATA || kind == KIND_POLYGON_LAZY_DATA;
+            String pendingIntentClassName = readString(in);
+            double latitude = in.readDouble();
+            double longitude = in.readDouble();
+            float radius = in.readFloat();
+            long expiration = in.readLong();
+            long expirationDate = in.readLong();
+            int loiteringDelay = in.readInt();
+            int transition = in.readInt();
+            GeofenceAttributes attributes = isLazy ? null : readAdditionalData(in);
+
+            if (isPolygon) {
+                int vertexCount = in.readInt();
+                if (vertexCount < 3 || vertexCount > body.length / 16) {
+                    throw new IOException("Bad polygon vertex count " + vertexCount);
+                }
+                double[] latitudes = new double[vertexCount];
+                double[] longitudes = new double[vertexCount];
+                for (int i = 0; i < vertexCount; i++) {
+                    latitudes[i] = in.readDouble();
+                    longitudes[i] = in.readDouble();
+                }
+                geofence = new StorablePolygonGeofence(geofenceId, pendingIntentClassName, latitudes, longitudes, latitude, longitude, radius,
+                        expiration, expirationDate, loiteringDelay, transition, attributes);
+            } else {
+                geofence = new StorableGeofence(geofenceId, pendingIntentClassName, latitude, longitude, radius,
+                        expiration, expirationDate, loiteringDelay, transition, attributes);
+            }
+
+            if (isLazy) {
+                int payloadLength = in.readInt();
+                if (payloadLength < 4 || payloadLength > in.available()) {
+                    throw new IOException("Bad additional data length " + payloadLength);
+                }
+                byte[] payload = new byte[payloadLength];
+                in.readFully(payload);
+                geofence.setAdditionalDataPayload(payload);
+            }
+        } else if (kind != KIND_ID_ONLY) {
+            throw new IOException("Unknown record kind " + kind);
+        }
+        return geofence;
+    }
+
+    /**
+     * Decode additional data encoded in the body of a record
+     * @param geofenceId the id of the geofence, used in the logs
+     * @param payload the encoded additional data
+     * @return the additional data, or empty attributes if they are corrupted
+     */
+    @NonNull
+    static GeofenceAttributes decodeAdditionalData(@NonNull String geofenceId, @NonNull byte[] payload) {
+        GeofenceAttributes attributes;
+        try {
+            attributes = readAdditionalData(new DataInputStream(new ByteArrayInputStream(payload)));
+        } catch (IOException e) {
+            GeofenceLog.e(TAG, "Corrupted additional data for geofence " + geofenceId, e);
+            attributes = new GeofenceAttributes();
+        }
+        return attributes;
+    }
+
+    @NonNull
+    private static byte[] encodeAdditionalData(GeofenceAttributes attributes) throws IOException {
+        ByteArrayOutputStream bytes = new ByteArrayOutputStream();
+        DataOutputStream out = new DataOutputStream(bytes);
+        int count = attributes != null ? attributes.size() : 0;
+        out.writeInt(count);
+        for (int i = 0; i < count; i++) {
+            byte type = attributes.typeAt(i);
+            writeString(out, attributes.keyAt(i));
+            out.writeByte(type);
+            switch (type) {
+                case GeofenceAttributes.TYPE_STRING:
+                    writeString(out, (String) attributes.objectAt(i));
+                    break;
+                case GeofenceAttributes.TYPE_LONG:
+                case GeofenceAttributes.TYPE_DOUBLE:
+                    out.writeLong(attributes.bitsAt(i));
+                    break;
+                case GeofenceAttributes.TYPE_INTEGER:
+                case GeofenceAttributes.TYPE_FLOAT:
+                    out.writeInt((int) attributes.bitsAt(i));
+                    break;
+                case GeofenceAttributes.TYPE_BOOLEAN:
+                    out.writeBoolean(attributes.bitsAt(i) != 0);
+                    break;
+                case GeofenceAttributes.TYPE_BYTES:
+                    writeBytes(out, (byte[]) attributes.objectAt(i));
+                    break;
+                default:
+                    throw new IllegalStateException("Unknown attribute type " + type);
+            }
+        }
+        return bytes.toByteArray();
+    }
+
+    private static GeofenceAttributes readAdditionalData(DataInputStream in) throws IOException {
+        int count = in.readInt();
+        if (count < 0 || count > in.available()) {
+            throw new IOException("Bad additional data count " + count);
+        }
+        GeofenceAttributes attributes = new GeofenceAttributes(count);
+        for (int i = 0; i < count; i++) {
+            String key = readString(in);
+            if (key == null) {
+                throw new IOException("Null additional data key");
+            }
+            byte type = in.readByte();
+            switch (type) {
+                case GeofenceAttributes.TYPE_STRING:
+                    attributes.putString(key, readString(in));
+                    break;
+                case GeofenceAttributes.TYPE_LONG:
+                    attributes.putLong(key, in.readLong());
+                    break;
+                case GeofenceAttributes.TYPE_INTEGER:
+                    attributes.putInt(key, in.readInt());
+                    break;
+                case GeofenceAttributes.TYPE_FLOAT:
+                    attributes.putFloat(key, in.readFloat());
+                    break;
+                case GeofenceAttributes.TYPE_BOOLEAN:
+                    attributes.putBoolean(key, in.readBoolean());
+                    break;
+                case GeofenceAttributes.TYPE_DOUBLE:
+                    attributes.putDouble(key, in.readDouble());
+                    break;
+                case GeofenceAttributes.TYPE_BYTES:
+                    attributes.putBytes(key, readBytes(in));
+                    break;
+                default:
+                    throw new IOException("Unknown additional data type " + type);
+            }
+        }
+        return attributes;
+    }
+
+    private static void writeBytes(DataOutputStream out, byte[] bytes) throws IOException {
+        if (bytes == null) {
+            out.writeInt(-1);
+        } else {
+            out.writeInt(bytes.length);
+            out.write(bytes);
+        }
+    }
+
+    private static byte[] readBytes(DataInputStream in) throws IOException {
+        byte[] bytes = null;
+        int length = in.readInt();
+        if (length > in.available()) {
+            throw new IOException("Bad byte array length " + length);
+        }
+        if (length >= 0) {
+            bytes = new byte[length];
+            in.readFully(bytes);
+        }
+        return bytes;
+    }
+
+    private static void writeString(DataOutputStream out, String str) throws IOException {
+        if (str == null) {
+            out.writeInt(-1);
+        } else {
+            byte[] strBytes = str.getBytes(UTF8);
+            out.writeInt(strBytes.length);
+            out.write(strBytes);
+        }
+    }
+
+    private static String readString(DataInputStream in) throws IOException {
+        String str = null;
+        int length = in.readInt();
+        if (length > in.available()) {
+            throw new IOException("Bad string length " + length);
+        }
+        if (length >= 0) {
+            byte[] strBytes = new byte[length];
+            in.readFully(strBytes);
+            str = new String(strBytes, UTF8);
+        }
+        return str;
+    }
+}
@@ -0,0 +1,518 @@
+package com.sousoum.libgeofencehelper;
+
+import java.io.ByteArrayOutputStream;
+import java.io.DataOutputStream;
+import java.io.File;
+import java.io.FileInputStream;
+import java.io.IOException;
+import java.io.RandomAccessFile;
+import java.nio.ByteBuffer;
+import java.nio.channels.FileChannel;
+import java.nio.charset.Charset;
+import java.util.ArrayList;
+import java.util.Collection;
+import java.util.Collections;
+import java.util.HashMap;
+import java.util.LinkedHashMap;
+import java.util.Map;
+import java.util.Set;
+import java.util.zip.CRC32;
+
+class GeofenceRecordFile {
+
+    /**
+     * Package local class that keeps a set of records in a single binary file.
+     * A record is identified by a string id and holds an opaque body.
+     *
+     * The file starts with a header (magic, version) followed by slots. Each slot is length-prefixed:
+     *   [int capacity][byte state][int checksum][short idLength][id bytes][int bodyLength][body][padding]
+     * where capacity is the number of bytes following the capacity field, and checksum is the CRC32 of the bytes from idLength to the end of the body.
+     * Only the slots written by the previous versions, which could be rewritten in place, have a padding.
+     * Files of the first version have no checksum, they are rewritten in the current version on their first update.
+     *
+     * The whole file is loaded with one sequential read. A live slot is never overwritten: the new version of a record
+     * is appended in a new slot at the end of the file, and only then the old slot is marked as dead.
+     * If the process dies in between, the later slot wins when the file is loaded, and a torn append is detected
+     * by its checksum or its capacity: the previous version of the record is kept.
+     * An update writes all its new content with one write at the end of the file, then marks the replaced slots as dead
+     * by writing their state byte only, so the untouched records are never rewritten.
+     * A slot that can not be read back is skipped, the other records are kept.
+     * Dead slots are reclaimed by compacting the file when they take more space than the live ones.
+     *
+     * This class is not thread safe, callers must synchronize the accesses.
+     */
+
+    private static final String TAG = "GeofenceRecordFile";
+
+    private static final int MAGIC = 0x47464853; // "GFHS"
+    private static final int VERSION = 2;
+    private static final int VERSION_WITHOUT_CHECKSUM = 1;
+    private static final int HEADER_SIZE = 8;
+
+    private static final byte STATE_DEAD = 0;
+    private static final byte STATE_LIVE = 1;
+
+    // bytes of a slot that are not the id nor the body: state, checksum, id length and body length
+    private static final int SLOT_OVERHEAD = 1 + 4 + 2 + 4;
+    // same for the slots of the first version, which have no checksum
+    private static final int SLOT_OVERHEAD_WITHOUT_CHECKSUM = 1 + 2 + 4;
+    // compaction is not worth it under this amount of dead bytes
+    private static final int MIN_COMPACTION_DEAD_BYTES = 32 * 1024;
+
+    private static final Charset UTF8 = Charset.forName("UTF-8");
+
+    private static class Slot {
+        final int offset; // offset of the capacity field
+        final int capacity;
+
+        Slot(int offset, int capacity) {
+            this.offset = offset;
+            this.capacity = capacity;
+        }
+    }
+
+    private final File mFile;
+
+    // id -> slot, null until the file has been loaded
+    private HashMap<String, Slot> mIndex;
+    // slots still live on the disk that are not in the index: older duplicates left by a crash and slots that could not be read.
+    // They are marked as dead by the next update.
+    private ArrayList<Slot> mObsoleteSlots;
+    // true if the slots of the file have a checksum
+    private boolean mChecksummed;
+    // end of the valid data in the file
+    private int mLength;
+    // bytes taken by dead and obsolete slots
+    private int mDeadBytes;
+
+    GeofenceRecordFile(@NonNull File file) {
+        mFile = file;
+    }
+
+    /**
+     * @return true if the file exists on the disk
+     */
+    boolean exists() {
+        return mFile.exists();
+    }
+
+    /**
+     * Get the ids of all live records
+     * @return an unmodifiable view of the ids
+     * @throws IOException if the file can not be read
+     */
+    @NonNull
+    Set<String> ids() throws IOException {
+        ensureLoaded();
+        return Collections.unmodifiableSet(mIndex.keySet());
+    }
+
+    /**
+     * @param id the id of the record
+     * @return true if a live record has this id
+     * @throws IOException if the file can not be read
+     */
+    boolean contains(@NonNull String id) throws IOException {
+        ensureLoaded();
+        return mIndex.containsKey(id);
+    }
+
+    /**
+     * Read the body of one record
+     * @param id the id of the record
+     * @return the body of the record, null if there is no record with this id
+     * @throws IOException if the file can not be read, or if the slot of the record is corrupted
+     */
+    byte[] read(@NonNull String id) throws IOException {
+        ensureLoaded();
+        byte[] body = null;
+        Slot slot = mIndex.get(id);
+        if (slot != null) {
+            byte[] content = new byte[4 + slot.capacity];
+            RandomAccessFile raf = new RandomAccessFile(mFile, "r");
+            try {
+                raf.seek(slot.offset);
+                raf.readFully(content);
+            } finally {
+                raf.close();
+            }
+            ByteBuffer buffer = ByteBuffer.wrap(content);
+            buffer.position(4 + 1);
+            int checksum = mChecksummed ? buffer.getInt() : 0;
+            int recordStart = buffer.position();
+            skipId(buffer);
+            body = readBody(buffer);
+            if (mChecksummed) {
+                verifyChecksum(buffer, recordStart, checksum);
+            }
+        }
+        return body;
+    }
+
+    /**
+     * Read all live records with a single sequential read of the file
+     * @return a map of id -> body, in file order
+     * @throws IOException if the file can not be read
+     */
+    @NonNull
+    LinkedHashMap<String, byte[]> readAll() throws IOException {
+        LinkedHashMap<String, byte[]> records = new LinkedHashMap<>();
+        load(records);
+        return records;
+    }
+
+    /**
+     * Write and delete records.
+     * The written records are appended with a single write at the end of the file.
+     * The slots of the deleted records and the previous slots of the written ones are then marked as dead,
+     * each with a write of its state byte at its own offset: the cost only depends on the changed records.
+     * When records are both appended and killed, the appended ones are synced to the disk first, once per update.
+     * @param writes map of id -> body of the records to write
+     * @param deletes ids of the records to delete. Unknown ids are ignored.
+     * @throws IOException if the file can not be written
+     */
+    void update(@NonNull Map<String, byte[]> writes, @NonNull Collection<String> deletes) throws IOException {
+        ensureLoaded();
+        if (!writes.isEmpty() || !deletes.isEmpty()) {
+            if (!mChecksummed && mLength > 0) {
+                // the slots of the current version can not be appended to a file of the first version, upgrade the whole file first
+                rewrite(readAll());
+            }
+
+            RandomAccessFile raf = new RandomAccessFile(mFile, "rw");
+            try {
+                if (raf.length() > mLength) {
+                    // drop a torn tail left by a previous crash
+                    raf.setLength(mLength);
+                }
+
+                // slots to mark as dead once the new content is written
+                ArrayList<Slot> killedSlots = new ArrayList<>();
+                for (String id : deletes) {
+                    Slot slot = mIndex.remove(id);
+                    if (slot != null) {
+                        killedSlots.add(slot);
+                    }
+                }
+
+                int appendStart = mLength;
+                ByteArrayOutputStream appended = new ByteArrayOutputStream();
+                DataOutputStream appendedOut = new DataOutputStream(appended);
+                if (appendStart == 0) {
+                    appendedOut.writeInt(MAGIC);
+                    appendedOut.writeInt(VERSION);
+                    mChecksummed = true;
+                }
+                HashMap<String, Slot> appendedSlots = new HashMap<>();
+                for (Map.Entry<String, byte[]> entry : writes.entrySet()) {
+                    String id = entry.getKey();
+                    byte[] idBytes = id.getBytes(UTF8);
+                    if (idBytes.length > 0xFFFF) {
+                        throw new IOException("Record id too long " + id);
+                    }
+                    byte[] body = entry.getValue();
+                    int capacity = SLOT_OVERHEAD + idBytes.length + body.length;
+
+                    // the previous version stays live until the new one is written
+                    Slot slot = mIndex.get(id);
+                    if (slot != null) {
+                        killedSlots.add(slot);
+                    }
+                    appendedSlots.put(id, new Slot(appendStart + appendedOut.size(), capacity));
+                    writeSlot(appendedOut, capacity, idBytes, body);
+                }
+
+                FileChannel channel = raf.getChannel();
+                if (appendedOut.size() > 0) {
+                    writeAt(channel, appended.toByteArray(), appendStart);
+                }
+                mLength = appendStart + appendedOut.size();
+                mIndex.putAll(appendedSlots);
+
+                if (!killedSlots.isEmpty() || !mObsoleteSlots.isEmpty()) {
+                    if (appendedOut.size() > 0) {
+                        // the new versions must reach the disk before their previous slots die
+                        channel.force(false);
+                    }
+                    byte[] dead = new byte[] {STATE_DEAD};
+                    for (Slot slot : killedSlots) {
+                        writeAt(channel, dead, slot.offset + 4);
+                        mDeadBytes += 4 + slot.capacity;
+                    }
+                    // already counted as dead bytes when loaded
+                    for (Slot slot : mObsoleteSlots) {
+                        writeAt(channel, dead, slot.offset + 4);
+                    }
+                }
+                mObsoleteSlots.clear();
+            } finally {
+                raf.close();
+            }
+
+            compactIfNeeded();
+        }
+    }
+
+    /**
+     * Delete the file and forget everything about its content
+     */
+    void reset() {
+        if (mFile.exists() && !mFile.delete()) {
+            mFile.deleteOnExit();
+        }
+        mIndex = new HashMap<>();
+        mObsoleteSlots = new ArrayList<>();
+        mChecksummed = true;
+        mLength = 0;
+        mDeadBytes = 0;
+    }
+
+    private void ensureLoaded() throws IOException {
+        if (mIndex == null) {
+            load(null);
+        }
+    }
+
+    /**
+     * Load the file in memory and rebuild the index.
+     * The slots that can not be read are skipped, a torn slot at the end of the file ends the loading.
+     * @param records if not null, filled with the bodies of all live records
+     * @throws IOException if the file can not be read or if it is not a record file
+     */
+    private void load(Map<String, byte[]> records) throws IOException {
+        HashMap<String, Slot> index = new HashMap<>();
+        ArrayList<Slot> obsoleteSlots = new ArrayList<>();
+        boolean checksummed = true;
+        int length = 0;
+        int deadBytes = 0;
+
+        if (mFile.exists()) {
+            byte[] content = readFile();
+            ByteBuffer buffer = ByteBuffer.wrap(content);
+            if (content.length >= HEADER_SIZE) {
+                int magic = buffer.getInt();
+                int version = buffer.getInt();
+                if (magic != MAGIC || (version != VERSION && version != VERSION_WITHOUT_CHECKSUM)) {
+                    throw new IOException("Unknown store file format " + mFile);
+                }
+                checksummed = version == VERSION;
+                int slotOverhead = checksummed ? SLOT_OVERHEAD : SLOT_OVERHEAD_WITHOUT_CHECKSUM;
+
+                length = HEADER_SIZE;
+                while (buffer.remaining() >= 4 + slotOverhead) {
+                    int offset = buffer.position();
+                    int capacity = buffer.getInt();
+                    if (capacity < slotOverhead || capacity > buffer.remaining()) {
+                        // torn write at the end of the file, ignore the rest
+                        break;
+                    }
+                    int next = buffer.position() + capacity;
+                    byte state = buffer.get();
+                    if (state == STATE_LIVE) {
+                        // the lengths of the slot can not go past its end
+                        buffer.limit(next);
+                        try {
+                            int checksum = checksummed ? buffer.getInt() : 0;
+                            int recordStart = buffer.position();
+                            String id = readId(buffer);
+                            byte[] body = null;
+                            if (records != null) {
+                                body = readBody(buffer);
+                            } else {
+                                skipBody(buffer);
+                            }
+                            if (checksummed) {
+                                verifyChecksum(buffer, recordStart, checksum);
+                            }
+
+                            Slot previous = index.put(id, new Slot(offset, capacity));
+                            if (previous != null) {
+                                // the process died between the append of a new slot and the death of the old one
+                                obsoleteSlots.add(previous);
+                                deadBytes += 4 + previous.capacity;
+                            }
+                            if (records != null) {
+                                records.put(id, body);
+                            }
+                        } catch (IOException e) {
+                            GeofenceLog.e(TAG, "Skip the corrupted slot at " + offset + " of " + mFile.getName(), e);
+                            obsoleteSlots.add(new Slot(offset, capacity));
+                            deadBytes += 4 + capacity;
+                        } finally {
+                            buffer.limit(content.length);
+                        }
+                    } else {
+                        deadBytes += 4 + capacity;
+                    }
+                    buffer.position(next);
+                    length = next;
+                }
+            }
+        }
+
+        mIndex = index;
+        mObsoleteSlots = obsoleteSlots;
+        mChecksummed = checksummed;
+        mLength = length;
+        mDeadBytes = deadBytes;
+    }
+
+    private byte[] readFile() throws IOException {
+        FileInputStream in = new FileInputStream(mFile);
+        try {
+            long fileLength = mFile.length();
+            if (fileLength > Integer.MAX_VALUE) {
+                throw new IOException("Store file too big " + mFile);
+            }
+            byte[] content = new byte[(int) fileLength];
+            int read = 0;
+            while (read < content.length) {
+                int count = in.read(content, read, content.length - read);
+                if (count < 0) {
+                    break;
+                }
+                read += count;
+            }
+            if (read < content.length) {
+                byte[] truncated = new byte[read];
+                System.arraycopy(content, 0, truncated, 0, read);
+                content = truncated;
+            }
+            return content;
+        } finally {
+            in.close();
+        }
+    }
+
+    /**
+     * Write bytes at their own offset of the file, without touching the bytes around them
+     */
+    private static void writeAt(FileChannel channel, byte[] bytes, long offset) throws IOException {
+        ByteBuffer buffer = ByteBuffer.wrap(bytes);
+        while (buffer.hasRemaining()) {
+            channel.write(buffer, offset + buffer.position());
+        }
+    }
+
+    /**
+     * Rewrite the file without its dead slots if they take too much space
+     */
+    private void compactIfNeeded() throws IOException {
+        if (mDeadBytes >= MIN_COMPACTION_DEAD_BYTES && mDeadBytes > (mLength - HEADER_SIZE) / 2) {
+            rewrite(readAll());
+        }
+    }
+
+    /**
+     * Replace the file by a new one in the current version that only holds the given records
+     * @param records map of id -> body of the records
+     */
+    private void rewrite(@NonNull Map<String, byte[]> records) throws IOException {
+        File tmpFile = new File(mFile.getPath() + ".tmp");
+        ByteArrayOutputStream content = new ByteArrayOutputStream(Math.max(HEADER_SIZE, mLength - mDeadBytes));
+        DataOutputStream out = new DataOutputStream(content);
+        out.writeInt(MAGIC);
+        out.writeInt(VERSION);
+        for (Map.Entry<String, byte[]> entry : records.entrySet()) {
+            byte[] idBytes = entry.getKey().getBytes(UTF8);
+            writeSlot(out, SLOT_OVERHEAD + idBytes.length + entry.getValue().length, idBytes, entry.getValue());
+        }
+
+        RandomAccessFile raf = new RandomAccessFile(tmpFile, "rw");
+        try {
+            raf.setLength(0);
+            raf.write(content.toByteArray());
+            raf.getFD().sync();
+        } finally {
+            raf.close();
+        }
+        if (!tmpFile.renameTo(mFile)) {
+            throw new IOException("Could not replace " + mFile + " by its rewritten version");
+        }
+
+        load(null);
+    }
+
+    private static void writeSlot(DataOutputStream out, int capacity, byte[] idBytes, byte[] body) throws IOException {
+        out.writeInt(capacity);
+        out.writeByte(STATE_LIVE);
+        out.writeInt(checksum(idBytes, body));
+        out.writeShort(idBytes.length);
+        out.write(idBytes);
+        out.writeInt(body.length);
+        out.write(body);
+    }
+
+    /**
+     * Compute the checksum of a record, over the same bytes as the ones written in its slot
+     */
+    private static int checksum(byte[] idBytes, byte[] body) {
+        CRC32 crc = new CRC32();
+        crc.update(idBytes.length >>> 8);
+        crc.update(idBytes.length);
+        crc.update(idBytes);
+        crc.update(body.length >>> 24);
+        crc.update(body.length >>> 16);
+        crc.update(body.length >>> 8);
+        crc.update(body.length);
+        crc.update(body);
+        return (int) crc.getValue();
+    }
+
+    /**
+     * Check the checksum of a record that has just been read
+     * @param buffer the buffer, positioned at the end of the body
+     * @param recordStart the position of the id length of the record
+     * @param checksum the checksum written in the slot
+     * @throws IOException if the record does not match its checksum
+     */
+    private static void verifyChecksum(ByteBuffer buffer, int recordStart, int checksum) throws IOException {
+        CRC32 crc = new CRC32();
+        crc.update(buffer.array(), recordStart, buffer.position() - recordStart);
+        if ((int) crc.getValue() != checksum) {
+            throw new IOException("Bad record checksum");
+        }
+    }
+
+    private static String readId(ByteBuffer buffer) throws IOException {
+        int idLength = readIdLength(buffer);
+        String id = new String(buffer.array(), buffer.position(), idLength, UTF8);
+        buffer.position(buffer.position() + idLength);
+        return id;
+    }
+
+    private static void skipId(ByteBuffer buffer) throws IOException {
+        int idLength = readIdLength(buffer);
+        buffer.position(buffer.position() + idLength);
+    }
+
+    private static int readIdLength(ByteBuffer buffer) throws IOException {
+        int idLength = buffer.getShort() & 0xFFFF;
+        if (idLength > buffer.remaining()) {
+            throw new IOException("Bad record id length " + idLength);
+        }
+        return idLength;
+    }
+
+    private static byte[] readBody(ByteBuffer buffer) throws IOException {
+        byte[] body = new byte[readBodyLength(buffer)];
+        buffer.get(body);
+        return body;
+    }
+
+    private static void skipBody(ByteBuffer buffer) throws IOException {
+        int bodyLength = readBodyLength(buffer);
+        buffer.position(buffer.position() + bodyLength);
+    }
+
+    private static int readBodyLength(ByteBuffer buffer) throws IOException {
+        if (buffer.remaining() < 4) {
+            throw new IOException("Missing record body length");
+        }
+        int bodyLength = buffer.getInt();
+        if (bodyLength < 0 || bodyLength > buffer.remaining()) {
+            throw new IOException("Bad record body length " + bodyLength);
+        }
+        return bodyLength;
+    }
+}
@@ -0,0 +1,359 @@
+package com.sousoum.libgeofencehelper;
+
+import java.util.ArrayList;
+import java.util.Collections;
+import java.util.Comparator;
+import java.util.HashMap;
+import java.util.List;
+import java.util.PriorityQueue;
+
+class GeofenceSpatialIndex {
+
+    /**
+     * Package local class that indexes geofences on a regular latitude/longitude grid.
+     * Each geofence is referenced by the cell of its center (used by the nearest and bounding box queries)
+     * and by all the cells covered by its circle (used by the containment query).
+     * Geofences whose circle covers too many cells are kept in a separate list that is always checked.
+     *
+     * This class is not thread safe, callers must synchronize the accesses.
+     */
+
+    // default size of a cell, about 1.1km along a meridian
+    static final double DEFAULT_CELL_SIZE_DEGREES = 0.01;
+
+    // above this number of covered cells, a geofence is considered as large
+    private static final int MAX_COVERED_CELLS = 256;
+
+    private static final Comparator<Neighbor> FARTHEST_FIRST = new Comparator<Neighbor>() {
+        @Override
+        public int compare(Neighbor lhs, Neighbor rhs) {
+            return Double.compare(rhs.distance, lhs.distance);
+        }
+    };
+
+    private static class Neighbor {
+        final StorableGeofence geofence;
+        final double distance;
+
+        Neighbor(StorableGeofence geofence, double distance) {
+            this.geofence = geofence;
+            this.distance = distance;
+        }
+    }
+
+    private final double mCellSize;
+    private final int mLatCells;
+    private final int mLonCells;
+
+    private final HashMap<String, StorableGeofence> mGeofences = new HashMap<>();
+    // cell -> geofences whose center is in the cell
+    private final HashMap<Long, ArrayList<StorableGeofence>> mCenterCells = new HashMap<>();
+    // cell -> geofences whose circle covers the cell
+    private final HashMap<Long, ArrayList<StorableGeofence>> mCoveredCells = new HashMap<>();
+    // geofences that cover more than MAX_COVERED_CELLS cells
+    private final ArrayList<StorableGeofence> mLargeGeofences = new ArrayList<>();
+
+    GeofenceSpatialIndex() {
+        this(DEFAULT_CELL_SIZE_DEGREES);
+    }
+
+    /**
+     * @param cellSizeDegrees the size of a cell of the grid, in degrees
+     */
+    GeofenceSpatialIndex(double cellSizeDegrees) {
+        mCellSize = cellSizeDegrees;
+        mLatCells = (int) Math.ceil(180 / cellSizeDegrees);
+        mLonCells = (int) Math.ceil(360 / cellSizeDegrees);
+    }
+
+    /**
+     * @return the number of indexed geofences
+     */
+    int size() {
+        return mGeofences.size();
+    }
+
+    /**
+     * Index a geofence. If a geofence with the same id is already indexed, it is replaced.
+     * @param geofence the geofence to index
+     */
+    void put(@NonNull StorableGeofence geofence) {
+        remove(geofence.getId());
+        mGeofences.put(geofence.getId(), geofence);
+
+        addToCell(mCenterCells, cellKey(latIndex(geofence.getLatitude()), lonIndex(geofence.getLongitude())), geofence);
+
+        int[] cover = coveredCells(geofence);
+        if (cover == null) {
+            mLargeGeofences.add(geofence);
+        } else {
+            for (int lat = cover[0]; lat <= cover[1]; lat++) {
+                for (int lon = cover[2]; lon <= cover[3]; lon++) {
+                    addToCell(mCoveredCells, cellKey(lat, floorMod(lon, mLonCells)), geofence);
+                }
+            }
+        }
+    }
+
+    /**
+     * Remove a geofence from the index
+     * @param geofenceId the id of the geofence to remove. Unknown ids are ignored.
+     */
+    void remove(@NonNull String geofenceId) {
+        StorableGeofence geofence = mGeofences.remove(geofenceId);
+        if (geofence != null) {
+            removeFromCell(mCenterCells, cellKey(latIndex(geofence.getLatitude()), lonIndex(geofence.getLongitude())), geofence);
+
+            int[] cover = coveredCells(geofence);
+            if (cover == null) {
+                mLargeGeofences.remove(geofence);
+            } else {
+                for (int lat = cover[0]; lat <= cover[1]; lat++) {
+                    for (int lon = cover[2]; lon <= cover[3]; lon++) {
+                        removeFromCell(mCoveredCells, cellKey(lat, floorMod(lon, mLonCells)), geofence);
+                    }
+                }
+            }
+        }
+    }
+
+    /**
+     * Remove all geofences from the index
+     */
+    void clear() {
+        mGeofences.clear();
+        mCenterCells.clear();
+        mCoveredCells.clear();
+        mLargeGeofences.clear();
+    }
+
+    /**
+     * Find the geofences that contain a point
+     * @param latitude latitude of the point in degrees
+     * @param longitude longitude of the point in degrees
+     * @return the geofences whose region contains the point (can not be null)
+     */
+    @NonNull
+    ArrayList<StorableGeofence> findContaining(double latitude, double longitude) {
+        ArrayList<StorableGeofence> result = new ArrayList<>();
+        ArrayList<StorableGeofence> candidates = mCoveredCells.get(cellKey(latIndex(latitude), lonIndex(longitude)));
+        if (candidates != null) {
+            addContaining(candidates, latitude, longitude, result);
+        }
+        addContaining(mLargeGeofences, latitude, longitude, result);
+        return result;
+    }
+
+    /**
+     * Find the geofences whose center is the nearest to a point
+     * @param latitude latitude of the point in degrees
+     * @param longitude longitude of the point in degrees
+     * @param count maximum number of geofences to return
+     * @return at most count geofences, sorted by increasing distance between their center and the point (can not be null)
+     */
+    @NonNull
+    ArrayList<StorableGeofence> findNearest(double latitude, double longitude, int count) {
+        int wanted = Math.min(count, mGeofences.size());
+        PriorityQueue<Neighbor> best = new PriorityQueue<>(Math.max(1, wanted + 1), FARTHEST_FIRST);
+
+        if (wanted > 0) {
+            int centerLat = latIndex(latitude);
+            int centerLon = lonIndex(longitude);
+            int maxRing = Math.max(mLatCells, mLonCells / 2 + 1);
+            int visitedCells = 0;
+            boolean done = false;
+            for (int ring = 0; ring <= maxRing && !done; ring++) {
+                if (visitedCells > mCenterCells.size()) {
+                    // the rings cost more than scanning all non empty cells
+                    best.clear();
+                    for (ArrayList<StorableGeofence> cell : mCenterCells.values()) {
+                        addNeighbors(cell, latitude, longitude, wanted, best);
+                    }
+                    break;
+                }
+
+                for (int dLat = -ring; dLat <= ring; dLat++) {
+                    int lat = centerLat + dLat;
+                    if (lat < 0 || lat >= mLatCells) {
+                        continue;
+                    }
+                    int lonStep = (Math.abs(dLat) == ring) ? 1 : Math.max(1, 2 * ring);
+                    for (int dLon = -ring; dLon <= ring; dLon += lonStep) {
+                        // when the ring is wider than the grid, only keep the offsets that give distinct cells
+                        if (dLon < -((mLonCells - 1) / 2) || dLon > mLonCells / 2) {
+                            continue;
+                        }
+                        visitedCells++;
+                        ArrayList<StorableGeofence> cell = mCenterCells.get(cellKey(lat, floorMod(centerLon + dLon, mLonCells)));
+                        if (cell != null) {
+                            addNeighbors(cell, latitude, longitude, wanted, best);
+                        }
+                    }
+                }
+
+                done = best.size() == wanted && best.peek().distance <= minDistanceOutsideRing(latitude, ring);
+            }
+        }
+
+        ArrayList<StorableGeofence> result = new ArrayList<>(best.size());
+        while (!best.isEmpty()) {
+            result.add(best.poll().geofence);
+        }
+        Collections.reverse(result);
+        return result;
+    }
+
+    /**
+     * Find the geofences whose center is in a bounding box
+     * @param minLatitude south edge of the box in degrees
+     * @param minLongitude west edge of the box in degrees
+     * @param maxLatitude north edge of the box in degrees
+     * @param maxLongitude east edge of the box in degrees. If it is less than minLongitude, the box crosses the antimeridian.
+     * @return the geofences whose center is in the box (can not be null)
+     */
+    @NonNull
+    ArrayList<StorableGeofence> findInBoundingBox(double minLatitude, double minLongitude, double maxLatitude, double maxLongitude) {
+        ArrayList<StorableGeofence> result = new ArrayList<>();
+        if (minLatitude <= maxLatitude) {
+            int minLat = latIndex(minLatitude);
+            int maxLat = latIndex(maxLatitude);
+            // unwrap the east edge when the box crosses the antimeridian
+            double eastLongitude = (minLongitude <= maxLongitude) ? maxLongitude : maxLongitude + 360;
+            int minLon = (int) Math.floor((minLongitude + 180) / mCellSize);
+            int maxLon = (int) Math.floor((eastLongitude + 180) / mCellSize);
+            int lonCount = Math.min(mLonCells, maxLon - minLon + 1);
+
+            if ((long) (maxLat - minLat + 1) * lonCount > mCenterCells.size()) {
+                // cheaper to check all non empty cells
+                for (ArrayList<StorableGeofence> cell : mCenterCells.values()) {
+                    addInBoundingBox(cell, minLatitude, minLongitude, maxLatitude, maxLongitude, result);
+                }
+            } else {
+                for (int lat = minLat; lat <= maxLat; lat++) {
+                    for (int i = 0; i < lonCount; i++) {
+                        ArrayList<StorableGeofence> cell = mCenterCells.get(cellKey(lat, floorMod(minLon + i, mLonCells)));
+                        if (cell != null) {
+                            addInBoundingBox(cell, minLatitude, minLongitude, maxLatitude, maxLongitude, result);
+                        }
+                    }
+                }
+            }
+        }
+        return result;
+    }
+
+    /**
+     * Compute a lower bound of the distance between a point and the cells that are outside a ring around the cell of the point
+     * @param latitude latitude of the point in degrees
+     * @param ring the ring, 0 being the cell of the point
+     * @return the lower bound in meters
+     */
+    private double minDistanceOutsideRing(double latitude, int ring) {
+        double gapDegrees = ring * mCellSize;
+        // distance to the parallels that bound the ring
+        double latBound = Math.toRadians(gapDegrees) * GeoMath.EARTH_RADIUS_M;
+        // distance to the meridians that bound the ring (cross track distance)
+        double lonGap = Math.toRadians(Math.min(90, gapDegrees));
+        double lonBound = Math.asin(Math.cos(Math.toRadians(latitude)) * Math.sin(lonGap)) * GeoMath.EARTH_RADIUS_M;
+        return Math.min(latBound, lonBound);
+    }
+
+    private static void addContaining(List<StorableGeofence> candidates, double latitude, double longitude, List<StorableGeofence> result) {
+        for (int i = 0; i < candidates.size(); i++) {
+            StorableGeofence geofence = candidates.get(i);
+            if (geofence.contains(latitude, longitude)) {
+                result.add(geofence);
+            }
+        }
+    }
+
+    private static void addNeighbors(List<StorableGeofence> candidates, double latitude, double longitude, int wanted, PriorityQueue<Neighbor> best) {
+        for (int i = 0; i < candidates.size(); i++) {
+            StorableGeofence geofence = candidates.get(i);
+            double distance = GeoMath.distance(latitude, longitude, geofence.getLatitude(), geofence.getLongitude());
+            if (best.size() < wanted) {
+                best.add(new Neighbor(geofence, distance));
+            } else if (distance < best.peek().distance) {
+                best.poll();
+                best.add(new Neighbor(geofence, distance));
+            }
+        }
+    }
+
+    private static void addInBoundingBox(List<StorableGeofence> candidates, double minLatitude, double minLongitude,
+                                         double maxLatitude, double maxLongitude, List<StorableGeofence> result) {
+        for (int i = 0; i < candidates.size(); i++) {
+            StorableGeofence geofence = candidates.get(i);
+            double lat = geofence.getLatitude();
+            double lon = geofence.getLongitude();
+            boolean inLon;
+            if (minLongitude <= maxLongitude) {
+                inLon = lon >= minLongitude && lon <= maxLongitude;
+            } else {
+                inLon = lon >= minLongitude || lon <= maxLongitude;
+            }
+            if (inLon && lat >= minLatitude && lat <= maxLatitude) {
+                result.add(geofence);
+            }
+        }
+    }
+
+    /**
+     * Compute the range of cells covered by the bounding box of the circle of a geofence
+     * @param geofence the geofence
+     * @return {minLat, maxLat, minLon, maxLon} where the longitude indexes are not wrapped, or null if the geofence covers too many cells
+     */
+    private int[] coveredCells(StorableGeofence geofence) {
+        int[] cover = null;
+        double dLat = GeoMath.metersToLatitudeDegrees(geofence.getRadius());
+        double maxAbsLat = Math.min(90, Math.abs(geofence.getLatitude()) + dLat);
+        double dLon = GeoMath.metersToLongitudeDegrees(geofence.getRadius(), maxAbsLat);
+        if (dLon < 180) {
+            int minLat = latIndex(geofence.getLatitude() - dLat);
+            int maxLat = latIndex(geofence.getLatitude() + dLat);
+            int minLon = (int) Math.floor((geofence.getLongitude() - dLon + 180) / mCellSize);
+            int maxLon = (int) Math.floor((geofence.getLongitude() + dLon + 180) / mCellSize);
+            if ((long) (maxLat - minLat + 1) * (maxLon - minLon + 1) <= MAX_COVERED_CELLS) {
+                cover = new int[] { minLat, maxLat, minLon, maxLon };
+            }
+        }
+        return cover;
+    }
+
+    private int latIndex(double latitude) {
+        int index = (int) Math.floor((latitude + 90) / mCellSize);
+        return Math.max(0, Math.min(mLatCells - 1, index));
+    }
+
+    private int lonIndex(double longitude) {
+        return floorMod((int) Math.floor((longitude + 180) / mCellSize), mLonCells);
+    }
+
+    private long cellKey(int latIndex, int lonIndex) {
+        return (long) latIndex * mLonCells + lonIndex;
+    }
+
+    private static int floorMod(int x, int y) {
+        int mod = x % y;
+        return (mod < 0) ? mod + y : mod;
+    }
+
+    private static void addToCell(HashMap<Long, ArrayList<StorableGeofence>> cells, long key, StorableGeofence geofence) {
+        ArrayList<StorableGeofence> cell = cells.get(key);
+        if (cell == null) {
+            cell = new ArrayList<>(2);
+            cells.put(key, cell);
+        }
+        cell.add(geofence);
+    }
+
+    private static void removeFromCell(HashMap<Long, ArrayList<StorableGeofence>> cells, long key, StorableGeofence geofence) {
+        ArrayList<StorableGeofence> cell = cells.get(key);
+        if (cell != null) {
+            cell.remove(geofence);
+            if (cell.isEmpty()) {
+                cells.remove(key);
+            }
+        }
+    }
+}
@@ -0,0 +1,38 @@
+package com.sousoum.libgeofencehelper;
+
+import java.io.IOException;
+import java.util.LinkedHashMap;
+import java.util.Map;
+import java.util.Set;
+
+public interface GeofenceStorage {
+
+    /**
+     * Persistence of the content of a {@link GeofenceStore}.
+     * A storage keeps geofences by id. Only the id of a geofence can also be stored, its geofence is then null.
+     * The store keeps its content in memory, so a storage is only read once and then only receives the changes.
+     * Calls are made by one thread at a time.
+     */
+
+    /**
+     * Read the whole content of the storage
+     * @return a map of id -> geofence, in the storage order. The geofence is null if only its id has been stored,
+     *         or if it could not be read back.
+     * @throws IOException if the storage can not be read
+     */
+    @NonNull
+    LinkedHashMap<String, StorableGeofence> readAll() throws IOException;
+
+    /**
+     * Write and delete geofences, all at once if possible
+     * @param writes map of id -> geofence to write. A null geofence stores only the id.
+     * @param deletes ids of the geofences to delete
+     * @throws IOException if the storage could not be updated
+     */
+    void update(@NonNull Map<String, StorableGeofence> writes, @NonNull Set<String> deletes) throws IOException;
+
+    /**
+     * Delete the whole content of the storage
+     */
+    void reset();
+}
@@ -0,0 +1,623 @@
+package com.sousoum.libgeofencehelper;
+
+import java.io.IOException;
+import java.util.ArrayList;
+import java.util.Collection;
+import java.util.Comparator;
+import java.util.HashSet;
+import java.util.LinkedHashMap;
+import java.util.Map;
+import java.util.PriorityQueue;
+import java.util.Set;
+
+/**
+ * Created by Djavan on 01/07/2015.
+ */
+
+class GeofenceStore {
+
+    /**
+     * Package local class that stores geofence
+     * The geofences are persisted by a {@link GeofenceStorage}, for example a binary record file (see {@link RecordFileGeofenceStorage}).
+     * There should be only one instance per storage in the process, the Android library keeps them in GeofenceStores.
+     *
+     * The content of the store is loaded in memory the first time it is needed, then kept up to date on each write.
+     * Lookups by id and enumerations are served from memory. The returned geofences are shared, they should not be modified.
+     * A spatial index is built the first time a spatial query is made, then kept up to date on each write.
+     * Likewise, a min-heap of the expiration dates is built the first time the expirations are needed.
+     */
+
+    private static final Comparator<StorableGeofence> EARLIEST_EXPIRATION_FIRST = new Comparator<StorableGeofence>() {
+        @Override
+        public int compare(StorableGeofence lhs, StorableGeofence rhs) {
+            long lhsDate = lhs.getExpirationDateInMs();
+            long rhsDate = rhs.getExpirationDateInMs();
+            return lhsDate < rhsDate ? -1 : (lhsDate == rhsDate ? 0 : 1);
+        }
+    };
+
+    // number of removed or replaced geofences tolerated in the expiration heap before it is built again
+    private static final int EXPIRATIONS_SLACK = 64;
+
+    private final String mTag;
+    private GeofenceStorage mStorage;
+
+    // id -> geofence, in the storage order. The geofence is null if only its id has been stored. Null until loaded.
+    private LinkedHashMap<String, StorableGeofence> mGeofences;
+
+    // spatial index of the stored geofences. Null until the first spatial query.
+    private GeofenceSpatialIndex mSpatialIndex;
+
+    // geofences that expire, earliest first. Removed or replaced ones are only skipped when they reach the head. Null until needed.
+    private PriorityQueue<StorableGeofence> mExpirations;
+
+    /**
+     * Create a store
+     * @param name the name of the store, used in the logs
+     * @param storage the storage of the geofences
+     */
+    GeofenceStore(@NonNull String name, @NonNull GeofenceStorage storage) {
+        mStorage = storage;
+
+        mTag = "Store " + name;
+    }
+
+    /**
+     * Replace the storage of the store, which should already hold the content of the store.
+     * The content is read again from the new storage the next time it is needed.
+     * @param storage the new storage of the geofences
+     */
+    synchronized void setStorage(@NonNull GeofenceStorage storage) {
+        mStorage = storage;
+        mGeofences = null;
+        mSpatialIndex = null;
+        mExpirations = null;
+    }
+
+    /**
+     * Start a transaction on this store.
+     * The mutations of the transaction are only applied when it is committed, with a single write.
+     * @return a new transaction
+     */
+    public Transaction beginTransaction() {
+        return new Transaction();
+    }
+
+    /**
+     * Stores immediately the given geofence to the store
+     * @param geofence The geofence to store
+     */
+    public void storeGeofence(@NonNull StorableGeofence geofence) {
+        beginTransaction().storeGeofence(geofence).commit();
+    }
+
+    /**
+     * Stores immediately the given geofences to the store, with a single write
+     * @param geofences The geofences to store
+     */
+    public void storeGeofences(@NonNull Collection<StorableGeofence> geofences) {
+        Transaction transaction = beginTransaction();
+        for (StorableGeofence geofence : geofences) {
+            transaction.storeGeofence(geofence);
+        }
+        transaction.commit();
+    }
+
+    /**
+     * Remove immediately the given geofences from the store, with a single write.
+     * Geofences that are not in the store are ignored.
+     * @param geofences the geofences to remove
+     */
+    public void removeGeofences(@NonNull Collection<StorableGeofence> geofences) {
+        Transaction transaction = beginTransaction();
+        for (StorableGeofence geofence : geofences) {
+            transaction.removeGeofenceId(geofence.getId());
+        }
+        transaction.commit();
+    }
+
+    /**
+     * Remove immediately the given geofence from the store
+     * @param geofence the geofence to remove
+     */
+    public void removeGeofence(@NonNull StorableGeofence geofence) {
+        removeGeofenceId(geofence.getId());
+    }
+
+    /**
+     * Stores immediately the given geofence id to the store
+     * If a geofence with the same id is already stored, it is kept as is.
+     * @param geofenceId the id of the geofence to add
+     */
+    public void storeGeofenceId(@NonNull String geofenceId) {
+        beginTransaction().storeGeofenceId(geofenceId).commit();
+    }
+
+    /**
+     * Stores immediately the given geofence ids to the store, with a single write
+     * Geofences with the same ids that are already stored are kept as is.
+     * @param geofenceIds the ids of the geofences to add
+     */
+    public void storeGeofenceIds(@NonNull Collection<String> geofenceIds) {
+        Transaction transaction = beginTransaction();
+        for (String geofenceId : geofenceIds) {
+            transaction.storeGeofenceId(geofenceId);
+        }
+        transaction.commit();
+    }
+
+    /**
+     * Remove a geofence from the remove list
+     * @param geofenceId the id of the geofence to remove
+     */
+    public synchronized void removeGeofenceId(@NonNull String geofenceId) {
+        if (getGeofenceMap().containsKey(geofenceId)) {
+            beginTransaction().removeGeofenceId(geofenceId).commit();
+        } else {
+            GeofenceLog.e(mTag, "removeGeofenceId : empty list or geofence id is not registered");
+        }
+    }
+
+    /**
+     * Remove immediately the given geofence ids from the store, with a single write.
+     * Ids that are not in the store are ignored.
+     * @param geofenceIds the ids of the geofences to remove
+     */
+    public void removeGeofenceIds(@NonNull Collection<String> geofenceIds) {
+        Transaction transaction = beginTransaction();
+        for (String geofenceId : geofenceIds) {
+            transaction.removeGeofenceId(geofenceId);
+        }
+        transaction.commit();
+    }
+
+    /**
+     * Get all stored Geofence.
+     * Ids stored with {@link #storeGeofenceId(String)} are not part of the result.
+     * @return a list of StorableGeofence (can not be null)
+     */
+    public synchronized @NonNull
+    ArrayList<StorableGeofence> getAllGeofences() {
+        LinkedHashMap<String, StorableGeofence> geofences = getGeofenceMap();
+        ArrayList<StorableGeofence> geofenceList = new ArrayList<>(geofences.size());
+
+        for (StorableGeofence storableGeofence : geofences.values()) {
+            if (storableGeofence != null) {
+                geofenceList.add(storableGeofence);
+            }
+        }
+
+        return geofenceList;
+    }
+
+    /**
+     * Get all stored Geofence ids.
+     * @return a set of String (can not be null)
+     */
+    public synchronized @NonNull
+    Set<String> getAllGeofenceIds() {
+        return new HashSet<>(getGeofenceMap().keySet());
+    }
+
+    /**
+     * Get a stored geofence with its id
+     * @param geofenceId The id of the geofence to search
+     * @return a StorableGeofence which corresponds to the given id. Null if the id doesn't exist in the store or if only the id has been stored
+     */
+    public synchronized StorableGeofence getGeofence(@NonNull String geofenceId) {
+        return getGeofenceMap().get(geofenceId);
+    }
+
+    /**
+     * Get several stored geofences with a single lookup of the store
+     * @param geofenceIds the ids of the geofences to search
+     * @return the stored geofences, in the order of the ids. The ids that don't exist in the store or that only have been stored are skipped.
+     */
+    public synchronized @NonNull
+    ArrayList<StorableGeofence> getGeofences(@NonNull Collection<String> geofenceIds) {
+        LinkedHashMap<String, StorableGeofence> geofences = getGeofenceMap();
+        ArrayList<StorableGeofence> geofenceList = new ArrayList<>(geofenceIds.size());
+        for (String geofenceId : geofenceIds) {
+            StorableGeofence storableGeofence = geofences.get(geofenceId);
+            if (storableGeofence != null) {
+                geofenceList.add(storableGeofence);
+            }
+        }
+        return geofenceList;
+    }
+
+    /**
+     * Get the stored geofences that are expired at a given time.
+     * If the content of the store is not loaded yet and its storage is indexed, only the expired geofences are read.
+     * @param nowInMs the time in milliseconds since epoch
+     * @return a list of StorableGeofence (can not be null)
+     */
+    public synchronized @NonNull
+    ArrayList<StorableGeofence> getExpiredGeofences(long nowInMs) {
+        ArrayList<StorableGeofence> geofenceList = new ArrayList<>();
+        if (mGeofences == null && mStorage instanceof IndexedGeofenceStorage) {
+            try {
+                geofenceList.addAll(((IndexedGeofenceStorage) mStorage).readExpired(nowInMs).values());
+            } catch (IOException e) {
+                GeofenceLog.e(mTag, "Could not query the store", e);
+            }
+        } else {
+            for (StorableGeofence storableGeofence : getGeofenceMap().values()) {
+                if (storableGeofence != null && storableGeofence.isExpired(nowInMs)) {
+                    geofenceList.add(storableGeofence);
+                }
+            }
+        }
+        return geofenceList;
+    }
+
+    /**
+     * Get the earliest expiration date of the stored geofences
+     * @return the expiration date in milliseconds since epoch, 0 if no stored geofence expires
+     */
+    public synchronized long getNextExpirationDateInMs() {
+        PriorityQueue<StorableGeofence> expirations = getExpirations();
+        long nextExpirationDateInMs = 0;
+        while (!expirations.isEmpty() && nextExpirationDateInMs == 0) {
+            StorableGeofence geofence = expirations.peek();
+            if (isStored(geofence)) {
+                nextExpirationDateInMs = geofence.getExpirationDateInMs();
+            } else {
+                expirations.poll();
+            }
+        }
+        return nextExpirationDateInMs;
+    }
+
+    /**
+     * Remove the geofences that are expired at a given time, with a single write.
+     * If the content of the store is not loaded yet and its storage is indexed, only the expired geofences are read.
+     * @param nowInMs the time in milliseconds since epoch
+     * @return the removed geofences (can not be null)
+     */
+    public synchronized @NonNull
+    ArrayList<StorableGeofence> purgeExpiredGeofences(long nowInMs) {
+        ArrayList<StorableGeofence> expiredGeofences;
+        if (mGeofences == null && mStorage instanceof IndexedGeofenceStorage) {
+            expiredGeofences = getExpiredGeofences(nowInMs);
+        } else {
+            expiredGeofences = new ArrayList<>();
+            PriorityQueue<StorableGeofence> expirations = getExpirations();
+            while (!expirations.isEmpty() && expirations.peek().isExpired(nowInMs)) {
+                StorableGeofence geofence = expirations.poll();
+                if (isStored(geofence)) {
+                    expiredGeofences.add(geofence);
+                }
+            }
+        }
+
+        if (!expiredGeofences.isEmpty()) {
+            removeGeofences(expiredGeofences);
+
+            // keep the geofences that could not be removed
+            if (mExpirations != null) {
+                for (StorableGeofence geofence : expiredGeofences) {
+                    if (isStored(geofence)) {
+                        mExpirations.add(geofence);
+                    }
+                }
+            }
+        }
+        return expiredGeofences;
+    }
+
+    /**
+     * Get the stored geofences of a receiver.
+     * If the content of the store is not loaded yet and its storage is indexed, only the geofences of the receiver are read.
+     * @param pendingIntentClassName the class name of the receiver
+     * @return a list of StorableGeofence (can not be null)
+     */
+    public synchronized @NonNull
+    ArrayList<StorableGeofence> getGeofencesByReceiver(@NonNull String pendingIntentClassName) {
+        ArrayList<StorableGeofence> geofenceList = new ArrayList<>();
+        if (mGeofences == null && mStorage instanceof IndexedGeofenceStorage) {
+            try {
+                geofenceList.addAll(((IndexedGeofenceStorage) mStorage).readByReceiver(pendingIntentClassName).values());
+            } catch (IOException e) {
+                GeofenceLog.e(mTag, "Could not query the store", e);
+            }
+        } else {
+            for (StorableGeofence storableGeofence : getGeofenceMap().values()) {
+                if (storableGeofence != null && pendingIntentClassName.equals(storableGeofence.getPendingIntentClassName())) {
+                    geofenceList.add(storableGeofence);
+                }
+            }
+        }
+        return geofenceList;
+    }
+
+    /**
+     * Get the stored geofences whose additional data contain a key.
+     * If the content of the store is not loaded yet and its storage is indexed, only the matching geofences are read.
+     * @param key the key of the additional data
+     * @return a list of StorableGeofence (can not be null)
+     */
+    public synchronized @NonNull
+    ArrayList<StorableGeofence> getGeofencesByAdditionalDataKey(@NonNull String key) {
+        ArrayList<StorableGeofence> geofenceList = new ArrayList<>();
+        if (mGeofences == null && mStorage instanceof IndexedGeofenceStorage) {
+            try {
+                geofenceList.addAll(((IndexedGeofenceStorage) mStorage).readByAdditionalDataKey(key).values());
+            } catch (IOException e) {
+                GeofenceLog.e(mTag, "Could not query the store", e);
+            }
+        } else {
+            for (StorableGeofence storableGeofence : getGeofenceMap().values()) {
+                if (storableGeofence != null && storableGeofence.getAttributes() != null &&
+                        storableGeofence.getAttributes().containsKey(key)) {
+                    geofenceList.add(storableGeofence);
+                }
+            }
+        }
+        return geofenceList;
+    }
+
+    /**
+     * Find the stored geofences that contain a point
+     * @param latitude latitude of the point in degrees
+     * @param longitude longitude of the point in degrees
+     * @return the geofences whose region contains the point (can not be null)
+     */
+    public synchronized @NonNull
+    ArrayList<StorableGeofence> findContaining(double latitude, double longitude) {
+        return getSpatialIndex().findContaining(latitude, longitude);
+    }
+
+    /**
+     * Find the stored geofences whose center is the nearest to a point
+     * @param latitude latitude of the point in degrees
+     * @param longitude longitude of the point in degrees
+     * @param count maximum number of geofences to return
+     * @return at most count geofences, sorted by increasing distance (can not be null)
+     */
+    public synchronized @NonNull
+    ArrayList<StorableGeofence> findNearest(double latitude, double longitude, int count) {
+        return getSpatialIndex().findNearest(latitude, longitude, count);
+    }
+
+    /**
+     * Find the stored geofences whose center is in a bounding box
+     * @param minLatitude south edge of the box in degrees
+     * @param minLongitude west edge of the box in degrees
+     * @param maxLatitude north edge of the box in degrees
+     * @param maxLongitude east edge of the box in degrees. If it is less than minLongitude, the box crosses the antimeridian.
+     * @return the geofences whose center is in the box (can not be null)
+     */
+    public synchronized @NonNull
+    ArrayList<StorableGeofence> findInBoundingBox(double minLatitude, double minLongitude, double maxLatitude, double maxLongitude) {
+        return getSpatialIndex().findInBoundingBox(minLatitude, minLongitude, maxLatitude, maxLongitude);
+    }
+
+    /**
+     * Get the spatial index of the store, build it if not already done
+     * @return the spatial index
+     */
+    @NonNull
+    private GeofenceSpatialIndex getSpatialIndex() {
+        GeofenceSpatialIndex spatialIndex = mSpatialIndex;
+        if (spatialIndex == null) {
+            spatialIndex = new GeofenceSpatialIndex();
+            for (StorableGeofence geofence : getGeofenceMap().values()) {
+                if (geofence != null) {
+                    spatialIndex.put(geofence);
+                }
+            }
+            // an index of a store that could not be read is not kept
+            if (mGeofences != null) {
+                mSpatialIndex = spatialIndex;
+            }
+        }
+        return spatialIndex;
+    }
+
+    /**
+     * Get the expiration heap of the store, build it if not already done
+     * @return the geofences that expire, earliest first
+     */
+    @NonNull
+    private PriorityQueue<StorableGeofence> getExpirations() {
+        PriorityQueue<StorableGeofence> expirations = mExpirations;
+        if (expirations == null) {
+            LinkedHashMap<String, StorableGeofence> geofences = getGeofenceMap();
+            expirations = new PriorityQueue<>(Math.max(1, geofences.size()), EARLIEST_EXPIRATION_FIRST);
+            for (StorableGeofence geofence : geofences.values()) {
+                if (geofence != null && geofence.getExpirationDateInMs() > 0) {
+                    expirations.add(geofence);
+                }
+            }
+            // a heap of a store that could not be read is not kept
+            if (mGeofences != null) {
+                mExpirations = expirations;
+            }
+        }
+        return expirations;
+    }
+
+    /**
+     * @param geofence a geofence
+     * @return true if this instance of the geofence is stored, false if it has been removed or replaced
+     */
+    private boolean isStored(@NonNull StorableGeofence geofence) {
+        return getGeofenceMap().get(geofence.getId()) == geofence;
+    }
+
+    /**
+     * Get the content of the store, load it with a single read of the storage if not already done.
+     * If the storage can not be read, it is left untouched and an empty map is returned without being kept,
+     * so that the next call tries again.
+     * @return the map of id -> geofence
+     */
+    @NonNull
+    private LinkedHashMap<String, StorableGeofence> getGeofenceMap() {
+        LinkedHashMap<String, StorableGeofence> geofences = mGeofences;
+        if (geofences == null) {
+            long startNs = GeofenceMetrics.start();
+            GeofenceTrace.begin(GeofenceTrace.STORE_READ);
+            try {
+                geofences = mStorage.readAll();
+                mGeofences = geofences;
+                GeofenceTrace.setGeofenceCount(geofences.size());
+                GeofenceMetrics.recordLatency(GeofenceMetrics.STORE_LOAD, startNs);
+            } catch (IOException e) {
+                GeofenceLog.e(mTag, "Could not read the store", e);
+                GeofenceMetrics.count(GeofenceMetrics.STORE_ERRORS, 1);
+                geofences = new LinkedHashMap<>();
+            } finally {
+                GeofenceTrace.end();
+            }
+        }
+        return geofences;
+    }
+
+    /**
+     * Write and delete geofences in the storage
+     * @param writes map of id -> geofence to write, null to only write the id
+     * @param deletes ids of the geofences to delete
+     * @return true if the storage has been updated
+     */
+    private boolean update(@NonNull Map<String, StorableGeofence> writes, @NonNull Set<String> deletes) {
+        boolean updated = false;
+        long startNs = GeofenceMetrics.start();
+        GeofenceTrace.begin(GeofenceTrace.STORE_WRITE, writes.size() + deletes.size());
+        try {
+            mStorage.update(writes, deletes);
+            updated = true;
+            GeofenceMetrics.recordLatency(writes.isEmpty() ? GeofenceMetrics.STORE_REMOVE : GeofenceMetrics.STORE_WRITE, startNs);
+            GeofenceMetrics.count(GeofenceMetrics.STORE_WRITTEN_GEOFENCES, writes.size());
+            GeofenceMetrics.count(GeofenceMetrics.STORE_REMOVED_GEOFENCES, deletes.size());
+        } catch (IOException e) {
+            GeofenceLog.e(mTag, "Could not write to the store", e);
+            GeofenceMetrics.count(GeofenceMetrics.STORE_ERRORS, 1);
+        } finally {
+            GeofenceTrace.end();
+        }
+        return updated;
+    }
+
+    /**
+     * A set of mutations of the store that are applied with a single write when committed.
+     * When the same id is modified several times in a transaction, only the last mutation is applied.
+     * A transaction is not thread safe and should be used by only one thread.
+     */
+    public class Transaction {
+
+        // id -> geofence to store. The geofence is null if only the id should be stored.
+        private final LinkedHashMap<String, StorableGeofence> mWrites = new LinkedHashMap<>();
+        private final HashSet<String> mDeletes = new HashSet<>();
+
+        private boolean mCommitted;
+
+        private Transaction() {
+        }
+
+        /**
+         * Stage the storage of a geofence
+         * @param geofence the geofence to store
+         * @return this transaction
+         */
+        public Transaction storeGeofence(@NonNull StorableGeofence geofence) {
+            mDeletes.remove(geofence.getId());
+            mWrites.put(geofence.getId(), geofence);
+            return this;
+        }
+
+        /**
+         * Stage the storage of a geofence id.
+         * If a geofence with the same id is stored when the transaction is committed, it is kept as is.
+         * @param geofenceId the id to store
+         * @return this transaction
+         */
+        public Transaction storeGeofenceId(@NonNull String geofenceId) {
+            mDeletes.remove(geofenceId);
+            if (mWrites.get(geofenceId) == null) {
+                mWrites.put(geofenceId, null);
+            }
+            return this;
+        }
+
+        /**
+         * Stage the removal of a geofence id.
+         * Ids that are not in the store when the transaction is committed are ignored.
+         * @param geofenceId the id to remove
+         * @return this transaction
+         */
+        public Transaction removeGeofenceId(@NonNull String geofenceId) {
+            mWrites.remove(geofenceId);
+            mDeletes.add(geofenceId);
+            return this;
+        }
+
+        /**
+         * Apply all the staged mutations with a single write.
+         * A transaction can only be committed once.
+         */
+        public void commit() {
+            if (mCommitted) {
+                throw new IllegalStateException("Transaction already committed");
+            }
+            mCommitted = true;
+
+            synchronized (GeofenceStore.this) {
+                if (mGeofences == null && mStorage instanceof IndexedGeofenceStorage && !mWrites.containsValue(null)) {
+                    // nothing is loaded in memory, the indexed storage is updated without being read
+                    update(mWrites, mDeletes);
+                } else {
+                    LinkedHashMap<String, StorableGeofence> geofences = getGeofenceMap();
+                    if (mGeofences == null) {
+                        // the storage could not be read, writing blindly could overwrite what it still holds
+                        GeofenceLog.e(mTag, "The store could not be read, the transaction is dropped");
+                        GeofenceMetrics.count(GeofenceMetrics.STORE_ERRORS, 1);
+                    } else {
+                        LinkedHashMap<String, StorableGeofence> writes = new LinkedHashMap<>();
+                        for (Map.Entry<String, StorableGeofence> write : mWrites.entrySet()) {
+                            StorableGeofence geofence = write.getValue();
+                            if (geofence != null || !geofences.containsKey(write.getKey())) {
+                                writes.put(write.getKey(), geofence);
+                            }
+                        }
+                        HashSet<String> deletes = new HashSet<>();
+                        for (String geofenceId : mDeletes) {
+                            if (geofences.containsKey(geofenceId)) {
+                                deletes.add(geofenceId);
+                            }
+                        }
+
+                        if (update(writes, deletes)) {
+                            geofences.keySet().removeAll(deletes);
+                            geofences.putAll(writes);
+
+                            if (mExpirations != null) {
+                                if (mExpirations.size() > geofences.size() + EXPIRATIONS_SLACK) {
+                                    // too many removed or replaced geofences, build it again when needed
+                                    mExpirations = null;
+                                } else {
+                                    for (StorableGeofence geofence : writes.values()) {
+                                        if (geofence != null && geofence.getExpirationDateInMs() > 0) {
+                                            mExpirations.add(geofence);
+                                        }
+                                    }
+                                }
+                            }
+
+                            if (mSpatialIndex != null) {
+                                for (String geofenceId : deletes) {
+                                    mSpatialIndex.remove(geofenceId);
+                                }
+                                for (StorableGeofence geofence : writes.values()) {
+                                    if (geofence != null) {
+                                        mSpatialIndex.put(geofence);
+                                    }
+                                }
+                            }
+                        }
+                    }
+                }
+            }
+        }
+    }
+}
@@ -0,0 +1,462 @@
+package com.sousoum.libgeofencehelper;
+
+import java.util.ArrayList;
+import java.util.Collection;
+import java.util.Iterator;
+import java.util.LinkedHashMap;
+import java.util.List;
+import java.util.Map;
+import java.util.Set;
+
+class GeofenceSynchronizer {
+
+    /**
+     * Package local class that keeps the geofences registered in a {@link GeofencingBackend} in sync with the stores.
+     * The geofences to add and to remove are stored first, then submitted when the backend is connected.
+     * The synced store represents which geofences are registered in the backend, it is only updated when a request succeeds.
+     */
+
+    interface Session {
+        /**
+         * @return true if the synced geofences are still registered in the backend
+         */
+        boolean isCurrent();
+
+        /**
+         * Remember that the synced geofences are registered in the current session of the backend
+         */
+        void markCurrent();
+
+        /**
+         * Forget the session, the synced geofences will be registered again during the next synchronization
+         */
+        void invalidate();
+    }
+
+    interface Listener {
+        /**
+         * Called when a geofence has been, successfully or not, added to the backend
+         * @param geofence the geofence that has been added
+         * @param statusCode the status code of the operation
+         * @param statusMessage the status message of the operation
+         */
+        void geofenceAddStatus(StorableGeofence geofence, int statusCode, String statusMessage);
+
+        /**
+         * Called when a geofence has been, successfully or not, removed from the backend
+         * @param geofenceId the id of the geofence that has been removed
+         * @param statusCode the status code of the operation
+         * @param statusMessage the status message of the operation
+         */
+        void geofenceRemoveStatus(String geofenceId, int statusCode, String statusMessage);
+    }
+
+    private static final String TAG = "GeofenceSynchronizer";
+
+    // maximum number of geofences that can be registered at the same time by an app in the Google API Client
+    static final int MAX_GEOFENCES_PER_REQUEST = 100;
+
+    private final GeofencingBackend mBackend;
+    private final GeofenceStore mToAddStore; // store of the geofence to add to the backend
+    private final GeofenceStore mToRemoveStore; // store of the geofence to remove from the backend
+    private final GeofenceStore mSyncedStore; // store that represent which geofences are in the backend
+    private final Session mSession; // whether the synced geofences are registered in the current session of the backend
+    private final GeofenceClock mClock;
+
+    private volatile Listener mListener;
+    private volatile GeofenceTransitionFilter mTransitionFilter;
+
+    GeofenceSynchronizer(@NonNull GeofencingBackend backend, @NonNull GeofenceStore toAddStore, @NonNull GeofenceStore toRemoveStore,
+                         @NonNull GeofenceStore syncedStore, @NonNull Session session, @NonNull GeofenceClock clock) {
+        mBackend = backend;
+        mToAddStore = toAddStore;
+        mToRemoveStore = toRemoveStore;
+        mSyncedStore = syncedStore;
+        mSession = session;
+        mClock = clock;
+    }
+
+    /**
+     * Set the listener informed of the results of the requests
+     * @param listener a listener, can be null
+     */
+    void setListener(Listener listener) {
+        mListener = listener;
+    }
+
+    /**
+     * Set the transition filter whose states are forgotten when geofences are unregistered, or registered with a new region:
+     * such a registration starts without a previous transition. Registering the same geofence again, or restoring it, keeps its state.
+     * @param transitionFilter a transition filter, can be null
+     */
+    void setTransitionFilter(GeofenceTransitionFilter transitionFilter) {
+        mTransitionFilter = transitionFilter;
+    }
+
+    /**
+     * Get the geofences that are registered or about to be registered in the backend
+     * @return a map of id -> geofence, which can not be null
+     */
+    @NonNull
+    LinkedHashMap<String, StorableGeofence> getRegisteredGeofences() {
+        Set<String> toRemoveIds = mToRemoveStore.getAllGeofenceIds();
+        LinkedHashMap<String, StorableGeofence> registeredGeofences = new LinkedHashMap<>();
+        for (StorableGeofence storableGeofence : mSyncedStore.getAllGeofences()) {
+            if (!toRemoveIds.contains(storableGeofence.getId())) {
+                registeredGeofences.put(storableGeofence.getId(), storableGeofence);
+            }
+        }
+        for (StorableGeofence storableGeofence : mToAddStore.getAllGeofences()) {
+            if (!toRemoveIds.contains(storableGeofence.getId())) {
+                registeredGeofences.put(storableGeofence.getId(), storableGeofence);
+            }
+        }
+        return registeredGeofences;
+    }
+
+    /**
+     * Store geofences in the list of geofences to add and add them to the backend if connected. If not, trigger a connection.
+     * A pending removal of the same geofences is cancelled.
+     * The transition states of the new geofences and of the geofences whose region changes are forgotten.
+     * @param geofences the geofences to register
+     */
+    void registerGeofences(@NonNull List<StorableGeofence> geofences) {
+        GeofenceTransitionFilter transitionFilter = mTransitionFilter;
+        if (transitionFilter != null) {
+            ArrayList<String> changedIds = new ArrayList<>();
+            for (StorableGeofence storableGeofence : geofences) {
+                StorableGeofence previous = mToAddStore.getGeofence(storableGeofence.getId());
+                if (previous == null) {
+                    previous = mSyncedStore.getGeofence(storableGeofence.getId());
+                }
+                if (previous == null || !isSameRegion(previous, storableGeofence)) {
+                    changedIds.add(storableGeofence.getId());
+                }
+            }
+            if (!changedIds.isEmpty()) {
+                transitionFilter.forget(changedIds);
+            }
+        }
+        mToRemoveStore.removeGeofences(geofences);
+        mToAddStore.storeGeofences(geofences);
+
+        if (mBackend.isConnected()) {
+            submitGeofences(geofences, false);
+        } else {
+            mBackend.connect();
+        }
+    }
+
+    /**
+     * Store geofence ids in the list of geofences to remove and remove them from the backend if connected. If not, trigger a connection.
+     * A pending addition of the same geofences is cancelled, and their transition states are forgotten.
+     * @param geofenceIds the ids of the geofences to unregister
+     */
+    void unregisterGeofences(@NonNull Collection<String> geofenceIds) {
+        GeofenceTransitionFilter transitionFilter = mTransitionFilter;
+        if (transitionFilter != null) {
+            transitionFilter.forget(geofenceIds);
+        }
+        mToAddStore.removeGeofenceIds(geofenceIds);
+        mToRemoveStore.storeGeofenceIds(geofenceIds);
+
+        if (mBackend.isConnected()) {
+            submitGeofenceRemovals(geofenceIds);
+        } else {
+            mBackend.connect();
+        }
+    }
+
+    /**
+     * Synchronize all stored geofences to the backend if connected. If not, trigger a connection.
+     * The geofences that are already synced are registered again only if their registrations have been lost since the last synchronization.
+     */
+    void synchronize() {
+        if (mBackend.isConnected()) {
+            GeofenceTrace.begin(GeofenceTrace.SYNC);
+            try {
+                synchronizeConnected();
+            } finally {
+                GeofenceTrace.end();
+            }
+        } else {
+            mBackend.connect();
+        }
+    }
+
+    /**
+     * Synchronize all stored geofences to the backend, which must be connected
+     */
+    private void synchronizeConnected() {
+        // first, add all (already) stored geofences if they are not registered anymore, without listener
+        long startNs = GeofenceMetrics.start();
+        boolean restoreNeeded = !mSession.isCurrent();
+        ArrayList<StorableGeofence> storedGeofences = mSyncedStore.getAllGeofences();
+        if (!storedGeofences.isEmpty()) {
+            long nowInMs = mClock.currentTimeMillis();
+            ArrayList<StorableGeofence> validGeofences = new ArrayList<>(storedGeofences.size());
+            ArrayList<String> expiredGeofenceIds = new ArrayList<>();
+            for (StorableGeofence storableGeofence : storedGeofences) {
+                if (!storableGeofence.isExpired(nowInMs)) {
+                    validGeofences.add(storableGeofence);
+                } else {
+                    // if the geofence has expired, add it to the list to delete
+                    expiredGeofenceIds.add(storableGeofence.getId());
+                }
+            }
+            mToRemoveStore.storeGeofenceIds(expiredGeofenceIds);
+            if (restoreNeeded) {
+                submitGeofences(validGeofences, true);
+                GeofenceLog.i(TAG, "All already stored geofences have been submitted to be synchronized with the backend");
+            }
+        }
+        if (restoreNeeded) {
+            mSession.markCurrent();
+        }
+        GeofenceMetrics.recordLatency(GeofenceMetrics.SYNC_RESTORE, startNs);
+
+        // add all geofences from the to add list
+        startNs = GeofenceMetrics.start();
+        ArrayList<StorableGeofence> toAddGeofences = mToAddStore.getAllGeofences();
+        if (!toAddGeofences.isEmpty()) {
+            submitGeofences(toAddGeofences, false);
+            GeofenceLog.i(TAG, "All geofences to add have been submitted to be synchronized with the backend");
+        }
+        GeofenceMetrics.recordLatency(GeofenceMetrics.SYNC_ADD, startNs);
+
+        // remove all geofences from the to remove list
+        startNs = GeofenceMetrics.start();
+        Set<String> toRemoveGeofences = mToRemoveStore.getAllGeofenceIds();
+        if (!toRemoveGeofences.isEmpty()) {
+            submitGeofenceRemovals(toRemoveGeofences);
+            GeofenceLog.i(TAG, "All geofences to remove have been submitted to be synchronized with the backend");
+        }
+        GeofenceMetrics.recordLatency(GeofenceMetrics.SYNC_REMOVE, startNs);
+    }
+
+    /**
+     * Add geofences to the backend.
+     * Geofences that share the same request key are grouped in requests of at most {@link #MAX_GEOFENCES_PER_REQUEST} geofences.
+     * The backend must be connected.
+     * @param geofences the geofences to add
+     * @param isRestore true if the geofences are already synced and only registered again,
+     *                  false if the stores should be updated and the listener informed when the result of each request is received
+     */
+    private void submitGeofences(@NonNull List<StorableGeofence> geofences, boolean isRestore) {
+        boolean loggable = GeofenceLog.isLoggable(TAG);
+        for (Map.Entry<String, ArrayList<List<StorableGeofence>>> entry : groupInRequests(mBackend, geofences).entrySet()) {
+            for (List<StorableGeofence> batch : entry.getValue()) {
+                GeofencingBackend.Callback callback;
+                if (isRestore) {
+                    callback = new GeofenceRestoreStatus(batch.size());
+                } else {
+                    callback = new GeofenceAddStatus(batch);
+                }
+                GeofenceTrace.begin(GeofenceTrace.ADD_BATCH, batch.size());
+                try {
+                    mBackend.addGeofences(entry.getKey(), batch, callback);
+                } finally {
+                    GeofenceTrace.end();
+                }
+                if (loggable) {
+                    GeofenceLog.i(TAG, "Added " + batch.size() + " geofences for " + entry.getKey());
+                }
+            }
+        }
+    }
+
+    /**
+     * Group geofences in requests to a backend.
+     * Geofences that share the same request key are grouped in requests of at most {@link #MAX_GEOFENCES_PER_REQUEST} geofences.
+     * @param backend the backend that will receive the requests
+     * @param geofences the geofences to group
+     * @return a map of request key -> geofences of each request, keeping the order of the geofences
+     */
+    static @NonNull
+    LinkedHashMap<String, ArrayList<List<StorableGeofence>>> groupInRequests(@NonNull GeofencingBackend backend, @NonNull List<StorableGeofence> geofences) {
+        GeofenceTrace.begin(GeofenceTrace.GROUP_REQUESTS, geofences.size());
+        // group the geofences by request key, keeping the order
+        LinkedHashMap<String, ArrayList<StorableGeofence>> geofencesByKey = new LinkedHashMap<>();
+        for (StorableGeofence storableGeofence : geofences) {
+            String requestKey = backend.getRequestKey(storableGeofence);
+            ArrayList<StorableGeofence> keyGeofences = geofencesByKey.get(requestKey);
+            if (keyGeofences == null) {
+                keyGeofences = new ArrayList<>();
+                geofencesByKey.put(requestKey, keyGeofences);
+            }
+            keyGeofences.add(storableGeofence);
+        }
+
+        LinkedHashMap<String, ArrayList<List<StorableGeofence>>> requests = new LinkedHashMap<>();
+        for (Map.Entry<String, ArrayList<StorableGeofence>> entry : geofencesByKey.entrySet()) {
+            ArrayList<StorableGeofence> keyGeofences = entry.getValue();
+            ArrayList<List<StorableGeofence>> batches = new ArrayList<>();
+            for (int start = 0; start < keyGeofences.size(); start += MAX_GEOFENCES_PER_REQUEST) {
+                batches.add(new ArrayList<>(keyGeofences.subList(start, Math.min(start + MAX_GEOFENCES_PER_REQUEST, keyGeofences.size()))));
+            }
+            requests.put(entry.getKey(), batches);
+        }
+        GeofenceTrace.end();
+        return requests;
+    }
+
+    /**
+     * Remove geofences from the backend, with one request per group of at most {@link #MAX_GEOFENCES_PER_REQUEST} geofences.
+     * The backend must be connected.
+     * @param geofenceIds the ids of the geofences to remove
+     */
+    private void submitGeofenceRemovals(@NonNull Collection<String> geofenceIds) {
+        ArrayList<String> batch = new ArrayList<>(Math.min(geofenceIds.size(), MAX_GEOFENCES_PER_REQUEST));
+        Iterator<String> geofenceIdIterator = geofenceIds.iterator();
+        while (geofenceIdIterator.hasNext()) {
+            batch.add(geofenceIdIterator.next());
+            if (batch.size() == MAX_GEOFENCES_PER_REQUEST || !geofenceIdIterator.hasNext()) {
+                GeofenceTrace.begin(GeofenceTrace.REMOVE_BATCH, batch.size());
+                try {
+                    mBackend.removeGeofences(batch, new GeofenceRemoveStatus(batch));
+                } finally {
+                    GeofenceTrace.end();
+                }
+                if (GeofenceLog.isLoggable(TAG)) {
+                    GeofenceLog.i(TAG, "Removed " + batch.size() + " geofences");
+                }
+
+                batch = new ArrayList<>(Math.min(geofenceIds.size(), MAX_GEOFENCES_PER_REQUEST));
+            }
+        }
+    }
+
+    /**
+     * Whether two versions of a geofence trigger the same transitions, so that the transition state of the first one still applies
+     * @param previous the registered version
+     * @param geofence the new version
+     * @return true if they have the same center, radius, transition types and loitering delay
+     */
+    private static boolean isSameRegion(@NonNull StorableGeofence previous, @NonNull StorableGeofence geofence) {
+        return previous.getLatitude() == geofence.getLatitude()
+                && previous.getLongitude() == geofence.getLongitude()
+                && previous.getRadius() == geofence.getRadius()
+                && previous.getTransitionType() == geofence.getTransitionType()
+                && previous.getLoiteringDelay() == geofence.getLoiteringDelay();
+    }
+
+    private static boolean isSuccess(int statusCode) {
+        return statusCode <= GeofencingBackend.STATUS_SUCCESS;
+    }
+
+    //region Result callbacks
+    private class GeofenceRemoveStatus implements GeofencingBackend.Callback {
+
+        /**
+         * Inner class that will responds to the callback when a batch of geofences will be, successfully or not, removed from the backend
+         */
+
+        private final List<String> mGeofenceIds;
+        public GeofenceRemoveStatus(@NonNull List<String> geofenceIds) {
+            mGeofenceIds = geofenceIds;
+        }
+
+        @Override
+        public void onResult(int statusCode, String statusMessage) {
+            GeofenceTrace.begin(GeofenceTrace.REMOVE_CALLBACK, mGeofenceIds.size());
+            try {
+                if (isSuccess(statusCode)) {
+                    if (GeofenceLog.isLoggable(TAG)) {
+                        GeofenceLog.i(TAG, "Removed successfully " + mGeofenceIds.size() + " geofences to the backend");
+                    }
+                    // since the operation is successful, remove from the local store
+                    mSyncedStore.removeGeofenceIds(mGeofenceIds);
+
+                    mToRemoveStore.removeGeofenceIds(mGeofenceIds);
+                } else {
+                    GeofenceLog.e(TAG, "Error : " + mGeofenceIds.size() + " geofences not removed. Error is " + statusMessage + "(code : " + statusCode + ")");
+                }
+
+                Listener listener = mListener;
+                if (listener != null) {
+                    for (String geofenceId : mGeofenceIds) {
+                        listener.geofenceRemoveStatus(geofenceId, statusCode, statusMessage);
+                    }
+                }
+            } finally {
+                GeofenceTrace.end();
+            }
+        }
+    }
+
+    private class GeofenceAddStatus implements GeofencingBackend.Callback {
+
+        /**
+         * Inner class that will responds to the callback when a batch of geofences will be, successfully or not, added to the backend
+         */
+
+        private final List<StorableGeofence> mGeofences;
+
+        public GeofenceAddStatus(@NonNull List<StorableGeofence> geofences) {
+            mGeofences = geofences;
+        }
+
+        @Override
+        public void onResult(int statusCode, String statusMessage) {
+            GeofenceTrace.begin(GeofenceTrace.ADD_CALLBACK, mGeofences.size());
+            try {
+                if (isSuccess(statusCode)) {
+                    if (GeofenceLog.isLoggable(TAG)) {
+                        GeofenceLog.i(TAG, "Added successfully " + mGeofences.size() + " geofences to the backend");
+                    }
+                    // since the operation is successful, remove from the local store
+                    mSyncedStore.storeGeofences(mGeofences);
+
+                    mToAddStore.removeGeofences(mGeofences);
+                } else {
+                    GeofenceLog.e(TAG, "Error : " + mGeofences.size() + " geofences not added. Error is " + statusMessage + "(code : " + statusCode + ")");
+                    if (statusCode == GeofencingBackend.STATUS_GEOFENCE_NOT_AVAILABLE) {
+                        // the backend dropped all the registered geofences
+                        mSession.invalidate();
+                    }
+                }
+
+                Listener listener = mListener;
+                if (listener != null) {
+                    for (StorableGeofence geofence : mGeofences) {
+                        listener.geofenceAddStatus(geofence, statusCode, statusMessage);
+                    }
+                }
+            } finally {
+                GeofenceTrace.end();
+            }
+        }
+    }
+
+    private class GeofenceRestoreStatus implements GeofencingBackend.Callback {
+
+        /**
+         * Inner class that will responds to the callback when a batch of already synced geofences will be, successfully or not, registered again in the backend
+         */
+
+        private final int mGeofenceCount;
+
+        public GeofenceRestoreStatus(int geofenceCount) {
+            mGeofenceCount = geofenceCount;
+        }
+
+        @Override
+        public void onResult(int statusCode, String statusMessage) {
+            GeofenceTrace.begin(GeofenceTrace.RESTORE_CALLBACK, mGeofenceCount);
+            try {
+                if (isSuccess(statusCode)) {
+                    if (GeofenceLog.isLoggable(TAG)) {
+                        GeofenceLog.i(TAG, "Restored successfully " + mGeofenceCount + " geofences to the backend");
+                    }
+                } else {
+                    GeofenceLog.e(TAG, "Error : " + mGeofenceCount + " geofences not restored. Error is " + statusMessage + "(code : " + statusCode + ")");
+                    // they will be registered again during the next synchronization
+                    mSession.invalidate();
+                }
+            } finally {
+                GeofenceTrace.end();
+            }
+        }
+    }
+    //endregion Result callbacks
+}
@@ -0,0 +1,112 @@
+package com.sousoum.libgeofencehelper;
+
+public final class GeofenceTrace {
+
+    /**
+     * Class through which the library traces where a synchronization or a transition spends its time.
+     * The spans are nested: a span started while another one is open on the same thread is a child of it, and each span is ended on the thread that began it.
+     * By default nothing is traced. The Android library maps the spans to android.os.Trace sections so that they show up in systrace and Perfetto,
+     * the application can set its own tracer instead.
+     */
+
+    public interface Tracer {
+        /**
+         * Begin a span on the current thread
+         * @param name the name of the span, one of the constants of {@link GeofenceTrace}
+         */
+        void beginSpan(@NonNull String name);
+
+        /**
+         * Give the number of geofences handled by the innermost open span of the current thread
+         * @param geofenceCount the number of geofences
+         */
+        void setGeofenceCount(int geofenceCount);
+
+        /**
+         * End the innermost open span of the current thread
+         */
+        void endSpan();
+    }
+
+    //region Names
+    /** Synchronization of the stores with the backend */
+    public static final String SYNC = "GeofenceSync";
+    /** Grouping of geofences in requests to the backend */
+    public static final String GROUP_REQUESTS = "GeofenceSync.groupRequests";
+    /** Building of an add request */
+    public static final String BUILD_REQUEST = "GeofenceSync.buildRequest";
+    /** Submission of a batch of geofences to add */
+    public static final String ADD_BATCH = "GeofenceSync.addBatch";
+    /** Submission of a batch of geofences to remove */
+    public static final String REMOVE_BATCH = "GeofenceSync.removeBatch";
+    /** Handling of the result of an add request */
+    public static final String ADD_CALLBACK = "GeofenceSync.addCallback";
+    /** Handling of the result of a remove request */
+    public static final String REMOVE_CALLBACK = "GeofenceSync.removeCallback";
+    /** Handling of the result of a request that registers again the synced geofences */
+    public static final String RESTORE_CALLBACK = "GeofenceSync.restoreCallback";
+    /** First read of a store */
+    public static final String STORE_READ = "GeofenceStore.read";
+    /** Write of a store */
+    public static final String STORE_WRITE = "GeofenceStore.write";
+    /** Dispatch of a transition to its receiver, including the lookup of the geofences */
+    public static final String DISPATCH = "GeofenceDispatch";
+    /** Check of a transition against the polygons */
+    public static final String DISPATCH_POLYGON = "GeofenceDispatch.polygon";
+    //endregion Names
+
+    private static volatile Tracer sTracer;
+    private static boolean sTracerSet;
+
+    private GeofenceTrace() {
+    }
+
+    /**
+     * Set the tracer. It should be set before the library is used, so that no span is open.
+     * @param tracer the tracer, null to trace nothing
+     */
+    public static synchronized void setTracer(Tracer tracer) {
+        sTracer = tracer;
+        sTracerSet = true;
+    }
+
+    /**
+     * Set the default tracer of the platform, unless a tracer has already been set
+     * @param tracer the default tracer
+     */
+    static synchronized void setDefaultTracer(@NonNull Tracer tracer) {
+        if (!sTracerSet) {
+            sTracer = tracer;
+            sTracerSet = true;
+        }
+    }
+
+    static void begin(@NonNull String name) {
+        Tracer tracer = sTracer;
+        if (tracer != null) {
+            tracer.beginSpan(name);
+        }
+    }
+
+    static void begin(@NonNull String name, int geofenceCount) {
+        Tracer tracer = sTracer;
+        if (tracer != null) {
+            tracer.beginSpan(name);
+            tracer.setGeofenceCount(geofenceCount);
+        }
+    }
+
+    static void setGeofenceCount(int geofenceCount) {
+        Tracer tracer = sTracer;
+        if (tracer != null) {
+            tracer.setGeofenceCount(geofenceCount);
+        }
+    }
+
+    static void end() {
+        Tracer tracer = sTracer;
+        if (tracer != null) {
+            tracer.endSpan();
+        }
+    }
+}
@@ -0,0 +1,260 @@
+package com.sousoum.libgeofencehelper;
+
+import java.util.ArrayList;
+import java.util.Collection;
+import java.util.Collections;
+import java.util.Comparator;
+import java.util.HashMap;
+import java.util.LinkedHashMap;
+import java.util.List;
+import java.util.Map;
+
+class GeofenceTransitionFilter {
+
+    /**
+     * Package local class that drops the duplicate and oscillating transitions before they reach the receivers.
+     * It keeps the last accepted ENTER or EXIT of each geofence in a persisted table, then for each new transition:
+     * - a transition identical to the last accepted one is a duplicate and is dropped;
+     * - a transition opposite to the last accepted one that comes less than the minimum dwell after it is deferred,
+     *   unless the device is clearly past the boundary: beyond the hysteresis margin around the radius of the geofence,
+     *   the margin being a ratio of the radius, or the accuracy of the location if it is larger.
+     * A deferred transition is pending until the minimum dwell after the last accepted one, then it is taken by
+     * {@link #takeDueTransitions(long)} to be delivered, unless the transition is reversed before: the oscillation is then dropped.
+     * The receivers always get alternating ENTER and EXIT of a geofence.
+     * The margin is not checked for the polygons, whose radius is the one of their covering circle.
+     * DWELL transitions are always accepted.
+     */
+
+    interface StateTable {
+        /**
+         * Read the whole table
+         * @return a map of geofence id -> state, can not be null
+         */
+        @NonNull
+        HashMap<String, State> load();
+
+        /**
+         * Apply changes to the table
+         * @param states the new states of geofences
+         * @param removedIds the ids of the geofences whose state is removed
+         */
+        void save(@NonNull Map<String, State> states, @NonNull Collection<String> removedIds);
+    }
+
+    static final class State {
+
+        /**
+         * Last accepted transition of a geofence, and the transition deferred after it if any
+         */
+
+        final int mTransition;
+        final long mTimeInMs;
+        // NO_TRANSITION if no transition is deferred
+        final int mPendingTransition;
+        final long mPendingTimeInMs;
+
+        State(int transition, long timeInMs) {
+            this(transition, timeInMs, NO_TRANSITION, 0);
+        }
+
+        State(int transition, long timeInMs, int pendingTransition, long pendingTimeInMs) {
+            mTransition = transition;
+            mTimeInMs = timeInMs;
+            mPendingTransition = pendingTransition;
+            mPendingTimeInMs = pendingTimeInMs;
+        }
+
+        boolean hasPendingTransition() {
+            return mPendingTransition != NO_TRANSITION;
+        }
+    }
+
+    /** Pending transition of a state without deferred transition */
+    static final int NO_TRANSITION = 0;
+
+    // minimum time between two opposite transitions of a geofence, below which the second one is deferred
+    static final long DEFAULT_MIN_DWELL_MS = 60 * 1000;
+    // ratio of the radius of a geofence beyond which a transition is never considered as an oscillation
+    static final double DEFAULT_HYSTERESIS_RATIO = 0.1;
+
+    private final StateTable mTable;
+    private final GeofenceClock mClock;
+    private final long mMinDwellMs;
+    private final double mHysteresisRatio;
+
+    // geofence id -> state. Null until loaded.
+    private HashMap<String, State> mStates;
+
+    /**
+     * Create a filter
+     * @param table the persisted table of the states
+     * @param clock the clock that dates the transitions
+     * @param minDwellMs the minimum time between two opposite transitions of a geofence
+     * @param hysteresisRatio the ratio of the radius of a geofence used as hysteresis margin
+     */
+    GeofenceTransitionFilter(@NonNull StateTable table, @NonNull GeofenceClock clock, long minDwellMs, double hysteresisRatio) {
+        mTable = table;
+        mClock = clock;
+        mMinDwellMs = minDwellMs;
+        mHysteresisRatio = hysteresisRatio;
+    }
+
+    /**
+     * Filter the geofences of a transition and remember the accepted and deferred ones.
+     * Set the alarm of the deferred transitions at {@link #getNextDeadlineInMs()} afterwards.
+     * @param transition the transition: {@link StorableGeofence#TRANSITION_ENTER}, {@link StorableGeofence#TRANSITION_EXIT}
+     *                   or {@link StorableGeofence#TRANSITION_DWELL}
+     * @param geofences the geofences that triggered the transition
+     * @param hasLocation true if the location that triggered the transition is known
+     * @param latitude latitude of the location in degrees
+     * @param longitude longitude of the location in degrees
+     * @param accuracy accuracy of the location in meters, 0 if unknown
+     * @return the geofences whose transition should be given to the receiver, in the same order
+     */
+    synchronized @NonNull
+    ArrayList<StorableGeofence> filter(int transition, @NonNull List<StorableGeofence> geofences,
+                                       boolean hasLocation, double latitude, double longitude, float accuracy) {
+        ArrayList<StorableGeofence> acceptedGeofences = new ArrayList<>(geofences.size());
+        if (transition != StorableGeofence.TRANSITION_ENTER && transition != StorableGeofence.TRANSITION_EXIT) {
+            acceptedGeofences.addAll(geofences);
+        } else {
+            HashMap<String, State> states = getStates();
+            HashMap<String, State> changedStates = new HashMap<>();
+            long nowInMs = mClock.currentTimeMillis();
+            for (StorableGeofence geofence : geofences) {
+                State state = states.get(geofence.getId());
+                State newState = null;
+                if (state == null) {
+                    newState = new State(transition, nowInMs);
+                    acceptedGeofences.add(geofence);
+                } else if (state.hasPendingTransition()) {
+                    // a duplicate of the pending transition is dropped, a reversal drops the oscillation
+                    if (state.mTransition == transition) {
+                        newState = new State(state.mTransition, state.mTimeInMs);
+                    }
+                } else if (state.mTransition != transition) {
+                    if (nowInMs - state.mTimeInMs >= mMinDwellMs || nowInMs < state.mTimeInMs
+                            || (hasLocation && isPastBoundary(geofence, transition, latitude, longitude, accuracy))) {
+                        newState = new State(transition, nowInMs);
+                        acceptedGeofences.add(geofence);
+                    } else {
+                        newState = new State(state.mTransition, state.mTimeInMs, transition, nowInMs);
+                    }
+                }
+
+                // no new state for a duplicate of the accepted transition
+                if (newState != null) {
+                    states.put(geofence.getId(), newState);
+                    changedStates.put(geofence.getId(), newState);
+                }
+            }
+            if (!changedStates.isEmpty()) {
+                mTable.save(changedStates, new ArrayList<String>());
+            }
+        }
+        return acceptedGeofences;
+    }
+
+    /**
+     * Accept the deferred transitions whose minimum dwell is over
+     * @param nowInMs the current time in milliseconds since epoch
+     * @return a map of geofence id -> transition to deliver, ordered by time of the transition
+     */
+    synchronized @NonNull
+    LinkedHashMap<String, Integer> takeDueTransitions(long nowInMs) {
+        ArrayList<Map.Entry<String, State>> dueEntries = new ArrayList<>();
+        for (Map.Entry<String, State> entry : getStates().entrySet()) {
+            State state = entry.getValue();
+            if (state.hasPendingTransition() && (nowInMs >= getDeadlineInMs(state) || nowInMs < state.mTimeInMs)) {
+                dueEntries.add(entry);
+            }
+        }
+        Collections.sort(dueEntries, new Comparator<Map.Entry<String, State>>() {
+            @Override
+            public int compare(Map.Entry<String, State> lhs, Map.Entry<String, State> rhs) {
+                long lhsTimeInMs = lhs.getValue().mPendingTimeInMs;
+                long rhsTimeInMs = rhs.getValue().mPendingTimeInMs;
+                return lhsTimeInMs < rhsTimeInMs ? -1 : (lhsTimeInMs == rhsTimeInMs ? 0 : 1);
+            }
+        });
+
+        LinkedHashMap<String, Integer> dueTransitions = new LinkedHashMap<>();
+        HashMap<String, State> changedStates = new HashMap<>();
+        for (Map.Entry<String, State> entry : dueEntries) {
+            State state = entry.getValue();
+            State newState = new State(state.mPendingTransition, state.mPendingTimeInMs);
+            dueTransitions.put(entry.getKey(), state.mPendingTransition);
+            entry.setValue(newState);
+            changedStates.put(entry.getKey(), newState);
+        }
+        if (!changedStates.isEmpty()) {
+            mTable.save(changedStates, new ArrayList<String>());
+        }
+        return dueTransitions;
+    }
+
+    /**
+     * Get the time at which the next deferred transition is due
+     * @return the time in milliseconds since epoch, 0 if no transition is deferred
+     */
+    synchronized long getNextDeadlineInMs() {
+        long nextDeadlineInMs = 0;
+        for (State state : getStates().values()) {
+            if (state.hasPendingTransition()) {
+                long deadlineInMs = getDeadlineInMs(state);
+                if (nextDeadlineInMs == 0 || deadlineInMs < nextDeadlineInMs) {
+                    nextDeadlineInMs = deadlineInMs;
+                }
+            }
+        }
+        return nextDeadlineInMs;
+    }
+
+    /**
+     * Forget the states of geofences, for example because they have been removed or registered again.
+     * Their deferred transitions are dropped.
+     * @param geofenceIds the ids of the geofences
+     */
+    synchronized void forget(@NonNull Collection<String> geofenceIds) {
+        HashMap<String, State> states = getStates();
+        ArrayList<String> removedIds = new ArrayList<>();
+        for (String geofenceId : geofenceIds) {
+            if (states.remove(geofenceId) != null) {
+                removedIds.add(geofenceId);
+            }
+        }
+        if (!removedIds.isEmpty()) {
+            mTable.save(new HashMap<String, State>(), removedIds);
+        }
+    }
+
+    private long getDeadlineInMs(@NonNull State state) {
+        return state.mTimeInMs + mMinDwellMs;
+    }
+
+    /**
+     * Check whether a location is beyond the hysteresis margin of a geofence, on the side of a transition
+     * @return true if the location is further than the margin inside the radius for an ENTER, or outside for an EXIT
+     */
+    private boolean isPastBoundary(@NonNull StorableGeofence geofence, int transition, double latitude, double longitude, float accuracy) {
+        boolean pastBoundary = false;
+        if (!(geofence instanceof StorablePolygonGeofence)) {
+            double margin = Math.max(geofence.getRadius() * mHysteresisRatio, accuracy);
+            double distance = GeoMath.distance(latitude, longitude, geofence.getLatitude(), geofence.getLongitude());
+            if (transition == StorableGeofence.TRANSITION_ENTER) {
+                pastBoundary = distance < geofence.getRadius() - margin;
+            } else {
+                pastBoundary = distance > geofence.getRadius() + margin;
+            }
+        }
+        return pastBoundary;
+    }
+
+    @NonNull
+    private HashMap<String, State> getStates() {
+        if (mStates == null) {
+            mStates = mTable.load();
+        }
+        return mStates;
+    }
+}
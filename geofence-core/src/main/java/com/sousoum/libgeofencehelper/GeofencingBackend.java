@@ -0,0 +1,63 @@
+package com.sousoum.libgeofencehelper;
+
+import java.util.List;
+
+public interface GeofencingBackend {
+
+    /**
+     * Service that monitors the registered geofences, for example the Google API Client on Android.
+     * The status codes are the ones of the Google API, a code less than or equal to {@link #STATUS_SUCCESS} is a success.
+     */
+
+    /** Status of a successful request. Same value as CommonStatusCodes.SUCCESS of the Google API. */
+    int STATUS_SUCCESS = 0;
+    /** Status of an operation that could not be submitted, for example because the geofence is expired. Same value as CommonStatusCodes.ERROR of the Google API. */
+    int STATUS_ERROR = 13;
+    /** Status of an operation that has been cancelled by a later operation on the same geofence. Same value as CommonStatusCodes.CANCELED of the Google API. */
+    int STATUS_CANCELED = 16;
+    /** Status of a request that failed because the backend dropped all the registered geofences. Same value as GeofenceStatusCodes.GEOFENCE_NOT_AVAILABLE of the Google API. */
+    int STATUS_GEOFENCE_NOT_AVAILABLE = 1000;
+
+    interface Callback {
+        /**
+         * Called when the result of a request is received
+         * @param statusCode the status code of the request
+         * @param statusMessage the status message of the request, can be null
+         */
+        void onResult(int statusCode, String statusMessage);
+    }
+
+    /**
+     * @return true if requests can be submitted
+     */
+    boolean isConnected();
+
+    /**
+     * Ask for a connection. The backend only starts the connection: the library gives it, when it creates it,
+     * the action to run once connected, which synchronizes the pending geofences.
+     */
+    void connect();
+
+    /**
+     * Get the key of the requests that can register a geofence.
+     * Geofences that have the same key can be registered by the same request.
+     * @param geofence the geofence
+     * @return the key of the request, for example the class name of the receiver of the geofence. Can be null.
+     */
+    String getRequestKey(@NonNull StorableGeofence geofence);
+
+    /**
+     * Register geofences. The backend must be connected.
+     * @param requestKey the key of the request, shared by all the geofences
+     * @param geofences the geofences to register
+     * @param callback the callback informed of the result
+     */
+    void addGeofences(String requestKey, @NonNull List<StorableGeofence> geofences, @NonNull Callback callback);
+
+    /**
+     * Unregister geofences. The backend must be connected.
+     * @param geofenceIds the ids of the geofences to unregister
+     * @param callback the callback informed of the result
+     */
+    void removeGeofences(@NonNull List<String> geofenceIds, @NonNull Callback callback);
+}
@@ -0,0 +1,40 @@
+package com.sousoum.libgeofencehelper;
+
+import java.io.IOException;
+import java.util.LinkedHashMap;
+
+public interface IndexedGeofenceStorage extends GeofenceStorage {
+
+    /**
+     * Storage that can find geofences without reading its whole content.
+     * A {@link GeofenceStore} uses these queries as long as its content is not loaded in memory.
+     * The results do not contain the ids stored without a geofence.
+     */
+
+    /**
+     * Read the geofences that are expired at a given time
+     * @param nowInMs the time in milliseconds since epoch
+     * @return a map of id -> geofence, in the storage order
+     * @throws IOException if the storage can not be read
+     */
+    @NonNull
+    LinkedHashMap<String, StorableGeofence> readExpired(long nowInMs) throws IOException;
+
+    /**
+     * Read the geofences of a receiver
+     * @param pendingIntentClassName the class name of the receiver
+     * @return a map of id -> geofence, in the storage order
+     * @throws IOException if the storage can not be read
+     */
+    @NonNull
+    LinkedHashMap<String, StorableGeofence> readByReceiver(@NonNull String pendingIntentClassName) throws IOException;
+
+    /**
+     * Read the geofences whose additional data contain a key
+     * @param key the key of the additional data
+     * @return a map of id -> geofence, in the storage order
+     * @throws IOException if the storage can not be read
+     */
+    @NonNull
+    LinkedHashMap<String, StorableGeofence> readByAdditionalDataKey(@NonNull String key) throws IOException;
+}
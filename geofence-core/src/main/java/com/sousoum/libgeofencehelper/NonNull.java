@@ -0,0 +1,17 @@
+package com.sousoum.libgeofencehelper;
+
+import java.lang.annotation.Documented;
+import java.lang.annotation.ElementType;
+import java.lang.annotation.Retention;
+import java.lang.annotation.RetentionPolicy;
+import java.lang.annotation.Target;
+
+/**
+ * Package local annotation with the same meaning as android.support.annotation.NonNull,
+ * the core module can not depend on the Android support library.
+ */
+@Documented
+@Retention(RetentionPolicy.CLASS)
+@Target({ElementType.METHOD, ElementType.PARAMETER, ElementType.FIELD, ElementType.LOCAL_VARIABLE})
+@interface NonNull {
+}
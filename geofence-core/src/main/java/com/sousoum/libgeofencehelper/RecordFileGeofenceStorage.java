@@ -0,0 +1,67 @@
+package com.sousoum.libgeofencehelper;
+
+import java.io.File;
+import java.io.IOException;
+import java.util.LinkedHashMap;
+import java.util.Map;
+import java.util.Set;
+
+public class RecordFileGeofenceStorage implements GeofenceStorage {
+
+    /**
+     * Storage that keeps each geofence as a binary record (see {@link GeofenceRecordCodec}) of a single record file (see {@link GeofenceRecordFile}).
+     * It is the default storage of the library.
+     */
+
+    private static final String TAG = "RecordFileStorage";
+
+    private final GeofenceRecordFile mRecordFile;
+
+    /**
+     * Create a storage backed by a file
+     * @param file the record file, created when the first geofence is written
+     */
+    public RecordFileGeofenceStorage(@NonNull File file) {
+        mRecordFile = new GeofenceRecordFile(file);
+    }
+
+    @Override
+    public @NonNull
+    LinkedHashMap<String, StorableGeofence> readAll() throws IOException {
+        LinkedHashMap<String, byte[]> records = mRecordFile.readAll();
+        LinkedHashMap<String, StorableGeofence> geofences = new LinkedHashMap<>(records.size() * 4 / 3 + 1);
+        for (Map.Entry<String, byte[]> record : records.entrySet()) {
+            geofences.put(record.getKey(), decode(record.getKey(), record.getValue()));
+        }
+        return geofences;
+    }
+
+    @Override
+    public void update(@NonNull Map<String, StorableGeofence> writes, @NonNull Set<String> deletes) throws IOException {
+        LinkedHashMap<String, byte[]> records = new LinkedHashMap<>(writes.size() * 4 / 3 + 1);
+        for (Map.Entry<String, StorableGeofence> write : writes.entrySet()) {
+            StorableGeofence geofence = write.getValue();
+            if (geofence != null) {
+                records.put(write.getKey(), GeofenceRecordCodec.encode(geofence));
+            } else {
+                records.put(write.getKey(), GeofenceRecordCodec.encodeIdOnly());
+            }
+        }
+        mRecordFile.update(records, deletes);
+    }
+
+    @Override
+    public void reset() {
+        mRecordFile.reset();
+    }
+
+    private StorableGeofence decode(@NonNull String geofenceId, @NonNull byte[] body) {
+        StorableGeofence storableGeofence = null;
+        try {
+            storableGeofence = GeofenceRecordCodec.decode(geofenceId, body);
+        } catch (IOException e) {
+            GeofenceLog.e(TAG, "Corrupted record for geofence " + geofenceId, e);
+        }
+        return storableGeofence;
+    }
+}
@@ -0,0 +1,278 @@
+package com.sousoum.libgeofencehelper;
+
+import java.util.HashMap;
+
+/**
+ * Created by Djavan on 15/05/2015.
+ */
+public class StorableGeofence {
+
+    /**
+     * A geofence that can be locally stored (for example in the shared preferences)
+     * The additional data of a geofence read from a store are only decoded when they are first accessed.
+     */
+
+    /** Expiration duration of a geofence that never expires. Same value as NEVER_EXPIRE of the Google API. */
+    public static final long NEVER_EXPIRE = -1;
+    /** Transition when the device enters a geofence. Same value as Geofence.GEOFENCE_TRANSITION_ENTER of the Google API. */
+    public static final int TRANSITION_ENTER = 1;
+    /** Transition when the device exits a geofence. Same value as Geofence.GEOFENCE_TRANSITION_EXIT of the Google API. */
+    public static final int TRANSITION_EXIT = 2;
+    /** Transition when the device stays in a geofence. Same value as Geofence.GEOFENCE_TRANSITION_DWELL of the Google API. */
+    public static final int TRANSITION_DWELL = 4;
+
+    // Instance variables
+    private final String mRequestId;
+    private final String mPendingIntentClassName;
+    private final double mLatitude;
+    private final double mLongitude;
+    private final float mRadius;
+    private final int mLoiteringDelay;
+    private final long mExpirationDuration;
+    private final int mTransitionType;
+    private final long mExpirationDateInMs;
+    private GeofenceAttributes mAttributes;
+    // encoded additional data of a restored geofence, decoded on the first access. Null once decoded.
+    private byte[] mAdditionalDataPayload;
+
+    /**
+     * Create a storable geofence.<br/>
+     *
+     * Note: If you want to create a dwell geofence, you would certainly prefer {@link StorableGeofence#StorableGeofence(String, String, double, double, float, long, int, int, HashMap)}
+     *
+     * @param geofenceId The Geofence's request ID.
+     * @param pendingIntentClassName full class name of the pending intent that should be triggered when the geofence is activated.
+     *                               This class should inherit from IntentService
+     *                               Can be get with YOUR_CLASS.class.getName()
+     *                               If this class is not correct, a DefaultTransitionsIntentService will be called
+     * @param latitude Latitude of the Geofence's center in degrees.
+     * @param longitude Longitude of the Geofence's center in degrees.
+     * @param radius Radius of the geofence circle in meters.
+     * @param expiration Geofence expiration duration, pass {@link #NEVER_EXPIRE} if you don't want an expiration date.
+     * @param transition Type of Geofence transition.
+     * @param additionalData Additional data you want to pass. It maps a String to an Object. This Object should be either a String, Long, Integer, Double, Boolean, Float or byte[]
+     *                       The additional data are copied in a {@link GeofenceAttributes}.
+     */
+    public StorableGeofence(String geofenceId, String pendingIntentClassName, double latitude, double longitude, float radius,
+                            long expiration, int transition, HashMap<String, Object> additionalData) {
+        // Set the instance fields from the constructor.
+        this.mRequestId = geofenceId;
+        this.mPendingIntentClassName = pendingIntentClassName;
+        this.mLatitude = latitude;
+        this.mLongitude = longitude;
+        this.mRadius = radius;
+        this.mExpirationDuration = expiration;
+        this.mLoiteringDelay = 0;
+        this.mTransitionType = transition;
+        if (mExpirationDuration != NEVER_EXPIRE)
+        {
+            long nowInMs = System.currentTimeMillis();
+            mExpirationDateInMs = nowInMs + mExpirationDuration;
+        } else {
+            mExpirationDateInMs = 0;
+        }
+        this.mAttributes = GeofenceAttributes.fromMap(additionalData);
+    }
+
+    /**
+     * Create a storable geofence
+     * @param geofenceId The Geofence's request ID.
+     * @param pendingIntentClassName full class name of the pending intent that should be triggered when the geofence is activated.
+     *                               This class should inherit from IntentService
+     *                               Can be get with YOUR_CLASS.class.getName()
+     *                               If this class is not correct, a DefaultTransitionsIntentService will be called
+     * @param latitude Latitude of the Geofence's center in degrees.
+     * @param longitude Longitude of the Geofence's center in degrees.
+     * @param radius Radius of the geofence circle in meters.
+     * @param expiration Geofence expiration duration, pass {@link #NEVER_EXPIRE} if you don't want an expiration date.
+     * @param loiteringDelay Sets the delay between GEOFENCE_TRANSITION_ENTER and GEOFENCE_TRANSITION_DWELLING in milliseconds
+     *                       This value is ignored if the transition types don't include a GEOFENCE_TRANSITION_DWELL filter.
+     * @param transition Type of Geofence transition.
+     * @param additionalData Additional data you want to pass. It maps a String to an Object. This Object should be either a String, Long, Integer, Double, Boolean, Float or byte[]
+     *                       The additional data are copied in a {@link GeofenceAttributes}.
+     */
+    public StorableGeofence(String geofenceId, String pendingIntentClassName, double latitude, double longitude, float radius,
+                            long expiration, int loiteringDelay, int transition, HashMap<String, Object> additionalData) {
+        // Set the instance fields from the constructor.
+        this.mRequestId = geofenceId;
+        this.mPendingIntentClassName = pendingIntentClassName;
+        this.mLatitude = latitude;
+        this.mLongitude = longitude;
+        this.mRadius = radius;
+        this.mExpirationDuration = expiration;
+        this.mLoiteringDelay = loiteringDelay;
+        this.mTransitionType = transition;
+        if (mExpirationDuration != NEVER_EXPIRE)
+        {
+            long nowInMs = System.currentTimeMillis();
+            mExpirationDateInMs = nowInMs + mExpirationDuration;
+        } else {
+            mExpirationDateInMs = 0;
+        }
+        this.mAttributes = GeofenceAttributes.fromMap(additionalData);
+    }
+
+    /**
+     * Restore a storable geofence from a store.
+     * Contrary to the public constructors, the expiration date is not computed from now but restored as it was stored.
+     * @param geofenceId The Geofence's request ID.
+     * @param pendingIntentClassName full class name of the pending intent that should be triggered when the geofence is activated.
+     * @param latitude Latitude of the Geofence's center in degrees.
+     * @param longitude Longitude of the Geofence's center in degrees.
+     * @param radius Radius of the geofence circle in meters.
+     * @param expiration Geofence expiration duration, {@link #NEVER_EXPIRE} if the geofence never expires.
+     * @param expirationDateInMs The stored expiration date in milliseconds. Ignored if expiration is {@link #NEVER_EXPIRE}.
+     * @param loiteringDelay The delay between GEOFENCE_TRANSITION_ENTER and GEOFENCE_TRANSITION_DWELLING in milliseconds
+     * @param transition Type of Geofence transition.
+     * @param attributes Additional data.
+     */
+    StorableGeofence(String geofenceId, String pendingIntentClassName, double latitude, double longitude, float radius,
+                     long expiration, long expirationDateInMs, int loiteringDelay, int transition, GeofenceAttributes attributes) {
+        this.mRequestId = geofenceId;
+        this.mPendingIntentClassName = pendingIntentClassName;
+        this.mLatitude = latitude;
+        this.mLongitude = longitude;
+        this.mRadius = radius;
+        this.mExpirationDuration = expiration;
+        this.mLoiteringDelay = loiteringDelay;
+        this.mTransitionType = transition;
+        if (mExpirationDuration != NEVER_EXPIRE)
+        {
+            mExpirationDateInMs = expirationDateInMs;
+        } else {
+            mExpirationDateInMs = 0;
+        }
+        this.mAttributes = attributes;
+    }
+
+    // Instance field getters.
+    public String getId() {
+        return mRequestId;
+    }
+    public String getPendingIntentClassName() {
+        return mPendingIntentClassName;
+    }
+    public double getLatitude() {
+        return mLatitude;
+    }
+    public double getLongitude() {
+        return mLongitude;
+    }
+    public float getRadius() {
+        return mRadius;
+    }
+
+    /**
+     * Get the additional data as a map.
+     * Each call builds a new copy of the attributes, with boxed values: changing the map does not change the geofence,
+     * and the map should be kept rather than asked again for each value. Prefer {@link #getAttributes()}.
+     * @return a new map of the additional data, or null if the geofence has none
+     */
+    public HashMap<String, Object> getAdditionalData()
+    {
+        GeofenceAttributes attributes = getAttributes();
+        return attributes != null ? attributes.toMap() : null;
+    }
+
+    /**
+     * Get the additional data
+     * @return the attributes of the geofence, or null if the geofence has none. They are shared, they should not be modified.
+     */
+    public synchronized GeofenceAttributes getAttributes()
+    {
+        if (mAdditionalDataPayload != null) {
+            mAttributes = GeofenceRecordCodec.decodeAdditionalData(mRequestId, mAdditionalDataPayload);
+            mAdditionalDataPayload = null;
+        }
+        return mAttributes;
+    }
+
+    /**
+     * Give the encoded additional data of a restored geofence, they will be decoded on the first call to {@link #getAdditionalData()}
+     * @param payload the additional data encoded by {@link GeofenceRecordCodec}
+     */
+    synchronized void setAdditionalDataPayload(@NonNull byte[] payload) {
+        mAttributes = null;
+        mAdditionalDataPayload = payload;
+    }
+
+    /**
+     * @return the encoded additional data if they have not been decoded yet, null otherwise
+     */
+    synchronized byte[] getAdditionalDataPayload() {
+        return mAdditionalDataPayload;
+    }
+
+    /**
+     * Return the real expiration duration
+     * @return the time in milli until the expiration date
+     */
+    public long getExpirationDuration() {
+        long expirationDuration = mExpirationDuration;
+        if (mExpirationDuration != NEVER_EXPIRE)
+        {
+            long nowInMs = System.currentTimeMillis();
+            // never return NEVER_EXPIRE (-1) for a geofence that has already expired
+            expirationDuration = Math.max(0, mExpirationDateInMs - nowInMs);
+        }
+
+        return expirationDuration;
+    }
+    public int getLoiteringDelay() {
+        return mLoiteringDelay;
+    }
+    public int getTransitionType() {
+        return mTransitionType;
+    }
+    public long getExpirationDateInMs()
+    {
+        return mExpirationDateInMs;
+    }
+
+    public boolean isExpired()
+    {
+        return isExpired(System.currentTimeMillis());
+    }
+
+    /**
+     * Check whether the geofence is expired at a given time
+     * @param nowInMs the time in milliseconds since epoch
+     * @return true if the expiration date of the geofence is before nowInMs
+     */
+    public boolean isExpired(long nowInMs)
+    {
+        boolean isExpired = false;
+        if (mExpirationDuration != NEVER_EXPIRE)
+        {
+            if (nowInMs > mExpirationDateInMs) {
+                isExpired = true;
+            }
+        }
+
+        return isExpired;
+    }
+
+    /**
+     * Check whether the region of the geofence contains a point
+     * @param latitude latitude of the point in degrees
+     * @param longitude longitude of the point in degrees
+     * @return true if the point is in the circle of the geofence
+     */
+    public boolean contains(double latitude, double longitude) {
+        return GeoMath.distance(latitude, longitude, mLatitude, mLongitude) <= mRadius;
+    }
+
+    @Override
+    public String toString() {
+        String str = "Geofence " + mRequestId + " : \n";
+        str += "\t(" + mLatitude + ", " + mLongitude + ")\n";
+        str += "\tRadius : " + mRadius + "\n";
+        str += "\tExpiration : " + mExpirationDuration + "\n";
+        str += "\texpirationDateInMS : " + mExpirationDateInMs + "\n";
+        str += "\tloiteringDelay : " + mLoiteringDelay + "\n";
+        str += "\tTransition : " + mTransitionType + "\n";
+        str += "\tAdditional data : " + getAttributes() + "\n";
+        str += "\tReceiver : " + mPendingIntentClassName + "\n";
+        return str;
+    }
+}
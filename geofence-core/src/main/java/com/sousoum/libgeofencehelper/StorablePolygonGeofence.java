@@ -0,0 +1,169 @@
+package com.sousoum.libgeofencehelper;
+
+import java.util.HashMap;
+
+public class StorablePolygonGeofence extends StorableGeofence {
+
+    /**
+     * A geofence whose region is a polygon.
+     * The Google API only knows circles, so the polygon is registered as its smallest covering circle,
+     * and the transitions of the circle are checked against the polygon by the PolygonTransitionsIntentService of the Android library
+     * before being forwarded to the receiver of the geofence.
+     * The forwarded intent is the one of the Google API with an additional PolygonTransitionsIntentService.EXTRA_CONFIRMED_GEOFENCE_IDS extra,
+     * the receiver should only consider the geofences of this list.
+     *
+     * Limitation: the Google API only triggers when the circle is crossed. A transition of the circle that is rejected
+     * (for example an ENTER in the circle but outside the polygon) is not triggered again when the polygon itself is crossed later.
+     * Polygons close to their covering circle, or the {@link GeofenceEvaluationEngine}, give better results.
+     *
+     * The edges of the polygon are straight lines in latitude/longitude coordinates, which is accurate for polygons of a few kilometers.
+     * The polygon may cross the antimeridian, but must not contain a pole.
+     */
+
+    private final double[] mVertexLatitudes;
+    private final double[] mVertexLongitudes;
+    // longitudes unwrapped around the first vertex, so that the polygon can cross the antimeridian
+    private final double[] mUnwrappedLongitudes;
+    private final double mMinLatitude;
+    private final double mMaxLatitude;
+    private final double mMinLongitude;
+    private final double mMaxLongitude;
+
+    /**
+     * Create a storable polygon geofence
+     * @param geofenceId The Geofence's request ID.
+     * @param pendingIntentClassName full class name of the IntentService that should be triggered when the polygon is crossed.
+     *                               If this class is not correct, a DefaultTransitionsIntentService will be called
+     * @param latitudes Latitudes of the vertices of the polygon in degrees, at least 3.
+     * @param longitudes Longitudes of the vertices of the polygon in degrees, as many as the latitudes.
+     * @param expiration Geofence expiration duration, pass {@link #NEVER_EXPIRE} if you don't want an expiration date.
+     * @param loiteringDelay Sets the delay between GEOFENCE_TRANSITION_ENTER and GEOFENCE_TRANSITION_DWELLING in milliseconds
+     * @param transition Type of Geofence transition.
+     * @param additionalData Additional data you want to pass. It maps a String to an Object. This Object should be either a String, Long, Integer, Double, Boolean, Float or byte[]
+     * @throws IllegalArgumentException if there are less than 3 vertices or if the arrays do not have the same length
+     */
+    public StorablePolygonGeofence(String geofenceId, String pendingIntentClassName, double[] latitudes, double[] longitudes,
+                                   long expiration, int loiteringDelay, int transition, HashMap<String, Object> additionalData) {
+        this(geofenceId, pendingIntentClassName, latitudes, longitudes, coveringCircle(latitudes, longitudes),
+                expiration, loiteringDelay, transition, additionalData);
+    }
+
+    private StorablePolygonGeofence(String geofenceId, String pendingIntentClassName, double[] latitudes, double[] longitudes,
+                                    double[] circle, long expiration, int loiteringDelay, int transition, HashMap<String, Object> additionalData) {
+        super(geofenceId, pendingIntentClassName, circle[0], circle[1], (float) circle[2], expiration, loiteringDelay, transition, additionalData);
+        mVertexLatitudes = latitudes.clone();
+        mVertexLongitudes = longitudes.clone();
+        mUnwrappedLongitudes = unwrap(longitudes);
+        mMinLatitude = min(mVertexLatitudes);
+        mMaxLatitude = max(mVertexLatitudes);
+        mMinLongitude = min(mUnwrappedLongitudes);
+        mMaxLongitude = max(mUnwrappedLongitudes);
+    }
+
+    /**
+     * Restore a storable polygon geofence from a store, without computing its covering circle again.
+     */
+    StorablePolygonGeofence(String geofenceId, String pendingIntentClassName, double[] latitudes, double[] longitudes,
+                            double latitude, double longitude, float radius, long expiration, long expirationDateInMs,
+                            int loiteringDelay, int transition, GeofenceAttributes attributes) {
+        super(geofenceId, pendingIntentClassName, latitude, longitude, radius, expiration, expirationDateInMs, loiteringDelay, transition, attributes);
+        checkVertices(latitudes, longitudes);
+        mVertexLatitudes = latitudes.clone();
+        mVertexLongitudes = longitudes.clone();
+        mUnwrappedLongitudes = unwrap(longitudes);
+        mMinLatitude = min(mVertexLatitudes);
+        mMaxLatitude = max(mVertexLatitudes);
+        mMinLongitude = min(mUnwrappedLongitudes);
+        mMaxLongitude = max(mUnwrappedLongitudes);
+    }
+
+    /**
+     * @return a copy of the latitudes of the vertices
+     */
+    public double[] getVertexLatitudes() {
+        return mVertexLatitudes.clone();
+    }
+
+    /**
+     * @return a copy of the longitudes of the vertices
+     */
+    public double[] getVertexLongitudes() {
+        return mVertexLongitudes.clone();
+    }
+
+    /**
+     * @return the number of vertices
+     */
+    public int getVertexCount() {
+        return mVertexLatitudes.length;
+    }
+
+    /**
+     * Check whether the polygon contains a point.
+     * The bounding box of the polygon is checked first, then the crossings of a ray with the edges are counted.
+     * @param latitude latitude of the point in degrees
+     * @param longitude longitude of the point in degrees
+     * @return true if the point is in the polygon
+     */
+    @Override
+    public boolean contains(double latitude, double longitude) {
+        boolean inside = false;
+        double lon = mUnwrappedLongitudes[0] + GeoMath.wrapLongitudeDelta(longitude - mUnwrappedLongitudes[0]);
+        if (latitude >= mMinLatitude && latitude <= mMaxLatitude && lon >= mMinLongitude && lon <= mMaxLongitude) {
+            int count = mVertexLatitudes.length;
+            for (int i = 0, j = count - 1; i < count; j = i++) {
+                double latI = mVertexLatitudes[i];
+                double latJ = mVertexLatitudes[j];
+                if ((latI > latitude) != (latJ > latitude)) {
+                    double lonI = mUnwrappedLongitudes[i];
+                    double lonJ = mUnwrappedLongitudes[j];
+                    if (lon < lonI + (latitude - latI) * (lonJ - lonI) / (latJ - latI)) {
+                        inside = !inside;
+                    }
+                }
+            }
+        }
+        return inside;
+    }
+
+    @Override
+    public String toString() {
+        return super.toString() + "\tVertices : " + mVertexLatitudes.length + "\n";
+    }
+
+    private static double[] coveringCircle(double[] latitudes, double[] longitudes) {
+        checkVertices(latitudes, longitudes);
+        return GeoMath.minimalCoveringCircle(latitudes, unwrap(longitudes));
+    }
+
+    private static void checkVertices(double[] latitudes, double[] longitudes) {
+        if (latitudes == null || longitudes == null || latitudes.length != longitudes.length || latitudes.length < 3) {
+            throw new IllegalArgumentException("A polygon needs at least 3 vertices with a latitude and a longitude");
+        }
+    }
+
+    private static double[] unwrap(double[] longitudes) {
+        double[] unwrapped = new double[longitudes.length];
+        unwrapped[0] = longitudes[0];
+        for (int i = 1; i < longitudes.length; i++) {
+            unwrapped[i] = longitudes[0] + GeoMath.wrapLongitudeDelta(longitudes[i] - longitudes[0]);
+        }
+        return unwrapped;
+    }
+
+    private static double min(double[] values) {
+        double min = values[0];
+        for (double value : values) {
+            min = Math.min(min, value);
+        }
+        return min;
+    }
+
+    private static double max(double[] values) {
+        double max = values[0];
+        for (double value : values) {
+            max = Math.max(max, value);
+        }
+        return max;
+    }
+}
@@ -0,0 +1,138 @@
+package com.sousoum.libgeofencehelper;
+
+import org.junit.Test;
+
+import java.util.ArrayList;
+import java.util.Collections;
+import java.util.List;
+import java.util.concurrent.CountDownLatch;
+import java.util.concurrent.TimeUnit;
+
+import static org.junit.Assert.assertEquals;
+import static org.junit.Assert.assertFalse;
+import static org.junit.Assert.assertTrue;
+
+public class GeofenceOperationQueueTest {
+
+    @Test
+    public void operationsRunInOrder() throws InterruptedException {
+        GeofenceOperationQueue queue = new GeofenceOperationQueue("test", 16);
+        final List<Integer> order = Collections.synchronizedList(new ArrayList<Integer>());
+        for (int i = 0; i < 10; i++) {
+            final int index = i;
+            queue.submit(new Runnable() {
+                @Override
+                public void run() {
+                    order.add(index);
+                }
+            });
+        }
+
+        awaitIdle(queue);
+        assertEquals(10, order.size());
+        for (int i = 0; i < 10; i++) {
+            assertEquals(i, (int) order.get(i));
+        }
+    }
+
+    @Test
+    public void postDoesNotWaitForAFullBacklog() throws InterruptedException {
+        GeofenceOperationQueue queue = new GeofenceOperationQueue("test", 1);
+        final CountDownLatch blocked = new CountDownLatch(1);
+        final CountDownLatch posted = new CountDownLatch(1);
+        // the only permit is taken until the operation ends
+        queue.submit(new Runnable() {
+            @Override
+            public void run() {
+                try {
+                    blocked.await();
+                } catch (InterruptedException e) {
+                    Thread.currentThread().interrupt();
+                }
+            }
+        });
+
+        queue.post(new Runnable() {
+            @Override
+            public void run() {
+                posted.countDown();
+            }
+        });
+
+        // the post returned while the backlog is full, the operation runs once the first one ends
+        blocked.countDown();
+        assertTrue(posted.await(5, TimeUnit.SECONDS));
+    }
+
+    @Test
+    public void submitRejectsWhenTheBacklogIsFull() throws InterruptedException {
+        GeofenceOperationQueue queue = new GeofenceOperationQueue("test", 1);
+        final CountDownLatch blocked = new CountDownLatch(1);
+        final List<String> steps = Collections.synchronizedList(new ArrayList<String>());
+        assertTrue(queue.submit(new Runnable() {
+            @Override
+            public void run() {
+                try {
+                    blocked.await();
+                } catch (InterruptedException e) {
+                    Thread.currentThread().interrupt();
+                }
+            }
+        }));
+
+        // the only permit is taken, the submit returns without waiting
+        assertFalse(queue.submit(new Runnable() {
+            @Override
+            public void run() {
+                steps.add("rejected");
+            }
+        }));
+
+        blocked.countDown();
+        awaitIdle(queue);
+        assertTrue(steps.isEmpty());
+    }
+
+    @Test
+    public void failedOperationsAreContained() throws InterruptedException {
+        final GeofenceOperationQueue queue = new GeofenceOperationQueue("test", 4);
+        final List<String> steps = Collections.synchronizedList(new ArrayList<String>());
+        queue.submit(new Runnable() {
+            @Override
+            public void run() {
+                throw new IllegalStateException("failed");
+            }
+        });
+        queue.submit(new Runnable() {
+            @Override
+            public void run() {
+                // submitted from the thread of the queue, run immediately
+                queue.submit(new Runnable() {
+                    @Override
+                    public void run() {
+                        steps.add("inline");
+                        throw new IllegalStateException("failed inline");
+                    }
+                });
+                steps.add("after inline");
+            }
+        });
+
+        awaitIdle(queue);
+        assertEquals(2, steps.size());
+        assertEquals("inline", steps.get(0));
+        assertEquals("after inline", steps.get(1));
+    }
+
+    private static void awaitIdle(GeofenceOperationQueue queue) throws InterruptedException {
+        final CountDownLatch done = new CountDownLatch(1);
+        // posted so that it is never rejected, it runs after the operations already queued
+        queue.post(new Runnable() {
+            @Override
+            public void run() {
+                done.countDown();
+            }
+        });
+        assertTrue(done.await(5, TimeUnit.SECONDS));
+    }
+}
@@ -0,0 +1,82 @@
+package com.sousoum.libgeofencehelper;
+
+import org.junit.Before;
+import org.junit.Test;
+
+import java.util.Arrays;
+
+import static org.junit.Assert.assertEquals;
+import static org.junit.Assert.assertFalse;
+import static org.junit.Assert.assertNull;
+import static org.junit.Assert.assertTrue;
+
+public class GeofenceOperationTrackerTest {
+
+    private static final int SERVICE_MISSING = 1;
+
+    private GeofenceOperationTracker mTracker;
+
+    @Before
+    public void setUp() {
+        mTracker = new GeofenceOperationTracker();
+    }
+
+    @Test
+    public void statusCompletesTheFuture() {
+        GeofenceOperationFuture future = new GeofenceOperationFuture(Arrays.asList("a", "b"));
+        mTracker.trackAdds(future);
+
+        mTracker.onAddStatus("a", GeofencingBackend.STATUS_SUCCESS);
+        assertFalse(future.isDone());
+        mTracker.onAddStatus("b", GeofencingBackend.STATUS_ERROR);
+
+        assertTrue(future.isDone());
+        assertFalse(future.isSuccess());
+        assertEquals(GeofencingBackend.STATUS_SUCCESS, (int) future.getStatusCode("a"));
+        assertEquals(GeofencingBackend.STATUS_ERROR, (int) future.getStatusCode("b"));
+    }
+
+    @Test
+    public void removalCancelsPendingAdd() {
+        GeofenceOperationFuture add = new GeofenceOperationFuture(Arrays.asList("a"));
+        GeofenceOperationFuture remove = new GeofenceOperationFuture(Arrays.asList("a"));
+        mTracker.trackAdds(add);
+        mTracker.trackRemoves(remove);
+
+        assertTrue(add.isDone());
+        assertEquals(GeofencingBackend.STATUS_CANCELED, (int) add.getStatusCode("a"));
+        assertFalse(remove.isDone());
+    }
+
+    @Test
+    public void failAllCompletesThePendingFutures() {
+        GeofenceOperationFuture add = new GeofenceOperationFuture(Arrays.asList("a", "b"));
+        GeofenceOperationFuture remove = new GeofenceOperationFuture(Arrays.asList("c"));
+        mTracker.trackAdds(add);
+        mTracker.trackRemoves(remove);
+        mTracker.onAddStatus("a", GeofencingBackend.STATUS_SUCCESS);
+
+        mTracker.failAll(SERVICE_MISSING);
+
+        assertTrue(add.isDone());
+        assertTrue(remove.isDone());
+        // the status already known is kept
+        assertEquals(GeofencingBackend.STATUS_SUCCESS, (int) add.getStatusCode("a"));
+        assertEquals(SERVICE_MISSING, (int) add.getStatusCode("b"));
+        assertEquals(SERVICE_MISSING, (int) remove.getStatusCode("c"));
+
+        // the later results are not given to the failed futures anymore
+        mTracker.onAddStatus("b", GeofencingBackend.STATUS_SUCCESS);
+        assertEquals(SERVICE_MISSING, (int) add.getStatusCode("b"));
+    }
+
+    @Test
+    public void failAllWithoutPendingOperation() {
+        mTracker.failAll(SERVICE_MISSING);
+
+        GeofenceOperationFuture add = new GeofenceOperationFuture(Arrays.asList("a"));
+        mTracker.trackAdds(add);
+        assertFalse(add.isDone());
+        assertNull(add.getStatusCode("a"));
+    }
+}
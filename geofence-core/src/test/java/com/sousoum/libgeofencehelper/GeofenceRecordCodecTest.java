@@ -0,0 +1,207 @@
+package com.sousoum.libgeofencehelper;
+
+import org.junit.Test;
+
+import java.io.ByteArrayOutputStream;
+import java.io.DataOutputStream;
+import java.io.IOException;
+import java.nio.charset.Charset;
+import java.util.HashMap;
+
+import static org.junit.Assert.assertArrayEquals;
+import static org.junit.Assert.assertEquals;
+import static org.junit.Assert.assertFalse;
+import static org.junit.Assert.assertNull;
+import static org.junit.Assert.assertTrue;
+
+public class GeofenceRecordCodecTest {
+
+    private static final Charset UTF8 = Charset.forName("UTF-8");
+
+    private static final String RECEIVER = "com.example.Receiver";
+    private static final long EXPIRATION_DATE = 1500000000000L;
+
+    @Test
+    public void idOnlyRoundTrip() throws IOException {
+        assertNull(GeofenceRecordCodec.decode("id", GeofenceRecordCodec.encodeIdOnly()));
+    }
+
+    @Test
+    public void geofenceRoundTrip() throws IOException {
+        StorableGeofence geofence = new StorableGeofence("circle", RECEIVER, 48.85, 2.35, 150f,
+                60000, 3000, StorableGeofence.TRANSITION_ENTER | StorableGeofence.TRANSITION_DWELL, null);
+
+        StorableGeofence decoded = GeofenceRecordCodec.decode("circle", GeofenceRecordCodec.encode(geofence));
+
+        assertFalse(decoded instanceof StorablePolygonGeofence);
+        assertEquals("circle", decoded.getId());
+        assertEquals(RECEIVER, decoded.getPendingIntentClassName());
+        assertEquals(48.85, decoded.getLatitude(), 0);
+        assertEquals(2.35, decoded.getLongitude(), 0);
+        assertEquals(150f, decoded.getRadius(), 0);
+        // the expiration date is restored, not computed again
+        assertEquals(geofence.getExpirationDateInMs(), decoded.getExpirationDateInMs());
+        assertEquals(3000, decoded.getLoiteringDelay());
+        assertEquals(StorableGeofence.TRANSITION_ENTER | StorableGeofence.TRANSITION_DWELL, decoded.getTransitionType());
+        assertEquals(0, decoded.getAttributes().size());
+    }
+
+    @Test
+    public void polygonRoundTrip() throws IOException {
+        double[] latitudes = {48.0, 48.0, 49.0, 49.0};
+        double[] longitudes = {2.0, 3.0, 3.0, 2.0};
+        StorablePolygonGeofence polygon = new StorablePolygonGeofence("polygon", RECEIVER, latitudes, longitudes,
+                StorableGeofence.NEVER_EXPIRE, 0, StorableGeofence.TRANSITION_EXIT, null);
+
+        StorableGeofence decoded = GeofenceRecordCodec.decode("polygon", GeofenceRecordCodec.encode(polygon));
+
+        assertTrue(decoded instanceof StorablePolygonGeofence);
+        StorablePolygonGeofence decodedPolygon = (StorablePolygonGeofence) decoded;
+        assertArrayEquals(latitudes, decodedPolygon.getVertexLatitudes(), 0);
+        assertArrayEquals(longitudes, decodedPolygon.getVertexLongitudes(), 0);
+        assertEquals(polygon.getLatitude(), decoded.getLatitude(), 0);
+        assertEquals(polygon.getLongitude(), decoded.getLongitude(), 0);
+        assertEquals(polygon.getRadius(), decoded.getRadius(), 0);
+        assertEquals(StorableGeofence.TRANSITION_EXIT, decoded.getTransitionType());
+        assertTrue(decoded.contains(48.5, 2.5));
+    }
+
+    @Test
+    public void attributesRoundTrip() throws IOException {
+        HashMap<String, Object> additionalData = new HashMap<>();
+        additionalData.put("string", "value");
+        additionalData.put("long", 1L << 40);
+        additionalData.put("int", 42);
+        additionalData.put("float", 1.5f);
+        additionalData.put("boolean", true);
+        additionalData.put("double", 0.1);
+        additionalData.put("bytes", new byte[] {1, 2, 3});
+        StorableGeofence geofence = new StorableGeofence("data", RECEIVER, 0, 0, 100f,
+                StorableGeofence.NEVER_EXPIRE, StorableGeofence.TRANSITION_ENTER, additionalData);
+
+        StorableGeofence decoded = GeofenceRecordCodec.decode("data", GeofenceRecordCodec.encode(geofence));
+        GeofenceAttributes attributes = decoded.getAttributes();
+
+        assertEquals(7, attributes.size());
+        assertEquals("value", attributes.getString("string", null));
+        assertEquals(1L << 40, attributes.getLong("long", 0));
+        assertEquals(42, attributes.getInt("int", 0));
+        assertEquals(1.5f, attributes.getFloat("float", 0), 0);
+        assertTrue(attributes.getBoolean("boolean", false));
+        assertEquals(0.1, attributes.getDouble("double", 0), 0);
+        assertArrayEquals(new byte[] {1, 2, 3}, attributes.getBytes("bytes", null));
+
+        // a geofence that has been decoded but whose additional data have not been read is encoded again as is
+        StorableGeofence reloaded = GeofenceRecordCodec.decode("data", GeofenceRecordCodec.encode(geofence));
+        StorableGeofence reencoded = GeofenceRecordCodec.decode("data", GeofenceRecordCodec.encode(reloaded));
+        assertEquals(7, reencoded.getAttributes().size());
+        assertEquals("value", reencoded.getAttributes().getString("string", null));
+        assertArrayEquals(new byte[] {1, 2, 3}, reencoded.getAttributes().getBytes("bytes", null));
+    }
+
+    @Test
+    public void legacyGeofence() throws IOException {
+        ByteArrayOutputStream bytes = new ByteArrayOutputStream();
+        DataOutputStream out = new DataOutputStream(bytes);
+        writeLegacyHeader(out, 1, 45.5, -73.5, 200f);
+        // additional data
+        out.writeInt(2);
+        writeString(out, "name");
+        out.writeByte(GeofenceAttributes.TYPE_STRING);
+        writeString(out, "home");
+        writeString(out, "count");
+        out.writeByte(GeofenceAttributes.TYPE_INTEGER);
+        out.writeInt(7);
+
+        StorableGeofence decoded = GeofenceRecordCodec.decode("legacy", bytes.toByteArray());
+
+        assertFalse(decoded instanceof StorablePolygonGeofence);
+        assertEquals("legacy", decoded.getId());
+        assertEquals(RECEIVER, decoded.getPendingIntentClassName());
+        assertEquals(45.5, decoded.getLatitude(), 0);
+        assertEquals(-73.5, decoded.getLongitude(), 0);
+        assertEquals(200f, decoded.getRadius(), 0);
+        assertEquals(EXPIRATION_DATE, decoded.getExpirationDateInMs());
+        assertFalse(decoded.isExpired(EXPIRATION_DATE));
+        assertTrue(decoded.isExpired(EXPIRATION_DATE + 1));
+        assertEquals(500, decoded.getLoiteringDelay());
+        assertEquals(StorableGeofence.TRANSITION_ENTER, decoded.getTransitionType());
+        assertEquals("home", decoded.getAttributes().getString("name", null));
+        assertEquals(7, decoded.getAttributes().getInt("count", 0));
+
+        // the legacy body is written again in the current layout
+        StorableGeofence reencoded = GeofenceRecordCodec.decode("legacy", GeofenceRecordCodec.encode(decoded));
+        assertEquals(EXPIRATION_DATE, reencoded.getExpirationDateInMs());
+        assertEquals("home", reencoded.getAttributes().getString("name", null));
+    }
+
+    @Test
+    public void legacyPolygon() throws IOException {
+        ByteArrayOutputStream bytes = new ByteArrayOutputStream();
+        DataOutputStream out = new DataOutputStream(bytes);
+        writeLegacyHeader(out, 2, 10.5, 20.5, 80000f);
+        // no additional data
+        out.writeInt(0);
+        out.writeInt(3);
+        out.writeDouble(10);
+        out.writeDouble(20);
+        out.writeDouble(11);
+        out.writeDouble(20);
+        out.writeDouble(10);
+        out.writeDouble(21);
+
+        StorableGeofence decoded = GeofenceRecordCodec.decode("legacyPolygon", bytes.toByteArray());
+
+        assertTrue(decoded instanceof StorablePolygonGeofence);
+        StorablePolygonGeofence polygon = (StorablePolygonGeofence) decoded;
+        assertArrayEquals(new double[] {10, 11, 10}, polygon.getVertexLatitudes(), 0);
+        assertArrayEquals(new double[] {20, 20, 21}, polygon.getVertexLongitudes(), 0);
+        // the stored covering circle is kept
+        assertEquals(10.5, decoded.getLatitude(), 0);
+        assertEquals(20.5, decoded.getLongitude(), 0);
+        assertEquals(80000f, decoded.getRadius(), 0);
+        assertEquals(0, decoded.getAttributes().size());
+    }
+
+    @Test(expected = IOException.class)
+    public void unknownKindFails() throws IOException {
+        GeofenceRecordCodec.decode("id", new byte[] {42});
+    }
+
+    @Test(expected = IOException.class)
+    public void badStringLengthFails() throws IOException {
+        ByteArrayOutputStream bytes = new ByteArrayOutputStream();
+        DataOutputStream out = new DataOutputStream(bytes);
+        out.writeByte(1);
+        out.writeInt(Integer.MAX_VALUE);
+        GeofenceRecordCodec.decode("id", bytes.toByteArray());
+    }
+
+    @Test(expected = IOException.class)
+    public void truncatedBodyFails() throws IOException {
+        StorableGeofence geofence = new StorableGeofence("circle", RECEIVER, 48.85, 2.35, 150f,
+                StorableGeofence.NEVER_EXPIRE, StorableGeofence.TRANSITION_ENTER, null);
+        byte[] body = GeofenceRecordCodec.encode(geofence);
+        byte[] truncated = new byte[body.length - 2];
+        System.arraycopy(body, 0, truncated, 0, truncated.length);
+        GeofenceRecordCodec.decode("circle", truncated);
+    }
+
+    private static void writeLegacyHeader(DataOutputStream out, int kind, double latitude, double longitude, float radius) throws IOException {
+        out.writeByte(kind);
+        writeString(out, RECEIVER);
+        out.writeDouble(latitude);
+        out.writeDouble(longitude);
+        out.writeFloat(radius);
+        out.writeLong(1000);
+        out.writeLong(EXPIRATION_DATE);
+        out.writeInt(500);
+        out.writeInt(StorableGeofence.TRANSITION_ENTER);
+    }
+
+    private static void writeString(DataOutputStream out, String str) throws IOException {
+        byte[] strBytes = str.getBytes(UTF8);
+        out.writeInt(strBytes.length);
+        out.write(strBytes);
+    }
+}
@@ -0,0 +1,306 @@
+package com.sousoum.libgeofencehelper;
+
+import org.junit.After;
+import org.junit.Before;
+import org.junit.Test;
+
+import java.io.ByteArrayOutputStream;
+import java.io.DataOutputStream;
+import java.io.File;
+import java.io.FileOutputStream;
+import java.io.IOException;
+import java.io.RandomAccessFile;
+import java.nio.charset.Charset;
+import java.util.Arrays;
+import java.util.Collections;
+import java.util.LinkedHashMap;
+import java.util.Map;
+import java.util.zip.CRC32;
+
+import static org.junit.Assert.assertArrayEquals;
+import static org.junit.Assert.assertEquals;
+import static org.junit.Assert.assertFalse;
+import static org.junit.Assert.assertNull;
+import static org.junit.Assert.assertTrue;
+
+public class GeofenceRecordFileTest {
+
+    private static final Charset UTF8 = Charset.forName("UTF-8");
+
+    private File mFile;
+
+    @Before
+    public void setUp() throws IOException {
+        mFile = File.createTempFile("records", ".bin");
+        assertTrue(mFile.delete());
+    }
+
+    @After
+    public void tearDown() {
+        mFile.delete();
+        new File(mFile.getPath() + ".tmp").delete();
+    }
+
+    @Test
+    public void emptyWhenNoFile() throws IOException {
+        GeofenceRecordFile recordFile = new GeofenceRecordFile(mFile);
+        assertTrue(recordFile.readAll().isEmpty());
+        assertFalse(recordFile.exists());
+    }
+
+    @Test
+    public void reloadAfterWrite() throws IOException {
+        new GeofenceRecordFile(mFile).update(records("a", "1", "b", "22", "c", "333"), Collections.<String>emptySet());
+
+        LinkedHashMap<String, byte[]> records = new GeofenceRecordFile(mFile).readAll();
+        assertEquals(Arrays.asList("a", "b", "c"), Arrays.asList(records.keySet().toArray()));
+        assertBody("22", records.get("b"));
+        assertBody("333", new GeofenceRecordFile(mFile).read("c"));
+        assertNull(new GeofenceRecordFile(mFile).read("d"));
+    }
+
+    @Test
+    public void reloadAfterUpdate() throws IOException {
+        GeofenceRecordFile recordFile = new GeofenceRecordFile(mFile);
+        recordFile.update(records("a", "1111", "b", "2222"), Collections.<String>emptySet());
+        long length = mFile.length();
+
+        recordFile.update(records("a", "xy"), Collections.<String>emptySet());
+
+        // even a smaller record is appended in a new slot, the old one is marked as dead
+        assertTrue(mFile.length() > length);
+        LinkedHashMap<String, byte[]> records = new GeofenceRecordFile(mFile).readAll();
+        assertEquals(Arrays.asList("b", "a"), Arrays.asList(records.keySet().toArray()));
+        assertBody("xy", records.get("a"));
+        assertBody("2222", records.get("b"));
+    }
+
+    @Test
+    public void tornAppendKeepsThePreviousVersion() throws IOException {
+        GeofenceRecordFile recordFile = new GeofenceRecordFile(mFile);
+        recordFile.update(records("a", "1111", "b", "2222"), Collections.<String>emptySet());
+        byte[] before = readFile();
+        recordFile.update(records("a", "new version"), Collections.<String>emptySet());
+        byte[] after = readFile();
+
+        // the process died in the middle of the append, before the old slot was marked as dead
+        FileOutputStream out = new FileOutputStream(mFile);
+        try {
+            out.write(before);
+            out.write(after, before.length, after.length - before.length - 4);
+        } finally {
+            out.close();
+        }
+
+        LinkedHashMap<String, byte[]> records = new GeofenceRecordFile(mFile).readAll();
+        assertEquals(Arrays.asList("a", "b"), Arrays.asList(records.keySet().toArray()));
+        assertBody("1111", records.get("a"));
+        assertBody("2222", records.get("b"));
+    }
+
+    @Test
+    public void reloadAfterGrowth() throws IOException {
+        GeofenceRecordFile recordFile = new GeofenceRecordFile(mFile);
+        recordFile.update(records("a", "1", "b", "2"), Collections.<String>emptySet());
+        long length = mFile.length();
+
+        String longBody = "a body that is much longer than the previous one";
+        recordFile.update(records("a", longBody), Collections.<String>emptySet());
+
+        assertTrue(mFile.length() > length);
+        LinkedHashMap<String, byte[]> records = new GeofenceRecordFile(mFile).readAll();
+        assertEquals(Arrays.asList("b", "a"), Arrays.asList(records.keySet().toArray()));
+        assertBody(longBody, records.get("a"));
+        assertBody("2", records.get("b"));
+    }
+
+    @Test
+    public void reloadAfterDelete() throws IOException {
+        GeofenceRecordFile recordFile = new GeofenceRecordFile(mFile);
+        recordFile.update(records("a", "1", "b", "2", "c", "3"), Collections.<String>emptySet());
+
+        recordFile.update(records("d", "4"), Arrays.asList("b", "unknown"));
+
+        assertFalse(recordFile.contains("b"));
+        LinkedHashMap<String, byte[]> records = new GeofenceRecordFile(mFile).readAll();
+        assertEquals(Arrays.asList("a", "c", "d"), Arrays.asList(records.keySet().toArray()));
+    }
+
+    @Test
+    public void compactionKeepsLiveRecords() throws IOException {
+        GeofenceRecordFile recordFile = new GeofenceRecordFile(mFile);
+        char[] chars = new char[1000];
+        Arrays.fill(chars, 'x');
+        String body = new String(chars);
+        for (int i = 0; i < 100; i++) {
+            // each write appends a new slot, the previous one dies
+            recordFile.update(records("a", body + i), Collections.<String>emptySet());
+        }
+
+        LinkedHashMap<String, byte[]> records = new GeofenceRecordFile(mFile).readAll();
+        assertEquals(1, records.size());
+        assertTrue(mFile.length() < 32 * 1024 * 2);
+    }
+
+    @Test
+    public void corruptedSlotIsSkipped() throws IOException {
+        new GeofenceRecordFile(mFile).update(records("a", "aaaa", "b", "bbbb", "c", "cccc"), Collections.<String>emptySet());
+        overwrite(indexOf("bbbb"), "bXbb");
+
+        GeofenceRecordFile recordFile = new GeofenceRecordFile(mFile);
+        LinkedHashMap<String, byte[]> records = recordFile.readAll();
+        assertEquals(Arrays.asList("a", "c"), Arrays.asList(records.keySet().toArray()));
+
+        // the other records can still be updated, and the corrupted slot stays ignored
+        recordFile.update(records("d", "dddd"), Collections.<String>emptySet());
+        records = new GeofenceRecordFile(mFile).readAll();
+        assertEquals(Arrays.asList("a", "c", "d"), Arrays.asList(records.keySet().toArray()));
+    }
+
+    @Test
+    public void tornTailIsIgnored() throws IOException {
+        new GeofenceRecordFile(mFile).update(records("a", "aaaa", "b", "bbbb"), Collections.<String>emptySet());
+        RandomAccessFile raf = new RandomAccessFile(mFile, "rw");
+        try {
+            // a slot whose capacity goes past the end of the file
+            raf.seek(raf.length());
+            raf.writeInt(1000);
+            raf.writeByte(1);
+        } finally {
+            raf.close();
+        }
+
+        GeofenceRecordFile recordFile = new GeofenceRecordFile(mFile);
+        assertEquals(2, recordFile.readAll().size());
+        recordFile.update(records("c", "cccc"), Collections.<String>emptySet());
+        assertEquals(Arrays.asList("a", "b", "c"), Arrays.asList(new GeofenceRecordFile(mFile).readAll().keySet().toArray()));
+    }
+
+    @Test(expected = IOException.class)
+    public void unknownFormatFails() throws IOException {
+        FileOutputStream out = new FileOutputStream(mFile);
+        try {
+            out.write("not a record file".getBytes(UTF8));
+        } finally {
+            out.close();
+        }
+        new GeofenceRecordFile(mFile).readAll();
+    }
+
+    @Test
+    public void laterDuplicateWins() throws IOException {
+        // the process died after appending the new slot of a record, before marking its old slot as dead
+        writeFile(2, true, new String[] {"a", "old", "b", "2", "a", "new"});
+
+        GeofenceRecordFile recordFile = new GeofenceRecordFile(mFile);
+        assertBody("new", recordFile.readAll().get("a"));
+
+        // the old slot is marked as dead by the next update, it does not come back once the record is deleted
+        recordFile.update(records("c", "3"), Collections.singleton("a"));
+        LinkedHashMap<String, byte[]> records = new GeofenceRecordFile(mFile).readAll();
+        assertEquals(Arrays.asList("b", "c"), Arrays.asList(records.keySet().toArray()));
+    }
+
+    @Test
+    public void firstVersionIsUpgraded() throws IOException {
+        writeFile(1, false, new String[] {"a", "1", "b", "2"});
+
+        GeofenceRecordFile recordFile = new GeofenceRecordFile(mFile);
+        assertBody("1", recordFile.readAll().get("a"));
+
+        recordFile.update(records("b", "x"), Collections.<String>emptySet());
+        LinkedHashMap<String, byte[]> records = new GeofenceRecordFile(mFile).readAll();
+        assertBody("1", records.get("a"));
+        assertBody("x", records.get("b"));
+        RandomAccessFile raf = new RandomAccessFile(mFile, "r");
+        try {
+            raf.readInt();
+            assertEquals(2, raf.readInt());
+        } finally {
+            raf.close();
+        }
+    }
+
+    @Test
+    public void resetDeletesTheFile() throws IOException {
+        GeofenceRecordFile recordFile = new GeofenceRecordFile(mFile);
+        recordFile.update(records("a", "1"), Collections.<String>emptySet());
+        recordFile.reset();
+
+        assertFalse(mFile.exists());
+        assertTrue(recordFile.ids().isEmpty());
+        recordFile.update(records("b", "2"), Collections.<String>emptySet());
+        assertEquals(Collections.singleton("b"), new GeofenceRecordFile(mFile).readAll().keySet());
+    }
+
+    private static Map<String, byte[]> records(String... idsAndBodies) {
+        LinkedHashMap<String, byte[]> records = new LinkedHashMap<>();
+        for (int i = 0; i < idsAndBodies.length; i += 2) {
+            records.put(idsAndBodies[i], idsAndBodies[i + 1].getBytes(UTF8));
+        }
+        return records;
+    }
+
+    private static void assertBody(String expected, byte[] body) {
+        assertArrayEquals(expected.getBytes(UTF8), body);
+    }
+
+    private byte[] readFile() throws IOException {
+        byte[] content = new byte[(int) mFile.length()];
+        RandomAccessFile raf = new RandomAccessFile(mFile, "r");
+        try {
+            raf.readFully(content);
+        } finally {
+            raf.close();
+        }
+        return content;
+    }
+
+    private int indexOf(String str) throws IOException {
+        int index = new String(readFile(), "ISO-8859-1").indexOf(str);
+        assertTrue(index > 0);
+        return index;
+    }
+
+    private void overwrite(int offset, String str) throws IOException {
+        RandomAccessFile raf = new RandomAccessFile(mFile, "rw");
+        try {
+            raf.seek(offset);
+            raf.write(str.getBytes(UTF8));
+        } finally {
+            raf.close();
+        }
+    }
+
+    /**
+     * Write a record file by hand, with live slots without padding
+     */
+    private void writeFile(int version, boolean checksummed, String[] idsAndBodies) throws IOException {
+        DataOutputStream out = new DataOutputStream(new FileOutputStream(mFile));
+        try {
+            out.writeInt(0x47464853);
+            out.writeInt(version);
+            for (int i = 0; i < idsAndBodies.length; i += 2) {
+                byte[] idBytes = idsAndBodies[i].getBytes(UTF8);
+                byte[] body = idsAndBodies[i + 1].getBytes(UTF8);
+                CRC32 crc = new CRC32();
+                ByteArrayOutputStream record = new ByteArrayOutputStream();
+                DataOutputStream recordOut = new DataOutputStream(record);
+                recordOut.writeShort(idBytes.length);
+                recordOut.write(idBytes);
+                recordOut.writeInt(body.length);
+                recordOut.write(body);
+                crc.update(record.toByteArray());
+
+                out.writeInt(1 + (checksummed ? 4 : 0) + record.size());
+                out.writeByte(1);
+                if (checksummed) {
+                    out.writeInt((int) crc.getValue());
+                }
+                out.write(record.toByteArray());
+            }
+        } finally {
+            out.close();
+        }
+    }
+}
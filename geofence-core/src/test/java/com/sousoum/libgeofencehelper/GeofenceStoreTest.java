@@ -0,0 +1,244 @@
+package com.sousoum.libgeofencehelper;
+
+import org.junit.After;
+import org.junit.Before;
+import org.junit.Test;
+
+import java.io.File;
+import java.io.IOException;
+import java.util.ArrayList;
+import java.util.Arrays;
+import java.util.Collections;
+import java.util.HashMap;
+import java.util.HashSet;
+import java.util.LinkedHashMap;
+import java.util.Map;
+import java.util.Set;
+
+import static org.junit.Assert.assertEquals;
+import static org.junit.Assert.assertFalse;
+import static org.junit.Assert.assertNotNull;
+import static org.junit.Assert.assertNull;
+import static org.junit.Assert.assertTrue;
+
+public class GeofenceStoreTest {
+
+    private static final String RECEIVER = "com.example.Receiver";
+    private static final String OTHER_RECEIVER = "com.example.OtherReceiver";
+
+    private File mFile;
+    private GeofenceStore mStore;
+
+    @Before
+    public void setUp() throws IOException {
+        mFile = File.createTempFile("store", ".bin");
+        assertTrue(mFile.delete());
+        mStore = new GeofenceStore("test", new RecordFileGeofenceStorage(mFile));
+    }
+
+    @After
+    public void tearDown() {
+        mFile.delete();
+        new File(mFile.getPath() + ".tmp").delete();
+    }
+
+    @Test
+    public void storeAndGet() {
+        mStore.storeGeofence(geofence("a", 10, 10, RECEIVER));
+        mStore.storeGeofences(Arrays.asList(geofence("b", 20, 20, RECEIVER), geofence("c", 30, 30, OTHER_RECEIVER)));
+
+        assertEquals(ids("a", "b", "c"), mStore.getAllGeofenceIds());
+        assertEquals(20, mStore.getGeofence("b").getLatitude(), 0);
+        assertNull(mStore.getGeofence("d"));
+        assertEquals(2, mStore.getGeofences(Arrays.asList("a", "c", "d")).size());
+        assertEquals(1, mStore.getGeofencesByReceiver(OTHER_RECEIVER).size());
+    }
+
+    @Test
+    public void remove() {
+        StorableGeofence a = geofence("a", 10, 10, RECEIVER);
+        mStore.storeGeofences(Arrays.asList(a, geofence("b", 20, 20, RECEIVER), geofence("c", 30, 30, RECEIVER)));
+
+        mStore.removeGeofence(a);
+        mStore.removeGeofenceIds(Arrays.asList("b", "unknown"));
+
+        assertEquals(ids("c"), mStore.getAllGeofenceIds());
+        assertEquals(ids("c"), reload().getAllGeofenceIds());
+    }
+
+    @Test
+    public void storeGeofenceIdKeepsTheGeofence() {
+        mStore.storeGeofence(geofence("a", 10, 10, RECEIVER));
+        mStore.storeGeofenceIds(Arrays.asList("a", "b"));
+
+        assertNotNull(mStore.getGeofence("a"));
+        assertNull(mStore.getGeofence("b"));
+        assertEquals(ids("a", "b"), mStore.getAllGeofenceIds());
+        // only the geofences are listed, not the ids
+        assertEquals(1, mStore.getAllGeofences().size());
+
+        GeofenceStore reloaded = reload();
+        assertEquals(10, reloaded.getGeofence("a").getLatitude(), 0);
+        assertEquals(ids("a", "b"), reloaded.getAllGeofenceIds());
+    }
+
+    @Test
+    public void transaction() {
+        mStore.storeGeofence(geofence("a", 10, 10, RECEIVER));
+
+        GeofenceStore.Transaction transaction = mStore.beginTransaction()
+                .storeGeofence(geofence("b", 20, 20, RECEIVER))
+                .removeGeofenceId("a")
+                .storeGeofence(geofence("c", 30, 30, RECEIVER))
+                .removeGeofenceId("c")
+                .storeGeofenceId("d");
+        // nothing is applied before the commit
+        assertEquals(ids("a"), mStore.getAllGeofenceIds());
+
+        transaction.commit();
+
+        assertEquals(ids("b", "d"), mStore.getAllGeofenceIds());
+        assertEquals(ids("b", "d"), reload().getAllGeofenceIds());
+    }
+
+    @Test(expected = IllegalStateException.class)
+    public void transactionCommittedOnce() {
+        GeofenceStore.Transaction transaction = mStore.beginTransaction().storeGeofenceId("a");
+        transaction.commit();
+        transaction.commit();
+    }
+
+    @Test
+    public void reloadFromTheSameFile() {
+        HashMap<String, Object> additionalData = new HashMap<>();
+        additionalData.put("key", "value");
+        mStore.storeGeofence(new StorableGeofence("a", RECEIVER, 10, 20, 100f, StorableGeofence.NEVER_EXPIRE,
+                StorableGeofence.TRANSITION_ENTER, additionalData));
+
+        GeofenceStore reloaded = reload();
+        StorableGeofence geofence = reloaded.getGeofence("a");
+        assertEquals(RECEIVER, geofence.getPendingIntentClassName());
+        assertEquals(20, geofence.getLongitude(), 0);
+        assertEquals("value", geofence.getAttributes().getString("key", null));
+        assertEquals(1, reloaded.getGeofencesByAdditionalDataKey("key").size());
+    }
+
+    @Test
+    public void expiredGeofences() {
+        long nowInMs = System.currentTimeMillis();
+        mStore.storeGeofences(Arrays.asList(
+                new StorableGeofence("short", RECEIVER, 0, 0, 100f, 1000, StorableGeofence.TRANSITION_ENTER, null),
+                new StorableGeofence("long", RECEIVER, 0, 0, 100f, 100000, StorableGeofence.TRANSITION_ENTER, null),
+                new StorableGeofence("never", RECEIVER, 0, 0, 100f, StorableGeofence.NEVER_EXPIRE, StorableGeofence.TRANSITION_ENTER, null)));
+
+        long nextExpiration = mStore.getNextExpirationDateInMs();
+        assertTrue(nextExpiration >= nowInMs + 1000 && nextExpiration < nowInMs + 100000);
+        assertTrue(mStore.getExpiredGeofences(nowInMs).isEmpty());
+
+        ArrayList<StorableGeofence> purged = mStore.purgeExpiredGeofences(nowInMs + 10000);
+        assertEquals(1, purged.size());
+        assertEquals("short", purged.get(0).getId());
+        assertEquals(ids("long", "never"), mStore.getAllGeofenceIds());
+    }
+
+    @Test
+    public void spatialQueries() {
+        mStore.storeGeofences(Arrays.asList(geofence("paris", 48.85, 2.35, RECEIVER), geofence("london", 51.5, -0.12, RECEIVER)));
+
+        ArrayList<StorableGeofence> containing = mStore.findContaining(48.85, 2.35);
+        assertEquals(1, containing.size());
+        assertEquals("paris", containing.get(0).getId());
+        assertEquals("london", mStore.findNearest(51, 0, 1).get(0).getId());
+
+        // the index follows the mutations
+        mStore.removeGeofenceId("paris");
+        assertTrue(mStore.findContaining(48.85, 2.35).isEmpty());
+    }
+
+    @Test
+    public void storageSwitch() throws IOException {
+        mStore.storeGeofences(Arrays.asList(geofence("paris", 48.85, 2.35, RECEIVER), geofence("london", 51.5, -0.12, RECEIVER)));
+        assertEquals(1, mStore.findContaining(48.85, 2.35).size());
+
+        File otherFile = File.createTempFile("other", ".bin");
+        assertTrue(otherFile.delete());
+        try {
+            // a storage that holds other content, to check that the store reads it again
+            GeofenceStore otherStore = new GeofenceStore("other", new RecordFileGeofenceStorage(otherFile));
+            otherStore.storeGeofence(geofence("london", 51.5, -0.12, RECEIVER));
+
+            mStore.setStorage(new RecordFileGeofenceStorage(otherFile));
+
+            assertEquals(ids("london"), mStore.getAllGeofenceIds());
+            assertTrue(mStore.findContaining(48.85, 2.35).isEmpty());
+            mStore.storeGeofenceId("rome");
+            assertEquals(ids("london", "rome"), new GeofenceStore("reloaded", new RecordFileGeofenceStorage(otherFile)).getAllGeofenceIds());
+            // the previous storage is left untouched
+            assertEquals(ids("paris", "london"), reload().getAllGeofenceIds());
+        } finally {
+            otherFile.delete();
+        }
+    }
+
+    @Test
+    public void unreadableStorageIsNotReset() {
+        FailingStorage storage = new FailingStorage();
+        GeofenceStore store = new GeofenceStore("failing", storage);
+
+        assertTrue(store.getAllGeofenceIds().isEmpty());
+        store.storeGeofence(geofence("a", 10, 10, RECEIVER));
+        store.removeGeofenceIds(Collections.singleton("b"));
+
+        // the storage is neither reset nor overwritten, the transactions are dropped
+        assertFalse(storage.mReset);
+        assertEquals(0, storage.mUpdates);
+
+        // the storage is read again once it can be
+        storage.mReadable = true;
+        assertEquals(ids("stored"), store.getAllGeofenceIds());
+        store.storeGeofence(geofence("a", 10, 10, RECEIVER));
+        assertEquals(1, storage.mUpdates);
+        assertEquals(ids("stored", "a"), store.getAllGeofenceIds());
+    }
+
+    private GeofenceStore reload() {
+        return new GeofenceStore("reloaded", new RecordFileGeofenceStorage(mFile));
+    }
+
+    private static StorableGeofence geofence(String id, double latitude, double longitude, String receiver) {
+        return new StorableGeofence(id, receiver, latitude, longitude, 1000f, StorableGeofence.NEVER_EXPIRE,
+                StorableGeofence.TRANSITION_ENTER, null);
+    }
+
+    private static Set<String> ids(String... ids) {
+        return new HashSet<>(Arrays.asList(ids));
+    }
+
+    private static class FailingStorage implements GeofenceStorage {
+
+        private boolean mReadable;
+        private boolean mReset;
+        private int mUpdates;
+
+        @Override
+        public @NonNull
+        LinkedHashMap<String, StorableGeofence> readAll() throws IOException {
+            if (!mReadable) {
+                throw new IOException("Not readable");
+            }
+            LinkedHashMap<String, StorableGeofence> geofences = new LinkedHashMap<>();
+            geofences.put("stored", null);
+            return geofences;
+        }
+
+        @Override
+        public void update(@NonNull Map<String, StorableGeofence> writes, @NonNull Set<String> deletes) {
+            mUpdates++;
+        }
+
+        @Override
+        public void reset() {
+            mReset = true;
+        }
+    }
+}
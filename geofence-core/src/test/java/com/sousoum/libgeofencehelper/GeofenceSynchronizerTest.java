@@ -0,0 +1,387 @@
+package com.sousoum.libgeofencehelper;
+
+import org.junit.Before;
+import org.junit.Test;
+
+import java.util.ArrayList;
+import java.util.Collection;
+import java.util.Collections;
+import java.util.HashMap;
+import java.util.LinkedHashMap;
+import java.util.List;
+import java.util.Map;
+import java.util.Set;
+
+import static org.junit.Assert.assertEquals;
+import static org.junit.Assert.assertFalse;
+import static org.junit.Assert.assertTrue;
+
+public class GeofenceSynchronizerTest {
+
+    private static final String RECEIVER = "com.example.Receiver";
+    private static final String OTHER_RECEIVER = "com.example.OtherReceiver";
+
+    private FakeBackend mBackend;
+    private FakeSession mSession;
+    private GeofenceStore mToAddStore;
+    private GeofenceStore mToRemoveStore;
+    private GeofenceStore mSyncedStore;
+    private GeofenceSynchronizer mSynchronizer;
+
+    @Before
+    public void setUp() {
+        mBackend = new FakeBackend();
+        mSession = new FakeSession();
+        mToAddStore = new GeofenceStore("toAdd", new MemoryStorage());
+        mToRemoveStore = new GeofenceStore("toRemove", new MemoryStorage());
+        mSyncedStore = new GeofenceStore("synced", new MemoryStorage());
+        mSynchronizer = new GeofenceSynchronizer(mBackend, mToAddStore, mToRemoveStore, mSyncedStore, mSession, GeofenceClock.SYSTEM);
+    }
+
+    @Test
+    public void addIsBatched() {
+        mBackend.mConnected = true;
+        mSynchronizer.registerGeofences(geofences("g", 250, RECEIVER));
+
+        assertEquals(3, mBackend.mAdds.size());
+        assertEquals(GeofenceSynchronizer.MAX_GEOFENCES_PER_REQUEST, mBackend.mAdds.get(0).mGeofences.size());
+        assertEquals(GeofenceSynchronizer.MAX_GEOFENCES_PER_REQUEST, mBackend.mAdds.get(1).mGeofences.size());
+        assertEquals(50, mBackend.mAdds.get(2).mGeofences.size());
+        // the order of the geofences is kept
+        assertEquals("g0", mBackend.mAdds.get(0).mGeofences.get(0).getId());
+        assertEquals("g249", mBackend.mAdds.get(2).mGeofences.get(49).getId());
+        assertEquals(250, mToAddStore.getAllGeofenceIds().size());
+
+        // each successful batch moves its geofences from the to add store to the synced store
+        mBackend.mAdds.get(0).mCallback.onResult(GeofencingBackend.STATUS_SUCCESS, null);
+        assertEquals(150, mToAddStore.getAllGeofenceIds().size());
+        assertEquals(100, mSyncedStore.getAllGeofenceIds().size());
+
+        // a failed batch stays to add
+        mBackend.mAdds.get(1).mCallback.onResult(GeofencingBackend.STATUS_ERROR, "error");
+        assertEquals(150, mToAddStore.getAllGeofenceIds().size());
+        assertEquals(100, mSyncedStore.getAllGeofenceIds().size());
+    }
+
+    @Test
+    public void requestsAreGroupedByKey() {
+        ArrayList<StorableGeofence> geofences = new ArrayList<>();
+        geofences.addAll(geofences("a", 150, RECEIVER));
+        geofences.addAll(geofences("b", 20, OTHER_RECEIVER));
+
+        LinkedHashMap<String, ArrayList<List<StorableGeofence>>> requests = GeofenceSynchronizer.groupInRequests(mBackend, geofences);
+
+        assertEquals(2, requests.size());
+        assertEquals(2, requests.get(RECEIVER).size());
+        assertEquals(100, requests.get(RECEIVER).get(0).size());
+        assertEquals(50, requests.get(RECEIVER).get(1).size());
+        assertEquals(1, requests.get(OTHER_RECEIVER).size());
+        assertEquals(20, requests.get(OTHER_RECEIVER).get(0).size());
+
+        mBackend.mConnected = true;
+        mSynchronizer.registerGeofences(geofences);
+        assertEquals(3, mBackend.mAdds.size());
+        assertEquals(RECEIVER, mBackend.mAdds.get(0).mRequestKey);
+        assertEquals(RECEIVER, mBackend.mAdds.get(1).mRequestKey);
+        assertEquals(OTHER_RECEIVER, mBackend.mAdds.get(2).mRequestKey);
+    }
+
+    @Test
+    public void removalIsChunked() {
+        mBackend.mConnected = true;
+        ArrayList<String> geofenceIds = new ArrayList<>();
+        for (StorableGeofence geofence : geofences("g", 250, RECEIVER)) {
+            geofenceIds.add(geofence.getId());
+        }
+        mSyncedStore.storeGeofenceIds(geofenceIds);
+
+        mSynchronizer.unregisterGeofences(geofenceIds);
+
+        assertEquals(3, mBackend.mRemoves.size());
+        assertEquals(100, mBackend.mRemoves.get(0).mGeofenceIds.size());
+        assertEquals(100, mBackend.mRemoves.get(1).mGeofenceIds.size());
+        assertEquals(50, mBackend.mRemoves.get(2).mGeofenceIds.size());
+        assertEquals(250, mToRemoveStore.getAllGeofenceIds().size());
+
+        for (RemoveRequest request : mBackend.mRemoves) {
+            request.mCallback.onResult(GeofencingBackend.STATUS_SUCCESS, null);
+        }
+        assertTrue(mToRemoveStore.getAllGeofenceIds().isEmpty());
+        assertTrue(mSyncedStore.getAllGeofenceIds().isEmpty());
+    }
+
+    @Test
+    public void registerConnectsWhenDisconnected() {
+        mSynchronizer.registerGeofences(geofences("g", 2, RECEIVER));
+
+        assertEquals(1, mBackend.mConnections);
+        assertTrue(mBackend.mAdds.isEmpty());
+        assertEquals(2, mSynchronizer.getRegisteredGeofences().size());
+
+        // once connected, the synchronization submits the pending geofences
+        mBackend.mConnected = true;
+        mSynchronizer.synchronize();
+        assertEquals(1, mBackend.mAdds.size());
+        assertEquals(2, mBackend.mAdds.get(0).mGeofences.size());
+    }
+
+    @Test
+    public void unregisterCancelsPendingAdd() {
+        mSynchronizer.registerGeofences(geofences("g", 2, RECEIVER));
+        ArrayList<String> geofenceIds = new ArrayList<>();
+        geofenceIds.add("g0");
+        mSynchronizer.unregisterGeofences(geofenceIds);
+
+        assertEquals(1, mToAddStore.getAllGeofenceIds().size());
+        assertEquals(1, mToRemoveStore.getAllGeofenceIds().size());
+        assertFalse(mSynchronizer.getRegisteredGeofences().containsKey("g0"));
+        assertTrue(mSynchronizer.getRegisteredGeofences().containsKey("g1"));
+    }
+
+    @Test
+    public void sessionRestore() {
+        mSyncedStore.storeGeofences(geofences("s", 120, RECEIVER));
+        mSession.mCurrent = false;
+        mBackend.mConnected = true;
+
+        mSynchronizer.synchronize();
+
+        // the synced geofences are registered again, without touching the stores
+        assertEquals(2, mBackend.mAdds.size());
+        assertEquals(100, mBackend.mAdds.get(0).mGeofences.size());
+        assertEquals(20, mBackend.mAdds.get(1).mGeofences.size());
+        assertTrue(mSession.mCurrent);
+        mBackend.mAdds.get(0).mCallback.onResult(GeofencingBackend.STATUS_SUCCESS, null);
+        assertTrue(mToAddStore.getAllGeofenceIds().isEmpty());
+        assertEquals(120, mSyncedStore.getAllGeofenceIds().size());
+
+        // a failed restore invalidates the session
+        mBackend.mAdds.get(1).mCallback.onResult(GeofencingBackend.STATUS_GEOFENCE_NOT_AVAILABLE, null);
+        assertFalse(mSession.mCurrent);
+    }
+
+    @Test
+    public void currentSessionIsNotRestored() {
+        mSyncedStore.storeGeofences(geofences("s", 120, RECEIVER));
+        mSession.mCurrent = true;
+        mBackend.mConnected = true;
+
+        mSynchronizer.synchronize();
+
+        assertTrue(mBackend.mAdds.isEmpty());
+        assertTrue(mBackend.mRemoves.isEmpty());
+    }
+
+    @Test
+    public void expiredSyncedGeofencesAreRemoved() {
+        ArrayList<StorableGeofence> geofences = new ArrayList<>();
+        geofences.add(new StorableGeofence("expired", RECEIVER, 0, 0, 100f, 1000, StorableGeofence.TRANSITION_ENTER, null));
+        geofences.add(new StorableGeofence("valid", RECEIVER, 0, 0, 100f, StorableGeofence.NEVER_EXPIRE, StorableGeofence.TRANSITION_ENTER, null));
+        mSyncedStore.storeGeofences(geofences);
+        mSession.mCurrent = false;
+        mBackend.mConnected = true;
+        final long nowInMs = System.currentTimeMillis() + 10000;
+        mSynchronizer = new GeofenceSynchronizer(mBackend, mToAddStore, mToRemoveStore, mSyncedStore, mSession, new GeofenceClock() {
+            @Override
+            public long currentTimeMillis() {
+                return nowInMs;
+            }
+        });
+
+        mSynchronizer.synchronize();
+
+        assertEquals(1, mBackend.mAdds.size());
+        assertEquals("valid", mBackend.mAdds.get(0).mGeofences.get(0).getId());
+        assertEquals(1, mBackend.mRemoves.size());
+        assertEquals("expired", mBackend.mRemoves.get(0).mGeofenceIds.get(0));
+    }
+
+    @Test
+    public void restoreKeepsTheTransitionStates() {
+        MemoryStateTable table = setUpTransitionStates();
+        mSyncedStore.storeGeofences(geofences("s", 1, RECEIVER));
+        mToAddStore.storeGeofences(geofences("g", 1, RECEIVER));
+        mSession.mCurrent = false;
+        mBackend.mConnected = true;
+
+        mSynchronizer.synchronize();
+
+        // the geofences are only registered again
+        assertEquals(2, mBackend.mAdds.size());
+        assertEquals(3, table.mStates.size());
+    }
+
+    @Test
+    public void registerForgetsOnlyTheChangedRegions() {
+        MemoryStateTable table = setUpTransitionStates();
+        mSyncedStore.storeGeofences(geofences("s", 1, RECEIVER));
+        mToAddStore.storeGeofences(geofences("g", 1, RECEIVER));
+        mBackend.mConnected = true;
+
+        ArrayList<StorableGeofence> geofences = geofences("s", 1, RECEIVER);
+        // same region, other receiver
+        geofences.addAll(geofences("g", 1, OTHER_RECEIVER));
+        geofences.add(new StorableGeofence("other", RECEIVER, 1, 1, 100f, StorableGeofence.NEVER_EXPIRE,
+                StorableGeofence.TRANSITION_ENTER, null));
+        mSynchronizer.registerGeofences(geofences);
+
+        // "other" was not registered, its state is stale
+        assertEquals(2, table.mStates.size());
+        assertTrue(table.mStates.containsKey("s0"));
+        assertTrue(table.mStates.containsKey("g0"));
+
+        mSynchronizer.registerGeofences(Collections.singletonList(new StorableGeofence("s0", RECEIVER, 0, 0, 200f,
+                StorableGeofence.NEVER_EXPIRE, StorableGeofence.TRANSITION_ENTER, null)));
+        assertFalse(table.mStates.containsKey("s0"));
+    }
+
+    @Test
+    public void unregisterForgetsTheTransitionStates() {
+        MemoryStateTable table = setUpTransitionStates();
+        mSyncedStore.storeGeofences(geofences("s", 1, RECEIVER));
+
+        mSynchronizer.unregisterGeofences(Collections.singleton("s0"));
+
+        assertEquals(2, table.mStates.size());
+        assertFalse(table.mStates.containsKey("s0"));
+    }
+
+    private MemoryStateTable setUpTransitionStates() {
+        HashMap<String, GeofenceTransitionFilter.State> states = new HashMap<>();
+        states.put("s0", new GeofenceTransitionFilter.State(StorableGeofence.TRANSITION_ENTER, 1000));
+        states.put("g0", new GeofenceTransitionFilter.State(StorableGeofence.TRANSITION_ENTER, 1000,
+                StorableGeofence.TRANSITION_EXIT, 2000));
+        states.put("other", new GeofenceTransitionFilter.State(StorableGeofence.TRANSITION_ENTER, 1000));
+        MemoryStateTable table = new MemoryStateTable(states);
+        mSynchronizer.setTransitionFilter(new GeofenceTransitionFilter(table, GeofenceClock.SYSTEM,
+                GeofenceTransitionFilter.DEFAULT_MIN_DWELL_MS, GeofenceTransitionFilter.DEFAULT_HYSTERESIS_RATIO));
+        return table;
+    }
+
+    private static ArrayList<StorableGeofence> geofences(String prefix, int count, String receiver) {
+        ArrayList<StorableGeofence> geofences = new ArrayList<>(count);
+        for (int i = 0; i < count; i++) {
+            geofences.add(new StorableGeofence(prefix + i, receiver, i * 0.01, i * 0.01, 100f, StorableGeofence.NEVER_EXPIRE,
+                    StorableGeofence.TRANSITION_ENTER, null));
+        }
+        return geofences;
+    }
+
+    private static class AddRequest {
+        final String mRequestKey;
+        final List<StorableGeofence> mGeofences;
+        final GeofencingBackend.Callback mCallback;
+
+        AddRequest(String requestKey, List<StorableGeofence> geofences, GeofencingBackend.Callback callback) {
+            mRequestKey = requestKey;
+            mGeofences = new ArrayList<>(geofences);
+            mCallback = callback;
+        }
+    }
+
+    private static class RemoveRequest {
+        final List<String> mGeofenceIds;
+        final GeofencingBackend.Callback mCallback;
+
+        RemoveRequest(List<String> geofenceIds, GeofencingBackend.Callback callback) {
+            mGeofenceIds = new ArrayList<>(geofenceIds);
+            mCallback = callback;
+        }
+    }
+
+    private static class FakeBackend implements GeofencingBackend {
+
+        private final ArrayList<AddRequest> mAdds = new ArrayList<>();
+        private final ArrayList<RemoveRequest> mRemoves = new ArrayList<>();
+        private boolean mConnected;
+        private int mConnections;
+
+        @Override
+        public boolean isConnected() {
+            return mConnected;
+        }
+
+        @Override
+        public void connect() {
+            mConnections++;
+        }
+
+        @Override
+        public String getRequestKey(@NonNull StorableGeofence geofence) {
+            return geofence.getPendingIntentClassName();
+        }
+
+        @Override
+        public void addGeofences(String requestKey, @NonNull List<StorableGeofence> geofences, @NonNull Callback callback) {
+            mAdds.add(new AddRequest(requestKey, geofences, callback));
+        }
+
+        @Override
+        public void removeGeofences(@NonNull List<String> geofenceIds, @NonNull Callback callback) {
+            mRemoves.add(new RemoveRequest(geofenceIds, callback));
+        }
+    }
+
+    private static class FakeSession implements GeofenceSynchronizer.Session {
+
+        private boolean mCurrent;
+
+        @Override
+        public boolean isCurrent() {
+            return mCurrent;
+        }
+
+        @Override
+        public void markCurrent() {
+            mCurrent = true;
+        }
+
+        @Override
+        public void invalidate() {
+            mCurrent = false;
+        }
+    }
+
+    private static class MemoryStateTable implements GeofenceTransitionFilter.StateTable {
+
+        private final HashMap<String, GeofenceTransitionFilter.State> mStates;
+
+        MemoryStateTable(HashMap<String, GeofenceTransitionFilter.State> states) {
+            mStates = states;
+        }
+
+        @Override
+        public @NonNull
+        HashMap<String, GeofenceTransitionFilter.State> load() {
+            return new HashMap<>(mStates);
+        }
+
+        @Override
+        public void save(@NonNull Map<String, GeofenceTransitionFilter.State> states, @NonNull Collection<String> removedIds) {
+            mStates.putAll(states);
+            mStates.keySet().removeAll(removedIds);
+        }
+    }
+
+    private static class MemoryStorage implements GeofenceStorage {
+
+        private final LinkedHashMap<String, StorableGeofence> mGeofences = new LinkedHashMap<>();
+
+        @Override
+        public @NonNull
+        LinkedHashMap<String, StorableGeofence> readAll() {
+            return new LinkedHashMap<>(mGeofences);
+        }
+
+        @Override
+        public void update(@NonNull Map<String, StorableGeofence> writes, @NonNull Set<String> deletes) {
+            mGeofences.putAll(writes);
+            mGeofences.keySet().removeAll(deletes);
+        }
+
+        @Override
+        public void reset() {
+            mGeofences.clear();
+        }
+    }
+}
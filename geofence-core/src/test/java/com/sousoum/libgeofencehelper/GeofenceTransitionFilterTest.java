@@ -0,0 +1,169 @@
+package com.sousoum.libgeofencehelper;
+
+import org.junit.Before;
+import org.junit.Test;
+
+import java.util.Arrays;
+import java.util.Collection;
+import java.util.Collections;
+import java.util.HashMap;
+import java.util.LinkedHashMap;
+import java.util.List;
+import java.util.Map;
+
+import static org.junit.Assert.assertEquals;
+import static org.junit.Assert.assertTrue;
+
+public class GeofenceTransitionFilterTest {
+
+    private static final String RECEIVER = "com.example.Receiver";
+    private static final long MIN_DWELL_MS = 60 * 1000;
+    private static final long START_MS = 1000000;
+
+    private static final int ENTER = StorableGeofence.TRANSITION_ENTER;
+    private static final int EXIT = StorableGeofence.TRANSITION_EXIT;
+
+    private MemoryStateTable mTable;
+    private FakeClock mClock;
+    private GeofenceTransitionFilter mFilter;
+    private StorableGeofence mGeofence;
+
+    @Before
+    public void setUp() {
+        mTable = new MemoryStateTable();
+        mClock = new FakeClock();
+        mFilter = new GeofenceTransitionFilter(mTable, mClock, MIN_DWELL_MS, GeofenceTransitionFilter.DEFAULT_HYSTERESIS_RATIO);
+        mGeofence = new StorableGeofence("a", RECEIVER, 0, 0, 1000f, StorableGeofence.NEVER_EXPIRE, ENTER | EXIT, null);
+    }
+
+    @Test
+    public void duplicateIsDropped() {
+        assertEquals(1, filter(ENTER, START_MS));
+        assertEquals(0, filter(ENTER, START_MS + 10));
+        assertEquals(0, mFilter.getNextDeadlineInMs());
+    }
+
+    @Test
+    public void oppositeAfterTheDwellIsAccepted() {
+        assertEquals(1, filter(ENTER, START_MS));
+        assertEquals(1, filter(EXIT, START_MS + MIN_DWELL_MS));
+        assertEquals(0, mFilter.getNextDeadlineInMs());
+    }
+
+    @Test
+    public void oppositePastTheBoundaryIsAccepted() {
+        assertEquals(1, filter(ENTER, START_MS));
+        mClock.mNowInMs = START_MS + 10;
+        // 0.1 degree of latitude is about 11 km away, far outside the radius
+        assertEquals(1, mFilter.filter(EXIT, Collections.singletonList(mGeofence), true, 0.1, 0, 10).size());
+    }
+
+    @Test
+    public void oppositeInsideTheDwellIsDeferred() {
+        assertEquals(1, filter(ENTER, START_MS));
+        assertEquals(0, filter(EXIT, START_MS + 10000));
+        // a duplicate of the pending transition changes nothing
+        assertEquals(0, filter(EXIT, START_MS + 20000));
+
+        assertEquals(START_MS + MIN_DWELL_MS, mFilter.getNextDeadlineInMs());
+        assertTrue(mFilter.takeDueTransitions(START_MS + MIN_DWELL_MS - 1).isEmpty());
+
+        LinkedHashMap<String, Integer> dueTransitions = mFilter.takeDueTransitions(START_MS + MIN_DWELL_MS);
+        assertEquals(1, dueTransitions.size());
+        assertEquals(EXIT, (int) dueTransitions.get("a"));
+        assertEquals(0, mFilter.getNextDeadlineInMs());
+
+        // the delivered transition is the last accepted one, dated when it happened
+        assertEquals(0, filter(EXIT, START_MS + MIN_DWELL_MS + 1));
+        assertEquals(0, filter(ENTER, START_MS + 10000 + MIN_DWELL_MS - 1));
+        assertEquals(START_MS + 10000 + MIN_DWELL_MS, mFilter.getNextDeadlineInMs());
+    }
+
+    @Test
+    public void reversalDropsTheDeferredTransition() {
+        assertEquals(1, filter(ENTER, START_MS));
+        assertEquals(0, filter(EXIT, START_MS + 10000));
+        assertEquals(0, filter(ENTER, START_MS + 20000));
+
+        assertEquals(0, mFilter.getNextDeadlineInMs());
+        assertTrue(mFilter.takeDueTransitions(START_MS + 10 * MIN_DWELL_MS).isEmpty());
+        // the accepted transition keeps its time
+        assertEquals(1, filter(EXIT, START_MS + MIN_DWELL_MS));
+    }
+
+    @Test
+    public void deferredTransitionIsPersisted() {
+        assertEquals(1, filter(ENTER, START_MS));
+        assertEquals(0, filter(EXIT, START_MS + 10000));
+
+        GeofenceTransitionFilter reloaded = new GeofenceTransitionFilter(mTable, mClock, MIN_DWELL_MS,
+                GeofenceTransitionFilter.DEFAULT_HYSTERESIS_RATIO);
+        assertEquals(START_MS + MIN_DWELL_MS, reloaded.getNextDeadlineInMs());
+        assertEquals(EXIT, (int) reloaded.takeDueTransitions(START_MS + MIN_DWELL_MS).get("a"));
+
+        GeofenceTransitionFilter.State state = mTable.mStates.get("a");
+        assertEquals(EXIT, state.mTransition);
+        assertEquals(START_MS + 10000, state.mTimeInMs);
+        assertEquals(GeofenceTransitionFilter.NO_TRANSITION, state.mPendingTransition);
+    }
+
+    @Test
+    public void dueTransitionsAreOrderedByTime() {
+        StorableGeofence other = new StorableGeofence("b", RECEIVER, 1, 1, 1000f, StorableGeofence.NEVER_EXPIRE, ENTER | EXIT, null);
+        List<StorableGeofence> geofences = Arrays.asList(other, mGeofence);
+        mClock.mNowInMs = START_MS;
+        mFilter.filter(EXIT, geofences, false, 0, 0, 0);
+        mClock.mNowInMs = START_MS + 10000;
+        mFilter.filter(ENTER, Collections.singletonList(mGeofence), false, 0, 0, 0);
+        mClock.mNowInMs = START_MS + 20000;
+        mFilter.filter(ENTER, Collections.singletonList(other), false, 0, 0, 0);
+
+        LinkedHashMap<String, Integer> dueTransitions = mFilter.takeDueTransitions(START_MS + MIN_DWELL_MS);
+        assertEquals(Arrays.asList("a", "b"), Arrays.asList(dueTransitions.keySet().toArray()));
+    }
+
+    @Test
+    public void forgetDropsTheDeferredTransition() {
+        assertEquals(1, filter(ENTER, START_MS));
+        assertEquals(0, filter(EXIT, START_MS + 10000));
+
+        mFilter.forget(Collections.singleton("a"));
+
+        assertEquals(0, mFilter.getNextDeadlineInMs());
+        assertTrue(mTable.mStates.isEmpty());
+        // a new registration starts without a previous transition
+        assertEquals(1, filter(ENTER, START_MS + 20000));
+    }
+
+    private int filter(int transition, long nowInMs) {
+        mClock.mNowInMs = nowInMs;
+        return mFilter.filter(transition, Collections.singletonList(mGeofence), false, 0, 0, 0).size();
+    }
+
+    private static class FakeClock implements GeofenceClock {
+
+        private long mNowInMs;
+
+        @Override
+        public long currentTimeMillis() {
+            return mNowInMs;
+        }
+    }
+
+    private static class MemoryStateTable implements GeofenceTransitionFilter.StateTable {
+
+        private final HashMap<String, GeofenceTransitionFilter.State> mStates = new HashMap<>();
+
+        @Override
+        public @NonNull
+        HashMap<String, GeofenceTransitionFilter.State> load() {
+            return new HashMap<>(mStates);
+        }
+
+        @Override
+        public void save(@NonNull Map<String, GeofenceTransitionFilter.State> states, @NonNull Collection<String> removedIds) {
+            mStates.putAll(states);
+            mStates.keySet().removeAll(removedIds);
+        }
+    }
+}
@@ -0,0 +1,47 @@
+package com.sousoum.libgeofencehelper;
+
+import android.util.Log;
+
+final class AndroidLogPrinter implements GeofenceLog.Printer {
+
+    /**
+     * Package local class that prints the messages of the core of the library to the logcat
+     */
+
+    private static boolean sInstalled;
+
+    private AndroidLogPrinter() {
+    }
+
+    /**
+     * Print the messages of the core of the library to the logcat, only the first call has an effect
+     */
+    static synchronized void install() {
+        if (!sInstalled) {
+            sInstalled = true;
+            GeofenceLog.setPrinter(new AndroidLogPrinter());
+        }
+    }
+
+    @Override
+    public boolean isLoggable(String tag) {
+        boolean loggable;
+        try {
+            loggable = Log.isLoggable(tag, Log.INFO);
+        } catch (IllegalArgumentException e) {
+            // tags longer than 23 characters can not be checked before Android 7.0
+            loggable = true;
+        }
+        return loggable;
+    }
+
+    @Override
+    public void i(String tag, String message) {
+        Log.i(tag, message);
+    }
+
+    @Override
+    public void e(String tag, String message, Throwable throwable) {
+        Log.e(tag, message, throwable);
+    }
+}
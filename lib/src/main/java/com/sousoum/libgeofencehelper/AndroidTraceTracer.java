@@ -0,0 +1,40 @@
+package com.sousoum.libgeofencehelper;
+
+import android.os.Build;
+import android.os.Trace;
+import android.support.annotation.NonNull;
+
+final class AndroidTraceTracer implements GeofenceTrace.Tracer {
+
+    /**
+     * Package local class that maps the spans of the library to android.os.Trace sections, visible in systrace and Perfetto.
+     * A section only has a name, the geofence counts are not traced.
+     * Sections need Android 4.3, the spans are ignored on older devices.
+     */
+
+    private AndroidTraceTracer() {
+    }
+
+    /**
+     * Trace the spans of the library in the sections of the platform, unless the application has set its own tracer
+     */
+    static void install() {
+        if (Build.VERSION.SDK_INT >= Build.VERSION_CODES.JELLY_BEAN_MR2) {
+            GeofenceTrace.setDefaultTracer(new AndroidTraceTracer());
+        }
+    }
+
+    @Override
+    public void beginSpan(@NonNull String name) {
+        Trace.beginSection(name);
+    }
+
+    @Override
+    public void setGeofenceCount(int geofenceCount) {
+    }
+
+    @Override
+    public void endSpan() {
+        Trace.endSection();
+    }
+}
@@ -15,12 +15,14 @@ public class BootCompleteReceiver extends BroadcastReceiver {
 
     /**
      * Synchronize all geofences locally stored to the Google API Client
+     * The registrations have been lost by the reboot, so all synced geofences are registered again
      * @param context The Context in which the receiver is running.
      * @param intent The Intent being received.
      */
     @Override
     public void onReceive(Context context, Intent intent) {
         StorableGeofenceManager storableGeofenceManager = new StorableGeofenceManager(context);
-        storableGeofenceManager.synchronizeAllGeofencesToGoogleApi();
+        storableGeofenceManager.forceSynchronizeAllGeofencesToGoogleApi();
+        storableGeofenceManager.release();
     }
 }
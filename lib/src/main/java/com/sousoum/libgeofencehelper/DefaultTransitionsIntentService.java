@@ -51,6 +51,13 @@ public class DefaultTransitionsIntentService extends IntentService {
 
                 List<Geofence> triggeringGeo = geoEvent.getTriggeringGeofences();
 
+                GeofenceEventLog eventLog = GeofenceStores.getEventLog(this);
+                if (eventLog != null) {
+                    for (Geofence geo : triggeringGeo) {
+                        GeofenceTransitionsIntentService.recordTransition(eventLog, geo.getRequestId(), transition, 0, geoEvent.getTriggeringLocation());
+                    }
+                }
+
                 StringBuilder strBuilder = new StringBuilder();
                 strBuilder.append(transitionStr);
                 for (int i = 0; i < triggeringGeo.size(); i++) {
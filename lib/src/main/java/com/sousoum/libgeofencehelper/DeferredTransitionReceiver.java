@@ -0,0 +1,132 @@
+package com.sousoum.libgeofencehelper;
+
+import android.app.AlarmManager;
+import android.app.PendingIntent;
+import android.content.BroadcastReceiver;
+import android.content.Context;
+import android.content.Intent;
+import android.support.annotation.NonNull;
+
+import java.util.ArrayList;
+import java.util.LinkedHashMap;
+import java.util.Map;
+
+public class DeferredTransitionReceiver extends BroadcastReceiver {
+
+    /**
+     * Broadcast receiver that is woken up by the alarm manager when a transition deferred by the transition filter is due,
+     * at the end of the minimum dwell after the previous transition of its geofence.
+     * It delivers the due transitions to the receivers of their geofences, grouped by transition and receiver,
+     * on the thread of the operations so that the stores are not read on the main thread.
+     */
+
+    /**
+     * Extra of the intent of a deferred transition, which holds the transition.
+     * The ids of the geofences are given in {@link PolygonTransitionsIntentService#EXTRA_CONFIRMED_GEOFENCE_IDS}.
+     */
+    static final String EXTRA_DEFERRED_TRANSITION = "com.sousoum.libgeofencehelper.EXTRA_DEFERRED_TRANSITION";
+
+    private static final String TAG = "DeferredTransitions";
+
+    // time of the alarm that is currently set, 0 if none, -1 if unknown
+    private static long sScheduledTimeInMs = -1;
+
+    /**
+     * Deliver the due transitions and set the alarm of the next one
+     * @param context The Context in which the receiver is running.
+     * @param intent The Intent being received.
+     */
+    @Override
+    public void onReceive(Context context, Intent intent) {
+        final Context appContext = context.getApplicationContext();
+        final PendingResult result = goAsync();
+        StorableGeofenceManager.getOperationQueue().post(new Runnable() {
+            @Override
+            public void run() {
+                try {
+                    deliverDueTransitions(appContext);
+                } finally {
+                    result.finish();
+                }
+            }
+        });
+    }
+
+    /**
+     * Set the alarm at the time of the next deferred transition of the filter, or cancel it if no transition is deferred.
+     * Call it after the filter has been used.
+     * @param context a context
+     * @param filter the transition filter
+     */
+    static synchronized void schedule(@NonNull Context context, @NonNull GeofenceTransitionFilter filter) {
+        long timeInMs = filter.getNextDeadlineInMs();
+        if (timeInMs != sScheduledTimeInMs) {
+            AlarmManager alarmManager = (AlarmManager) context.getSystemService(Context.ALARM_SERVICE);
+            if (alarmManager != null) {
+                if (timeInMs > 0) {
+                    // the transition is late anyway, wake the device up
+                    alarmManager.set(AlarmManager.RTC_WAKEUP, timeInMs, createPendingIntent(context));
+                } else {
+                    alarmManager.cancel(createPendingIntent(context));
+                }
+                sScheduledTimeInMs = timeInMs;
+            }
+        }
+    }
+
+    private static void deliverDueTransitions(@NonNull Context context) {
+        GeofenceTransitionFilter filter = GeofenceStores.getTransitionFilter(context);
+        LinkedHashMap<String, Integer> dueTransitions = filter.takeDueTransitions(System.currentTimeMillis());
+        synchronized (DeferredTransitionReceiver.class) {
+            // the alarm has been consumed, set or cancel it again
+            sScheduledTimeInMs = -1;
+            schedule(context, filter);
+        }
+
+        if (!dueTransitions.isEmpty()) {
+            GeofenceStore syncedStore = GeofenceStores.getInstance(context, StorableGeofenceManager.SYNCED_STORE);
+            // group the ids by transition then by receiver, keeping the order
+            LinkedHashMap<Integer, LinkedHashMap<String, ArrayList<String>>> idsByTransition = new LinkedHashMap<>();
+            for (Map.Entry<String, Integer> entry : dueTransitions.entrySet()) {
+                StorableGeofence storableGeofence = syncedStore.getGeofence(entry.getKey());
+                if (storableGeofence != null) {
+                    LinkedHashMap<String, ArrayList<String>> idsByClass = idsByTransition.get(entry.getValue());
+                    if (idsByClass == null) {
+                        idsByClass = new LinkedHashMap<>();
+                        idsByTransition.put(entry.getValue(), idsByClass);
+                    }
+                    ArrayList<String> classIds = idsByClass.get(storableGeofence.getPendingIntentClassName());
+                    if (classIds == null) {
+                        classIds = new ArrayList<>();
+                        idsByClass.put(storableGeofence.getPendingIntentClassName(), classIds);
+                    }
+                    classIds.add(storableGeofence.getId());
+                }
+            }
+
+            GeofenceEventLog eventLog = GeofenceStores.getEventLog(context);
+            ReceiverPendingIntentCache receiverCache = ReceiverPendingIntentCache.getInstance(context);
+            for (Map.Entry<Integer, LinkedHashMap<String, ArrayList<String>>> transitionEntry : idsByTransition.entrySet()) {
+                for (Map.Entry<String, ArrayList<String>> entry : transitionEntry.getValue().entrySet()) {
+                    if (eventLog != null) {
+                        for (String geofenceId : entry.getValue()) {
+                            GeofenceTransitionsIntentService.recordTransition(eventLog, geofenceId, transitionEntry.getKey(), 0, null);
+                        }
+                    }
+                    Intent intent = new Intent(context, receiverCache.getIntentServiceClass(entry.getKey()));
+                    intent.putExtra(EXTRA_DEFERRED_TRANSITION, (int) transitionEntry.getKey());
+                    intent.putStringArrayListExtra(PolygonTransitionsIntentService.EXTRA_CONFIRMED_GEOFENCE_IDS, entry.getValue());
+                    context.startService(intent);
+                }
+            }
+            if (GeofenceLog.isLoggable(TAG)) {
+                GeofenceLog.i(TAG, "Delivered " + dueTransitions.size() + " deferred transitions");
+            }
+        }
+    }
+
+    private static PendingIntent createPendingIntent(@NonNull Context context) {
+        Intent intent = new Intent(context, DeferredTransitionReceiver.class);
+        return PendingIntent.getBroadcast(context, 0, intent, PendingIntent.FLAG_UPDATE_CURRENT);
+    }
+}
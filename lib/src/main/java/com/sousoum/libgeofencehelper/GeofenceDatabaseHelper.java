@@ -0,0 +1,75 @@
+package com.sousoum.libgeofencehelper;
+
+import android.content.Context;
+import android.database.sqlite.SQLiteDatabase;
+import android.database.sqlite.SQLiteOpenHelper;
+import android.support.annotation.NonNull;
+
+class GeofenceDatabaseHelper extends SQLiteOpenHelper {
+
+    /**
+     * Package local class that creates the database of the SQLite storage.
+     * All the stores share one table of geofences, each geofence is identified by its store and its id.
+     * The whole geofence is kept as a binary record (see {@link GeofenceRecordCodec}),
+     * the receiver and the expiration date are copied in indexed columns, the keys of the additional data in an indexed table.
+     */
+
+    private static final String DATABASE_NAME = "GeofenceHelperLib.db";
+    private static final int DATABASE_VERSION = 1;
+
+    static final String TABLE_GEOFENCES = "geofences";
+    static final String TABLE_DATA_KEYS = "geofence_data_keys";
+
+    static final String COLUMN_STORE = "store";
+    static final String COLUMN_ID = "id";
+    static final String COLUMN_RECEIVER = "receiver";
+    static final String COLUMN_EXPIRATION_DATE = "expiration_date"; // null if the geofence never expires
+    static final String COLUMN_RECORD = "record";
+    static final String COLUMN_KEY = "key";
+
+    private static GeofenceDatabaseHelper sInstance;
+
+    /**
+     * Get the database helper
+     * @param context a context
+     * @return the only instance of the helper in the process
+     */
+    static synchronized GeofenceDatabaseHelper getInstance(@NonNull Context context) {
+        if (sInstance == null) {
+            sInstance = new GeofenceDatabaseHelper(context.getApplicationContext());
+        }
+        return sInstance;
+    }
+
+    private GeofenceDatabaseHelper(@NonNull Context context) {
+        super(context, DATABASE_NAME, null, DATABASE_VERSION);
+    }
+
+    @Override
+    public void onCreate(SQLiteDatabase db) {
+        db.execSQL("CREATE TABLE " + TABLE_GEOFENCES + " ("
+                + COLUMN_STORE + " TEXT NOT NULL, "
+                + COLUMN_ID + " TEXT NOT NULL, "
+                + COLUMN_RECEIVER + " TEXT, "
+                + COLUMN_EXPIRATION_DATE + " INTEGER, "
+                + COLUMN_RECORD + " BLOB NOT NULL, "
+                + "PRIMARY KEY (" + COLUMN_STORE + ", " + COLUMN_ID + "))");
+        db.execSQL("CREATE INDEX geofences_expiration_date ON " + TABLE_GEOFENCES
+                + " (" + COLUMN_STORE + ", " + COLUMN_EXPIRATION_DATE + ")");
+        db.execSQL("CREATE INDEX geofences_receiver ON " + TABLE_GEOFENCES
+                + " (" + COLUMN_STORE + ", " + COLUMN_RECEIVER + ")");
+
+        db.execSQL("CREATE TABLE " + TABLE_DATA_KEYS + " ("
+                + COLUMN_STORE + " TEXT NOT NULL, "
+                + COLUMN_ID + " TEXT NOT NULL, "
+                + COLUMN_KEY + " TEXT NOT NULL, "
+                + "PRIMARY KEY (" + COLUMN_STORE + ", " + COLUMN_ID + ", " + COLUMN_KEY + "))");
+        db.execSQL("CREATE INDEX geofence_data_keys_key ON " + TABLE_DATA_KEYS
+                + " (" + COLUMN_STORE + ", " + COLUMN_KEY + ")");
+    }
+
+    @Override
+    public void onUpgrade(SQLiteDatabase db, int oldVersion, int newVersion) {
+        // first version of the database, nothing to upgrade
+    }
+}
@@ -0,0 +1,62 @@
+package com.sousoum.libgeofencehelper;
+
+import android.app.AlarmManager;
+import android.app.PendingIntent;
+import android.content.BroadcastReceiver;
+import android.content.Context;
+import android.content.Intent;
+import android.support.annotation.NonNull;
+
+public class GeofenceExpirationReceiver extends BroadcastReceiver {
+
+    /**
+     * Broadcast receiver that is woken up by the alarm manager when the next stored geofence expires.
+     */
+
+    /**
+     * Remove the expired geofences from the stores and set the alarm of the next expiration
+     * @param context The Context in which the receiver is running.
+     * @param intent The Intent being received.
+     */
+    @Override
+    public void onReceive(Context context, Intent intent) {
+        StorableGeofenceManager storableGeofenceManager = new StorableGeofenceManager(context);
+        storableGeofenceManager.purgeExpiredGeofences();
+        storableGeofenceManager.release();
+    }
+
+    static class ExpirationAlarm implements GeofenceExpirationScheduler.Alarm {
+
+        /**
+         * Inner class that sets the alarm of the expiration scheduler in the alarm manager.
+         * The alarm does not wake the device up: the purge can wait until the device is awake.
+         */
+
+        private final Context mContext;
+
+        ExpirationAlarm(@NonNull Context context) {
+            mContext = context;
+        }
+
+        @Override
+        public void set(long timeInMs) {
+            AlarmManager alarmManager = (AlarmManager) mContext.getSystemService(Context.ALARM_SERVICE);
+            if (alarmManager != null) {
+                alarmManager.set(AlarmManager.RTC, timeInMs, createPendingIntent());
+            }
+        }
+
+        @Override
+        public void cancel() {
+            AlarmManager alarmManager = (AlarmManager) mContext.getSystemService(Context.ALARM_SERVICE);
+            if (alarmManager != null) {
+                alarmManager.cancel(createPendingIntent());
+            }
+        }
+
+        private PendingIntent createPendingIntent() {
+            Intent intent = new Intent(mContext, GeofenceExpirationReceiver.class);
+            return PendingIntent.getBroadcast(mContext, 0, intent, PendingIntent.FLAG_UPDATE_CURRENT);
+        }
+    }
+}
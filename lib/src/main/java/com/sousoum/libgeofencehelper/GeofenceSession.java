@@ -0,0 +1,86 @@
+package com.sousoum.libgeofencehelper;
+
+import android.content.Context;
+import android.content.SharedPreferences;
+import android.content.pm.PackageManager;
+import android.os.SystemClock;
+import android.support.annotation.NonNull;
+
+class GeofenceSession implements GeofenceSynchronizer.Session {
+
+    /**
+     * Package local class that remembers whether the geofences of the synced store are currently registered in the Google API.
+     * The registrations are lost when the device reboots or when Google Play Services is updated,
+     * so a session is identified by the boot time of the device and the last update time of Google Play Services.
+     * Other losses (location disabled, Google Play Services data cleared...) can not be detected here, the session should be invalidated explicitly.
+     */
+
+    private static final String SHARED_PREFS = "GeofenceHelperLibSession";
+
+    private static final String BOOT_TIME_KEY = "BOOT_TIME_KEY";
+    private static final String PLAY_SERVICES_UPDATE_TIME_KEY = "PLAY_SERVICES_UPDATE_TIME_KEY";
+
+    private static final String PLAY_SERVICES_PACKAGE = "com.google.android.gms";
+
+    // the computed boot time drifts a little with the wall clock adjustments
+    private static final long BOOT_TIME_TOLERANCE_MS = 10000;
+
+    private final Context mContext;
+    private final SharedPreferences mPrefs;
+
+    GeofenceSession(@NonNull Context context) {
+        mContext = context;
+        mPrefs = context.getSharedPreferences(SHARED_PREFS, Context.MODE_PRIVATE);
+    }
+
+    /**
+     * @return true if the synced geofences have been registered during the current session
+     */
+    @Override
+    public boolean isCurrent() {
+        boolean isCurrent = false;
+        if (mPrefs.contains(BOOT_TIME_KEY)) {
+            long storedBootTime = mPrefs.getLong(BOOT_TIME_KEY, 0);
+            long storedUpdateTime = mPrefs.getLong(PLAY_SERVICES_UPDATE_TIME_KEY, 0);
+            isCurrent = Math.abs(getBootTime() - storedBootTime) <= BOOT_TIME_TOLERANCE_MS &&
+                    getPlayServicesUpdateTime() == storedUpdateTime;
+        }
+        return isCurrent;
+    }
+
+    /**
+     * Remember that the synced geofences have been registered during the current session
+     */
+    @Override
+    public void markCurrent() {
+        mPrefs.edit()
+                .putLong(BOOT_TIME_KEY, getBootTime())
+                .putLong(PLAY_SERVICES_UPDATE_TIME_KEY, getPlayServicesUpdateTime())
+                .apply();
+    }
+
+    /**
+     * Forget the current session, the synced geofences will have to be registered again
+     */
+    @Override
+    public void invalidate() {
+        mPrefs.edit()
+                .remove(BOOT_TIME_KEY)
+                .remove(PLAY_SERVICES_UPDATE_TIME_KEY)
+                .apply();
+    }
+
+    private static long getBootTime() {
+        return System.currentTimeMillis() - SystemClock.elapsedRealtime();
+    }
+
+    private long getPlayServicesUpdateTime() {
+        long updateTime = 0;
+        try {
+            updateTime = mContext.getPackageManager().getPackageInfo(PLAY_SERVICES_PACKAGE, 0).lastUpdateTime;
+        } catch (PackageManager.NameNotFoundException e) {
+            // no Google Play Services, nothing is registered anyway
+        }
+        return updateTime;
+    }
+}
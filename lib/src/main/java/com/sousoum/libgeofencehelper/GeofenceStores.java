@@ -0,0 +1,313 @@
+package com.sousoum.libgeofencehelper;
+
+import android.content.Context;
+import android.content.SharedPreferences;
+import android.database.Cursor;
+import android.database.SQLException;
+import android.support.annotation.NonNull;
+
+import java.io.File;
+import java.io.IOException;
+import java.util.ArrayList;
+import java.util.Collections;
+import java.util.HashMap;
+import java.util.LinkedHashMap;
+import java.util.Map;
+import java.util.Set;
+
+final class GeofenceStores {
+
+    /**
+     * Package local class that keeps the stores of the library, one per prefix in the process.
+     * By default each store keeps its geofences in its own binary record file in the private files directory of the application,
+     * the stores can also be kept in a SQLite database. The selected storage is persisted.
+     * Geofences stored in the shared preferences by previous versions of the library are migrated the first time the store is used.
+     * It also keeps the transition filter, whose table of the last transitions is persisted with the stores, and the event log of the transitions.
+     */
+
+    static final int STORAGE_RECORD_FILE = 0;
+    static final int STORAGE_SQLITE = 1;
+
+    private static final String TAG = "GeofenceStores";
+
+    private static final String STORE_FILE_PREFIX = "GeofenceHelperLibStore-";
+    private static final String STORE_FILE_EXTENSION = ".bin";
+
+    private static final String EVENT_LOG_FILE = "GeofenceHelperLibEvents.bin";
+
+    private static final String SHARED_PREFS = "GeofenceHelperLibStorage";
+    private static final String STORAGE_KEY = "STORAGE_KEY";
+
+    private static final HashMap<String, GeofenceStore> sStores = new HashMap<>();
+    private static GeofenceTransitionFilter sTransitionFilter;
+    private static GeofenceEventLog sEventLog;
+    private static boolean sEventLogOpened;
+
+    private GeofenceStores() {
+    }
+
+    /**
+     * Get the store of the given prefix
+     * @param context a context
+     * @param prefix the prefix of the store
+     * @return the only instance of the store in the process
+     */
+    static synchronized GeofenceStore getInstance(@NonNull Context context, @NonNull String prefix) {
+        GeofenceStore store = sStores.get(prefix);
+        if (store == null) {
+            AndroidLogPrinter.install();
+            AndroidTraceTracer.install();
+            Context appContext = context.getApplicationContext();
+            store = new GeofenceStore(prefix, createStoreStorage(appContext, getStorage(appContext), prefix));
+            sStores.put(prefix, store);
+        }
+        return store;
+    }
+
+    /**
+     * Get the transition filter of the process, create it the first time
+     * @param context a context
+     * @return the only instance of the filter in the process
+     */
+    static synchronized @NonNull
+    GeofenceTransitionFilter getTransitionFilter(@NonNull Context context) {
+        if (sTransitionFilter == null) {
+            sTransitionFilter = new GeofenceTransitionFilter(new PrefsTransitionStateTable(context.getApplicationContext()), GeofenceClock.SYSTEM,
+                    GeofenceTransitionFilter.DEFAULT_MIN_DWELL_MS, GeofenceTransitionFilter.DEFAULT_HYSTERESIS_RATIO);
+        }
+        return sTransitionFilter;
+    }
+
+    /**
+     * Get the event log of the process, open it the first time
+     * @param context a context
+     * @return the only instance of the log in the process, null if it could not be opened
+     */
+    static synchronized GeofenceEventLog getEventLog(@NonNull Context context) {
+        if (!sEventLogOpened) {
+            sEventLogOpened = true;
+            try {
+                sEventLog = new GeofenceEventLog(new File(context.getApplicationContext().getFilesDir(), EVENT_LOG_FILE), GeofenceEventLog.DEFAULT_CAPACITY);
+            } catch (IOException e) {
+                GeofenceLog.e(TAG, "Could not open the event log", e);
+            }
+        }
+        return sEventLog;
+    }
+
+    /**
+     * Get the selected storage
+     * @param context a context
+     * @return {@link #STORAGE_RECORD_FILE} or {@link #STORAGE_SQLITE}
+     */
+    static synchronized int getStorage(@NonNull Context context) {
+        return getPrefs(context).getInt(STORAGE_KEY, STORAGE_RECORD_FILE);
+    }
+
+    /**
+     * Select the storage of the stores.
+     * If it changes, the content of all the stores is moved to the new storage, then the existing stores are switched to it:
+     * the stores got before the change keep working.
+     * It reads and writes all the stores, it should be run on the queue of the operations that modify them.
+     * @param context a context
+     * @param storage {@link #STORAGE_RECORD_FILE} or {@link #STORAGE_SQLITE}
+     * @return true if the storage is selected, false if the stores could not be moved to it. The previous storage is then kept.
+     */
+    static synchronized boolean setStorage(@NonNull Context context, int storage) {
+        boolean selected = true;
+        Context appContext = context.getApplicationContext();
+        int previousStorage = getStorage(appContext);
+        if (storage != previousStorage) {
+            ArrayList<GeofenceStorage> movedStorages = new ArrayList<>();
+            try {
+                ArrayList<String> prefixes = getStorePrefixes(appContext, previousStorage);
+                for (String prefix : prefixes) {
+                    GeofenceStorage previousStoreStorage = createStorage(appContext, previousStorage, prefix);
+                    GeofenceStorage storeStorage = createStorage(appContext, storage, prefix);
+                    movedStorages.add(storeStorage);
+                    storeStorage.update(previousStoreStorage.readAll(), Collections.<String>emptySet());
+                }
+                for (String prefix : prefixes) {
+                    createStorage(appContext, previousStorage, prefix).reset();
+                }
+                getPrefs(appContext).edit().putInt(STORAGE_KEY, storage).commit();
+                for (Map.Entry<String, GeofenceStore> entry : sStores.entrySet()) {
+                    entry.getValue().setStorage(createStoreStorage(appContext, storage, entry.getKey()));
+                }
+                GeofenceLog.i(TAG, "Moved " + prefixes.size() + " stores to the storage " + storage);
+            } catch (IOException e) {
+                GeofenceLog.e(TAG, "Could not move the stores to the storage " + storage, e);
+                for (GeofenceStorage movedStorage : movedStorages) {
+                    movedStorage.reset();
+                }
+                selected = false;
+            }
+        }
+        return selected;
+    }
+
+    private static SharedPreferences getPrefs(@NonNull Context context) {
+        return context.getSharedPreferences(SHARED_PREFS, Context.MODE_PRIVATE);
+    }
+
+    /**
+     * Create the storage of a store, which migrates the geofences stored in the shared preferences by a previous version of the library.
+     * The indexed queries of the storage stay visible to the store.
+     */
+    private static @NonNull
+    GeofenceStorage createStoreStorage(@NonNull Context appContext, int storage, @NonNull String prefix) {
+        GeofenceStorage geofenceStorage = createStorage(appContext, storage, prefix);
+        LegacyPrefsGeofenceStore legacyStore = new LegacyPrefsGeofenceStore(appContext, prefix);
+        GeofenceStorage storeStorage;
+        if (geofenceStorage instanceof IndexedGeofenceStorage) {
+            storeStorage = new IndexedLegacyMigrationStorage((IndexedGeofenceStorage) geofenceStorage, legacyStore, prefix);
+        } else {
+            storeStorage = new LegacyMigrationStorage(geofenceStorage, legacyStore, prefix);
+        }
+        return storeStorage;
+    }
+
+    private static @NonNull
+    GeofenceStorage createStorage(@NonNull Context appContext, int storage, @NonNull String prefix) {
+        GeofenceStorage geofenceStorage;
+        if (storage == STORAGE_SQLITE) {
+            geofenceStorage = new SQLiteGeofenceStorage(GeofenceDatabaseHelper.getInstance(appContext), prefix);
+        } else {
+            geofenceStorage = new RecordFileGeofenceStorage(new File(appContext.getFilesDir(), STORE_FILE_PREFIX + prefix + STORE_FILE_EXTENSION));
+        }
+        return geofenceStorage;
+    }
+
+    /**
+     * Get the prefixes of the stores that have content in a storage
+     * @param appContext the application context
+     * @param storage the storage
+     * @return the prefixes of the stores
+     * @throws IOException if the storage could not be listed
+     */
+    private static @NonNull
+    ArrayList<String> getStorePrefixes(@NonNull Context appContext, int storage) throws IOException {
+        ArrayList<String> prefixes = new ArrayList<>();
+        if (storage == STORAGE_SQLITE) {
+            try {
+                Cursor cursor = GeofenceDatabaseHelper.getInstance(appContext).getReadableDatabase().rawQuery(
+                        "SELECT DISTINCT " + GeofenceDatabaseHelper.COLUMN_STORE + " FROM " + GeofenceDatabaseHelper.TABLE_GEOFENCES, null);
+                try {
+                    while (cursor.moveToNext()) {
+                        prefixes.add(cursor.getString(0));
+                    }
+                } finally {
+                    cursor.close();
+                }
+            } catch (SQLException e) {
+                throw new IOException("Could not list the stores of the database", e);
+            }
+        } else {
+            String[] fileNames = appContext.getFilesDir().list();
+            if (fileNames != null) {
+                for (String fileName : fileNames) {
+                    if (fileName.startsWith(STORE_FILE_PREFIX) && fileName.endsWith(STORE_FILE_EXTENSION)) {
+                        prefixes.add(fileName.substring(STORE_FILE_PREFIX.length(), fileName.length() - STORE_FILE_EXTENSION.length()));
+                    }
+                }
+            }
+        }
+        return prefixes;
+    }
+
+    private static class LegacyMigrationStorage implements GeofenceStorage {
+
+        /**
+         * Storage that moves the geofences stored in the shared preferences by a previous version of the library
+         * to another storage before its first use
+         */
+
+        private final GeofenceStorage mStorage;
+        private final LegacyPrefsGeofenceStore mLegacyStore;
+        private final String mTag;
+
+        private boolean mMigrationChecked;
+
+        LegacyMigrationStorage(@NonNull GeofenceStorage storage, @NonNull LegacyPrefsGeofenceStore legacyStore, @NonNull String prefix) {
+            mStorage = storage;
+            mLegacyStore = legacyStore;
+            mTag = "Store " + prefix;
+        }
+
+        @Override
+        public @NonNull
+        LinkedHashMap<String, StorableGeofence> readAll() throws IOException {
+            ensureMigrated();
+            return mStorage.readAll();
+        }
+
+        @Override
+        public void update(@NonNull Map<String, StorableGeofence> writes, @NonNull Set<String> deletes) throws IOException {
+            ensureMigrated();
+            mStorage.update(writes, deletes);
+        }
+
+        @Override
+        public void reset() {
+            mStorage.reset();
+        }
+
+        /**
+         * Move the legacy geofences to the storage, if it has not been done yet.
+         * If they can not be moved, they are kept in the shared preferences and the migration is retried by the next access.
+         */
+        void ensureMigrated() {
+            if (!mMigrationChecked) {
+                if (mLegacyStore.hasGeofences()) {
+                    LinkedHashMap<String, StorableGeofence> geofences = mLegacyStore.readAll();
+                    try {
+                        mStorage.update(geofences, Collections.<String>emptySet());
+                        mLegacyStore.clear();
+                        mMigrationChecked = true;
+                        GeofenceLog.i(mTag, "Migrated " + geofences.size() + " geofences from the shared preferences");
+                    } catch (IOException e) {
+                        GeofenceLog.e(mTag, "Could not migrate the geofences from the shared preferences", e);
+                    }
+                } else {
+                    mMigrationChecked = true;
+                }
+            }
+        }
+    }
+
+    private static class IndexedLegacyMigrationStorage extends LegacyMigrationStorage implements IndexedGeofenceStorage {
+
+        /**
+         * Storage that migrates the legacy geofences like {@link LegacyMigrationStorage}, and forwards the indexed queries
+         * to an indexed storage, so that the store does not have to load all its geofences to answer them
+         */
+
+        private final IndexedGeofenceStorage mIndexedStorage;
+
+        IndexedLegacyMigrationStorage(@NonNull IndexedGeofenceStorage storage, @NonNull LegacyPrefsGeofenceStore legacyStore, @NonNull String prefix) {
+            super(storage, legacyStore, prefix);
+            mIndexedStorage = storage;
+        }
+
+        @Override
+        public @NonNull
+        LinkedHashMap<String, StorableGeofence> readExpired(long nowInMs) throws IOException {
+            ensureMigrated();
+            return mIndexedStorage.readExpired(nowInMs);
+        }
+
+        @Override
+        public @NonNull
+        LinkedHashMap<String, StorableGeofence> readByReceiver(@NonNull String pendingIntentClassName) throws IOException {
+            ensureMigrated();
+            return mIndexedStorage.readByReceiver(pendingIntentClassName);
+        }
+
+        @Override
+        public @NonNull
+        LinkedHashMap<String, StorableGeofence> readByAdditionalDataKey(@NonNull String key) throws IOException {
+            ensureMigrated();
+            return mIndexedStorage.readByAdditionalDataKey(key);
+        }
+    }
+}
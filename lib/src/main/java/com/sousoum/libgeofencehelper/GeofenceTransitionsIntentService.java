@@ -0,0 +1,172 @@
+package com.sousoum.libgeofencehelper;
+
+import android.app.IntentService;
+import android.content.Context;
+import android.content.Intent;
+import android.location.Location;
+import android.support.annotation.NonNull;
+import android.util.Log;
+
+import com.google.android.gms.location.Geofence;
+import com.google.android.gms.location.GeofencingEvent;
+
+import java.util.ArrayList;
+import java.util.List;
+
+public abstract class GeofenceTransitionsIntentService extends IntentService {
+
+    /**
+     * Base class of the receivers of the geofence transitions.
+     * It decodes the GeofencingEvent once and resolves all the triggering geofences with a single lookup of the synced store,
+     * which is shared by the whole process and stays loaded between transitions.
+     * No StorableGeofenceManager nor Google API Client is created to handle a transition.
+     * When the transition has been forwarded by the {@link PolygonTransitionsIntentService}, only the confirmed geofences are given.
+     * The duplicate and oscillating transitions, caused by the jitter of the location near a boundary, are dropped before reaching the subclass.
+     * A transition that comes too soon after the opposite one is given at the end of the minimum dwell, without location, unless it is reversed before.
+     */
+
+    private static final String TAG = "TransitionsService";
+
+    /**
+     * Create the service
+     * @param name the name of the worker thread, for debugging
+     */
+    public GeofenceTransitionsIntentService(String name) {
+        super(name);
+    }
+
+    @Override
+    protected final void onHandleIntent(Intent intent) {
+        if (intent != null && intent.hasExtra(DeferredTransitionReceiver.EXTRA_DEFERRED_TRANSITION)) {
+            // delivered at the end of the minimum dwell, the transition has already been filtered
+            List<String> geofenceIds = intent.getStringArrayListExtra(PolygonTransitionsIntentService.EXTRA_CONFIRMED_GEOFENCE_IDS);
+            dispatchTransition(intent.getIntExtra(DeferredTransitionReceiver.EXTRA_DEFERRED_TRANSITION, 0),
+                    geofenceIds != null ? geofenceIds : new ArrayList<String>(), null, false);
+        } else {
+            GeofencingEvent geoEvent = GeofencingEvent.fromIntent(intent);
+            if (geoEvent != null) {
+                if (geoEvent.hasError()) {
+                    onGeofenceError(geoEvent.getErrorCode());
+                } else {
+                    List<String> geofenceIds = intent.getStringArrayListExtra(PolygonTransitionsIntentService.EXTRA_CONFIRMED_GEOFENCE_IDS);
+                    // the forwarded transitions have already been filtered
+                    boolean filterNeeded = geofenceIds == null;
+                    if (geofenceIds == null) {
+                        List<Geofence> triggeringGeofences = geoEvent.getTriggeringGeofences();
+                        geofenceIds = new ArrayList<>(triggeringGeofences != null ? triggeringGeofences.size() : 0);
+                        if (triggeringGeofences != null) {
+                            for (Geofence geofence : triggeringGeofences) {
+                                geofenceIds.add(geofence.getRequestId());
+                            }
+                        }
+                    }
+                    dispatchTransition(geoEvent.getGeofenceTransition(), geofenceIds, geoEvent.getTriggeringLocation(), filterNeeded);
+                }
+            } else {
+                Log.e(TAG, "Not a geo event");
+            }
+        }
+    }
+
+    /**
+     * Resolve the geofences of a transition in the synced store, filter them if needed, and give them to the subclass
+     * @param transition the transition
+     * @param geofenceIds the ids of the geofences that triggered the transition
+     * @param location the location that triggered the transition, can be null
+     * @param filterNeeded true if the transition has not been filtered yet
+     */
+    private void dispatchTransition(int transition, @NonNull List<String> geofenceIds, Location location, boolean filterNeeded) {
+        long startNs = GeofenceMetrics.start();
+        GeofenceTrace.begin(GeofenceTrace.DISPATCH);
+        try {
+            ArrayList<StorableGeofence> geofences =
+                    GeofenceStores.getInstance(this, StorableGeofenceManager.SYNCED_STORE).getGeofences(geofenceIds);
+            if (geofences.size() < geofenceIds.size() && Log.isLoggable(TAG, Log.INFO)) {
+                Log.i(TAG, (geofenceIds.size() - geofences.size()) + " triggering geofences are not stored");
+            }
+            if (filterNeeded) {
+                geofences = filterAndRecordTransition(this, transition, geofences, location);
+            }
+            GeofenceTrace.setGeofenceCount(geofences.size());
+            if (!geofences.isEmpty()) {
+                onGeofenceTransition(transition, geofences, location);
+            }
+            GeofenceMetrics.recordLatency(GeofenceMetrics.DISPATCH, startNs);
+            GeofenceMetrics.count(GeofenceMetrics.DISPATCHED_GEOFENCES, geofences.size());
+        } finally {
+            GeofenceTrace.end();
+        }
+    }
+
+    /**
+     * Drop the duplicate and oscillating transitions of geofences, defer the ones that come too soon, and record all of them in the event log.
+     * The alarm of the deferred transitions is set again.
+     * @param context a context
+     * @param transition the transition
+     * @param geofences the geofences that triggered the transition
+     * @param location the location that triggered the transition, can be null
+     * @return the geofences whose transition should be given to their receiver
+     */
+    static @NonNull
+    ArrayList<StorableGeofence> filterAndRecordTransition(@NonNull Context context, int transition, @NonNull List<StorableGeofence> geofences,
+                                                          Location location) {
+        ArrayList<StorableGeofence> acceptedGeofences;
+        GeofenceTransitionFilter filter = GeofenceStores.getTransitionFilter(context);
+        if (location != null) {
+            acceptedGeofences = filter.filter(transition, geofences, true, location.getLatitude(), location.getLongitude(), location.getAccuracy());
+        } else {
+            acceptedGeofences = filter.filter(transition, geofences, false, 0, 0, 0);
+        }
+        DeferredTransitionReceiver.schedule(context, filter);
+        GeofenceMetrics.count(GeofenceMetrics.FILTERED_GEOFENCES, geofences.size() - acceptedGeofences.size());
+
+        GeofenceEventLog eventLog = GeofenceStores.getEventLog(context);
+        if (eventLog != null) {
+            // the accepted geofences are in the same order, a single pass finds the filtered ones
+            int acceptedIndex = 0;
+            for (StorableGeofence geofence : geofences) {
+                int flags = GeofenceEventLog.FLAG_FILTERED;
+                if (acceptedIndex < acceptedGeofences.size() && acceptedGeofences.get(acceptedIndex) == geofence) {
+                    flags = 0;
+                    acceptedIndex++;
+                }
+                recordTransition(eventLog, geofence.getId(), transition, flags, location);
+            }
+        }
+        return acceptedGeofences;
+    }
+
+    /**
+     * Record a transition in the event log, without syncing it to the disk
+     * @param eventLog the event log
+     * @param geofenceId the id of the geofence
+     * @param transition the transition
+     * @param flags the flags of the event
+     * @param location the location that triggered the transition, can be null
+     */
+    static void recordTransition(@NonNull GeofenceEventLog eventLog, @NonNull String geofenceId, int transition, int flags, Location location) {
+        long timeInMs = System.currentTimeMillis();
+        if (location != null) {
+            eventLog.append(geofenceId, transition, timeInMs, flags, true, location.getLatitude(), location.getLongitude(), location.getAccuracy());
+        } else {
+            eventLog.append(geofenceId, transition, timeInMs, flags, false, 0, 0, 0);
+        }
+    }
+
+    /**
+     * Called on the worker thread when geofences have been crossed
+     * @param transition the transition, one of the StorableGeofence.TRANSITION_* constants
+     * @param geofences the stored geofences that triggered the transition. They are shared, they should not be modified.
+     * @param triggeringLocation the location that triggered the transition, can be null
+     */
+    protected abstract void onGeofenceTransition(int transition, @NonNull List<StorableGeofence> geofences, Location triggeringLocation);
+
+    /**
+     * Called on the worker thread when the Google API reports an error instead of a transition.
+     * Only logs the error by default.
+     * @param errorCode the error code, see GeofenceStatusCodes
+     */
+    protected void onGeofenceError(int errorCode) {
+        Log.e(TAG, "Geofence error : " + errorCode);
+    }
+}
@@ -0,0 +1,151 @@
+package com.sousoum.libgeofencehelper;
+
+import android.content.Context;
+import android.content.SharedPreferences;
+import android.support.annotation.NonNull;
+
+import com.google.android.gms.location.Geofence;
+
+import java.util.Date;
+import java.util.LinkedHashMap;
+import java.util.Set;
+
+class LegacyPrefsGeofenceStore {
+
+    /**
+     * Package local class that reads the geofences stored by the previous versions of the library.
+     * These versions stored each field of each geofence in a separate key of the shared preferences.
+     * It is only used to migrate these geofences to the {@link GeofenceRecordFile}.
+     */
+
+    private static final String SHARED_PREFS = "GeofenceHelperLibStore";
+
+    private static final String GEOFENCE_ID_SET_KEY = "GEOFENCE_ID_SET_KEY";
+    private static final String PENDING_INTENT_CLASS_KEY = "PENDING_INTENT_CLASS_KEY";
+    private static final String LATITUDE_KEY = "LATITUDE_KEY";
+    private static final String LONGITUDE_KEY = "LONGITUDE_KEY";
+    private static final String RADIUS_KEY = "RADIUS_KEY";
+    private static final String EXPIRATION_KEY = "EXPIRATION_KEY";
+    private static final String LOITERING_DELAY_KEY = "LOITERING_DELAY_KEY";
+    private static final String TRANSITION_KEY = "TRANSITION_KEY";
+    private static final String EXPIRATION_DATE_KEY = "EXPIRATION_DATE_KEY";
+    private static final String ADDITIONAL_DATA_KEY = "ADDITIONAL_DATA_KEY";
+    private static final String ADDITIONAL_DATA_TYPE_KEY = "ADDITIONAL_DATA_TYPE_KEY";
+
+    private static final double NOT_VALID_POSITION = 500;
+
+    private final String mPrefix;
+    private final SharedPreferences mPrefs;
+
+    LegacyPrefsGeofenceStore(@NonNull Context context, @NonNull String prefix) {
+        mPrefix = prefix;
+        mPrefs = context.getSharedPreferences(SHARED_PREFS, Context.MODE_PRIVATE);
+    }
+
+    /**
+     * @return true if the preferences still contain geofences of this store
+     */
+    boolean hasGeofences() {
+        return mPrefs.contains(mPrefix + GEOFENCE_ID_SET_KEY);
+    }
+
+    /**
+     * Read all geofences of this store.
+     * @return a map of id -> geofence. The geofence is null if only the id has been stored.
+     */
+    @NonNull
+    LinkedHashMap<String, StorableGeofence> readAll() {
+        LinkedHashMap<String, StorableGeofence> geofences = new LinkedHashMap<>();
+        Set<String> geofenceIdSet = mPrefs.getStringSet(mPrefix + GEOFENCE_ID_SET_KEY, null);
+        if (geofenceIdSet != null) {
+            for (String geofenceId : geofenceIdSet) {
+                geofences.put(geofenceId, readGeofence(geofenceId));
+            }
+        }
+        return geofences;
+    }
+
+    /**
+     * Remove all the keys of this store from the preferences
+     */
+    void clear() {
+        SharedPreferences.Editor editor = mPrefs.edit();
+        Set<String> geofenceIdSet = mPrefs.getStringSet(mPrefix + GEOFENCE_ID_SET_KEY, null);
+        if (geofenceIdSet != null) {
+            for (String geofenceId : geofenceIdSet) {
+                String prefix = mPrefix + geofenceId;
+                editor.remove(prefix + PENDING_INTENT_CLASS_KEY);
+                editor.remove(prefix + LATITUDE_KEY);
+                editor.remove(prefix + LONGITUDE_KEY);
+                editor.remove(prefix + RADIUS_KEY);
+                editor.remove(prefix + EXPIRATION_KEY);
+                editor.remove(prefix + LOITERING_DELAY_KEY);
+                editor.remove(prefix + TRANSITION_KEY);
+                editor.remove(prefix + EXPIRATION_DATE_KEY);
+                Set<String> keySet = mPrefs.getStringSet(prefix + ADDITIONAL_DATA_KEY, null);
+                if (keySet != null) {
+                    for (String key : keySet) {
+                        editor.remove(prefix + ADDITIONAL_DATA_KEY + key);
+                        editor.remove(prefix + ADDITIONAL_DATA_TYPE_KEY + key);
+                    }
+                }
+                editor.remove(prefix + ADDITIONAL_DATA_KEY);
+            }
+        }
+        editor.remove(mPrefix + GEOFENCE_ID_SET_KEY);
+        editor.apply();
+    }
+
+    /**
+     * Read a stored geofence
+     * @param geofenceId the id of the geofence
+     * @return the geofence, or null if only its id has been stored
+     */
+    private StorableGeofence readGeofence(@NonNull String geofenceId) {
+        StorableGeofence storableGeofence = null;
+
+        String prefix = mPrefix + geofenceId;
+        if (mPrefs.contains(prefix + LATITUDE_KEY)) {
+            String pendingIntentClassName = mPrefs.getString(prefix + PENDING_INTENT_CLASS_KEY, DefaultTransitionsIntentService.class.getName());
+            double latitude = Double.longBitsToDouble(mPrefs.getLong(prefix + LATITUDE_KEY, Double.doubleToRawLongBits(NOT_VALID_POSITION)));
+            double longitude = Double.longBitsToDouble(mPrefs.getLong(prefix + LONGITUDE_KEY, Double.doubleToRawLongBits(NOT_VALID_POSITION)));
+            float radius = mPrefs.getFloat(prefix + RADIUS_KEY, 100);
+            long expiration = mPrefs.getLong(prefix + EXPIRATION_KEY, Geofence.NEVER_EXPIRE);
+            long expirationDate = mPrefs.getLong(prefix + EXPIRATION_DATE_KEY, 0);
+            int loiteringDelay = mPrefs.getInt(prefix + LOITERING_DELAY_KEY, 0);
+            int transition = mPrefs.getInt(prefix + TRANSITION_KEY, Geofence.GEOFENCE_TRANSITION_ENTER);
+            if (expiration != Geofence.NEVER_EXPIRE) {
+                // the stored expiration duration is not reliable, use the stored expiration date instead
+                expiration = Math.max(0, expirationDate - new Date().getTime());
+            }
+            Set<String> keySet = mPrefs.getStringSet(prefix + ADDITIONAL_DATA_KEY, null);
+            GeofenceAttributes attributes = new GeofenceAttributes(keySet != null ? keySet.size() : 0);
+            if (keySet != null) {
+                for (String key : keySet) {
+                    String type = mPrefs.getString(prefix + ADDITIONAL_DATA_TYPE_KEY + key, null);
+                    if (type != null) {
+                        if (type.equals(String.class.toString())) {
+                            String value = mPrefs.getString(prefix + ADDITIONAL_DATA_KEY + key, null);
+                            if (value != null) {
+                                attributes.putString(key, value);
+                            }
+                        } else if (type.equals(Long.class.toString())) {
+                            attributes.putLong(key, mPrefs.getLong(prefix + ADDITIONAL_DATA_KEY + key, 0));
+                        } else if (type.equals(Integer.class.toString())) {
+                            attributes.putInt(key, mPrefs.getInt(prefix + ADDITIONAL_DATA_KEY + key, 0));
+                        } else if (type.equals(Float.class.toString())) {
+                            attributes.putFloat(key, mPrefs.getFloat(prefix + ADDITIONAL_DATA_KEY + key, 0));
+                        } else if (type.equals(Boolean.class.toString())) {
+                            attributes.putBoolean(key, mPrefs.getBoolean(prefix + ADDITIONAL_DATA_KEY + key, false));
+                        }
+                    }
+                }
+            }
+
+            storableGeofence = new StorableGeofence(geofenceId, pendingIntentClassName, latitude, longitude, radius,
+                    expiration, expirationDate, loiteringDelay, transition, attributes);
+        }
+
+        return storableGeofence;
+    }
+}
@@ -0,0 +1,209 @@
+package com.sousoum.libgeofencehelper;
+
+import android.app.PendingIntent;
+import android.content.Context;
+import android.support.annotation.NonNull;
+
+import com.google.android.gms.common.api.ResultCallback;
+import com.google.android.gms.common.api.Status;
+import com.google.android.gms.location.Geofence;
+import com.google.android.gms.location.GeofencingApi;
+import com.google.android.gms.location.GeofencingRequest;
+import com.google.android.gms.location.LocationServices;
+
+import java.util.ArrayList;
+import java.util.List;
+
+class PlayServicesGeofencingBackend implements GeofencingBackend {
+
+    /**
+     * Package local class that registers the geofences in the Google API Client.
+     * The geofences are sent to the IntentService of their receiver, except the polygons
+     * which are sent to the PolygonTransitionsIntentService to be checked first.
+     * It uses the Google API Client shared by the process, which is kept connected until the results of the requests are received.
+     * The results are posted to the synchronizer on the operation queue, after the operations submitted before them,
+     * without blocking the main thread on which they are received.
+     * The PendingIntent of each receiver is created once and kept while geofences of the receiver are registered.
+     * A request that the Google API Client refuses to submit, for example because it is not connected or the location permission
+     * has been revoked, gets a {@link #STATUS_ERROR} result right away.
+     */
+
+    private static final String TAG = "PlayServicesBackend";
+
+    private final ReceiverPendingIntentCache mPendingIntentCache;
+    private final GeofencingApi mGeofencingAPI = LocationServices.GeofencingApi;
+    private final SharedGoogleApiClient mApiClient;
+    private final SharedGoogleApiClient.Operation mOnConnected;
+    private final GeofenceOperationQueue mOperationQueue;
+
+    /**
+     * Create the backend
+     * @param context a context
+     * @param apiClient the shared Google API Client
+     * @param onConnected operation run once connected when a connection is triggered by {@link #connect()}, or informed that the connection failed
+     * @param operationQueue the queue on which the results are given
+     */
+    PlayServicesGeofencingBackend(@NonNull Context context, @NonNull SharedGoogleApiClient apiClient,
+                                  @NonNull SharedGoogleApiClient.Operation onConnected, @NonNull GeofenceOperationQueue operationQueue) {
+        mPendingIntentCache = ReceiverPendingIntentCache.getInstance(context);
+        mApiClient = apiClient;
+        mOnConnected = onConnected;
+        mOperationQueue = operationQueue;
+    }
+
+    @Override
+    public boolean isConnected() {
+        return mApiClient.isConnected();
+    }
+
+    @Override
+    public void connect() {
+        mApiClient.runWhenConnected(mOnConnected);
+    }
+
+    @Override
+    public String getRequestKey(@NonNull StorableGeofence geofence) {
+        String requestKey;
+        if (geofence instanceof StorablePolygonGeofence) {
+            requestKey = PolygonTransitionsIntentService.class.getName();
+        } else {
+            requestKey = geofence.getPendingIntentClassName();
+        }
+        return requestKey;
+    }
+
+    @Override
+    public void addGeofences(String requestKey, @NonNull List<StorableGeofence> geofences, @NonNull Callback callback) {
+        GeofenceMetrics.count(GeofenceMetrics.API_ADDED_GEOFENCES, geofences.size());
+        long startNs = GeofenceMetrics.start();
+        mApiClient.onRequestStart();
+        boolean acquired = false;
+        try {
+            GeofencingRequest request = buildRequest(geofences);
+            PendingIntent pendingIntent = mPendingIntentCache.acquirePendingIntent(requestKey, geofences);
+            acquired = true;
+            mGeofencingAPI.addGeofences(mApiClient.getClient(), request, pendingIntent)
+                    .setResultCallback(new StatusCallback(GeofenceMetrics.API_ADD, startNs, mApiClient, mOperationQueue, callback));
+        } catch (RuntimeException e) {
+            if (acquired) {
+                ArrayList<String> geofenceIds = new ArrayList<>(geofences.size());
+                for (StorableGeofence geofence : geofences) {
+                    geofenceIds.add(geofence.getId());
+                }
+                mPendingIntentCache.release(geofenceIds);
+            }
+            onSubmitFailed(callback, e);
+        }
+    }
+
+    @Override
+    public void removeGeofences(@NonNull final List<String> geofenceIds, @NonNull final Callback callback) {
+        GeofenceMetrics.count(GeofenceMetrics.API_REMOVED_GEOFENCES, geofenceIds.size());
+        long startNs = GeofenceMetrics.start();
+        mApiClient.onRequestStart();
+        try {
+            mGeofencingAPI.removeGeofences(mApiClient.getClient(), geofenceIds)
+                    .setResultCallback(new StatusCallback(GeofenceMetrics.API_REMOVE, startNs, mApiClient, mOperationQueue, new Callback() {
+                        @Override
+                        public void onResult(int statusCode, String statusMessage) {
+                            // the geofences are still registered if the removal failed, their pending intents are kept
+                            if (statusCode <= STATUS_SUCCESS) {
+                                mPendingIntentCache.release(geofenceIds);
+                            }
+                            callback.onResult(statusCode, statusMessage);
+                        }
+                    }));
+        } catch (RuntimeException e) {
+            onSubmitFailed(callback, e);
+        }
+    }
+
+    /**
+     * End a request that the Google API Client refused to submit, and give an error to its callback
+     * @param callback the callback of the request
+     * @param e the exception thrown by the Google API Client
+     */
+    private void onSubmitFailed(@NonNull Callback callback, @NonNull RuntimeException e) {
+        GeofenceLog.e(TAG, "Could not submit the request", e);
+        GeofenceMetrics.count(GeofenceMetrics.API_ERRORS, 1);
+        mApiClient.onRequestEnd();
+        callback.onResult(STATUS_ERROR, e.getMessage());
+    }
+
+    /**
+     * Build the request that adds geofences to the Google API Client
+     * @param geofences the geofences of the request, at most {@link GeofenceSynchronizer#MAX_GEOFENCES_PER_REQUEST}
+     * @return the request
+     */
+    static @NonNull
+    GeofencingRequest buildRequest(@NonNull List<StorableGeofence> geofences) {
+        GeofenceTrace.begin(GeofenceTrace.BUILD_REQUEST, geofences.size());
+        GeofencingRequest.Builder requestBuilder = new GeofencingRequest.Builder();
+        for (StorableGeofence storableGeofence : geofences) {
+            requestBuilder.addGeofence(toGeofence(storableGeofence));
+        }
+        GeofencingRequest request = requestBuilder.build();
+        GeofenceTrace.end();
+        return request;
+    }
+
+    /**
+     * Creates a Location Services Geofence object from a StorableGeofence.
+     * Also used by the deprecated {@link StorableGeofenceManager#toGeofence(StorableGeofence)}.
+     * @param storableGeofence the geofence to convert
+     * @return A Geofence object.
+     */
+    static @NonNull
+    Geofence toGeofence(@NonNull StorableGeofence storableGeofence) {
+        // Build a new Geofence object.
+        return new Geofence.Builder()
+                .setRequestId(storableGeofence.getId())
+                .setLoiteringDelay(storableGeofence.getLoiteringDelay())
+                .setTransitionTypes(storableGeofence.getTransitionType())
+                .setCircularRegion(storableGeofence.getLatitude(), storableGeofence.getLongitude(), storableGeofence.getRadius())
+                .setExpirationDuration(storableGeofence.getExpirationDuration())
+                .build();
+    }
+
+    private static class StatusCallback implements ResultCallback<Status> {
+
+        /**
+         * Inner class that gives the status of a request of the Google API Client to a callback of the synchronizer.
+         * The latency of the request is measured from the start time given by the caller, taken before the request is submitted,
+         * to the result.
+         */
+
+        private final String mMetricName;
+        private final long mStartNs;
+        private final SharedGoogleApiClient mApiClient;
+        private final GeofenceOperationQueue mOperationQueue;
+        private final Callback mCallback;
+
+        StatusCallback(@NonNull String metricName, long startNs, @NonNull SharedGoogleApiClient apiClient,
+                       @NonNull GeofenceOperationQueue operationQueue, @NonNull Callback callback) {
+            mMetricName = metricName;
+            mStartNs = startNs;
+            mApiClient = apiClient;
+            mOperationQueue = operationQueue;
+            mCallback = callback;
+        }
+
+        @Override
+        public void onResult(@NonNull final Status status) {
+            GeofenceMetrics.recordLatency(mMetricName, mStartNs);
+            if (!status.isSuccess()) {
+                GeofenceMetrics.count(GeofenceMetrics.API_ERRORS, 1);
+            }
+            mOperationQueue.post(new Runnable() {
+                @Override
+                public void run() {
+                    try {
+                        mCallback.onResult(status.getStatusCode(), status.getStatusMessage());
+                    } finally {
+                        mApiClient.onRequestEnd();
+                    }
+                }
+            });
+        }
+    }
+}
@@ -0,0 +1,92 @@
+package com.sousoum.libgeofencehelper;
+
+import android.app.IntentService;
+import android.content.Intent;
+import android.location.Location;
+import android.util.Log;
+
+import com.google.android.gms.location.Geofence;
+import com.google.android.gms.location.GeofencingEvent;
+
+import java.util.ArrayList;
+import java.util.LinkedHashMap;
+import java.util.List;
+import java.util.Map;
+
+public class PolygonTransitionsIntentService extends IntentService {
+
+    /**
+     * Intent service that receives the transitions of the covering circles of the {@link StorablePolygonGeofence}.
+     * A transition is only forwarded to the receiver of a polygon if the triggering location confirms it:
+     * the location must be in the polygon for an ENTER or a DWELL, and out of it for an EXIT.
+     * It is declared in the manifest of the library, applications do not have to declare it.
+     */
+
+    /**
+     * Extra of the forwarded intent that lists the ids of the triggering geofences confirmed by the polygon test.
+     * The receiver should only consider these geofences, the other triggering geofences of the GeofencingEvent have been rejected.
+     */
+    public static final String EXTRA_CONFIRMED_GEOFENCE_IDS = "com.sousoum.libgeofencehelper.EXTRA_CONFIRMED_GEOFENCE_IDS";
+
+    private static final String TAG = "PolygonTransitions";
+
+    public PolygonTransitionsIntentService() {
+        super("PolygonTransitionsIntentService");
+    }
+
+    @Override
+    protected void onHandleIntent(Intent intent) {
+        GeofencingEvent geoEvent = GeofencingEvent.fromIntent(intent);
+        if (geoEvent != null) {
+            if (geoEvent.hasError()) {
+                Log.e(TAG, "Polygon geofence error : " + geoEvent.getErrorCode());
+            } else {
+                Location location = geoEvent.getTriggeringLocation();
+                List<Geofence> triggeringGeofences = geoEvent.getTriggeringGeofences();
+                if (location != null && triggeringGeofences != null) {
+                    long startNs = GeofenceMetrics.start();
+                    GeofenceTrace.begin(GeofenceTrace.DISPATCH_POLYGON, triggeringGeofences.size());
+                    try {
+                        boolean expectInside = geoEvent.getGeofenceTransition() != Geofence.GEOFENCE_TRANSITION_EXIT;
+                        GeofenceStore syncedStore = GeofenceStores.getInstance(this, StorableGeofenceManager.SYNCED_STORE);
+
+                        ArrayList<String> triggeringIds = new ArrayList<>(triggeringGeofences.size());
+                        for (Geofence geofence : triggeringGeofences) {
+                            triggeringIds.add(geofence.getRequestId());
+                        }
+
+                        ArrayList<StorableGeofence> confirmedGeofences = new ArrayList<>(triggeringIds.size());
+                        for (StorableGeofence storableGeofence : syncedStore.getGeofences(triggeringIds)) {
+                            if (storableGeofence.contains(location.getLatitude(), location.getLongitude()) == expectInside) {
+                                confirmedGeofences.add(storableGeofence);
+                            }
+                        }
+                        confirmedGeofences = GeofenceTransitionsIntentService.filterAndRecordTransition(this, geoEvent.getGeofenceTransition(), confirmedGeofences, location);
+
+                        // group the confirmed geofences by receiver, keeping the order
+                        LinkedHashMap<String, ArrayList<String>> confirmedIdsByClass = new LinkedHashMap<>();
+                        for (StorableGeofence storableGeofence : confirmedGeofences) {
+                            ArrayList<String> classIds = confirmedIdsByClass.get(storableGeofence.getPendingIntentClassName());
+                            if (classIds == null) {
+                                classIds = new ArrayList<>();
+                                confirmedIdsByClass.put(storableGeofence.getPendingIntentClassName(), classIds);
+                            }
+                            classIds.add(storableGeofence.getId());
+                        }
+
+                        ReceiverPendingIntentCache receiverCache = ReceiverPendingIntentCache.getInstance(this);
+                        for (Map.Entry<String, ArrayList<String>> entry : confirmedIdsByClass.entrySet()) {
+                            Intent forwardIntent = new Intent(intent);
+                            forwardIntent.setClass(this, receiverCache.getIntentServiceClass(entry.getKey()));
+                            forwardIntent.putStringArrayListExtra(EXTRA_CONFIRMED_GEOFENCE_IDS, entry.getValue());
+                            startService(forwardIntent);
+                        }
+                        GeofenceMetrics.recordLatency(GeofenceMetrics.DISPATCH_POLYGON, startNs);
+                    } finally {
+                        GeofenceTrace.end();
+                    }
+                }
+            }
+        }
+    }
+}
@@ -0,0 +1,74 @@
+package com.sousoum.libgeofencehelper;
+
+import android.content.Context;
+import android.content.SharedPreferences;
+import android.support.annotation.NonNull;
+
+import java.util.Collection;
+import java.util.HashMap;
+import java.util.Map;
+
+class PrefsTransitionStateTable implements GeofenceTransitionFilter.StateTable {
+
+    /**
+     * Package local class that persists the last accepted transition of each geofence in the shared preferences,
+     * so that the transition filter keeps its state when the process is killed between two transitions.
+     * Each geofence id is a key, whose value is the transition and its time separated by a colon,
+     * followed by the deferred transition and its time if there is one: "transition:time[:pendingTransition:pendingTime]".
+     * The values written by the previous versions, without deferred transition, are still read.
+     */
+
+    private static final String TAG = "TransitionStateTable";
+
+    private static final String SHARED_PREFS = "GeofenceHelperLibTransitions";
+
+    private static final String SEPARATOR = ":";
+
+    private final SharedPreferences mPrefs;
+
+    PrefsTransitionStateTable(@NonNull Context context) {
+        mPrefs = context.getSharedPreferences(SHARED_PREFS, Context.MODE_PRIVATE);
+    }
+
+    @NonNull
+    @Override
+    public HashMap<String, GeofenceTransitionFilter.State> load() {
+        HashMap<String, GeofenceTransitionFilter.State> states = new HashMap<>();
+        for (Map.Entry<String, ?> entry : mPrefs.getAll().entrySet()) {
+            Object value = entry.getValue();
+            String[] fields = value instanceof String ? ((String) value).split(SEPARATOR) : new String[0];
+            if (fields.length == 2 || fields.length == 4) {
+                try {
+                    GeofenceTransitionFilter.State state;
+                    if (fields.length == 2) {
+                        state = new GeofenceTransitionFilter.State(Integer.parseInt(fields[0]), Long.parseLong(fields[1]));
+                    } else {
+                        state = new GeofenceTransitionFilter.State(Integer.parseInt(fields[0]), Long.parseLong(fields[1]),
+                                Integer.parseInt(fields[2]), Long.parseLong(fields[3]));
+                    }
+                    states.put(entry.getKey(), state);
+                } catch (NumberFormatException e) {
+                    GeofenceLog.e(TAG, "Corrupted transition state for geofence " + entry.getKey(), e);
+                }
+            }
+        }
+        return states;
+    }
+
+    @Override
+    public void save(@NonNull Map<String, GeofenceTransitionFilter.State> states, @NonNull Collection<String> removedIds) {
+        SharedPreferences.Editor editor = mPrefs.edit();
+        for (Map.Entry<String, GeofenceTransitionFilter.State> entry : states.entrySet()) {
+            GeofenceTransitionFilter.State state = entry.getValue();
+            String stateStr = state.mTransition + SEPARATOR + state.mTimeInMs;
+            if (state.hasPendingTransition()) {
+                stateStr += SEPARATOR + state.mPendingTransition + SEPARATOR + state.mPendingTimeInMs;
+            }
+            editor.putString(entry.getKey(), stateStr);
+        }
+        for (String geofenceId : removedIds) {
+            editor.remove(geofenceId);
+        }
+        editor.apply();
+    }
+}
@@ -0,0 +1,189 @@
+package com.sousoum.libgeofencehelper;
+
+import android.content.Context;
+import android.content.SharedPreferences;
+import android.support.annotation.NonNull;
+
+import com.google.android.gms.location.Geofence;
+
+import java.util.ArrayList;
+import java.util.Collection;
+import java.util.HashMap;
+import java.util.HashSet;
+import java.util.List;
+
+class ProximityPager {
+
+    /**
+     * Package local class that chooses which geofences of the catalog should be registered in the Google API when the proximity paging is enabled.
+     * Only the geofences whose center is the nearest to the device are registered, along with a boundary geofence centered on the device.
+     * When the device exits the boundary, the geofences are ranked again from the new location.
+     * The configuration and the location of the last ranking are kept in the shared preferences.
+     */
+
+    /** Id of the boundary geofence. It must not be used by any other geofence. */
+    static final String BOUNDARY_GEOFENCE_ID = "com.sousoum.libgeofencehelper.PROXIMITY_PAGING_BOUNDARY";
+
+    private static final String SHARED_PREFS = "GeofenceHelperLibPaging";
+
+    private static final String MAX_ACTIVE_KEY = "MAX_ACTIVE_KEY";
+    private static final String LATITUDE_KEY = "LATITUDE_KEY";
+    private static final String LONGITUDE_KEY = "LONGITUDE_KEY";
+    private static final String BOUNDARY_RADIUS_KEY = "BOUNDARY_RADIUS_KEY";
+
+    // the Google API does not reliably detect transitions of smaller geofences
+    private static final float MIN_BOUNDARY_RADIUS_M = 200;
+
+    // the registered geofences that are still in the first maxActive * (1 + KEEP_RATIO) geofences are kept, to avoid swapping them back and forth
+    private static final float KEEP_RATIO = 0.25f;
+
+    private final SharedPreferences mPrefs;
+
+    /**
+     * Changes to apply to the registered geofences
+     */
+    static class Plan {
+        final ArrayList<StorableGeofence> mToAdd = new ArrayList<>();
+        final ArrayList<String> mToRemove = new ArrayList<>();
+    }
+
+    ProximityPager(@NonNull Context context) {
+        mPrefs = context.getSharedPreferences(SHARED_PREFS, Context.MODE_PRIVATE);
+    }
+
+    /**
+     * @return true if the proximity paging is enabled
+     */
+    boolean isEnabled() {
+        return getMaxActiveGeofences() > 0;
+    }
+
+    /**
+     * @return the maximum number of catalog geofences registered at the same time, 0 if the proximity paging is disabled
+     */
+    int getMaxActiveGeofences() {
+        return mPrefs.getInt(MAX_ACTIVE_KEY, 0);
+    }
+
+    /**
+     * Set the maximum number of catalog geofences registered at the same time
+     * @param maxActiveGeofences the maximum number of geofences, 0 to disable the proximity paging
+     */
+    void setMaxActiveGeofences(int maxActiveGeofences) {
+        mPrefs.edit().putInt(MAX_ACTIVE_KEY, maxActiveGeofences).apply();
+    }
+
+    /**
+     * @return true if a location has already been given
+     */
+    boolean hasLocation() {
+        return mPrefs.contains(LATITUDE_KEY);
+    }
+
+    double getLatitude() {
+        return Double.longBitsToDouble(mPrefs.getLong(LATITUDE_KEY, 0));
+    }
+
+    double getLongitude() {
+        return Double.longBitsToDouble(mPrefs.getLong(LONGITUDE_KEY, 0));
+    }
+
+    /**
+     * Check whether the geofences should be ranked again
+     * @param latitude latitude of the device in degrees
+     * @param longitude longitude of the device in degrees
+     * @return true if there is no previous ranking or if the device is out of the boundary of the previous ranking.
+     *         false if the previous ranking did not need a boundary because all the catalog geofences were registered
+     */
+    boolean isOutOfBoundary(double latitude, double longitude) {
+        boolean isOut = !hasLocation();
+        if (!isOut && mPrefs.contains(BOUNDARY_RADIUS_KEY)) {
+            isOut = GeoMath.distance(getLatitude(), getLongitude(), latitude, longitude) >= mPrefs.getFloat(BOUNDARY_RADIUS_KEY, 0);
+        }
+        return isOut;
+    }
+
+    /**
+     * Remember the location of the device, without ranking the geofences
+     * @param latitude latitude of the device in degrees
+     * @param longitude longitude of the device in degrees
+     */
+    void setLocation(double latitude, double longitude) {
+        mPrefs.edit()
+                .putLong(LATITUDE_KEY, Double.doubleToRawLongBits(latitude))
+                .putLong(LONGITUDE_KEY, Double.doubleToRawLongBits(longitude))
+                .apply();
+    }
+
+    /**
+     * Rank the catalog geofences from a location and compute the changes to apply to the registered geofences.
+     * Only the differences with the registered geofences are returned, the geofences that are registered and still near enough are kept.
+     * The location and the radius of the new boundary are remembered.
+     * @param catalogStore the store of all the geofences
+     * @param registeredGeofences the catalog geofences that are registered or about to be registered, without the boundary geofence
+     * @param boundaryRegistered true if the boundary geofence is registered or about to be registered
+     * @param latitude latitude of the device in degrees
+     * @param longitude longitude of the device in degrees
+     * @return the changes to apply, the boundary geofence is part of the geofences to add or to remove
+     */
+    @NonNull
+    Plan rank(@NonNull GeofenceStore catalogStore, @NonNull Collection<StorableGeofence> registeredGeofences,
+              boolean boundaryRegistered, double latitude, double longitude) {
+        int maxActive = getMaxActiveGeofences();
+        int candidateCount = maxActive + Math.max(1, (int) (maxActive * KEEP_RATIO));
+        List<StorableGeofence> candidates = catalogStore.findNearest(latitude, longitude, candidateCount);
+
+        HashMap<String, StorableGeofence> registeredById = new HashMap<>();
+        for (StorableGeofence storableGeofence : registeredGeofences) {
+            registeredById.put(storableGeofence.getId(), storableGeofence);
+        }
+
+        // first keep the registered geofences that are still candidates, then fill with the nearest ones
+        HashSet<String> selectedIds = new HashSet<>();
+        for (StorableGeofence candidate : candidates) {
+            if (selectedIds.size() < maxActive && registeredById.containsKey(candidate.getId()) && !candidate.isExpired()) {
+                selectedIds.add(candidate.getId());
+            }
+        }
+        Plan plan = new Plan();
+        double farthestDistance = 0;
+        for (StorableGeofence candidate : candidates) {
+            if (selectedIds.size() < maxActive && !selectedIds.contains(candidate.getId()) && !candidate.isExpired()) {
+                selectedIds.add(candidate.getId());
+                plan.mToAdd.add(candidate);
+            }
+            if (selectedIds.contains(candidate.getId())) {
+                farthestDistance = Math.max(farthestDistance, GeoMath.distance(latitude, longitude,
+                        candidate.getLatitude(), candidate.getLongitude()));
+            }
+        }
+        for (String registeredId : registeredById.keySet()) {
+            if (!selectedIds.contains(registeredId)) {
+                plan.mToRemove.add(registeredId);
+            }
+        }
+
+        // the boundary is only needed when some catalog geofences can not be registered
+        float boundaryRadius = 0;
+        if (candidates.size() > selectedIds.size()) {
+            // halfway to the farthest registered geofence, the device may be nearer to a geofence that is not registered
+            boundaryRadius = Math.max(MIN_BOUNDARY_RADIUS_M, (float) (farthestDistance / 2));
+            plan.mToAdd.add(new StorableGeofence(BOUNDARY_GEOFENCE_ID, ProximityPagingIntentService.class.getName(),
+                    latitude, longitude, boundaryRadius, Geofence.NEVER_EXPIRE, Geofence.GEOFENCE_TRANSITION_EXIT, null));
+        } else if (boundaryRegistered) {
+            plan.mToRemove.add(BOUNDARY_GEOFENCE_ID);
+        }
+
+        SharedPreferences.Editor editor = mPrefs.edit()
+                .putLong(LATITUDE_KEY, Double.doubleToRawLongBits(latitude))
+                .putLong(LONGITUDE_KEY, Double.doubleToRawLongBits(longitude));
+        if (boundaryRadius > 0) {
+            editor.putFloat(BOUNDARY_RADIUS_KEY, boundaryRadius);
+        } else {
+            editor.remove(BOUNDARY_RADIUS_KEY);
+        }
+        editor.apply();
+
+        return plan;
+    }
+}
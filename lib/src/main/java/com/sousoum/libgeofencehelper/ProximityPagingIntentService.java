@@ -0,0 +1,41 @@
+package com.sousoum.libgeofencehelper;
+
+import android.app.IntentService;
+import android.content.Intent;
+import android.location.Location;
+import android.util.Log;
+
+import com.google.android.gms.location.Geofence;
+import com.google.android.gms.location.GeofencingEvent;
+
+public class ProximityPagingIntentService extends IntentService {
+
+    /**
+     * Intent service that receives the transitions of the boundary geofence of the proximity paging.
+     * When the device exits the boundary, the catalog geofences are ranked again from the triggering location.
+     * It is declared in the manifest of the library, applications do not have to declare it.
+     */
+
+    private static final String TAG = "ProximityPagingService";
+
+    public ProximityPagingIntentService() {
+        super("ProximityPagingIntentService");
+    }
+
+    @Override
+    protected void onHandleIntent(Intent intent) {
+        GeofencingEvent geoEvent = GeofencingEvent.fromIntent(intent);
+        if (geoEvent != null) {
+            if (geoEvent.hasError()) {
+                Log.e(TAG, "Boundary geofence error : " + geoEvent.getErrorCode());
+            } else if (geoEvent.getGeofenceTransition() == Geofence.GEOFENCE_TRANSITION_EXIT) {
+                Location location = geoEvent.getTriggeringLocation();
+                if (location != null) {
+                    StorableGeofenceManager manager = new StorableGeofenceManager(this);
+                    manager.updateProximityPagingLocation(location.getLatitude(), location.getLongitude());
+                    manager.release();
+                }
+            }
+        }
+    }
+}
@@ -0,0 +1,154 @@
+package com.sousoum.libgeofencehelper;
+
+import android.app.PendingIntent;
+import android.content.Context;
+import android.content.Intent;
+import android.support.annotation.NonNull;
+import android.util.Log;
+
+import java.util.Collection;
+import java.util.HashMap;
+
+final class ReceiverPendingIntentCache {
+
+    /**
+     * Package local class that keeps, for each receiver, its IntentService class and the PendingIntent of its requests.
+     * The class is loaded once and the PendingIntent is created once, instead of for each request.
+     * The cache counts the geofences registered for each receiver: an entry is dropped when the last geofence of its receiver is removed.
+     * The cache is shared by the whole process, as the geofences registered in the Google API.
+     */
+
+    private static final String TAG = "PendingIntentCache";
+
+    private static ReceiverPendingIntentCache sInstance;
+
+    private final Context mContext;
+    private final HashMap<String, Entry> mEntries = new HashMap<>();
+    // receiver of each registered geofence
+    private final HashMap<String, String> mReceiverByGeofenceId = new HashMap<>();
+
+    /**
+     * Get the cache of the process, create it the first time
+     * @param context a context
+     * @return the shared cache
+     */
+    static synchronized @NonNull
+    ReceiverPendingIntentCache getInstance(@NonNull Context context) {
+        if (sInstance == null) {
+            sInstance = new ReceiverPendingIntentCache(context.getApplicationContext());
+        }
+        return sInstance;
+    }
+
+    private ReceiverPendingIntentCache(@NonNull Context context) {
+        mContext = context;
+    }
+
+    /**
+     * Get the PendingIntent of a request and count its geofences as referencing the receiver
+     * @param className the class name of the receiver, can be null
+     * @param geofences the geofences of the request
+     * @return the PendingIntent of the receiver
+     */
+    synchronized @NonNull
+    PendingIntent acquirePendingIntent(String className, @NonNull Collection<StorableGeofence> geofences) {
+        String key = className != null ? className : "";
+        Entry entry = mEntries.get(key);
+        if (entry == null) {
+            entry = new Entry(resolveIntentServiceClass(className));
+            mEntries.put(key, entry);
+        }
+        for (StorableGeofence geofence : geofences) {
+            String previousKey = mReceiverByGeofenceId.put(geofence.getId(), key);
+            if (previousKey == null) {
+                entry.mGeofenceCount++;
+            } else if (!previousKey.equals(key)) {
+                // the geofence has been replaced with another receiver
+                entry.mGeofenceCount++;
+                releaseReference(previousKey);
+            }
+        }
+        if (entry.mPendingIntent == null) {
+            // Create an Intent pointing to the IntentService
+            Intent intent = new Intent(mContext, entry.mClass);
+
+            /*
+             * Return a PendingIntent to start the IntentService.
+             * Always create a PendingIntent sent to Location Services
+             * with FLAG_UPDATE_CURRENT, so that sending the PendingIntent
+             * again updates the original. Otherwise, Location Services
+             * can't match the PendingIntent to requests made with it.
+             */
+            entry.mPendingIntent = PendingIntent.getService(mContext, 0, intent, PendingIntent.FLAG_UPDATE_CURRENT);
+        }
+        return entry.mPendingIntent;
+    }
+
+    /**
+     * Stop counting geofences as referencing their receiver, drop the receivers that are not referenced anymore
+     * @param geofenceIds the ids of the removed geofences
+     */
+    synchronized void release(@NonNull Collection<String> geofenceIds) {
+        for (String geofenceId : geofenceIds) {
+            String key = mReceiverByGeofenceId.remove(geofenceId);
+            if (key != null) {
+                releaseReference(key);
+            }
+        }
+    }
+
+    /**
+     * Get the IntentService class of a receiver, from the cache if the receiver is referenced
+     * @param className the class name of the receiver, can be null
+     * @return the class of the receiver, or DefaultTransitionsIntentService if it can not be loaded
+     */
+    synchronized Class<?> getIntentServiceClass(String className) {
+        Entry entry = mEntries.get(className != null ? className : "");
+        return entry != null ? entry.mClass : resolveIntentServiceClass(className);
+    }
+
+    private void releaseReference(@NonNull String key) {
+        Entry entry = mEntries.get(key);
+        if (entry != null) {
+            entry.mGeofenceCount--;
+            if (entry.mGeofenceCount <= 0) {
+                mEntries.remove(key);
+            }
+        }
+    }
+
+    /**
+     * Load the class of an IntentService from its name
+     * @param className The full class name of the IntentService
+     * @return The class if it has been successfully loaded, or DefaultTransitionsIntentService
+     */
+    static Class<?> resolveIntentServiceClass(String className) {
+        Class<?> classOfIntentService = DefaultTransitionsIntentService.class;
+        if (className != null) {
+            try {
+                Class<?> classOfIntentServiceTmp = Class.forName(className);
+                if (classOfIntentServiceTmp != null) {
+                    classOfIntentService = classOfIntentServiceTmp;
+                }
+            } catch (ClassNotFoundException e) {
+                Log.e(TAG, "Receiver " + className + " not found, using DefaultTransitionsIntentService");
+            }
+        }
+        return classOfIntentService;
+    }
+
+    private static class Entry {
+
+        /**
+         * Inner class that holds the cached objects of a receiver
+         */
+
+        private final Class<?> mClass;
+        private PendingIntent mPendingIntent;
+        private int mGeofenceCount;
+
+        Entry(@NonNull Class<?> intentServiceClass) {
+            mClass = intentServiceClass;
+        }
+    }
+}
@@ -0,0 +1,242 @@
+package com.sousoum.libgeofencehelper;
+
+import android.database.Cursor;
+import android.database.SQLException;
+import android.database.sqlite.SQLiteDatabase;
+import android.database.sqlite.SQLiteStatement;
+import android.support.annotation.NonNull;
+
+import java.io.IOException;
+import java.util.LinkedHashMap;
+import java.util.Map;
+import java.util.Set;
+
+import static com.sousoum.libgeofencehelper.GeofenceDatabaseHelper.COLUMN_EXPIRATION_DATE;
+import static com.sousoum.libgeofencehelper.GeofenceDatabaseHelper.COLUMN_ID;
+import static com.sousoum.libgeofencehelper.GeofenceDatabaseHelper.COLUMN_KEY;
+import static com.sousoum.libgeofencehelper.GeofenceDatabaseHelper.COLUMN_RECEIVER;
+import static com.sousoum.libgeofencehelper.GeofenceDatabaseHelper.COLUMN_RECORD;
+import static com.sousoum.libgeofencehelper.GeofenceDatabaseHelper.COLUMN_STORE;
+import static com.sousoum.libgeofencehelper.GeofenceDatabaseHelper.TABLE_DATA_KEYS;
+import static com.sousoum.libgeofencehelper.GeofenceDatabaseHelper.TABLE_GEOFENCES;
+
+class SQLiteGeofenceStorage implements IndexedGeofenceStorage {
+
+    /**
+     * Package local class that keeps the geofences of a store in the SQLite database of the library (see {@link GeofenceDatabaseHelper}).
+     * The expired geofences, the geofences of a receiver and the geofences that have an additional data key are found with the indexes,
+     * without reading the other geofences.
+     * The writes of an update are made with prepared statements in a single transaction.
+     */
+
+    private static final String TAG = "SQLiteStorage";
+
+    private static final String SELECT_RECORDS = "SELECT " + COLUMN_ID + ", " + COLUMN_RECORD + " FROM " + TABLE_GEOFENCES
+            + " WHERE " + COLUMN_STORE + " = ?";
+    private static final String ORDER = " ORDER BY rowid";
+
+    private final GeofenceDatabaseHelper mHelper;
+    private final String mStoreName;
+
+    /**
+     * Create the storage of a store
+     * @param helper the helper of the database
+     * @param storeName the name of the store, which identifies its geofences in the database
+     */
+    SQLiteGeofenceStorage(@NonNull GeofenceDatabaseHelper helper, @NonNull String storeName) {
+        mHelper = helper;
+        mStoreName = storeName;
+    }
+
+    @Override
+    public @NonNull
+    LinkedHashMap<String, StorableGeofence> readAll() throws IOException {
+        return query(SELECT_RECORDS + ORDER, new String[] { mStoreName }, true);
+    }
+
+    @Override
+    public @NonNull
+    LinkedHashMap<String, StorableGeofence> readExpired(long nowInMs) throws IOException {
+        return query(SELECT_RECORDS + " AND " + COLUMN_EXPIRATION_DATE + " < ?" + ORDER,
+                new String[] { mStoreName, Long.toString(nowInMs) }, false);
+    }
+
+    @Override
+    public @NonNull
+    LinkedHashMap<String, StorableGeofence> readByReceiver(@NonNull String pendingIntentClassName) throws IOException {
+        return query(SELECT_RECORDS + " AND " + COLUMN_RECEIVER + " = ?" + ORDER,
+                new String[] { mStoreName, pendingIntentClassName }, false);
+    }
+
+    @Override
+    public @NonNull
+    LinkedHashMap<String, StorableGeofence> readByAdditionalDataKey(@NonNull String key) throws IOException {
+        return query("SELECT g." + COLUMN_ID + ", g." + COLUMN_RECORD
+                        + " FROM " + TABLE_GEOFENCES + " g JOIN " + TABLE_DATA_KEYS + " k"
+                        + " ON g." + COLUMN_STORE + " = k." + COLUMN_STORE + " AND g." + COLUMN_ID + " = k." + COLUMN_ID
+                        + " WHERE k." + COLUMN_STORE + " = ? AND k." + COLUMN_KEY + " = ? ORDER BY g.rowid",
+                new String[] { mStoreName, key }, false);
+    }
+
+    @Override
+    public void update(@NonNull Map<String, StorableGeofence> writes, @NonNull Set<String> deletes) throws IOException {
+        try {
+            SQLiteDatabase db = mHelper.getWritableDatabase();
+            SQLiteStatement updateStatement = db.compileStatement("UPDATE " + TABLE_GEOFENCES + " SET "
+                    + COLUMN_RECEIVER + " = ?, " + COLUMN_EXPIRATION_DATE + " = ?, " + COLUMN_RECORD + " = ?"
+                    + " WHERE " + COLUMN_STORE + " = ? AND " + COLUMN_ID + " = ?");
+            SQLiteStatement insertStatement = db.compileStatement("INSERT INTO " + TABLE_GEOFENCES + " ("
+                    + COLUMN_RECEIVER + ", " + COLUMN_EXPIRATION_DATE + ", " + COLUMN_RECORD + ", " + COLUMN_STORE + ", " + COLUMN_ID
+                    + ") VALUES (?, ?, ?, ?, ?)");
+            SQLiteStatement deleteStatement = db.compileStatement("DELETE FROM " + TABLE_GEOFENCES
+                    + " WHERE " + COLUMN_STORE + " = ? AND " + COLUMN_ID + " = ?");
+            SQLiteStatement deleteKeysStatement = db.compileStatement("DELETE FROM " + TABLE_DATA_KEYS
+                    + " WHERE " + COLUMN_STORE + " = ? AND " + COLUMN_ID + " = ?");
+            SQLiteStatement insertKeyStatement = db.compileStatement("INSERT INTO " + TABLE_DATA_KEYS + " ("
+                    + COLUMN_STORE + ", " + COLUMN_ID + ", " + COLUMN_KEY + ") VALUES (?, ?, ?)");
+
+            db.beginTransaction();
+            try {
+                for (String geofenceId : deletes) {
+                    bindId(deleteStatement, 1, geofenceId);
+                    deleteStatement.executeUpdateDelete();
+                    bindId(deleteKeysStatement, 1, geofenceId);
+                    deleteKeysStatement.executeUpdateDelete();
+                }
+
+                for (Map.Entry<String, StorableGeofence> write : writes.entrySet()) {
+                    String geofenceId = write.getKey();
+                    StorableGeofence geofence = write.getValue();
+
+                    // update in place first to keep the order of the geofences
+                    bindGeofence(updateStatement, geofence);
+                    bindId(updateStatement, 4, geofenceId);
+                    if (updateStatement.executeUpdateDelete() == 0) {
+                        bindGeofence(insertStatement, geofence);
+                        bindId(insertStatement, 4, geofenceId);
+                        insertStatement.executeInsert();
+                    }
+
+                    bindId(deleteKeysStatement, 1, geofenceId);
+                    deleteKeysStatement.executeUpdateDelete();
+                    GeofenceAttributes attributes = geofence != null ? geofence.getAttributes() : null;
+                    if (attributes != null) {
+                        for (int i = 0; i < attributes.size(); i++) {
+                            bindId(insertKeyStatement, 1, geofenceId);
+                            insertKeyStatement.bindString(3, attributes.keyAt(i));
+                            insertKeyStatement.executeInsert();
+                        }
+                    }
+                }
+                db.setTransactionSuccessful();
+            } finally {
+                db.endTransaction();
+                updateStatement.close();
+                insertStatement.close();
+                deleteStatement.close();
+                deleteKeysStatement.close();
+                insertKeyStatement.close();
+            }
+        } catch (SQLException e) {
+            throw new IOException("Could not update the geofences of " + mStoreName, e);
+        }
+    }
+
+    @Override
+    public void reset() {
+        try {
+            SQLiteDatabase db = mHelper.getWritableDatabase();
+            String[] args = new String[] { mStoreName };
+            db.beginTransaction();
+            try {
+                db.delete(TABLE_GEOFENCES, COLUMN_STORE + " = ?", args);
+                db.delete(TABLE_DATA_KEYS, COLUMN_STORE + " = ?", args);
+                db.setTransactionSuccessful();
+            } finally {
+                db.endTransaction();
+            }
+        } catch (SQLException e) {
+            GeofenceLog.e(TAG, "Could not reset the geofences of " + mStoreName, e);
+        }
+    }
+
+    /**
+     * Bind the receiver, the expiration date and the record of a geofence to the first three parameters of a statement
+     * @param statement the statement
+     * @param geofence the geofence, null to only store its id
+     */
+    private static void bindGeofence(@NonNull SQLiteStatement statement, StorableGeofence geofence) {
+        if (geofence != null) {
+            bindStringOrNull(statement, 1, geofence.getPendingIntentClassName());
+            if (geofence.getExpirationDateInMs() > 0) {
+                statement.bindLong(2, geofence.getExpirationDateInMs());
+            } else {
+                statement.bindNull(2);
+            }
+            statement.bindBlob(3, GeofenceRecordCodec.encode(geofence));
+        } else {
+            statement.bindNull(1);
+            statement.bindNull(2);
+            statement.bindBlob(3, GeofenceRecordCodec.encodeIdOnly());
+        }
+    }
+
+    /**
+     * Bind the store name and a geofence id to two consecutive parameters of a statement
+     * @param statement the statement
+     * @param index the index of the store name parameter, the id is the next one
+     * @param geofenceId the id of the geofence
+     */
+    private void bindId(@NonNull SQLiteStatement statement, int index, @NonNull String geofenceId) {
+        statement.bindString(index, mStoreName);
+        statement.bindString(index + 1, geofenceId);
+    }
+
+    private static void bindStringOrNull(@NonNull SQLiteStatement statement, int index, String value) {
+        if (value != null) {
+            statement.bindString(index, value);
+        } else {
+            statement.bindNull(index);
+        }
+    }
+
+    /**
+     * Run a query that selects the id and the record of geofences
+     * @param sql the query
+     * @param args the arguments of the query
+     * @param keepIdOnly true to keep the ids stored without a geofence, with a null geofence
+     * @return a map of id -> geofence
+     * @throws IOException if the query failed
+     */
+    private @NonNull
+    LinkedHashMap<String, StorableGeofence> query(@NonNull String sql, @NonNull String[] args, boolean keepIdOnly) throws IOException {
+        LinkedHashMap<String, StorableGeofence> geofences = new LinkedHashMap<>();
+        try {
+            Cursor cursor = mHelper.getReadableDatabase().rawQuery(sql, args);
+            try {
+                while (cursor.moveToNext()) {
+                    String geofenceId = cursor.getString(0);
+                    StorableGeofence geofence = decode(geofenceId, cursor.getBlob(1));
+                    if (geofence != null || keepIdOnly) {
+                        geofences.put(geofenceId, geofence);
+                    }
+                }
+            } finally {
+                cursor.close();
+            }
+        } catch (SQLException e) {
+            throw new IOException("Could not read the geofences of " + mStoreName, e);
+        }
+        return geofences;
+    }
+
+    private StorableGeofence decode(@NonNull String geofenceId, @NonNull byte[] body) {
+        StorableGeofence storableGeofence = null;
+        try {
+            storableGeofence = GeofenceRecordCodec.decode(geofenceId, body);
+        } catch (IOException e) {
+            GeofenceLog.e(TAG, "Corrupted record for geofence " + geofenceId, e);
+        }
+        return storableGeofence;
+    }
+}
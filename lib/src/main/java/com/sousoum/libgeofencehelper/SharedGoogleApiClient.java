@@ -0,0 +1,235 @@
+package com.sousoum.libgeofencehelper;
+
+import android.content.Context;
+import android.os.Bundle;
+import android.os.Handler;
+import android.os.Looper;
+import android.support.annotation.NonNull;
+import android.util.Log;
+
+import com.google.android.gms.common.ConnectionResult;
+import com.google.android.gms.common.api.GoogleApiClient;
+import com.google.android.gms.location.LocationServices;
+
+import java.util.ArrayList;
+
+final class SharedGoogleApiClient implements
+        GoogleApiClient.ConnectionCallbacks,
+        GoogleApiClient.OnConnectionFailedListener {
+
+    /**
+     * Package local class that holds the Google API Client shared by the whole process.
+     * The managers hold a reference on it while they are in use. The operations that need a connection are queued while it is connecting
+     * and run once connected. The requests that are sent keep the connection until their result is received.
+     * When there is no reference, no queued operation and no request in flight, the client is disconnected after an idle delay.
+     */
+
+    interface Operation extends Runnable {
+        /**
+         * Called instead of {@link #run()} when the operation has been queued and the connection failed,
+         * or after {@link #run()} if it threw once connected
+         * @param errorCode the error code of the ConnectionResult of the failure, {@link GeofencingBackend#STATUS_ERROR} if the operation threw
+         */
+        void onConnectionFailed(int errorCode);
+    }
+
+    private static final String TAG = "SharedGoogleApiClient";
+
+    // default delay before disconnecting an unused client
+    static final long DEFAULT_IDLE_DISCONNECT_DELAY_MS = 30 * 1000;
+
+    private static SharedGoogleApiClient sInstance;
+
+    private final GoogleApiClient mGoogleApiClient;
+    private final Handler mHandler = new Handler(Looper.getMainLooper());
+    private final Runnable mDisconnectRunnable = new Runnable() {
+        @Override
+        public void run() {
+            disconnectIfIdle();
+        }
+    };
+
+    private final ArrayList<Operation> mQueuedOperations = new ArrayList<>();
+    private int mReferenceCount;
+    private int mRequestCount; // requests sent whose result has not been received yet
+    private long mIdleDisconnectDelayMs = DEFAULT_IDLE_DISCONNECT_DELAY_MS;
+
+    /**
+     * Get the client of the process, create it the first time
+     * @param context a context
+     * @return the shared client
+     */
+    static synchronized @NonNull
+    SharedGoogleApiClient getInstance(@NonNull Context context) {
+        if (sInstance == null) {
+            sInstance = new SharedGoogleApiClient(context.getApplicationContext());
+        }
+        return sInstance;
+    }
+
+    private SharedGoogleApiClient(@NonNull Context context) {
+        mGoogleApiClient = new GoogleApiClient.Builder(context)
+                .addApi(LocationServices.API)
+                .addConnectionCallbacks(this)
+                .addOnConnectionFailedListener(this)
+                .build();
+    }
+
+    /**
+     * Create a shared client around a Google API Client, used by the tests.
+     * The callbacks of the Google API Client should be given to this instance.
+     * @param googleApiClient the Google API Client
+     */
+    SharedGoogleApiClient(@NonNull GoogleApiClient googleApiClient) {
+        mGoogleApiClient = googleApiClient;
+    }
+
+    /**
+     * @return the Google API Client. It should not be connected nor disconnected directly.
+     */
+    @NonNull
+    GoogleApiClient getClient() {
+        return mGoogleApiClient;
+    }
+
+    boolean isConnected() {
+        return mGoogleApiClient.isConnected();
+    }
+
+    /**
+     * Set the delay before disconnecting the client once it is not used anymore
+     * @param delayMs the delay in milliseconds
+     */
+    synchronized void setIdleDisconnectDelay(long delayMs) {
+        mIdleDisconnectDelayMs = Math.max(0, delayMs);
+        scheduleDisconnectIfIdle();
+    }
+
+    /**
+     * Hold a reference on the client: it is not disconnected until the reference is released
+     */
+    synchronized void acquire() {
+        mReferenceCount++;
+        mHandler.removeCallbacks(mDisconnectRunnable);
+    }
+
+    /**
+     * Release a reference acquired with {@link #acquire()}
+     */
+    synchronized void release() {
+        if (mReferenceCount > 0) {
+            mReferenceCount--;
+            scheduleDisconnectIfIdle();
+        }
+    }
+
+    /**
+     * Run an operation as soon as the client is connected.
+     * If it is not connected, the operation is queued and a connection is triggered. An operation is queued only once.
+     * If the connection fails, the queued operations are dropped and informed of the failure.
+     * @param operation the operation, run or informed of the failure on the main thread if it has been queued
+     */
+    void runWhenConnected(@NonNull Operation operation) {
+        boolean connected;
+        synchronized (this) {
+            mHandler.removeCallbacks(mDisconnectRunnable);
+            connected = mGoogleApiClient.isConnected();
+            if (!connected) {
+                if (!mQueuedOperations.contains(operation)) {
+                    mQueuedOperations.add(operation);
+                }
+                if (!mGoogleApiClient.isConnecting()) {
+                    mGoogleApiClient.connect();
+                }
+            }
+        }
+        if (connected) {
+            operation.run();
+        }
+    }
+
+    /**
+     * Mark that a request has been sent, the client is kept connected until {@link #onRequestEnd()} is called
+     */
+    synchronized void onRequestStart() {
+        mRequestCount++;
+        mHandler.removeCallbacks(mDisconnectRunnable);
+    }
+
+    /**
+     * Mark that the result of a request has been received
+     */
+    synchronized void onRequestEnd() {
+        if (mRequestCount > 0) {
+            mRequestCount--;
+            scheduleDisconnectIfIdle();
+        }
+    }
+
+    private void scheduleDisconnectIfIdle() {
+        if (isIdle()) {
+            mHandler.removeCallbacks(mDisconnectRunnable);
+            mHandler.postDelayed(mDisconnectRunnable, mIdleDisconnectDelayMs);
+        }
+    }
+
+    private synchronized void disconnectIfIdle() {
+        if (isIdle() && (mGoogleApiClient.isConnected() || mGoogleApiClient.isConnecting())) {
+            Log.i(TAG, "Disconnect the idle Google API Client");
+            mGoogleApiClient.disconnect();
+        }
+    }
+
+    private boolean isIdle() {
+        return mReferenceCount == 0 && mRequestCount == 0 && mQueuedOperations.isEmpty();
+    }
+
+    //region GoogleApiClient.ConnectionCallbacks
+    @Override
+    public void onConnected(Bundle bundle) {
+        Log.i(TAG, "GoogleApiClient connected");
+
+        ArrayList<Operation> operations;
+        synchronized (this) {
+            operations = new ArrayList<>(mQueuedOperations);
+            mQueuedOperations.clear();
+        }
+        for (Operation operation : operations) {
+            try {
+                operation.run();
+            } catch (RuntimeException e) {
+                // the next operations are still run, this one is failed
+                Log.e(TAG, "Operation failed once connected", e);
+                operation.onConnectionFailed(GeofencingBackend.STATUS_ERROR);
+            }
+        }
+
+        synchronized (this) {
+            scheduleDisconnectIfIdle();
+        }
+    }
+
+    @Override
+    public void onConnectionSuspended(int i) {
+        Log.i(TAG, "Google API client onConnectionSuspended");
+    }
+    //endregion GoogleApiClient.ConnectionCallbacks
+
+    //region GoogleApiClient.OnConnectionFailedListener
+    @Override
+    public void onConnectionFailed(@NonNull ConnectionResult connectionResult) {
+        Log.e(TAG, "Connection to Google API client failed with error code :" + connectionResult.getErrorCode());
+
+        // the stores keep the pending changes, they will be synchronized by the next connection
+        ArrayList<Operation> operations;
+        synchronized (this) {
+            operations = new ArrayList<>(mQueuedOperations);
+            mQueuedOperations.clear();
+            scheduleDisconnectIfIdle();
+        }
+        for (Operation operation : operations) {
+            operation.onConnectionFailed(connectionResult.getErrorCode());
+        }
+    }
+    //endregion GoogleApiClient.OnConnectionFailedListener
+}
@@ -1,38 +1,41 @@
 package com.sousoum.libgeofencehelper;
 
 import android.Manifest;
-import android.app.PendingIntent;
 import android.content.Context;
-import android.content.Intent;
 import android.content.pm.PackageManager;
-import android.os.Bundle;
+import android.os.Handler;
+import android.os.Looper;
 import android.support.annotation.NonNull;
 import android.support.annotation.RequiresPermission;
 import android.support.v4.app.ActivityCompat;
 import android.support.v4.content.ContextCompat;
 import android.util.Log;
 
-import com.google.android.gms.common.ConnectionResult;
-import com.google.android.gms.common.api.GoogleApiClient;
-import com.google.android.gms.common.api.ResultCallback;
 import com.google.android.gms.common.api.Status;
-import com.google.android.gms.location.GeofencingApi;
-import com.google.android.gms.location.GeofencingRequest;
-import com.google.android.gms.location.LocationServices;
+import com.google.android.gms.location.Geofence;
 
 import java.util.ArrayList;
-import java.util.Set;
+import java.util.Collection;
+import java.util.Collections;
+import java.util.Iterator;
+import java.util.LinkedHashMap;
 
 /**
  * Created by Djavan on 15/05/2015.
  */
-public class StorableGeofenceManager implements
-        GoogleApiClient.ConnectionCallbacks,
-        GoogleApiClient.OnConnectionFailedListener {
+public class StorableGeofenceManager {
 
     /**
      * Class that manages addition and deletion of Geofences in the Google API Client. It uses a store to remember all geofences that are currently in the Google API Client.
-     * The store is actually backed by the shared preferences
+     * The store is actually backed by binary files in the private files directory of the application
+     * It is the Android adapter of the core of the library: the stores and the synchronization logic are in the geofence-core module,
+     * this class gives them the Google API Client as geofencing backend.
+     * All the managers share the same Google API Client, which is disconnected after an idle delay once no manager uses it anymore:
+     * call {@link #release()} when a manager is not needed anymore.
+     * The operations that modify the stores are run one after the other on a background thread shared by all managers,
+     * the methods that modify the geofences return immediately. The *Async methods return a future completed with the result of the Google API.
+     * The backlog of the operations is bounded: when too many operations are waiting, the new ones are rejected and logged,
+     * and the geofences of a rejected operation get {@link GeofencingBackend#STATUS_ERROR} in its future.
      */
 
     public interface StorableGeofenceManagerListener {
@@ -51,43 +54,129 @@ public class StorableGeofenceManager implements
         void geofenceRemoveStatus(String geofenceId, Status status);
     }
 
+    /** Storage that keeps each store in a binary record file. It is the default storage. */
+    public static final int STORAGE_RECORD_FILE = GeofenceStores.STORAGE_RECORD_FILE;
+    /** Storage that keeps the stores in a SQLite database, with indexes on the expiration date, the receiver and the additional data keys. */
+    public static final int STORAGE_SQLITE = GeofenceStores.STORAGE_SQLITE;
+
     private static final String TAG = "GeofenceManager";
 
     private static final String TO_ADD_STORE = "TO_ADD_STORE";
     private static final String TO_REMOVE_STORE = "TO_REMOVE_STORE";
-    private static final String SYNCED_STORE = "SYNCED_STORE";
+    static final String SYNCED_STORE = "SYNCED_STORE";
+    private static final String CATALOG_STORE = "CATALOG_STORE";
+
+    // maximum number of geofences that can be registered at the same time by an app in the Google API Client
+    private static final int MAX_GEOFENCES_PER_REQUEST = GeofenceSynchronizer.MAX_GEOFENCES_PER_REQUEST;
 
     private final Context mContext;
-    private final GeofencingApi mGeofencingAPI = LocationServices.GeofencingApi;
-    private final GoogleApiClient mGoogleApiClient;
+    private final SharedGoogleApiClient mApiClient;
+    private final GeofenceClock mClock = GeofenceClock.SYSTEM;
+    private final Handler mMainHandler = new Handler(Looper.getMainLooper());
+
+    // queue of the operations that modify the stores, shared by all managers
+    private static GeofenceOperationQueue sOperationQueue;
+    // pending futures of the operations, completed with the results of the synchronizers of all managers
+    private static final GeofenceOperationTracker sOperationTracker = new GeofenceOperationTracker();
 
-    private StorableGeofenceManagerListener mListener;
+    private volatile StorableGeofenceManagerListener mListener;
+    private final GeofenceOperationQueue mOperationQueue;
 
-    private final GeofenceStore mToAddStore; // store of the geofence to add to the Google API Client
-    private final GeofenceStore mToRemoveStore; // store of the geofence to remove from the Google API Client
     private final GeofenceStore mSyncedStore; // store that represent which geofences are in the Google API Client
+    private final GeofenceSession mSession; // whether the synced geofences are registered in the current Google Play Services session
+    private final GeofenceSynchronizer mSynchronizer; // keep the Google API Client in sync with the stores
+    private final GeofenceStore mCatalogStore; // store of all the geofences when the proximity paging is enabled
+    private final ProximityPager mPager; // choose the catalog geofences to register when the proximity paging is enabled
+    private final GeofenceExpirationScheduler mExpirationScheduler; // purge the expired geofences of the stores when they expire
 
+    /**
+     * Create a manager that uses the storage selected by the previous managers, {@link #STORAGE_RECORD_FILE} if none has been selected
+     * @param context a context
+     */
     public StorableGeofenceManager(Context context) {
         mContext = context;
 
-        mToAddStore = new GeofenceStore(context, TO_ADD_STORE);
-        mToRemoveStore = new GeofenceStore(context, TO_REMOVE_STORE);
-        mSyncedStore = new GeofenceStore(context, SYNCED_STORE);
+        mOperationQueue = getOperationQueue();
+        mSyncedStore = GeofenceStores.getInstance(context, SYNCED_STORE);
+        mSession = new GeofenceSession(context);
+        mCatalogStore = GeofenceStores.getInstance(context, CATALOG_STORE);
+        mPager = new ProximityPager(context);
+
+        mApiClient = SharedGoogleApiClient.getInstance(context);
+        mApiClient.acquire();
 
-        mGoogleApiClient = new GoogleApiClient.Builder(context)
-                .addApi(LocationServices.API)
-                .addConnectionCallbacks(this)
-                .addOnConnectionFailedListener(this)
-                .build();
+        mSynchronizer = new GeofenceSynchronizer(new PlayServicesGeofencingBackend(context, mApiClient, new SynchronizeOnConnected(), mOperationQueue),
+                GeofenceStores.getInstance(context, TO_ADD_STORE),
+                GeofenceStores.getInstance(context, TO_REMOVE_STORE),
+                mSyncedStore, mSession, mClock);
+        mSynchronizer.setListener(new SynchronizerListener());
+        mSynchronizer.setTransitionFilter(GeofenceStores.getTransitionFilter(context));
+
+        mExpirationScheduler = new GeofenceExpirationScheduler(mClock, new GeofenceExpirationReceiver.ExpirationAlarm(context),
+                mSyncedStore, mCatalogStore);
     }
 
     /**
-     * Ask for a connection to the Google API Client
+     * Create a manager and select the storage of the geofences.
+     * The selection is persisted, the services of the library and the managers created without a storage use it too.
+     * When the storage changes, the stored geofences are moved to the new storage on the background thread of the operations,
+     * before the operations submitted after this call. The managers created before keep working.
+     * @param context a context
+     * @param storage {@link #STORAGE_RECORD_FILE} or {@link #STORAGE_SQLITE}
      */
-    private void googleApiConnect() {
-        if (mGoogleApiClient != null && !mGoogleApiClient.isConnected()) {
-            mGoogleApiClient.connect();
-        }
+    public StorableGeofenceManager(final Context context, final int storage) {
+        this(context);
+
+        mOperationQueue.submit(new Runnable() {
+            @Override
+            public void run() {
+                if (!GeofenceStores.setStorage(context, storage)) {
+                    Log.e(TAG, "Could not select the storage " + storage + ", the previous storage is kept");
+                }
+            }
+        });
+    }
+
+    /**
+     * Release the Google API Client shared by the managers.
+     * The requests already sent are still completed, and the changes made while the client was connecting are still synchronized,
+     * but the listener may not be informed anymore. The manager should not be used after this call.
+     */
+    public void release() {
+        mListener = null;
+        mApiClient.release();
+    }
+
+    /**
+     * Set the delay before disconnecting the Google API Client shared by the managers,
+     * once no manager uses it anymore and all the requests are completed.
+     * @param context a context
+     * @param delayMs the delay in milliseconds, 30 seconds by default
+     */
+    public static void setIdleDisconnectDelay(Context context, long delayMs) {
+        SharedGoogleApiClient.getInstance(context).setIdleDisconnectDelay(delayMs);
+    }
+
+    /**
+     * Creates a Location Services Geofence object from a StorableGeofence.
+     * @param storableGeofence the geofence to convert
+     * @return A Geofence object.
+     * @deprecated the library converts the geofences itself when it registers them with the Google API
+     */
+    @Deprecated
+    public static @NonNull
+    Geofence toGeofence(@NonNull StorableGeofence storableGeofence) {
+        return PlayServicesGeofencingBackend.toGeofence(storableGeofence);
+    }
+
+    /**
+     * Get the log of the transitions received by the library, to export them.
+     * It keeps the last {@link GeofenceEventLog#DEFAULT_CAPACITY} transitions, including the ones dropped as duplicates or oscillations.
+     * @param context a context
+     * @return the log, or null if it could not be opened
+     */
+    public static GeofenceEventLog getEventLog(Context context) {
+        return GeofenceStores.getEventLog(context);
     }
 
     /**
@@ -115,30 +204,91 @@ public class StorableGeofenceManager implements
      */
     @RequiresPermission("android.permission.ACCESS_FINE_LOCATION")
     public boolean addGeofence(@NonNull StorableGeofence storableGeofence) {
-        boolean addedOngoing = false;
-        if (ActivityCompat.checkSelfPermission(mContext,
-                Manifest.permission.ACCESS_FINE_LOCATION) == PackageManager.PERMISSION_GRANTED) {
-            if (!storableGeofence.isExpired()) {
-                mToAddStore.storeGeofence(storableGeofence);
+        ArrayList<StorableGeofence> geofenceList = new ArrayList<>();
+        geofenceList.add(storableGeofence);
 
-                if (mGoogleApiClient != null && mGoogleApiClient.isConnected()) {
-                    GeofenceAddStatus addStatus = new GeofenceAddStatus(storableGeofence);
+        return addGeofences(geofenceList);
+    }
 
-                    GeofencingRequest.Builder requestBuilder = new GeofencingRequest.Builder();
-                    requestBuilder.addGeofence(storableGeofence.toGeofence());
+    /**
+     * Add several geofences to the store, with a single write
+     * This will also add the geofences to the google api client if connected, grouped in as few requests as possible.
+     * If not, it will trigger a connection
+     * When the proximity paging is enabled, the geofences are stored in the catalog and only registered if they are among the nearest ones.
+     * This call requires that the permission ACCESS_FINE_LOCATION is granted
+     * @param storableGeofences the geofences to store
+     * @return true if add has been asked for all geofences, false otherwise.
+     *         false could be returned if some geofences are expired, add is still asked for the other ones
+     */
+    @RequiresPermission("android.permission.ACCESS_FINE_LOCATION")
+    public boolean addGeofences(@NonNull Collection<StorableGeofence> storableGeofences) {
+        return submitAdd(storableGeofences, new GeofenceOperationFuture(getIds(storableGeofences)));
+    }
 
+    /**
+     * Add several geofences, like {@link #addGeofences(Collection)}, and get the result of the operation.
+     * The status of each geofence is the status of the request of the Google API Client that registered it.
+     * An expired geofence, or all geofences if the permission is not granted, have the status {@link GeofencingBackend#STATUS_ERROR}.
+     * When the proximity paging is enabled, the geofences have a successful status once they are stored in the catalog.
+     * @param storableGeofences the geofences to store
+     * @return the future of the operation
+     */
+    @RequiresPermission("android.permission.ACCESS_FINE_LOCATION")
+    public @NonNull
+    GeofenceOperationFuture addGeofencesAsync(@NonNull Collection<StorableGeofence> storableGeofences) {
+        GeofenceOperationFuture future = new GeofenceOperationFuture(getIds(storableGeofences));
+        submitAdd(storableGeofences, future);
+        return future;
+    }
 
-                    mGeofencingAPI.addGeofences(mGoogleApiClient, requestBuilder.build(),
-                            createRequestPendingIntent(storableGeofence)).setResultCallback(addStatus);
-                    Log.i(TAG, "Added " + storableGeofence);
+    private boolean submitAdd(@NonNull Collection<StorableGeofence> storableGeofences, @NonNull final GeofenceOperationFuture future) {
+        boolean addedOngoing = false;
+        if (ActivityCompat.checkSelfPermission(mContext,
+                Manifest.permission.ACCESS_FINE_LOCATION) == PackageManager.PERMISSION_GRANTED) {
+            long nowInMs = mClock.currentTimeMillis();
+            final ArrayList<StorableGeofence> validGeofences = new ArrayList<>(storableGeofences.size());
+            for (StorableGeofence storableGeofence : storableGeofences) {
+                if (!storableGeofence.isExpired(nowInMs)) {
+                    validGeofences.add(storableGeofence);
                 } else {
-                    googleApiConnect();
+                    future.setStatus(storableGeofence.getId(), GeofencingBackend.STATUS_ERROR);
                 }
+            }
 
-                addedOngoing = true;
+            boolean accepted = true;
+            if (!validGeofences.isEmpty()) {
+                accepted = mOperationQueue.submit(new Runnable() {
+                    @Override
+                    public void run() {
+                        if (mPager.isEnabled()) {
+                            mCatalogStore.storeGeofences(validGeofences);
+                            for (StorableGeofence storableGeofence : validGeofences) {
+                                future.setStatus(storableGeofence.getId(), GeofencingBackend.STATUS_SUCCESS);
+                            }
+                            if (mPager.hasLocation()) {
+                                rankProximityPaging(mPager.getLatitude(), mPager.getLongitude());
+                            }
+                        } else {
+                            sOperationTracker.trackAdds(future);
+                            mSynchronizer.registerGeofences(validGeofences);
+                        }
+                        mExpirationScheduler.schedule();
+                    }
+                });
+            }
+
+            if (accepted) {
+                addedOngoing = validGeofences.size() == storableGeofences.size();
+            } else {
+                for (StorableGeofence storableGeofence : validGeofences) {
+                    future.setStatus(storableGeofence.getId(), GeofencingBackend.STATUS_ERROR);
+                }
             }
         } else {
-            Log.e(TAG, "Could not add the geofence: permission ACCESS_FINE_LOCATION required");
+            Log.e(TAG, "Could not add the geofences: permission ACCESS_FINE_LOCATION required");
+            for (StorableGeofence storableGeofence : storableGeofences) {
+                future.setStatus(storableGeofence.getId(), GeofencingBackend.STATUS_ERROR);
+            }
         }
 
         return addedOngoing;
@@ -151,86 +301,208 @@ public class StorableGeofenceManager implements
      * @param geofenceId The id of the geofence to remove
      */
     public void removeGeofence(@NonNull String geofenceId) {
+        removeGeofences(Collections.singleton(geofenceId));
+    }
 
-        mToRemoveStore.storeGeofenceId(geofenceId);
-
-        if (mGoogleApiClient != null && mGoogleApiClient.isConnected()) {
+    /**
+     * Ask to remove several geofences from the store.
+     * The ids are stored with a single write in the list of geofences to remove.
+     * If the Google API Client is not connected, trigger a connection
+     * Else, remove them from the Google API client with one request per group of at most {@link #MAX_GEOFENCES_PER_REQUEST} geofences.
+     * Each geofence will be removed from store if the operation of its group is successful
+     * When the proximity paging is enabled, the geofences are also removed from the catalog and replaced by the next nearest ones.
+     * @param geofenceIds The ids of the geofences to remove
+     */
+    public void removeGeofences(@NonNull Collection<String> geofenceIds) {
+        removeGeofencesAsync(geofenceIds);
+    }
 
-            ArrayList<String> geofenceList = new ArrayList<>();
-            geofenceList.add(geofenceId);
+    /**
+     * Remove several geofences, like {@link #removeGeofences(Collection)}, and get the result of the operation.
+     * The status of each geofence is the status of the request of the Google API Client that unregistered it.
+     * @param geofenceIds The ids of the geofences to remove
+     * @return the future of the operation
+     */
+    public @NonNull
+    GeofenceOperationFuture removeGeofencesAsync(@NonNull Collection<String> geofenceIds) {
+        final ArrayList<String> ids = new ArrayList<>(geofenceIds);
+        final GeofenceOperationFuture future = new GeofenceOperationFuture(ids);
+        boolean accepted = mOperationQueue.submit(new Runnable() {
+            @Override
+            public void run() {
+                if (mPager.isEnabled()) {
+                    mCatalogStore.removeGeofenceIds(ids);
+                }
 
-            GeofenceRemoveStatus removeStatus = new GeofenceRemoveStatus(geofenceId);
+                sOperationTracker.trackRemoves(future);
+                mSynchronizer.unregisterGeofences(ids);
 
-            mGeofencingAPI.removeGeofences(mGoogleApiClient, geofenceList).setResultCallback(removeStatus);
-            Log.i(TAG, "Removed " + geofenceId);
-        } else {
-            googleApiConnect();
+                if (mPager.isEnabled() && mPager.hasLocation()) {
+                    rankProximityPaging(mPager.getLatitude(), mPager.getLongitude());
+                }
+            }
+        });
+        if (!accepted) {
+            for (String geofenceId : ids) {
+                future.setStatus(geofenceId, GeofencingBackend.STATUS_ERROR);
+            }
         }
+        return future;
     }
 
     /**
-     * Ask to synchronize all stored geofences to the Google API Client
+     * Enable or disable the proximity paging.
+     * The Google API can not register more than {@link #MAX_GEOFENCES_PER_REQUEST} geofences at the same time.
+     * When the proximity paging is enabled, the added geofences are kept in a catalog that has no size limit,
+     * and only the maxActiveGeofences geofences whose center is the nearest to the device are registered.
+     * A boundary geofence centered on the device is also registered. When the device exits it, the geofences are ranked again
+     * and only the differences are added and removed, the registered geofences that are still near enough are kept.
+     * The geofences that are registered when the paging is enabled become part of the catalog.
+     * When the paging is disabled, the registered geofences stay registered, the other geofences of the catalog are not registered anymore.
+     * The setting is persisted.
+     * @param maxActiveGeofences maximum number of catalog geofences registered at the same time, between 1 and {@link #MAX_GEOFENCES_PER_REQUEST} - 1
+     *                           since the boundary geofence is also registered. 0 to disable the proximity paging.
+     * @return true if the setting will be changed, false if maxActiveGeofences is not valid or if the operation has been rejected
      */
-    public void synchronizeAllGeofencesToGoogleApi() {
-        Log.i(TAG, "Try to update list of geofences");
-        if (ContextCompat.checkSelfPermission(mContext,
-                Manifest.permission.ACCESS_FINE_LOCATION) == PackageManager.PERMISSION_GRANTED) {
-            if (mGoogleApiClient != null && mGoogleApiClient.isConnected()) {
-
-                // first, add all (already) stored geofences, without listener
-                ArrayList<StorableGeofence> storedGeofences = mSyncedStore.getAllGeofences();
-                if (!storedGeofences.isEmpty()) {
-                    // for each geofence, add it to the Google API Client
-                    for (StorableGeofence storableGeofence : storedGeofences) {
-                        if (!storableGeofence.isExpired()) {
+    public boolean setProximityPaging(final int maxActiveGeofences) {
+        boolean changed = false;
+        if (maxActiveGeofences < 0 || maxActiveGeofences >= MAX_GEOFENCES_PER_REQUEST) {
+            Log.e(TAG, "Could not set proximity paging: maxActiveGeofences must be between 0 and " + (MAX_GEOFENCES_PER_REQUEST - 1));
+        } else {
+            changed = mOperationQueue.submit(new Runnable() {
+                @Override
+                public void run() {
+                    applyProximityPaging(maxActiveGeofences);
+                }
+            });
+        }
+        return changed;
+    }
 
-                            GeofencingRequest.Builder requestBuilder = new GeofencingRequest.Builder();
-                            requestBuilder.addGeofence(storableGeofence.toGeofence());
+    private void applyProximityPaging(int maxActiveGeofences) {
+        boolean wasEnabled = mPager.isEnabled();
+        mPager.setMaxActiveGeofences(maxActiveGeofences);
+        if (maxActiveGeofences > 0) {
+            if (!wasEnabled) {
+                ArrayList<StorableGeofence> registeredGeofences = new ArrayList<>(mSynchronizer.getRegisteredGeofences().values());
+                mCatalogStore.storeGeofences(registeredGeofences);
+            }
+            if (mPager.hasLocation()) {
+                rankProximityPaging(mPager.getLatitude(), mPager.getLongitude());
+            }
+        } else if (wasEnabled) {
+            mCatalogStore.removeGeofenceIds(mCatalogStore.getAllGeofenceIds());
+            mSynchronizer.unregisterGeofences(Collections.singleton(ProximityPager.BOUNDARY_GEOFENCE_ID));
+        }
+        mExpirationScheduler.schedule();
+    }
 
-                            mGeofencingAPI.addGeofences(mGoogleApiClient, requestBuilder.build(), createRequestPendingIntent(storableGeofence));
-                            Log.i(TAG, "Added " + storableGeofence);
-                        } else {
-                            // if the geofence has expired, add it to the list to delete
-                            mToRemoveStore.storeGeofenceId(storableGeofence.getId());
-                        }
+    /**
+     * Give the location of the device to the proximity paging.
+     * The geofences are ranked again only if the device is out of the boundary of the previous ranking.
+     * The boundary geofence calls it by itself, but the application can also call it when it receives location updates,
+     * the first call is needed to register the first geofences.
+     * Nothing is done if the proximity paging is disabled.
+     * @param latitude latitude of the device in degrees
+     * @param longitude longitude of the device in degrees
+     */
+    public void updateProximityPagingLocation(final double latitude, final double longitude) {
+        mOperationQueue.submit(new Runnable() {
+            @Override
+            public void run() {
+                if (mPager.isEnabled()) {
+                    if (mPager.isOutOfBoundary(latitude, longitude)) {
+                        rankProximityPaging(latitude, longitude);
                     }
-                    Log.i(TAG, "All already stored geofences have been submitted to be synchronized with Google API Client");
+                } else {
+                    mPager.setLocation(latitude, longitude);
                 }
+            }
+        });
+    }
 
-                // add all geofences from the to add list
-                ArrayList<StorableGeofence> toAddGeofences = mToAddStore.getAllGeofences();
-                if (!toAddGeofences.isEmpty()) {
-                    // for each geofence, add it to the Google API Client
-                    for (StorableGeofence storableGeofence : toAddGeofences) {
-                        GeofenceAddStatus addStatus = new GeofenceAddStatus(storableGeofence);
+    /**
+     * Get all geofences of the proximity paging catalog, registered or not.
+     * @return a list of StorableGeofence, empty if the proximity paging is disabled (can not be null)
+     */
+    public @NonNull
+    ArrayList<StorableGeofence> getCatalogGeofences() {
+        return mCatalogStore.getAllGeofences();
+    }
 
-                        GeofencingRequest.Builder requestBuilder = new GeofencingRequest.Builder();
-                        requestBuilder.addGeofence(storableGeofence.toGeofence());
+    /**
+     * Rank the catalog geofences from the location of the device and register the nearest ones in place of the registered ones that are too far
+     * @param latitude latitude of the device in degrees
+     * @param longitude longitude of the device in degrees
+     */
+    private void rankProximityPaging(double latitude, double longitude) {
+        LinkedHashMap<String, StorableGeofence> registeredGeofences = mSynchronizer.getRegisteredGeofences();
+        boolean boundaryRegistered = registeredGeofences.remove(ProximityPager.BOUNDARY_GEOFENCE_ID) != null;
 
-                        mGeofencingAPI.addGeofences(mGoogleApiClient, requestBuilder.build(), createRequestPendingIntent(storableGeofence)).setResultCallback(addStatus);
-                        Log.i(TAG, "Added " + storableGeofence);
-                    }
-                    Log.i(TAG, "All geofences to add have been submitted to be synchronized with Google API Client");
-                }
+        ProximityPager.Plan plan = mPager.rank(mCatalogStore, registeredGeofences.values(), boundaryRegistered, latitude, longitude);
+        if (Log.isLoggable(TAG, Log.INFO)) {
+            Log.i(TAG, "Proximity paging: " + plan.mToAdd.size() + " geofences to add, " + plan.mToRemove.size() + " geofences to remove");
+        }
+
+        // remove first so that the Google API never holds more geofences than allowed
+        if (!plan.mToRemove.isEmpty()) {
+            mSynchronizer.unregisterGeofences(plan.mToRemove);
+        }
+        if (!plan.mToAdd.isEmpty()) {
+            mSynchronizer.registerGeofences(plan.mToAdd);
+        }
+    }
 
-                // remove all geofences from the to remove list
-                Set<String> toRemoveGeofences = mToRemoveStore.getAllGeofenceIds();
-                if (!toRemoveGeofences.isEmpty()) {
-                    ArrayList<String> geofenceList = new ArrayList<>();
-                    // for each geofence, remove it to the Google API Client
-                    for (String geofenceId : toRemoveGeofences) {
-                        geofenceList.clear();
-                        geofenceList.add(geofenceId);
+    /**
+     * Get the queue of the operations that modify the stores, create it the first time
+     * @return the queue shared by all managers
+     */
+    static synchronized @NonNull
+    GeofenceOperationQueue getOperationQueue() {
+        if (sOperationQueue == null) {
+            sOperationQueue = new GeofenceOperationQueue("GeofenceOperations", GeofenceOperationQueue.DEFAULT_CAPACITY);
+        }
+        return sOperationQueue;
+    }
 
-                        GeofenceRemoveStatus removeStatus = new GeofenceRemoveStatus(geofenceId);
+    private static @NonNull
+    ArrayList<String> getIds(@NonNull Collection<StorableGeofence> storableGeofences) {
+        ArrayList<String> geofenceIds = new ArrayList<>(storableGeofences.size());
+        for (StorableGeofence storableGeofence : storableGeofences) {
+            geofenceIds.add(storableGeofence.getId());
+        }
+        return geofenceIds;
+    }
 
-                        mGeofencingAPI.removeGeofences(mGoogleApiClient, geofenceList).setResultCallback(removeStatus);
-                        Log.i(TAG, "Removed " + geofenceId);
-                    }
-                    Log.i(TAG, "All geofences to remove have been submitted to be synchronized with Google API Client");
+    /**
+     * Ask to synchronize all stored geofences to the Google API Client
+     * The geofences that are already synced are registered again only if their registrations have been lost since the last synchronization,
+     * for example after a reboot or an update of Google Play Services.
+     */
+    public void synchronizeAllGeofencesToGoogleApi() {
+        submitSynchronization(true);
+    }
+
+    /**
+     * Ask to synchronize all stored geofences to the Google API Client
+     * @param canWait true to submit the synchronization, which is rejected if the operation queue is full,
+     *                false to post it, which is never rejected, when called from a callback of the backend
+     */
+    private void submitSynchronization(boolean canWait) {
+        Log.i(TAG, "Try to update list of geofences");
+        if (ContextCompat.checkSelfPermission(mContext,
+                Manifest.permission.ACCESS_FINE_LOCATION) == PackageManager.PERMISSION_GRANTED) {
+            Runnable synchronization = new Runnable() {
+                @Override
+                public void run() {
+                    mSynchronizer.synchronize();
+                    mExpirationScheduler.schedule();
                 }
+            };
+            if (canWait) {
+                mOperationQueue.submit(synchronization);
             } else {
-                googleApiConnect();
+                mOperationQueue.post(synchronization);
             }
         } else {
             Log.e(TAG, "Not able to synchronize Geofences because ACCESS_FINE_LOCATION permission is required.");
@@ -238,43 +510,49 @@ public class StorableGeofenceManager implements
     }
 
     /**
-     * Create a pending intent from the storable geofence
-     * @param storableGeofence The storable geofence which should contain the class name of the pending intent
-     * @return The pending intent of the class if it has been successfully loaded, or a DefaultTransitionsIntentService
+     * Ask to synchronize all stored geofences to the Google API Client, registering again all the geofences that are already synced.
+     * Use it when the registrations may have been lost in a way that can not be detected, for example when the data of Google Play Services has been cleared.
      */
-    private PendingIntent createRequestPendingIntent(StorableGeofence storableGeofence) {
-        Class classOfPendingIntent = DefaultTransitionsIntentService.class;
-        if (storableGeofence.getPendingIntentClassName() != null) {
-            try {
-                Class classOfPendingIntentTmp = Class.forName(storableGeofence.getPendingIntentClassName());
-                if (classOfPendingIntentTmp != null) {
-                    classOfPendingIntent = classOfPendingIntentTmp;
-                }
-            } catch (ClassNotFoundException e) {
-                e.printStackTrace();
+    public void forceSynchronizeAllGeofencesToGoogleApi() {
+        mOperationQueue.submit(new Runnable() {
+            @Override
+            public void run() {
+                mSession.invalidate();
             }
-        }
-
-        // Create an Intent pointing to the IntentService
-        Intent intent = new Intent(mContext, classOfPendingIntent);
+        });
+        synchronizeAllGeofencesToGoogleApi();
+    }
 
-        /*
-         * Return a PendingIntent to start the IntentService.
-         * Always create a PendingIntent sent to Location Services
-         * with FLAG_UPDATE_CURRENT, so that sending the PendingIntent
-         * again updates the original. Otherwise, Location Services
-         * can't match the PendingIntent to requests made with it.
-         */
-        return PendingIntent.getService(mContext, 0, intent, PendingIntent.FLAG_UPDATE_CURRENT);
+    /**
+     * Remove the expired geofences from the stored geofences synced with Google API Client and from the proximity paging catalog,
+     * with a single write per store.
+     * The Google API Client drops the expired geofences by itself, so no request is made.
+     * It is called by the library when the next stored geofence expires, the application does not need to call it.
+     */
+    public void purgeExpiredGeofences() {
+        mOperationQueue.submit(new Runnable() {
+            @Override
+            public void run() {
+                mExpirationScheduler.purgeExpired();
+            }
+        });
     }
 
     /**
      * Get all stored Geofence that are synced with Google API Client.
+     * The boundary geofence of the proximity paging is not part of the result.
      * @return a list of StorableGeofence (can not be null)
      */
     public @NonNull
     ArrayList<StorableGeofence> getAllGeofences() {
-        return mSyncedStore.getAllGeofences();
+        ArrayList<StorableGeofence> geofences = mSyncedStore.getAllGeofences();
+        Iterator<StorableGeofence> geofenceIterator = geofences.iterator();
+        while (geofenceIterator.hasNext()) {
+            if (ProximityPager.BOUNDARY_GEOFENCE_ID.equals(geofenceIterator.next().getId())) {
+                geofenceIterator.remove();
+            }
+        }
+        return geofences;
     }
 
     /**
@@ -286,97 +564,149 @@ public class StorableGeofenceManager implements
         StorableGeofence storableGeofence = null;
 
         if (id != null) {
-            ArrayList<StorableGeofence> allGeo = getAllGeofences();
-
-            for (StorableGeofence currentGeofence : allGeo) {
-                if (currentGeofence.getId().equals(id)) {
-                    storableGeofence = currentGeofence;
-                    break;
-                }
-            }
+            storableGeofence = mSyncedStore.getGeofence(id);
         }
         return storableGeofence;
     }
 
-    //region GoogleApiClient.ConnectionCallbacks
-    @Override
-    public void onConnected(Bundle bundle) {
-        Log.i(TAG, "GoogleApiClient connected");
+    /**
+     * Get the stored Geofences synced with Google API Client that are sent to a receiver.
+     * With the {@link #STORAGE_SQLITE} storage, only these geofences are read if the store is not loaded yet.
+     * @param pendingIntentClassName the full class name of the receiver
+     * @return a list of StorableGeofence (can not be null)
+     */
+    public @NonNull
+    ArrayList<StorableGeofence> getGeofencesByReceiver(@NonNull String pendingIntentClassName) {
+        return mSyncedStore.getGeofencesByReceiver(pendingIntentClassName);
+    }
 
-        synchronizeAllGeofencesToGoogleApi();
+    /**
+     * Get the stored Geofences synced with Google API Client whose additional data contain a key.
+     * With the {@link #STORAGE_SQLITE} storage, only these geofences are read if the store is not loaded yet.
+     * @param key the key of the additional data
+     * @return a list of StorableGeofence (can not be null)
+     */
+    public @NonNull
+    ArrayList<StorableGeofence> getGeofencesByAdditionalDataKey(@NonNull String key) {
+        return mSyncedStore.getGeofencesByAdditionalDataKey(key);
+    }
 
+    /**
+     * Find the stored Geofences synced with Google API Client that contain a point.
+     * The query uses a spatial index, it does not check all geofences.
+     * @param latitude latitude of the point in degrees
+     * @param longitude longitude of the point in degrees
+     * @return a list of StorableGeofence whose region contains the point (can not be null)
+     */
+    public @NonNull
+    ArrayList<StorableGeofence> findGeofencesContaining(double latitude, double longitude) {
+        return mSyncedStore.findContaining(latitude, longitude);
     }
 
-    @Override
-    public void onConnectionSuspended(int i) {
-        Log.i(TAG, "Google API client onConnectionSuspended");
+    /**
+     * Find the stored Geofences synced with Google API Client whose center is the nearest to a point.
+     * The query uses a spatial index, it does not check all geofences.
+     * @param latitude latitude of the point in degrees
+     * @param longitude longitude of the point in degrees
+     * @param count maximum number of geofences to return
+     * @return a list of at most count StorableGeofence, sorted by increasing distance between their center and the point (can not be null)
+     */
+    public @NonNull
+    ArrayList<StorableGeofence> findNearestGeofences(double latitude, double longitude, int count) {
+        return mSyncedStore.findNearest(latitude, longitude, count);
     }
-    //endregion GoogleApiClient.ConnectionCallbacks
 
-    //region GoogleApiClient.OnConnectionFailedListener
-    @Override
-    public void onConnectionFailed(@NonNull ConnectionResult connectionResult) {
-        Log.e(TAG, "Connection to Google API client failed with error code :" + connectionResult.getErrorCode());
+    /**
+     * Find the stored Geofences synced with Google API Client whose center is in a bounding box.
+     * The query uses a spatial index, it does not check all geofences.
+     * @param minLatitude south edge of the box in degrees
+     * @param minLongitude west edge of the box in degrees
+     * @param maxLatitude north edge of the box in degrees
+     * @param maxLongitude east edge of the box in degrees. If it is less than minLongitude, the box crosses the antimeridian.
+     * @return a list of StorableGeofence whose center is in the box (can not be null)
+     */
+    public @NonNull
+    ArrayList<StorableGeofence> findGeofencesInBoundingBox(double minLatitude, double minLongitude, double maxLatitude, double maxLongitude) {
+        return mSyncedStore.findInBoundingBox(minLatitude, minLongitude, maxLatitude, maxLongitude);
     }
-    //endregion GoogleApiClient.OnConnectionFailedListener
 
-    //region Result callbacks
-    private class GeofenceRemoveStatus implements ResultCallback<Status> {
+    private class SynchronizeOnConnected implements SharedGoogleApiClient.Operation {
 
         /**
-         * Inner class that will responds to ResultCallback when a geofence will be, successfully or not, removed from the Google API Client
+         * Inner class that synchronizes the stores once the shared Google API Client is connected.
+         * The stores are shared by the process, so all these operations are equal:
+         * when several managers wait for the same connection, only the first one synchronizes.
+         * If the connection fails, the pending operations of all managers are completed with its error code.
          */
 
-        private final String mGeofenceId;
-        public GeofenceRemoveStatus(@NonNull String geofenceId) {
-            mGeofenceId = geofenceId;
+        @Override
+        public void run() {
+            // called on the main thread, which should not wait for room in the operation queue
+            submitSynchronization(false);
         }
 
         @Override
-        public void onResult(@NonNull Status status) {
-            if (status.isSuccess()) {
-                Log.i(TAG, "Removed successfully geofence " + mGeofenceId + " to the Google API");
-                // since the operation is successful, remove from the local store
-                mSyncedStore.removeGeofenceId(mGeofenceId);
+        public void onConnectionFailed(final int errorCode) {
+            // posted after the operations already submitted, so that their futures are tracked first.
+            // The geofences stay in the stores, they will be synchronized by the next connection.
+            mOperationQueue.post(new Runnable() {
+                @Override
+                public void run() {
+                    sOperationTracker.failAll(errorCode);
+                }
+            });
+        }
 
-                mToRemoveStore.removeGeofenceId(mGeofenceId);
-            } else {
-                Log.e(TAG, "Error : geofence not removed. Error is " + status.getStatusMessage() + "(code : " + status.getStatusCode() + ")");
-            }
+        @Override
+        public boolean equals(Object o) {
+            return o instanceof SynchronizeOnConnected;
+        }
 
-            if (mListener != null) {
-                mListener.geofenceRemoveStatus(mGeofenceId, status);
-            }
+        @Override
+        public int hashCode() {
+            return SynchronizeOnConnected.class.hashCode();
         }
     }
 
-    private class GeofenceAddStatus implements ResultCallback<Status> {
+    //region Result callbacks
+    private class SynchronizerListener implements GeofenceSynchronizer.Listener {
 
         /**
-         * Inner class that will responds to ResultCallback when a geofence will be, successfully or not, added to the Google API Client
+         * Inner class that informs the listener of the manager of the results of the synchronizer, with the status of the Google API.
+         * The results are received on the operation queue, the listener is called on the main thread.
          */
 
-        private final StorableGeofence mGeofence;
-
-        public GeofenceAddStatus(@NonNull StorableGeofence geofence) {
-            mGeofence = geofence;
+        @Override
+        public void geofenceAddStatus(final StorableGeofence geofence, int statusCode, String statusMessage) {
+            // the geofence is now in the synced store
+            mExpirationScheduler.schedule();
+
+            sOperationTracker.onAddStatus(geofence.getId(), statusCode);
+            final Status status = new Status(statusCode, statusMessage);
+            mMainHandler.post(new Runnable() {
+                @Override
+                public void run() {
+                    StorableGeofenceManagerListener listener = mListener;
+                    if (listener != null) {
+                        listener.geofenceAddStatus(geofence, status);
+                    }
+                }
+            });
         }
 
         @Override
-        public void onResult(@NonNull Status status) {
-            if (status.isSuccess()) {
-                Log.i(TAG, "Added successfully geofence " + mGeofence + " to the Google API");
-                // since the operation is successful, remove from the local store
-                mSyncedStore.storeGeofence(mGeofence);
-
-                mToAddStore.removeGeofence(mGeofence);
-            } else {
-                Log.e(TAG, "Error : geofence not added. Error is " + status.getStatusMessage() + "(code : " + status.getStatusCode() + ")");
-            }
-
-            if (mListener != null) {
-                mListener.geofenceAddStatus(mGeofence, status);
-            }
+        public void geofenceRemoveStatus(final String geofenceId, int statusCode, String statusMessage) {
+            sOperationTracker.onRemoveStatus(geofenceId, statusCode);
+            final Status status = new Status(statusCode, statusMessage);
+            mMainHandler.post(new Runnable() {
+                @Override
+                public void run() {
+                    StorableGeofenceManagerListener listener = mListener;
+                    if (listener != null) {
+                        listener.geofenceRemoveStatus(geofenceId, status);
+                    }
+                }
+            });
         }
     }
     //endregion Result callbacks
@@ -0,0 +1,105 @@
+package com.sousoum.libgeofencehelper;
+
+import android.content.Context;
+
+import org.junit.Before;
+import org.junit.Test;
+import org.junit.runner.RunWith;
+import org.robolectric.RobolectricGradleTestRunner;
+import org.robolectric.RuntimeEnvironment;
+import org.robolectric.annotation.Config;
+
+import java.io.File;
+import java.io.IOException;
+import java.util.ArrayList;
+import java.util.Collections;
+
+import static org.junit.Assert.assertEquals;
+import static org.junit.Assert.assertFalse;
+import static org.junit.Assert.assertNotNull;
+import static org.junit.Assert.assertSame;
+import static org.junit.Assert.assertTrue;
+
+@RunWith(RobolectricGradleTestRunner.class)
+@Config(constants = BuildConfig.class, sdk = 21)
+public class GeofenceStoresTest {
+
+    private static final String RECEIVER = "com.example.Receiver";
+    private static final String OTHER_RECEIVER = "com.example.OtherReceiver";
+
+    private Context mContext;
+
+    @Before
+    public void setUp() {
+        mContext = RuntimeEnvironment.application;
+    }
+
+    @Test
+    public void storageMigration() throws IOException {
+        assertEquals(GeofenceStores.STORAGE_RECORD_FILE, GeofenceStores.getStorage(mContext));
+        GeofenceStore store = GeofenceStores.getInstance(mContext, "MIGRATION_STORE");
+        ArrayList<StorableGeofence> geofences = new ArrayList<>();
+        geofences.add(new StorableGeofence("a", RECEIVER, 10, 20, 100f, StorableGeofence.NEVER_EXPIRE, StorableGeofence.TRANSITION_ENTER, null));
+        geofences.add(new StorableGeofence("b", RECEIVER, 30, 40, 100f, StorableGeofence.NEVER_EXPIRE, StorableGeofence.TRANSITION_EXIT, null));
+        store.storeGeofences(geofences);
+        store.storeGeofenceId("c");
+        File storeFile = new File(mContext.getFilesDir(), "GeofenceHelperLibStore-MIGRATION_STORE.bin");
+        assertTrue(storeFile.exists());
+
+        assertTrue(GeofenceStores.setStorage(mContext, GeofenceStores.STORAGE_SQLITE));
+
+        // the geofences are moved to the database, the store got before the change reads them from there
+        assertEquals(GeofenceStores.STORAGE_SQLITE, GeofenceStores.getStorage(mContext));
+        assertFalse(storeFile.exists());
+        assertSame(store, GeofenceStores.getInstance(mContext, "MIGRATION_STORE"));
+        assertEquals(3, store.getAllGeofenceIds().size());
+        assertEquals(40, store.getGeofence("b").getLongitude(), 0);
+        assertEquals(StorableGeofence.TRANSITION_EXIT, store.getGeofence("b").getTransitionType());
+        assertNotNull(new SQLiteGeofenceStorage(GeofenceDatabaseHelper.getInstance(mContext), "MIGRATION_STORE").readAll().get("a"));
+
+        // the writes made after the change go to the database
+        store.removeGeofenceId("a");
+        store.storeGeofence(new StorableGeofence("d", RECEIVER, 50, 60, 100f, StorableGeofence.NEVER_EXPIRE, StorableGeofence.TRANSITION_ENTER, null));
+        assertFalse(storeFile.exists());
+
+        assertTrue(GeofenceStores.setStorage(mContext, GeofenceStores.STORAGE_RECORD_FILE));
+
+        assertEquals(GeofenceStores.STORAGE_RECORD_FILE, GeofenceStores.getStorage(mContext));
+        assertTrue(storeFile.exists());
+        assertEquals(3, store.getAllGeofenceIds().size());
+        assertNotNull(store.getGeofence("d"));
+        assertTrue(store.getAllGeofenceIds().contains("c"));
+        assertFalse(store.getAllGeofenceIds().contains("a"));
+    }
+
+    @Test
+    public void indexedQueriesDoNotLoadTheStore() throws IOException {
+        assertTrue(GeofenceStores.setStorage(mContext, GeofenceStores.STORAGE_SQLITE));
+        try {
+            GeofenceStore store = GeofenceStores.getInstance(mContext, "INDEXED_STORE");
+            store.storeGeofence(new StorableGeofence("a", RECEIVER, 10, 20, 100f, StorableGeofence.NEVER_EXPIRE, StorableGeofence.TRANSITION_ENTER, null));
+            assertEquals(1, store.getGeofencesByReceiver(RECEIVER).size());
+
+            // a geofence written behind the store is only found if the query goes to the database instead of a loaded copy
+            new SQLiteGeofenceStorage(GeofenceDatabaseHelper.getInstance(mContext), "INDEXED_STORE").update(
+                    Collections.singletonMap("b", new StorableGeofence("b", OTHER_RECEIVER, 30, 40, 100f, StorableGeofence.NEVER_EXPIRE,
+                            StorableGeofence.TRANSITION_ENTER, null)), Collections.<String>emptySet());
+            ArrayList<StorableGeofence> otherGeofences = store.getGeofencesByReceiver(OTHER_RECEIVER);
+            assertEquals(1, otherGeofences.size());
+            assertEquals("b", otherGeofences.get(0).getId());
+        } finally {
+            assertTrue(GeofenceStores.setStorage(mContext, GeofenceStores.STORAGE_RECORD_FILE));
+        }
+    }
+
+    @Test
+    public void sameStorageIsKept() {
+        GeofenceStore store = GeofenceStores.getInstance(mContext, "KEPT_STORE");
+        store.storeGeofenceId("a");
+
+        assertTrue(GeofenceStores.setStorage(mContext, GeofenceStores.getStorage(mContext)));
+
+        assertSame(store, GeofenceStores.getInstance(mContext, "KEPT_STORE"));
+        assertTrue(store.getAllGeofenceIds().contains("a"));
+    }
+}
@@ -0,0 +1,118 @@
+package com.sousoum.libgeofencehelper;
+
+import com.google.android.gms.common.ConnectionResult;
+import com.google.android.gms.common.api.GoogleApiClient;
+
+import org.junit.Before;
+import org.junit.Test;
+import org.junit.runner.RunWith;
+import org.robolectric.RobolectricGradleTestRunner;
+import org.robolectric.annotation.Config;
+
+import static org.junit.Assert.assertEquals;
+import static org.mockito.Mockito.atLeastOnce;
+import static org.mockito.Mockito.mock;
+import static org.mockito.Mockito.never;
+import static org.mockito.Mockito.verify;
+import static org.mockito.Mockito.when;
+
+@RunWith(RobolectricGradleTestRunner.class)
+@Config(constants = BuildConfig.class, sdk = 21)
+public class SharedGoogleApiClientTest {
+
+    private GoogleApiClient mGoogleApiClient;
+    private SharedGoogleApiClient mApiClient;
+
+    @Before
+    public void setUp() {
+        mGoogleApiClient = mock(GoogleApiClient.class);
+        when(mGoogleApiClient.isConnected()).thenReturn(false);
+        when(mGoogleApiClient.isConnecting()).thenReturn(false);
+        mApiClient = new SharedGoogleApiClient(mGoogleApiClient);
+    }
+
+    @Test
+    public void queuedOperationsRunOnceConnected() {
+        RecordingOperation operation = new RecordingOperation();
+        mApiClient.runWhenConnected(operation);
+        mApiClient.runWhenConnected(operation);
+
+        verify(mGoogleApiClient, atLeastOnce()).connect();
+        assertEquals(0, operation.mRunCount);
+
+        mApiClient.onConnected(null);
+
+        // an operation is queued only once
+        assertEquals(1, operation.mRunCount);
+        assertEquals(0, operation.mFailureCount);
+    }
+
+    @Test
+    public void connectionFailureFailsTheQueuedOperations() {
+        RecordingOperation first = new RecordingOperation();
+        RecordingOperation second = new RecordingOperation();
+        mApiClient.runWhenConnected(first);
+        mApiClient.runWhenConnected(second);
+
+        mApiClient.onConnectionFailed(new ConnectionResult(ConnectionResult.SERVICE_MISSING));
+
+        assertEquals(1, first.mFailureCount);
+        assertEquals(ConnectionResult.SERVICE_MISSING, first.mErrorCode);
+        assertEquals(1, second.mFailureCount);
+        assertEquals(ConnectionResult.SERVICE_MISSING, second.mErrorCode);
+
+        // the failed operations are dropped
+        mApiClient.onConnected(null);
+        assertEquals(0, first.mRunCount);
+        assertEquals(0, second.mRunCount);
+    }
+
+    @Test
+    public void failedOperationDoesNotDropTheOthers() {
+        RecordingOperation failing = new RecordingOperation();
+        failing.mThrows = true;
+        RecordingOperation other = new RecordingOperation();
+        mApiClient.runWhenConnected(failing);
+        mApiClient.runWhenConnected(other);
+
+        mApiClient.onConnected(null);
+
+        assertEquals(1, failing.mFailureCount);
+        assertEquals(GeofencingBackend.STATUS_ERROR, failing.mErrorCode);
+        assertEquals(1, other.mRunCount);
+        assertEquals(0, other.mFailureCount);
+    }
+
+    @Test
+    public void operationRunsImmediatelyWhenConnected() {
+        when(mGoogleApiClient.isConnected()).thenReturn(true);
+        RecordingOperation operation = new RecordingOperation();
+
+        mApiClient.runWhenConnected(operation);
+
+        assertEquals(1, operation.mRunCount);
+        verify(mGoogleApiClient, never()).connect();
+    }
+
+    private static class RecordingOperation implements SharedGoogleApiClient.Operation {
+
+        private boolean mThrows;
+        private int mRunCount;
+        private int mFailureCount;
+        private int mErrorCode;
+
+        @Override
+        public void run() {
+            mRunCount++;
+            if (mThrows) {
+                throw new IllegalStateException("failed");
+            }
+        }
+
+        @Override
+        public void onConnectionFailed(int errorCode) {
+            mFailureCount++;
+            mErrorCode = errorCode;
+        }
+    }
+}